@@ -0,0 +1,98 @@
+package bench;
+
+import common.CustomLogger;
+import consensus.participant.ConsensusAcceptor;
+import consensus.participant.ConsensusLearner;
+import consensus.state.Operation;
+import consensus.state.StateStore;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the commit rate of one server's learner when many threads commit decided slots at once, as the
+ * proposer's and the RMI threads do, without the network or the consensus rounds in the way.
+ *
+ * Each committer takes the next free slot, commits a PUT in it and waits until it has been applied. The
+ * benchmark runs once with the decided slots applied by the committing threads themselves and once with
+ * the single apply stage running.
+ *
+ * Usage: java bench.ApplyBenchmark [committerThreads] [seconds]
+ */
+public class ApplyBenchmark {
+
+    private static final int PORT = 9002;
+    private static final int KEYS = 100_000;
+
+    private static final PrintStream console = System.out;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        console.println("Apply benchmark: " + threads + " committer threads, " + seconds + " s per run");
+        console.printf("%-14s %14s%n", "", "commits/s");
+        // The consensus classes log every applied slot; keep that out of the measurements
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (boolean applyStage : new boolean[]{false, true}) {
+                double commitsPerSecond = measure(threads, seconds, applyStage);
+                console.printf("%-14s %14.0f%n", applyStage ? "apply stage" : "inline apply", commitsPerSecond);
+            }
+        } finally {
+            CustomLogger.flush();
+            System.setOut(console);
+        }
+        System.exit(0);
+    }
+
+    private static double measure(int threads, int seconds, boolean applyStage) throws InterruptedException {
+        StateStore store = new StateStore();
+        ConsensusLearner learner = new ConsensusLearner(store, PORT);
+        ConsensusAcceptor acceptor = new ConsensusAcceptor(store, PORT, learner);
+        learner.setAcceptor(acceptor);
+        Thread stage = null;
+        if (applyStage) {
+            stage = new Thread(learner, "apply-bench");
+            stage.setDaemon(true);
+            stage.start();
+        }
+
+        AtomicLong nextSlot = new AtomicLong();
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> committers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread committer = new Thread(() -> {
+                while (running.get()) {
+                    long slot = nextSlot.getAndIncrement();
+                    try {
+                        learner.learn(slot, new Operation(0, "PUT", "key-" + slot % KEYS, "value-" + slot));
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            committers.add(committer);
+        }
+        long start = System.nanoTime();
+        for (Thread committer : committers) {
+            committer.start();
+        }
+        TimeUnit.SECONDS.sleep(seconds);
+        long applied = learner.getHighestAppliedSlot() + 1;
+        long nanos = System.nanoTime() - start;
+        running.set(false);
+        for (Thread committer : committers) {
+            committer.join();
+        }
+        if (stage != null) {
+            stage.interrupt();
+        }
+        return applied * 1e9 / nanos;
+    }
+}
@@ -0,0 +1,133 @@
+package bench;
+
+import client.AsyncClient;
+import client.AsyncClientConfig;
+import network.TransportType;
+
+import java.io.File;
+import java.rmi.registry.LocateRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how write throughput of one client thread grows with the number of requests it keeps
+ * outstanding through an {@link AsyncClient}, from one at a time, as a blocking client sends them, to 256.
+ *
+ * A five-node cluster is started through {@link server.ServerStarter} in a separate JVM, using the same
+ * transport between servers as the client uses, with logging off. Other {@code paxos.*} system properties
+ * given to the benchmark are passed on to the cluster.
+ *
+ * Usage: java bench.AsyncClientBenchmark [seconds] [classic|multi] [rmi|nio]
+ */
+public class AsyncClientBenchmark {
+
+    private static final int[] OUTSTANDING = {1, 16, 64, 256};
+    private static final int[] PORTS = {5001, 5002, 5003, 5004, 5005};
+    private static final int KEYS = 1000;
+    private static final int WARMUP_SECONDS = 2;
+    private static final int STARTUP_TIMEOUT_MS = 30000;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        String mode = args.length > 1 ? args[1] : "multi";
+        TransportType transport = TransportType.fromString(args.length > 2 ? args[2] : "rmi");
+
+        System.out.println("Async client benchmark: " + seconds + " s per run, " + mode + " mode, "
+                + transport.name().toLowerCase() + " transport");
+        Process cluster = startCluster(mode, transport);
+        try {
+            awaitCluster();
+            System.out.printf("%-12s %12s %14s %10s %8s%n", "outstanding", "ops/s", "mean latency", "failed", "leader");
+            for (int outstanding : OUTSTANDING) {
+                AsyncClientConfig config = new AsyncClientConfig();
+                config.setTransport(transport);
+                config.setMaxOutstanding(outstanding);
+                try (AsyncClient client = new AsyncClient(config)) {
+                    run(client, outstanding, WARMUP_SECONDS);
+                    long[] result = run(client, outstanding, seconds);
+                    double opsPerSecond = result[0] / (double) seconds;
+                    double meanLatencyMs = result[0] == 0 ? 0 : result[1] / (double) result[0] / 1_000_000.0;
+                    System.out.printf("%-12d %12.0f %11.2f ms %10d %8d%n", outstanding, opsPerSecond, meanLatencyMs,
+                            result[2], client.getLeaderPort(0));
+                }
+            }
+        } finally {
+            cluster.destroy();
+            cluster.waitFor(10, TimeUnit.SECONDS);
+        }
+        System.exit(0);
+    }
+
+    private static Process startCluster(String mode, TransportType transport) throws Exception {
+        String javaBin = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>();
+        command.add(javaBin);
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("paxos.") && !name.equals("paxos.transport") && !name.equals("paxos.log.level")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        command.add("-Dpaxos.transport=" + transport.name().toLowerCase());
+        command.add("-Dpaxos.log.level=off");
+        command.add("-classpath");
+        command.add(System.getProperty("java.class.path"));
+        command.add("server.ServerStarter");
+        command.add(mode);
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectErrorStream(true);
+        return builder.start();
+    }
+
+    private static void awaitCluster() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MS;
+        while (true) {
+            try {
+                for (int port : PORTS) {
+                    LocateRegistry.getRegistry("localhost", port).lookup("PaxosServer");
+                }
+                return;
+            } catch (Exception e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("Cluster did not start: " + e.getMessage());
+                }
+                Thread.sleep(200);
+            }
+        }
+    }
+
+    // Sends PUTs from this thread alone, never more than the given number at once. Returns the number of
+    // successful writes, their summed latency in nanoseconds and the number of failed ones
+    private static long[] run(AsyncClient client, int outstanding, int seconds) throws InterruptedException {
+        Semaphore window = new Semaphore(outstanding);
+        AtomicLong completed = new AtomicLong();
+        AtomicLong totalLatencyNanos = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        long endNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        for (long i = 0; System.nanoTime() < endNanos; i++) {
+            if (!window.tryAcquire(endNanos - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                break;
+            }
+            long start = System.nanoTime();
+            client.put("async-bench-" + (i % KEYS), "value-" + i).whenComplete((decided, failure) -> {
+                long doneNanos = System.nanoTime();
+                // Requests completing while the run drains, after the measured time, are not counted
+                if (doneNanos - endNanos <= 0) {
+                    if (failure == null && decided) {
+                        completed.incrementAndGet();
+                        totalLatencyNanos.addAndGet(doneNanos - start);
+                    } else {
+                        failed.incrementAndGet();
+                    }
+                }
+                window.release();
+            });
+        }
+        // Let the last requests complete so they do not hold up the next run
+        window.acquire(outstanding);
+        return new long[]{completed.get(), totalLatencyNanos.get(), failed.get()};
+    }
+}
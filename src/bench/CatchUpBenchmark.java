@@ -0,0 +1,138 @@
+package bench;
+
+import common.CustomLogger;
+import consensus.participant.ConsensusAcceptor;
+import consensus.participant.ConsensusLearner;
+import consensus.process.CatchUpProcess;
+import consensus.process.SnapshotProcess;
+import consensus.state.Operation;
+import consensus.state.StateStore;
+import network.PeerConnectionManager;
+import network.PeerTransport;
+import network.RmiTransport;
+import network.ServerCommunicator;
+import network.nio.NioTransport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.rmi.registry.LocateRegistry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Measures how fast an empty server catches up with a server that is far ahead of it.
+ *
+ * A source server holds a log of decided slots, 64 PUT operations per slot, and serves it over both
+ * transports. A fresh receiver first catches up from the log alone; then the source takes a snapshot,
+ * truncates its log and decides a short tail of further slots, and another fresh receiver catches up
+ * through a snapshot transfer followed by the tail.
+ *
+ * Usage: java bench.CatchUpBenchmark [slots] [directory]
+ */
+public class CatchUpBenchmark {
+
+    private static final int SOURCE_PORT = 7101;
+    private static final int BATCH_SIZE = 64;
+    private static final double TAIL_FRACTION = 0.01;
+
+    private static final PrintStream console = System.out;
+
+    public static void main(String[] args) throws Exception {
+        int slots = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        Path directory = Files.createTempDirectory(Paths.get(args.length > 1 ? args[1] : "."), "catch-up-bench-");
+
+        console.println("Catch-up benchmark: " + slots + " slots of " + BATCH_SIZE + " operations, "
+                + CatchUpProcess.BATCH_SLOTS + " slots per fetch, " + CatchUpProcess.SNAPSHOT_CHUNK_BYTES / 1024 + " KiB snapshot chunks");
+        // The consensus classes log every applied slot; keep that out of the measurements
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            Server source = new Server(SOURCE_PORT, directory.resolve("source"));
+            ServerCommunicator communicator = new ServerCommunicator(null, source.acceptor, source.learner, Collections.emptyList());
+            communicator.setSnapshotProcess(source.snapshots);
+            LocateRegistry.createRegistry(SOURCE_PORT).rebind("PaxosServer", communicator);
+            NioTransport sourceTransport = new NioTransport(SOURCE_PORT);
+            sourceTransport.start(communicator);
+
+            long slot = decide(source, 0, slots, 0);
+            console.printf("%-22s %10s %12s %12s %10s%n", "", "time", "entries/s", "MB/s", "keys");
+            int receiverPort = SOURCE_PORT + 1;
+            for (String transport : new String[]{"rmi", "nio"}) {
+                Server receiver = new Server(receiverPort, null);
+                CatchUpProcess catchUp = receiver.catchUpFrom(transport, receiverPort++);
+                long start = System.nanoTime();
+                catchUp.catchUp();
+                console.printf("%-22s %7.0f ms %12.0f %12.1f %10d%n", "log, " + transport, (System.nanoTime() - start) / 1e6,
+                        catchUp.getSlotsPerSecond(), catchUp.getMegabytesPerSecond(), receiver.learner.getStateStore().size());
+            }
+
+            source.snapshots.takeSnapshot();
+            decide(source, slot, (int) (slots * TAIL_FRACTION), 1);
+            for (String transport : new String[]{"rmi", "nio"}) {
+                Server receiver = new Server(receiverPort, directory.resolve("receiver-" + receiverPort));
+                CatchUpProcess catchUp = receiver.catchUpFrom(transport, receiverPort++);
+                long start = System.nanoTime();
+                catchUp.catchUp();
+                console.printf("%-22s %7.0f ms %12s %12.1f %10d%n", "snapshot + log, " + transport, (System.nanoTime() - start) / 1e6,
+                        "-", catchUp.getSnapshotMegabytesPerSecond(), receiver.learner.getStateStore().size());
+            }
+            sourceTransport.close();
+        } finally {
+            CustomLogger.flush();
+            System.setOut(console);
+            delete(directory);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * The store, log and snapshots of one in-process server.
+     */
+    private static final class Server {
+        final int port;
+        final ConsensusAcceptor acceptor;
+        final ConsensusLearner learner;
+        final SnapshotProcess snapshots;
+
+        Server(int port, Path directory) throws IOException {
+            this.port = port;
+            StateStore store = new StateStore();
+            learner = new ConsensusLearner(store, port);
+            acceptor = new ConsensusAcceptor(store, port, learner);
+            learner.setAcceptor(acceptor);
+            snapshots = directory == null ? null : new SnapshotProcess(acceptor, learner, directory, 0);
+        }
+
+        CatchUpProcess catchUpFrom(String transportName, int selfPort) throws IOException {
+            PeerTransport transport = transportName.equals("nio") ? new NioTransport(selfPort) : new RmiTransport();
+            PeerConnectionManager peers = new PeerConnectionManager(port, Arrays.asList(port, SOURCE_PORT), transport);
+            return new CatchUpProcess(learner, peers, snapshots);
+        }
+    }
+
+    // Decides the given number of slots on the source, a batch of PUTs each, and returns the next free slot
+    private static long decide(Server server, long slot, int count, int round) {
+        for (int i = 0; i < count; i++, slot++) {
+            List<Operation> batch = new ArrayList<>(BATCH_SIZE);
+            for (int j = 0; j < BATCH_SIZE; j++) {
+                long key = slot * BATCH_SIZE + j;
+                batch.add(new Operation(0, "PUT", "key-" + key, "value-" + round + "-" + key));
+            }
+            server.learner.learnFromPeer(slot, Operation.batchOf(0, batch));
+        }
+        return slot;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
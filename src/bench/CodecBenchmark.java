@@ -0,0 +1,120 @@
+package bench;
+
+import consensus.message.AcceptResponse;
+import consensus.message.AcceptedValue;
+import consensus.message.Decision;
+import consensus.message.MessageCodec;
+import consensus.message.PrepareResponse;
+import consensus.state.Operation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the size and the encode/decode cost of typical consensus messages under default Java
+ * serialization, under Java serialization through the compact wire form, and under the raw codec.
+ *
+ * Usage: java bench.CodecBenchmark [iterations]
+ */
+public class CodecBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 20000;
+
+    // Keeps the JIT from discarding the measured work
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+        Operation put = new Operation(1234501, "PUT", "user:42", "value-of-user-42");
+        List<AcceptedValue> accepted = new ArrayList<>();
+        List<Decision> decisions = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            Operation operation = new Operation(1234501 + i, "PUT", "user:" + i, "value-of-user-" + i);
+            accepted.add(new AcceptedValue(100000 + i, 1234501, operation));
+            decisions.add(new Decision(100000 + i, operation));
+        }
+
+        Object[][] messages = {
+                {"PUT operation", put},
+                {"accept reply", AcceptResponse.accept(1234501)},
+                {"prepare promise (64 values)", PrepareResponse.promise(1234501, accepted)},
+                {"commit (64 decisions)", decisions},
+        };
+
+        System.out.println("Codec benchmark: " + iterations + " iterations per measurement");
+        System.out.printf("%-28s %-14s %8s %12s %12s%n", "message", "format", "bytes", "encode ns", "decode ns");
+        for (Object[] entry : messages) {
+            String name = (String) entry[0];
+            Object message = entry[1];
+
+            MessageCodec.setEnabled(false);
+            measureSerialization(name, "java", message, iterations);
+            MessageCodec.setEnabled(true);
+            measureSerialization(name, "java+codec", message, iterations);
+            if (!(message instanceof List)) {
+                measureCodec(name, message, iterations);
+            }
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    private static void measureSerialization(String name, String format, Object message, int iterations) throws Exception {
+        byte[] bytes = serialize(message);
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink += serialize(message).length;
+            sink += deserialize(bytes).hashCode();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += serialize(message).length;
+        }
+        long encodeNs = (System.nanoTime() - start) / iterations;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += deserialize(bytes).hashCode();
+        }
+        long decodeNs = (System.nanoTime() - start) / iterations;
+        System.out.printf("%-28s %-14s %8d %12d %12d%n", name, format, bytes.length, encodeNs, decodeNs);
+    }
+
+    private static void measureCodec(String name, Object message, int iterations) {
+        byte[] bytes = MessageCodec.encode(message);
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink += MessageCodec.encode(message).length;
+            sink += MessageCodec.decode(bytes).hashCode();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += MessageCodec.encode(message).length;
+        }
+        long encodeNs = (System.nanoTime() - start) / iterations;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += MessageCodec.decode(bytes).hashCode();
+        }
+        long decodeNs = (System.nanoTime() - start) / iterations;
+        System.out.printf("%-28s %-14s %8d %12d %12d%n", name, "codec", bytes.length, encodeNs, decodeNs);
+    }
+
+    private static byte[] serialize(Object message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(message);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package bench;
+
+import consensus.message.ServerStats;
+import consensus.state.Operation;
+import network.ServerInterface;
+
+import java.io.File;
+import java.rmi.registry.LocateRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how write throughput holds up as more servers propose at the same time.
+ *
+ * For every number of proposers a fresh cluster is started through {@link server.ServerStarter} in a
+ * separate JVM, with logging off, and the same number of client threads send PUTs to each of the first
+ * that many servers, so that every one of them takes writes. Besides throughput and failed writes, the
+ * benchmark reports the proposer rounds rejected and retried over the whole cluster per successful write,
+ * which grow when proposers keep preempting each other. Other {@code paxos.*} system properties given to
+ * the benchmark are passed on to the cluster.
+ *
+ * Usage: java bench.ContentionBenchmark [threadsPerProposer] [seconds] [classic|multi] [proposerCount...]
+ */
+public class ContentionBenchmark {
+
+    private static final int[] DEFAULT_PROPOSER_COUNTS = {1, 2, 3, 4, 5};
+    private static final int[] PORTS = {5001, 5002, 5003, 5004, 5005};
+    private static final int WARMUP_SECONDS = 2;
+    private static final int STARTUP_TIMEOUT_MS = 30000;
+
+    public static void main(String[] args) throws Exception {
+        int threadsPerProposer = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        String mode = args.length > 2 ? args[2] : "classic";
+        int[] proposerCounts = DEFAULT_PROPOSER_COUNTS;
+        if (args.length > 3) {
+            proposerCounts = new int[args.length - 3];
+            for (int i = 3; i < args.length; i++) {
+                proposerCounts[i - 3] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.println("Contention benchmark: " + threadsPerProposer + " client threads per proposer, "
+                + seconds + " s per run, " + mode + " mode");
+        System.out.printf("%-10s %12s %14s %10s %14s %14s%n", "proposers", "ops/s", "mean latency", "failed",
+                "rejected/op", "retried/op");
+        for (int proposers : proposerCounts) {
+            Process cluster = startCluster(mode);
+            try {
+                List<ServerInterface> servers = awaitCluster();
+                List<ServerInterface> targets = servers.subList(0, proposers);
+                run(targets, threadsPerProposer, WARMUP_SECONDS);
+                long[] before = rounds(servers);
+                long[] result = run(targets, threadsPerProposer, seconds);
+                long[] after = rounds(servers);
+                double perOp = Math.max(1, result[0]);
+                System.out.printf("%-10d %12.0f %11.2f ms %10d %14.3f %14.3f%n", proposers, result[0] / (double) seconds,
+                        result[0] == 0 ? 0 : result[1] / (double) result[0] / 1_000_000.0, result[2],
+                        (after[0] - before[0]) / perOp, (after[1] - before[1]) / perOp);
+            } finally {
+                cluster.destroy();
+                cluster.waitFor(10, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private static Process startCluster(String mode) throws Exception {
+        String javaBin = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>();
+        command.add(javaBin);
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("paxos.") && !name.equals("paxos.log.level")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        command.add("-Dpaxos.log.level=off");
+        command.add("-classpath");
+        command.add(System.getProperty("java.class.path"));
+        command.add("server.ServerStarter");
+        command.add(mode);
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectErrorStream(true);
+        return builder.start();
+    }
+
+    private static List<ServerInterface> awaitCluster() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MS;
+        while (true) {
+            try {
+                List<ServerInterface> servers = new ArrayList<>();
+                for (int port : PORTS) {
+                    servers.add((ServerInterface) LocateRegistry.getRegistry("localhost", port).lookup("PaxosServer"));
+                }
+                return servers;
+            } catch (Exception e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("Cluster did not start: " + e.getMessage());
+                }
+                Thread.sleep(200);
+            }
+        }
+    }
+
+    // The proposer rounds rejected and retried so far, summed over the cluster
+    private static long[] rounds(List<ServerInterface> servers) throws Exception {
+        long rejected = 0;
+        long retried = 0;
+        for (ServerInterface server : servers) {
+            ServerStats stats = server.getStats();
+            rejected += stats.getValues().getOrDefault("proposer.rejected", 0L);
+            retried += stats.getValues().getOrDefault("proposer.retried", 0L);
+        }
+        return new long[]{rejected, retried};
+    }
+
+    // Returns the number of successful writes, their summed latency in nanoseconds and the number of failed ones
+    private static long[] run(List<ServerInterface> targets, int threadsPerProposer, int seconds) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong completed = new AtomicLong();
+        AtomicLong totalLatencyNanos = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        int clientThreads = threadsPerProposer * targets.size();
+        ExecutorService clients = Executors.newFixedThreadPool(clientThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < clientThreads; t++) {
+            ServerInterface server = targets.get(t % targets.size());
+            String keyPrefix = "contention-" + t + "-";
+            futures.add(clients.submit(() -> {
+                long i = 0;
+                while (running.get()) {
+                    long start = System.nanoTime();
+                    boolean decided;
+                    try {
+                        decided = server.propose(new Operation(0, "PUT", keyPrefix + (i++ % 1000), "value-" + i));
+                    } catch (Exception e) {
+                        decided = false;
+                    }
+                    if (decided) {
+                        completed.incrementAndGet();
+                        totalLatencyNanos.addAndGet(System.nanoTime() - start);
+                    } else {
+                        failed.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        running.set(false);
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        clients.shutdown();
+        return new long[]{completed.get(), totalLatencyNanos.get(), failed.get()};
+    }
+}
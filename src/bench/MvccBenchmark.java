@@ -0,0 +1,211 @@
+package bench;
+
+import common.CustomLogger;
+import consensus.state.Operation;
+import consensus.state.ReadSnapshot;
+import consensus.state.StateStore;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures what the multi-version store costs and what its snapshots buy, on one store without the
+ * consensus rounds in the way.
+ *
+ * The memory part writes every key once and then updates it several times, collecting old versions after
+ * every applied batch as the learner does. It reports the versions kept and the heap used per key with no
+ * snapshot open, with one snapshot held open across all updates, and once that snapshot is closed again.
+ *
+ * The read part has one thread apply slots that each write a group of keys to the same value, while
+ * reader threads read whole groups. A group read from a snapshot must never mix two writes; the same group
+ * read key by key from the latest state can. Both kinds of torn reads are counted.
+ *
+ * Usage: java bench.MvccBenchmark [keys] [updatesPerKey] [readerThreads] [seconds]
+ */
+public class MvccBenchmark {
+
+    private static final int APPLY_BATCH_SIZE = 1024;
+    private static final int GC_KEYS_PER_BATCH = 256;
+    private static final int GROUP_SIZE = 8;
+    private static final int GROUPS = 1024;
+
+    private static final PrintStream console = System.out;
+
+    public static void main(String[] args) throws Exception {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int updatesPerKey = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int readerThreads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        console.println("MVCC benchmark: " + keys + " keys, " + updatesPerKey + " updates per key, "
+                + readerThreads + " reader threads for " + seconds + " s");
+        // The store logs every applied operation; keep that out of the measurements
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            measureMemory(keys, updatesPerKey);
+            measureReads(readerThreads, seconds);
+        } finally {
+            CustomLogger.flush();
+            System.setOut(console);
+        }
+    }
+
+    private static void measureMemory(int keys, int updatesPerKey) {
+        console.printf("%-22s %14s %14s%n", "", "versions/key", "bytes/key");
+        long emptyHeap = usedHeap();
+        StateStore store = new StateStore();
+        long slot = 0;
+        for (int i = 0; i < keys; i++) {
+            slot = apply(store, slot, "key-" + i, "value-" + i);
+        }
+        ReadSnapshot held = store.openSnapshot(slot - 1);
+        long before = slot;
+        for (int update = 0; update < updatesPerKey; update++) {
+            for (int i = 0; i < keys; i++) {
+                slot = apply(store, slot, "key-" + i, "value-" + i + "-" + update);
+            }
+        }
+        report("snapshot held open", store, keys, emptyHeap);
+        if (!("value-0".equals(held.get("key-0")) && held.getSlot() == before - 1)) {
+            throw new IllegalStateException("The held snapshot lost its versions");
+        }
+        held.close();
+        slot = collectAll(store, slot, keys);
+        report("snapshot closed", store, keys, emptyHeap);
+
+        for (int update = 0; update < updatesPerKey; update++) {
+            for (int i = 0; i < keys; i++) {
+                slot = apply(store, slot, "key-" + i, "value-" + i + "-" + update);
+            }
+        }
+        report("latest only", store, keys, emptyHeap);
+    }
+
+    // Applies one PUT in the next slot, collecting garbage after every batch, and returns the next slot
+    private static long apply(StateStore store, long slot, String key, String value) {
+        store.applyOperation(new Operation(0, "PUT", key, value), slot);
+        if (slot % APPLY_BATCH_SIZE == APPLY_BATCH_SIZE - 1) {
+            store.collectGarbage(slot, GC_KEYS_PER_BATCH);
+        }
+        return slot + 1;
+    }
+
+    // Sweeps every key once, as the apply thread would over the next batches
+    private static long collectAll(StateStore store, long slot, int keys) {
+        for (int swept = 0; swept <= keys + GC_KEYS_PER_BATCH; swept += GC_KEYS_PER_BATCH) {
+            store.collectGarbage(slot - 1, GC_KEYS_PER_BATCH);
+        }
+        return slot;
+    }
+
+    private static void report(String label, StateStore store, int keys, long emptyHeap) {
+        long heap = usedHeap() - emptyHeap;
+        console.printf("%-22s %14.2f %14.0f%n", label, store.getVersionCount() / (double) keys, heap / (double) keys);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void measureReads(int readerThreads, int seconds) throws Exception {
+        StateStore store = new StateStore();
+        AtomicLong appliedSlot = new AtomicLong(-1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        // Every slot writes all keys of one group to the slot number
+        Thread writer = new Thread(() -> {
+            long slot = 0;
+            List<Operation> group = new ArrayList<>(GROUP_SIZE);
+            while (running.get()) {
+                group.clear();
+                int g = (int) (slot % GROUPS);
+                for (int k = 0; k < GROUP_SIZE; k++) {
+                    group.add(new Operation(0, "PUT", key(g, k), Long.toString(slot)));
+                }
+                store.applyOperation(Operation.batchOf(0, group), slot);
+                appliedSlot.set(slot);
+                if (slot % 64 == 63) {
+                    store.collectGarbage(slot, GC_KEYS_PER_BATCH);
+                }
+                slot++;
+            }
+        }, "mvcc-writer");
+        writer.start();
+        while (appliedSlot.get() < GROUPS) {
+            Thread.sleep(1);
+        }
+
+        AtomicLong snapshotReads = new AtomicLong();
+        AtomicLong snapshotTorn = new AtomicLong();
+        AtomicLong latestReads = new AtomicLong();
+        AtomicLong latestTorn = new AtomicLong();
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < readerThreads; t++) {
+            int offset = t;
+            Thread reader = new Thread(() -> {
+                long i = offset;
+                String[] values = new String[GROUP_SIZE];
+                while (running.get()) {
+                    int g = (int) (i++ % GROUPS);
+                    ReadSnapshot snapshot = store.openSnapshot(appliedSlot.get());
+                    if (snapshot != null) {
+                        try (snapshot) {
+                            for (int k = 0; k < GROUP_SIZE; k++) {
+                                values[k] = snapshot.get(key(g, k));
+                            }
+                        }
+                        snapshotReads.incrementAndGet();
+                        if (isTorn(values)) {
+                            snapshotTorn.incrementAndGet();
+                        }
+                    }
+                    for (int k = 0; k < GROUP_SIZE; k++) {
+                        values[k] = store.get(key(g, k));
+                    }
+                    latestReads.incrementAndGet();
+                    if (isTorn(values)) {
+                        latestTorn.incrementAndGet();
+                    }
+                }
+            }, "mvcc-reader-" + t);
+            readers.add(reader);
+            reader.start();
+        }
+        long startSlot = appliedSlot.get();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        running.set(false);
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        long writtenSlots = appliedSlot.get() - startSlot;
+
+        console.printf("%n%-22s %14s %14s%n", GROUP_SIZE + "-key group reads", "reads/s", "torn");
+        console.printf("%-22s %14.0f %14d%n", "snapshot", snapshotReads.get() / (double) seconds, snapshotTorn.get());
+        console.printf("%-22s %14.0f %14d%n", "latest, key by key", latestReads.get() / (double) seconds, latestTorn.get());
+        console.printf("%-22s %14.0f %14.2f%n", "concurrent writes", writtenSlots / (double) seconds,
+                store.getVersionCount() / (double) store.size());
+        console.println("(last row: slots applied per second, and versions per key at the end)");
+    }
+
+    private static String key(int group, int k) {
+        return "group-" + group + "-key-" + k;
+    }
+
+    private static boolean isTorn(String[] values) {
+        for (String value : values) {
+            if (value == null || !value.equals(values[0])) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
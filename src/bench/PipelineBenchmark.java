@@ -0,0 +1,131 @@
+package bench;
+
+import consensus.state.Operation;
+import network.ServerInterface;
+
+import java.io.File;
+import java.rmi.registry.LocateRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares write throughput of the five-node cluster at different proposal window sizes.
+ *
+ * For every window size a fresh cluster is started through {@link server.ServerStarter} in a separate
+ * JVM with {@code -Dpaxos.pipeline.window=<size>}, a fixed number of client threads issue PUT requests
+ * for a fixed time, and the cluster is shut down again. Other {@code paxos.*} system properties given to
+ * the benchmark, such as {@code -Dpaxos.transport=nio}, are passed on to the cluster.
+ *
+ * Usage: java bench.PipelineBenchmark [clientThreads] [seconds] [classic|multi]
+ */
+public class PipelineBenchmark {
+
+    private static final int[] WINDOW_SIZES = {1, 4, 16, 64};
+    private static final int[] PORTS = {5001, 5002, 5003, 5004, 5005};
+    private static final int WARMUP_SECONDS = 2;
+    private static final int STARTUP_TIMEOUT_MS = 30000;
+
+    public static void main(String[] args) throws Exception {
+        int clientThreads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        String mode = args.length > 2 ? args[2] : "multi";
+
+        System.out.println("Pipeline benchmark: " + clientThreads + " client threads, " + seconds + " s per run, " + mode + " mode");
+        System.out.printf("%8s %12s %14s%n", "window", "ops/s", "mean latency");
+        for (int window : WINDOW_SIZES) {
+            Process cluster = startCluster(window, mode);
+            try {
+                List<ServerInterface> servers = awaitCluster();
+                // In Multi-Paxos mode all writes go to one server so a single leader stays in charge
+                List<ServerInterface> targets = mode.startsWith("multi") ? servers.subList(0, 1) : servers;
+                run(targets, clientThreads, WARMUP_SECONDS);
+                long[] result = run(targets, clientThreads, seconds);
+                double opsPerSecond = result[0] / (double) seconds;
+                double meanLatencyMs = result[0] == 0 ? 0 : result[1] / (double) result[0] / 1_000_000.0;
+                System.out.printf("%8d %12.0f %11.2f ms%n", window, opsPerSecond, meanLatencyMs);
+            } finally {
+                cluster.destroy();
+                cluster.waitFor(10, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private static Process startCluster(int window, String mode) throws Exception {
+        String javaBin = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>();
+        command.add(javaBin);
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("paxos.") && !name.equals("paxos.pipeline.window")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        command.add("-Dpaxos.pipeline.window=" + window);
+        command.add("-classpath");
+        command.add(System.getProperty("java.class.path"));
+        command.add("server.ServerStarter");
+        command.add(mode);
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+        return builder.start();
+    }
+
+    private static List<ServerInterface> awaitCluster() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MS;
+        while (true) {
+            try {
+                List<ServerInterface> servers = new ArrayList<>();
+                for (int port : PORTS) {
+                    servers.add((ServerInterface) LocateRegistry.getRegistry("localhost", port).lookup("PaxosServer"));
+                }
+                return servers;
+            } catch (Exception e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("Cluster did not start: " + e.getMessage());
+                }
+                Thread.sleep(200);
+            }
+        }
+    }
+
+    // Returns the number of successful writes and their summed latency in nanoseconds
+    private static long[] run(List<ServerInterface> targets, int clientThreads, int seconds) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong completed = new AtomicLong();
+        AtomicLong totalLatencyNanos = new AtomicLong();
+        ExecutorService clients = Executors.newFixedThreadPool(clientThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < clientThreads; t++) {
+            ServerInterface server = targets.get(t % targets.size());
+            String keyPrefix = "bench-" + t + "-";
+            futures.add(clients.submit(() -> {
+                long i = 0;
+                while (running.get()) {
+                    long start = System.nanoTime();
+                    try {
+                        if (server.propose(new Operation(0, "PUT", keyPrefix + (i++ % 1000), "value-" + i))) {
+                            completed.incrementAndGet();
+                            totalLatencyNanos.addAndGet(System.nanoTime() - start);
+                        }
+                    } catch (Exception e) {
+                        // A failed request counts as neither throughput nor latency
+                    }
+                }
+                return null;
+            }));
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        running.set(false);
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        clients.shutdown();
+        return new long[]{completed.get(), totalLatencyNanos.get()};
+    }
+}
@@ -0,0 +1,187 @@
+package bench;
+
+import consensus.participant.ConsensusProposer;
+import consensus.state.Operation;
+import network.ServerInterface;
+
+import java.io.File;
+import java.rmi.registry.LocateRegistry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the latency and throughput of reads in Multi-Paxos mode: linearizable reads served under the
+ * leader's read lease and through a read-index round, and bounded-staleness reads spread over the replicas.
+ *
+ * For each lease setting a fresh cluster is started through {@link server.ServerStarter} in a separate JVM,
+ * the first server is made leader by writing the keys that are read back, and reads are timed one at a time
+ * against the leader and against a follower, then issued by many client threads against the leader. A
+ * follower never holds the lease, so it always needs the read-index round. With leases on, the client
+ * threads then issue bounded-staleness reads spread evenly over the first 1 to 5 replicas.
+ *
+ * Usage: java bench.ReadBenchmark [reads] [clientThreads] [seconds] [maxStalenessMs]
+ */
+public class ReadBenchmark {
+
+    private static final int[] PORTS = {5001, 5002, 5003, 5004, 5005};
+    private static final int KEYS = 1000;
+    private static final int WARMUP_READS = 2000;
+    private static final int STARTUP_TIMEOUT_MS = 30000;
+
+    /**
+     * One read against one server.
+     */
+    private interface ReadCall {
+        void read(ServerInterface server, String key) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int reads = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int clientThreads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        long maxStalenessMs = args.length > 3 ? Long.parseLong(args[3]) : 100;
+        ReadCall linearizable = ServerInterface::getValue;
+        ReadCall bounded = (server, key) -> {
+            if (server.readValue(key, -1, maxStalenessMs).isRedirected()) {
+                throw new IllegalStateException("Read of " + key + " was redirected");
+            }
+        };
+
+        System.out.println("Read benchmark: " + reads + " sequential reads, " + clientThreads + " client threads for " + seconds
+                + " s, bounded reads at most " + maxStalenessMs + " ms stale");
+        System.out.printf("%-22s %10s %10s %10s %12s%n", "", "mean", "p50", "p99", "reads/s");
+        for (long leaseMs : new long[]{Long.getLong("paxos.lease.ms", ConsensusProposer.DEFAULT_LEASE_MS), 0}) {
+            Process cluster = startCluster(leaseMs);
+            try {
+                List<ServerInterface> servers = awaitCluster();
+                ServerInterface leader = servers.get(0);
+                for (int i = 0; i < KEYS; i++) {
+                    if (!leader.propose(new Operation(0, "PUT", "key-" + i, "value-" + i))) {
+                        throw new IllegalStateException("Write of key-" + i + " failed");
+                    }
+                }
+                String setting = leaseMs > 0 ? "lease" : "read index";
+                report(setting + ", leader", measureLatency(leader, reads, linearizable),
+                        measureThroughput(servers.subList(0, 1), clientThreads, seconds, linearizable));
+                report("read index, follower", measureLatency(servers.get(1), reads, linearizable), -1);
+                if (leaseMs == 0) {
+                    continue;
+                }
+                report("bounded, follower", measureLatency(servers.get(1), reads, bounded), -1);
+                for (int replicas = 1; replicas <= servers.size(); replicas++) {
+                    report("bounded, " + replicas + " replica(s)", null,
+                            measureThroughput(servers.subList(0, replicas), clientThreads, seconds, bounded));
+                }
+            } finally {
+                cluster.destroy();
+                cluster.waitFor(10, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private static Process startCluster(long leaseMs) throws Exception {
+        String javaBin = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>();
+        command.add(javaBin);
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("paxos.") && !name.equals("paxos.lease.ms")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        command.add("-Dpaxos.lease.ms=" + leaseMs);
+        command.add("-classpath");
+        command.add(System.getProperty("java.class.path"));
+        command.add("server.ServerStarter");
+        command.add("multi");
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+        return builder.start();
+    }
+
+    // Waits for every server to be registered and for the first write to go through, past any lease quiet period
+    private static List<ServerInterface> awaitCluster() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MS;
+        while (true) {
+            try {
+                List<ServerInterface> servers = new ArrayList<>();
+                for (int port : PORTS) {
+                    servers.add((ServerInterface) LocateRegistry.getRegistry("localhost", port).lookup("PaxosServer"));
+                }
+                if (servers.get(0).propose(new Operation(0, "PUT", "warmup", "warmup"))) {
+                    return servers;
+                }
+            } catch (Exception e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("Cluster did not start: " + e.getMessage());
+                }
+            }
+            Thread.sleep(200);
+        }
+    }
+
+    // Returns the latency of each read in nanoseconds, sorted
+    private static long[] measureLatency(ServerInterface server, int reads, ReadCall call) throws Exception {
+        for (int i = 0; i < WARMUP_READS; i++) {
+            call.read(server, "key-" + i % KEYS);
+        }
+        long[] latencies = new long[reads];
+        for (int i = 0; i < reads; i++) {
+            long start = System.nanoTime();
+            call.read(server, "key-" + i % KEYS);
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    // Client threads are spread evenly over the target servers
+    private static double measureThroughput(List<ServerInterface> targets, int clientThreads, int seconds, ReadCall call) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong completed = new AtomicLong();
+        ExecutorService clients = Executors.newFixedThreadPool(clientThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < clientThreads; t++) {
+            int offset = t;
+            ServerInterface server = targets.get(t % targets.size());
+            futures.add(clients.submit(() -> {
+                long i = offset;
+                while (running.get()) {
+                    try {
+                        call.read(server, "key-" + i++ % KEYS);
+                        completed.incrementAndGet();
+                    } catch (Exception e) {
+                        // A failed read does not count
+                    }
+                }
+                return null;
+            }));
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        running.set(false);
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        clients.shutdown();
+        return completed.get() / (double) seconds;
+    }
+
+    // Either measurement may be missing: null latencies or a negative rate
+    private static void report(String label, long[] latencies, double readsPerSecond) {
+        String rate = readsPerSecond < 0 ? "-" : String.format("%.0f", readsPerSecond);
+        if (latencies == null) {
+            System.out.printf("%-22s %10s %10s %10s %12s%n", label, "-", "-", "-", rate);
+            return;
+        }
+        double meanMicros = Arrays.stream(latencies).average().orElse(0) / 1000;
+        System.out.printf("%-22s %7.0f us %7.0f us %7.0f us %12s%n", label, meanMicros,
+                latencies[latencies.length / 2] / 1000.0, latencies[(int) (latencies.length * 0.99)] / 1000.0, rate);
+    }
+}
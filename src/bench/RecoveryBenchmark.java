@@ -0,0 +1,127 @@
+package bench;
+
+import common.CustomLogger;
+import consensus.log.WriteAheadLog;
+import consensus.participant.ConsensusAcceptor;
+import consensus.participant.ConsensusLearner;
+import consensus.process.SnapshotProcess;
+import consensus.state.Operation;
+import consensus.state.StateStore;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Compares the restart time of a server that replays its whole write-ahead log with one that loads a
+ * snapshot and replays only the log after it.
+ *
+ * The benchmark writes every key several times through a learner and acceptor journaling to a
+ * write-ahead log, in batches of 64 operations per slot, restarts from the full log, takes a snapshot,
+ * adds a short tail of further slots and restarts again.
+ *
+ * Usage: java bench.RecoveryBenchmark [keys] [updatesPerKey] [directory]
+ */
+public class RecoveryBenchmark {
+
+    private static final int PORT = 9001;
+    private static final int BATCH_SIZE = 64;
+    private static final double TAIL_FRACTION = 0.01;
+
+    private static final PrintStream console = System.out;
+
+    public static void main(String[] args) throws Exception {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int updatesPerKey = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        Path directory = Files.createTempDirectory(Paths.get(args.length > 2 ? args[2] : "."), "recovery-bench-");
+
+        console.println("Recovery benchmark: " + keys + " keys, " + updatesPerKey + " updates per key");
+        // The consensus classes log every applied slot; keep that out of the measurements
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            Server server = Server.start(directory);
+            long slot = 0;
+            for (int round = 0; round < updatesPerKey; round++) {
+                slot = writeAll(server, slot, keys, round);
+            }
+            report("full log replay", directory, Server.measureRestart(directory));
+
+            server = Server.start(directory);
+            long snapshotNanos = System.nanoTime();
+            server.snapshots.takeSnapshot();
+            snapshotNanos = System.nanoTime() - snapshotNanos;
+            console.printf("%-24s %10.0f ms%n", "snapshot written in", snapshotNanos / 1e6);
+            writeAll(server, slot, (int) (keys * TAIL_FRACTION), updatesPerKey);
+            report("snapshot + log tail", directory, Server.measureRestart(directory));
+        } finally {
+            CustomLogger.flush();
+            System.setOut(console);
+            delete(directory);
+        }
+    }
+
+    /**
+     * The durable parts of one server, opened from a directory.
+     */
+    private static final class Server {
+        final ConsensusAcceptor acceptor;
+        final ConsensusLearner learner;
+        final SnapshotProcess snapshots;
+
+        private Server(Path directory) throws IOException {
+            StateStore store = new StateStore();
+            learner = new ConsensusLearner(store, PORT);
+            acceptor = new ConsensusAcceptor(store, PORT, learner);
+            learner.setAcceptor(acceptor);
+            snapshots = new SnapshotProcess(acceptor, learner, directory, 0);
+        }
+
+        static Server start(Path directory) throws IOException {
+            Server server = new Server(directory);
+            server.snapshots.recover(WriteAheadLog.SyncMode.NONE);
+            return server;
+        }
+
+        // Returns the restart time in nanoseconds and the number of keys recovered
+        static long[] measureRestart(Path directory) throws IOException {
+            System.gc();
+            long start = System.nanoTime();
+            Server server = start(directory);
+            return new long[]{System.nanoTime() - start, server.learner.getStateStore().size()};
+        }
+    }
+
+    // Writes every key once, a batch per slot, and returns the next free slot
+    private static long writeAll(Server server, long slot, int keys, int round) {
+        List<Operation> batch = new ArrayList<>(BATCH_SIZE);
+        for (int key = 0; key < keys; key++) {
+            batch.add(new Operation(0, "PUT", "key-" + key, "value-" + round + "-" + key));
+            if (batch.size() == BATCH_SIZE || key == keys - 1) {
+                server.learner.learnFromPeer(slot++, Operation.batchOf(0, batch));
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        return slot;
+    }
+
+    private static void report(String name, Path directory, long[] restart) throws IOException {
+        long bytes;
+        try (Stream<Path> files = Files.walk(directory)) {
+            bytes = files.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+        console.printf("%-24s %10.0f ms  %d keys, %.1f MB on disk%n", name, restart[0] / 1e6, restart[1], bytes / 1e6);
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package bench;
+
+import client.AsyncClient;
+import client.AsyncClientConfig;
+import network.ShardMap;
+import network.TransportType;
+
+import java.io.File;
+import java.rmi.registry.LocateRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how write throughput grows with the number of shards the keys are spread over.
+ *
+ * For every shard count a fresh cluster is started through {@link server.ServerStarter} in a separate JVM,
+ * with logging off, and one client thread keeps a fixed number of PUTs to random keys outstanding through
+ * an {@link AsyncClient} that routes each key to its shard's leader. The leaders found for the shards are
+ * printed too, to show that they are spread over the servers. Other {@code paxos.*} system properties
+ * given to the benchmark are passed on to the cluster.
+ *
+ * Usage: java bench.ShardingBenchmark [seconds] [outstanding] [classic|multi] [rmi|nio] [shardCount...]
+ */
+public class ShardingBenchmark {
+
+    private static final int[] DEFAULT_SHARD_COUNTS = {1, 2, 4};
+    private static final List<Integer> PORTS = List.of(5001, 5002, 5003, 5004, 5005);
+    private static final int KEYS = 100_000;
+    private static final int WARMUP_SECONDS = 3;
+    private static final int STARTUP_TIMEOUT_MS = 60000;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int outstanding = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        String mode = args.length > 2 ? args[2] : "multi";
+        TransportType transport = TransportType.fromString(args.length > 3 ? args[3] : "nio");
+        int[] shardCounts = DEFAULT_SHARD_COUNTS;
+        if (args.length > 4) {
+            shardCounts = new int[args.length - 4];
+            for (int i = 4; i < args.length; i++) {
+                shardCounts[i - 4] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.println("Sharding benchmark: " + seconds + " s per run, " + outstanding + " outstanding writes, "
+                + mode + " mode, " + transport.name().toLowerCase() + " transport");
+        System.out.printf("%-8s %12s %10s %14s %10s  %s%n", "shards", "ops/s", "speedup", "mean latency", "failed", "leaders");
+        double baseline = 0;
+        for (int shardCount : shardCounts) {
+            Process cluster = startCluster(shardCount, mode, transport);
+            try {
+                ShardMap shardMap = new ShardMap(PORTS, shardCount);
+                awaitCluster(shardMap);
+                AsyncClientConfig config = new AsyncClientConfig();
+                config.setTransport(transport);
+                config.setMaxOutstanding(outstanding);
+                config.setShardCount(shardCount);
+                try (AsyncClient client = new AsyncClient(config)) {
+                    run(client, outstanding, WARMUP_SECONDS);
+                    long[] result = run(client, outstanding, seconds);
+                    double opsPerSecond = result[0] / (double) seconds;
+                    double meanLatencyMs = result[0] == 0 ? 0 : result[1] / (double) result[0] / 1_000_000.0;
+                    if (baseline == 0) {
+                        baseline = opsPerSecond;
+                    }
+                    List<Integer> leaders = new ArrayList<>();
+                    for (int shard = 0; shard < shardCount; shard++) {
+                        leaders.add(client.getLeaderPort(shard));
+                    }
+                    System.out.printf("%-8d %12.0f %9.2fx %11.2f ms %10d  %s%n", shardCount, opsPerSecond,
+                            baseline == 0 ? 0 : opsPerSecond / baseline, meanLatencyMs, result[2], leaders);
+                }
+            } finally {
+                cluster.destroy();
+                cluster.waitFor(10, TimeUnit.SECONDS);
+            }
+        }
+        System.exit(0);
+    }
+
+    private static Process startCluster(int shardCount, String mode, TransportType transport) throws Exception {
+        String javaBin = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>();
+        command.add(javaBin);
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("paxos.") && !name.equals("paxos.shards") && !name.equals("paxos.transport")
+                    && !name.equals("paxos.log.level")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        command.add("-Dpaxos.shards=" + shardCount);
+        command.add("-Dpaxos.transport=" + transport.name().toLowerCase());
+        command.add("-Dpaxos.log.level=off");
+        command.add("-classpath");
+        command.add(System.getProperty("java.class.path"));
+        command.add("server.ServerStarter");
+        command.add(mode);
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectErrorStream(true);
+        return builder.start();
+    }
+
+    private static void awaitCluster(ShardMap shardMap) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MS;
+        while (true) {
+            try {
+                for (int port : shardMap.allPorts()) {
+                    LocateRegistry.getRegistry("localhost", port).lookup("PaxosServer");
+                }
+                return;
+            } catch (Exception e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("Cluster did not start: " + e.getMessage());
+                }
+                Thread.sleep(200);
+            }
+        }
+    }
+
+    // Sends PUTs to random keys from this thread alone, never more than the given number at once. Returns
+    // the number of successful writes, their summed latency in nanoseconds and the number of failed ones
+    private static long[] run(AsyncClient client, int outstanding, int seconds) throws InterruptedException {
+        Semaphore window = new Semaphore(outstanding);
+        AtomicLong completed = new AtomicLong();
+        AtomicLong totalLatencyNanos = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        long endNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        for (long i = 0; System.nanoTime() < endNanos; i++) {
+            if (!window.tryAcquire(endNanos - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                break;
+            }
+            long start = System.nanoTime();
+            String key = "shard-bench-" + ThreadLocalRandom.current().nextInt(KEYS);
+            client.put(key, "value-" + i).whenComplete((decided, failure) -> {
+                long doneNanos = System.nanoTime();
+                // Requests completing while the run drains, after the measured time, are not counted
+                if (doneNanos - endNanos <= 0) {
+                    if (failure == null && decided) {
+                        completed.incrementAndGet();
+                        totalLatencyNanos.addAndGet(doneNanos - start);
+                    } else {
+                        failed.incrementAndGet();
+                    }
+                }
+                window.release();
+            });
+        }
+        // Let the last requests complete so they do not hold up the next run
+        window.acquire(outstanding);
+        return new long[]{completed.get(), totalLatencyNanos.get(), failed.get()};
+    }
+}
@@ -0,0 +1,152 @@
+package bench;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import common.LatencyHistogram;
+import consensus.state.Operation;
+import consensus.state.StateStore;
+import consensus.state.StorageEngine;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the heap and off-heap storage engines of the store on a large number of keys, without the
+ * consensus rounds in the way.
+ *
+ * Each engine runs in a JVM of its own, started with the same JVM options as the benchmark, so that one
+ * engine's garbage does not weigh on the other. The store is loaded with every key, collecting old versions
+ * after every applied batch as the learner does, then every key is updated once in random order while the
+ * collector's pauses are recorded. The benchmark reports the heap still used after a full collection, the
+ * direct memory held, how long that full collection took, the longest pause and total collection time of
+ * the update phase, and the latency of lookups of random keys. A heap large enough for the heap engine must
+ * be given, e.g. -Xmx4g for 10,000,000 keys.
+ *
+ * Usage: java bench.StorageEngineBenchmark [keys] [lookups] [heap|offheap...]
+ */
+public class StorageEngineBenchmark {
+
+    private static final int APPLY_BATCH_SIZE = 1024;
+    private static final int GC_KEYS_PER_BATCH = 256;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--engine")) {
+            measure(StorageEngine.fromString(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            return;
+        }
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        List<StorageEngine> engines = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            engines.add(StorageEngine.fromString(args[i]));
+        }
+        if (engines.isEmpty()) {
+            engines = List.of(StorageEngine.HEAP, StorageEngine.OFF_HEAP);
+        }
+
+        System.out.println("Storage engine benchmark: " + keys + " keys, " + lookups + " lookups, max heap "
+                + Runtime.getRuntime().maxMemory() / (1024 * 1024) + " MB");
+        System.out.printf("%-9s %10s %10s %10s %11s %11s %11s %9s %9s %9s%n", "engine", "load/s", "heap MB",
+                "direct MB", "full gc ms", "max pause", "gc total", "p50 ns", "p99 ns", "p99.9 ns");
+        for (StorageEngine engine : engines) {
+            int exitCode = runChild(engine, keys, lookups);
+            if (exitCode != 0) {
+                System.out.printf("%-9s failed with exit code %d%n", name(engine), exitCode);
+            }
+        }
+    }
+
+    private static int runChild(StorageEngine engine, int keys, int lookups) throws Exception {
+        String javaBin = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>();
+        command.add(javaBin);
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-Dpaxos.log.level=off");
+        command.add("-classpath");
+        command.add(System.getProperty("java.class.path"));
+        command.add(StorageEngineBenchmark.class.getName());
+        command.add("--engine");
+        command.add(name(engine));
+        command.add(Integer.toString(keys));
+        command.add(Integer.toString(lookups));
+        return new ProcessBuilder(command).inheritIO().start().waitFor();
+    }
+
+    private static void measure(StorageEngine engine, int keys, int lookups) {
+        StateStore store = new StateStore(engine);
+        long loadStart = System.nanoTime();
+        long slot = 0;
+        for (int i = 0; i < keys; i++) {
+            slot = apply(store, slot, "key-" + i, "value-" + i);
+        }
+        double loadSeconds = (System.nanoTime() - loadStart) / 1e9;
+
+        long fullGcStart = System.nanoTime();
+        System.gc();
+        long fullGcMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - fullGcStart);
+        long heapBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+
+        // Every pause the collector reports from here on, and their total
+        AtomicLong maxPauseMs = new AtomicLong();
+        AtomicLong totalPauseMs = new AtomicLong();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                    return;
+                }
+                GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                // Concurrent cycles run beside the application and do not stop it
+                if (!info.getGcName().contains("Concurrent")) {
+                    long durationMs = info.getGcInfo().getDuration();
+                    totalPauseMs.addAndGet(durationMs);
+                    maxPauseMs.accumulateAndGet(durationMs, Math::max);
+                }
+            }, null, null);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < keys; i++) {
+            int key = random.nextInt(keys);
+            slot = apply(store, slot, "key-" + key, "value-" + key + "-" + i);
+        }
+
+        LatencyHistogram latency = new LatencyHistogram();
+        int found = 0;
+        for (int i = 0; i < lookups; i++) {
+            String key = "key-" + random.nextInt(keys);
+            long start = System.nanoTime();
+            String value = store.get(key);
+            latency.recordSince(start);
+            if (value != null) {
+                found++;
+            }
+        }
+        if (found != lookups) {
+            throw new IllegalStateException("Lost " + (lookups - found) + " keys");
+        }
+        LatencyHistogram.Snapshot lookupLatency = latency.snapshot();
+        System.out.printf("%-9s %10.0f %10d %10d %11d %8d ms %8d ms %9d %9d %9d%n", name(engine), keys / loadSeconds,
+                heapBytes / (1024 * 1024), store.getOffHeapBytes() / (1024 * 1024), fullGcMs, maxPauseMs.get(),
+                totalPauseMs.get(), lookupLatency.getValueAtQuantile(0.5), lookupLatency.getValueAtQuantile(0.99),
+                lookupLatency.getValueAtQuantile(0.999));
+    }
+
+    // Applies one PUT in the next slot, collecting garbage after every batch, and returns the next slot
+    private static long apply(StateStore store, long slot, String key, String value) {
+        store.applyOperation(new Operation(0, "PUT", key, value), slot);
+        if (slot % APPLY_BATCH_SIZE == APPLY_BATCH_SIZE - 1) {
+            store.collectGarbage(slot, GC_KEYS_PER_BATCH);
+        }
+        return slot + 1;
+    }
+
+    private static String name(StorageEngine engine) {
+        return engine == StorageEngine.OFF_HEAP ? "offheap" : "heap";
+    }
+}
@@ -0,0 +1,173 @@
+package bench;
+
+import client.AsyncClient;
+import client.AsyncClientConfig;
+import common.ThreadModel;
+import consensus.message.ServerStats;
+import network.ServerInterface;
+import network.TransportType;
+
+import java.io.File;
+import java.rmi.registry.LocateRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how many client requests a server can hold at once under each thread model, see
+ * {@link common.ThreadModel}.
+ *
+ * For every thread model a Multi-Paxos cluster is started through {@link server.ServerStarter} in a separate
+ * JVM, over the NIO transport, with logging off. An {@link AsyncClient}, whose calls run on threads of the
+ * same model, then keeps a growing number of writes outstanding. Every write in flight waits on a thread of
+ * the server it reached until its batch is decided. Besides throughput, latency and failed writes, the
+ * benchmark reports the peak number of platform threads of the cluster's JVM, which virtual threads do not
+ * add to. Other {@code paxos.*} system properties given to the benchmark are passed on to the cluster.
+ *
+ * Usage: java bench.ThreadModelBenchmark [seconds] [platform|virtual...] [outstanding...]
+ */
+public class ThreadModelBenchmark {
+
+    private static final int[] DEFAULT_OUTSTANDING = {256, 1024, 4096};
+    private static final String[] DEFAULT_MODELS = {"platform", "virtual"};
+    private static final int[] PORTS = {5001, 5002, 5003, 5004, 5005};
+    private static final int KEYS = 1000;
+    private static final int WARMUP_SECONDS = 2;
+    private static final int STARTUP_TIMEOUT_MS = 30000;
+    // Writes queued behind thousands of others take a while to be decided
+    private static final long FAILOVER_TIMEOUT_MS = 60000;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        List<String> models = new ArrayList<>();
+        List<Integer> outstandingCounts = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (Character.isDigit(args[i].charAt(0))) {
+                outstandingCounts.add(Integer.parseInt(args[i]));
+            } else {
+                models.add(args[i]);
+            }
+        }
+        if (models.isEmpty()) {
+            models = List.of(DEFAULT_MODELS);
+        }
+        if (outstandingCounts.isEmpty()) {
+            for (int outstanding : DEFAULT_OUTSTANDING) {
+                outstandingCounts.add(outstanding);
+            }
+        }
+
+        System.out.println("Thread model benchmark: " + seconds + " s per run, multi mode, nio transport, Java "
+                + System.getProperty("java.version"));
+        System.out.printf("%-9s %12s %12s %14s %10s %14s%n", "threads", "outstanding", "ops/s", "mean latency",
+                "failed", "peak threads");
+        for (String model : models) {
+            Process cluster = startCluster(model);
+            // The client waits for its calls on threads of the same model
+            ThreadModel.setCurrent(ThreadModel.fromString(model));
+            try {
+                ServerInterface server = awaitCluster();
+                for (int outstanding : outstandingCounts) {
+                    AsyncClientConfig config = new AsyncClientConfig();
+                    config.setTransport(TransportType.NIO);
+                    config.setMaxOutstanding(outstanding);
+                    config.setFailoverTimeoutMs(FAILOVER_TIMEOUT_MS);
+                    try (AsyncClient client = new AsyncClient(config)) {
+                        run(client, outstanding, WARMUP_SECONDS);
+                        long[] result = run(client, outstanding, seconds);
+                        System.out.printf("%-9s %12d %12.0f %11.2f ms %10d %14d%n", model, outstanding,
+                                result[0] / (double) seconds,
+                                result[0] == 0 ? 0 : result[1] / (double) result[0] / 1_000_000.0, result[2],
+                                peakThreads(server));
+                    }
+                }
+            } finally {
+                cluster.destroy();
+                cluster.waitFor(10, TimeUnit.SECONDS);
+            }
+        }
+        System.exit(0);
+    }
+
+    private static Process startCluster(String model) throws Exception {
+        String javaBin = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>();
+        command.add(javaBin);
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("paxos.") && !name.equals("paxos.transport") && !name.equals("paxos.threads")
+                    && !name.equals("paxos.log.level")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        command.add("-Dpaxos.transport=nio");
+        command.add("-Dpaxos.threads=" + model);
+        command.add("-Dpaxos.log.level=off");
+        command.add("-classpath");
+        command.add(System.getProperty("java.class.path"));
+        command.add("server.ServerStarter");
+        command.add("multi");
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectErrorStream(true);
+        return builder.start();
+    }
+
+    // Returns one server of the cluster once every server is up; they all share the cluster's JVM
+    private static ServerInterface awaitCluster() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MS;
+        while (true) {
+            try {
+                ServerInterface first = null;
+                for (int port : PORTS) {
+                    ServerInterface server = (ServerInterface) LocateRegistry.getRegistry("localhost", port).lookup("PaxosServer");
+                    first = first == null ? server : first;
+                }
+                return first;
+            } catch (Exception e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("Cluster did not start: " + e.getMessage());
+                }
+                Thread.sleep(200);
+            }
+        }
+    }
+
+    private static long peakThreads(ServerInterface server) throws Exception {
+        ServerStats stats = server.getStats();
+        return stats.getValues().getOrDefault("jvm.threads.peak", -1L);
+    }
+
+    // Sends PUTs from this thread alone, never more than the given number at once. Returns the number of
+    // successful writes, their summed latency in nanoseconds and the number of failed ones
+    private static long[] run(AsyncClient client, int outstanding, int seconds) throws InterruptedException {
+        Semaphore window = new Semaphore(outstanding);
+        AtomicLong completed = new AtomicLong();
+        AtomicLong totalLatencyNanos = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        long endNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        for (long i = 0; System.nanoTime() < endNanos; i++) {
+            if (!window.tryAcquire(endNanos - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                break;
+            }
+            long start = System.nanoTime();
+            client.put("threads-bench-" + (i % KEYS), "value-" + i).whenComplete((decided, failure) -> {
+                long doneNanos = System.nanoTime();
+                // Requests completing while the run drains, after the measured time, are not counted
+                if (doneNanos - endNanos <= 0) {
+                    if (failure == null && decided) {
+                        completed.incrementAndGet();
+                        totalLatencyNanos.addAndGet(doneNanos - start);
+                    } else {
+                        failed.incrementAndGet();
+                    }
+                }
+                window.release();
+            });
+        }
+        // Let the last requests complete so they do not hold up the next run
+        window.acquire(outstanding);
+        return new long[]{completed.get(), totalLatencyNanos.get(), failed.get()};
+    }
+}
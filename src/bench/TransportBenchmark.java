@@ -0,0 +1,218 @@
+package bench;
+
+import consensus.message.AcceptResponse;
+import consensus.message.CatchUpResponse;
+import consensus.message.Decision;
+import consensus.message.PrepareResponse;
+import consensus.message.ReadIndexResponse;
+import consensus.message.ReadResult;
+import consensus.message.SnapshotChunk;
+import consensus.message.ServerStats;
+import consensus.message.SnapshotReadResult;
+import consensus.state.Operation;
+import network.PeerTransport;
+import network.RmiTransport;
+import network.ServerInterface;
+import network.nio.NioTransport;
+
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the peer transports on localhost without the consensus logic in the way.
+ *
+ * A proposer-side process talks to four acceptors that answer immediately. One consensus round is an
+ * accept request sent to all four in parallel, completed when all have replied. The benchmark reports
+ * the round latency of a single proposer and the accept messages per second of many concurrent senders.
+ *
+ * Usage: java bench.TransportBenchmark [senderThreads] [seconds]
+ */
+public class TransportBenchmark {
+
+    private static final int[] ACCEPTOR_PORTS = {7002, 7003, 7004, 7005};
+    private static final int LATENCY_ROUNDS = 20000;
+    private static final int WARMUP_ROUNDS = 5000;
+
+    /**
+     * An acceptor that accepts everything, so only the transport is measured.
+     */
+    private static class ImmediateAcceptor extends UnicastRemoteObject implements ServerInterface {
+        private static final long serialVersionUID = 1L;
+
+        ImmediateAcceptor() throws RemoteException {
+            super();
+        }
+
+        @Override
+        public PrepareResponse prepare(long slot, long proposalId, String proposerId) {
+            return PrepareResponse.promise(proposalId, Collections.emptyList());
+        }
+
+        @Override
+        public PrepareResponse prepareFrom(long fromSlot, long proposalId, String proposerId) {
+            return PrepareResponse.promise(proposalId, Collections.emptyList());
+        }
+
+        @Override
+        public AcceptResponse accept(long slot, long proposalId, Operation operation) {
+            return AcceptResponse.accept(proposalId);
+        }
+
+        @Override
+        public ReadIndexResponse readIndex(long ballot, String proposerId) {
+            return ReadIndexResponse.confirm(-1, false);
+        }
+
+        @Override
+        public long commit(List<Decision> decisions, int senderPort) {
+            return decisions.isEmpty() ? -1 : decisions.get(decisions.size() - 1).getSlot();
+        }
+
+        @Override
+        public CatchUpResponse fetchDecided(long fromSlot, int maxSlots) {
+            return CatchUpResponse.decisions(Collections.emptyList(), -1);
+        }
+
+        @Override
+        public SnapshotChunk fetchSnapshot(long snapshotSlot, long offset, int maxBytes) throws RemoteException {
+            throw new RemoteException("No snapshots");
+        }
+
+        @Override
+        public String getValue(String key) {
+            return null;
+        }
+
+        @Override
+        public ReadResult readValue(String key, long minAppliedSlot, long maxStalenessMs) {
+            return ReadResult.of(null, -1);
+        }
+
+        @Override
+        public SnapshotReadResult readAtSlot(List<String> keys, long slot, long leaseMs) {
+            return new SnapshotReadResult(slot, Collections.nCopies(keys.size(), null));
+        }
+
+        @Override
+        public ServerStats getStats() {
+            return new ServerStats(0, Collections.emptyMap());
+        }
+
+        @Override
+        public int getLeaderPort() {
+            return -1;
+        }
+
+        @Override
+        public boolean propose(Operation operation) {
+            return true;
+        }
+
+        @Override
+        public boolean proposeForwarded(Operation operation, int senderPort) {
+            return true;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int senderThreads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        List<PeerTransport> acceptorTransports = new ArrayList<>();
+        for (int port : ACCEPTOR_PORTS) {
+            ImmediateAcceptor acceptor = new ImmediateAcceptor();
+            Registry registry = LocateRegistry.createRegistry(port);
+            registry.rebind("PaxosServer", acceptor);
+            NioTransport transport = new NioTransport(port);
+            transport.start(acceptor);
+            acceptorTransports.add(transport);
+        }
+
+        System.out.println("Transport benchmark: 4 acceptors, " + senderThreads + " sender threads, " + seconds + " s throughput runs");
+        System.out.printf("%-6s %14s %14s %14s%n", "", "round mean", "round p99", "accepts/s");
+        PeerTransport[] transports = {new RmiTransport(), new NioTransport(7001)};
+        String[] names = {"rmi", "nio"};
+        for (int i = 0; i < transports.length; i++) {
+            List<ServerInterface> acceptors = new ArrayList<>();
+            for (int port : ACCEPTOR_PORTS) {
+                acceptors.add(transports[i].connect(port));
+            }
+            long[] latencies = measureRounds(acceptors);
+            double acceptsPerSecond = measureThroughput(acceptors, senderThreads, seconds);
+            System.out.printf("%-6s %11.1f us %11.1f us %14.0f%n", names[i],
+                    Arrays.stream(latencies).average().orElse(0) / 1000.0,
+                    latencies[(int) (latencies.length * 0.99)] / 1000.0,
+                    acceptsPerSecond);
+            transports[i].close();
+        }
+        for (PeerTransport transport : acceptorTransports) {
+            transport.close();
+        }
+        System.exit(0);
+    }
+
+    // Returns the sorted latencies of single-proposer rounds in nanoseconds
+    private static long[] measureRounds(List<ServerInterface> acceptors) throws Exception {
+        ExecutorService fanOut = Executors.newFixedThreadPool(acceptors.size());
+        Operation operation = new Operation(1, "PUT", "key", "value");
+        long[] latencies = new long[LATENCY_ROUNDS];
+        for (int round = -WARMUP_ROUNDS; round < LATENCY_ROUNDS; round++) {
+            long slot = round + WARMUP_ROUNDS;
+            long start = System.nanoTime();
+            List<Future<AcceptResponse>> replies = new ArrayList<>();
+            for (ServerInterface acceptor : acceptors) {
+                replies.add(fanOut.submit(() -> acceptor.accept(slot, 1, operation)));
+            }
+            for (Future<AcceptResponse> reply : replies) {
+                reply.get();
+            }
+            if (round >= 0) {
+                latencies[round] = System.nanoTime() - start;
+            }
+        }
+        fanOut.shutdown();
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private static double measureThroughput(List<ServerInterface> acceptors, int senderThreads, int seconds) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong messages = new AtomicLong();
+        ExecutorService senders = Executors.newFixedThreadPool(senderThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < senderThreads; t++) {
+            ServerInterface acceptor = acceptors.get(t % acceptors.size());
+            Operation operation = new Operation(t, "PUT", "key-" + t, "value-" + t);
+            futures.add(senders.submit(() -> {
+                long slot = 0;
+                while (running.get()) {
+                    acceptor.accept(slot++, 1, operation);
+                    messages.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(1));
+        long warmedUp = messages.get();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        long measured = messages.get() - warmedUp;
+        running.set(false);
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        senders.shutdown();
+        return measured / (double) seconds;
+    }
+}
@@ -0,0 +1,90 @@
+package bench;
+
+import consensus.log.WriteAheadLog;
+import consensus.state.Operation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Measures how many durable accept records the write-ahead log takes per second when every record is
+ * forced on its own, when concurrent records share a group commit, and when nothing is forced.
+ *
+ * Every writer thread acts like an acceptor answering accept requests: it appends a record and waits
+ * until the record is durable before appending the next one.
+ *
+ * Usage: java bench.WalBenchmark [writerThreads] [seconds] [directory]
+ */
+public class WalBenchmark {
+
+    private static final WriteAheadLog.SyncMode[] MODES = {
+            WriteAheadLog.SyncMode.RECORD, WriteAheadLog.SyncMode.GROUP, WriteAheadLog.SyncMode.NONE};
+
+    public static void main(String[] args) throws Exception {
+        int writerThreads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Path parent = Paths.get(args.length > 2 ? args[2] : ".");
+
+        System.out.println("Write-ahead log benchmark: " + writerThreads + " writer threads, " + seconds + " s per run, in " + parent.toAbsolutePath());
+        System.out.printf("%-8s %12s %12s %14s%n", "sync", "records/s", "fsyncs/s", "mean latency");
+        for (WriteAheadLog.SyncMode mode : MODES) {
+            Path directory = Files.createTempDirectory(parent, "wal-bench-");
+            try (WriteAheadLog wal = WriteAheadLog.open(directory, mode, null)) {
+                long[] result = run(wal, writerThreads, seconds);
+                System.out.printf("%-8s %12.0f %12.0f %11.1f us%n", mode.name().toLowerCase(),
+                        result[0] / (double) seconds, result[2] / (double) seconds,
+                        result[0] == 0 ? 0 : result[1] / (double) result[0] / 1000.0);
+            } finally {
+                delete(directory);
+            }
+        }
+    }
+
+    // Returns the number of durable records, their summed latency in nanoseconds and the number of forces
+    private static long[] run(WriteAheadLog wal, int writerThreads, int seconds) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong records = new AtomicLong();
+        AtomicLong totalLatencyNanos = new AtomicLong();
+        ExecutorService writers = Executors.newFixedThreadPool(writerThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        AtomicLong nextSlot = new AtomicLong();
+        for (int t = 0; t < writerThreads; t++) {
+            Operation operation = new Operation(t, "PUT", "key-" + t, "value-of-key-" + t);
+            futures.add(writers.submit(() -> {
+                while (running.get()) {
+                    long start = System.nanoTime();
+                    wal.awaitDurable(wal.appendAccept(nextSlot.getAndIncrement(), 100, operation));
+                    records.incrementAndGet();
+                    totalLatencyNanos.addAndGet(System.nanoTime() - start);
+                }
+                return null;
+            }));
+        }
+        long forcesBefore = wal.getForceCount();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        running.set(false);
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        writers.shutdown();
+        return new long[]{records.get(), totalLatencyNanos.get(), wal.getForceCount() - forcesBefore};
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
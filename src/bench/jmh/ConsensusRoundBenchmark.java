@@ -0,0 +1,66 @@
+package bench.jmh;
+
+import consensus.participant.ConsensusProposer;
+import consensus.participant.PaxosMode;
+import consensus.state.Operation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Full consensus rounds in one JVM: every call proposes a PUT through the first server's
+ * {@link ConsensusProposer} to the five acceptors of an {@link InProcessCluster}. It returns once the first
+ * server has applied the decided slot; the other servers learn it in the background.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dpaxos.log.level=off")
+public class ConsensusRoundBenchmark {
+
+    private static final int KEYS = 100_000;
+
+    @Param({"CLASSIC", "MULTI_PAXOS"})
+    public PaxosMode mode;
+
+    @Param({"16", "1024"})
+    public int valueSize;
+
+    private InProcessCluster cluster;
+    private ConsensusProposer proposer;
+    private String value;
+    private final AtomicLong nextKey = new AtomicLong();
+
+    @Setup
+    public void setUp() throws RemoteException {
+        cluster = new InProcessCluster(mode);
+        proposer = cluster.getProposer();
+        value = Payloads.text(valueSize, 'v');
+    }
+
+    @TearDown
+    public void tearDown() {
+        cluster.close();
+    }
+
+    @Benchmark
+    public boolean propose() {
+        String key = Payloads.key(nextKey.getAndIncrement() % KEYS, 16);
+        return proposer.propose(new Operation(0, "PUT", key, value));
+    }
+}
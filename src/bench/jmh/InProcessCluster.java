@@ -0,0 +1,122 @@
+package bench.jmh;
+
+import consensus.participant.AcceptorEndpoint;
+import consensus.participant.ConsensusAcceptor;
+import consensus.participant.ConsensusLearner;
+import consensus.participant.ConsensusProposer;
+import consensus.participant.PaxosMode;
+import consensus.state.StateStore;
+import network.CommitPropagator;
+import network.PeerConnectionManager;
+import network.PeerTransport;
+import network.ServerCommunicator;
+import network.ServerInterface;
+
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Five servers in one JVM, wired as {@link server.ServerNode} wires them but without the network: the first
+ * server's proposer calls every acceptor directly, and its learner sends decisions to the other servers
+ * through a transport that hands them straight to their {@link ServerCommunicator}. Every server applies
+ * decided slots on its own apply thread. Acceptors never simulate failures.
+ */
+final class InProcessCluster {
+
+    static final int SIZE = 5;
+    private static final int FIRST_PORT = 9101;
+
+    private final List<ConsensusLearner> learners = new ArrayList<>();
+    private final List<ServerCommunicator> servers = new ArrayList<>();
+    private final List<Thread> applyThreads = new ArrayList<>();
+    private final ConsensusProposer proposer;
+
+    InProcessCluster(PaxosMode mode) throws RemoteException {
+        List<Integer> ports = new ArrayList<>();
+        for (int i = 0; i < SIZE; i++) {
+            ports.add(FIRST_PORT + i);
+        }
+        Map<Integer, ServerInterface> byPort = new HashMap<>();
+        List<AcceptorEndpoint> acceptors = new ArrayList<>();
+        for (int port : ports) {
+            StateStore store = new StateStore();
+            ConsensusLearner learner = new ConsensusLearner(store, port);
+            ConsensusAcceptor acceptor = new ConsensusAcceptor(store, port, learner);
+            learner.setAcceptor(acceptor);
+            ServerCommunicator server = new ServerCommunicator(null, acceptor, learner, ports);
+            learners.add(learner);
+            servers.add(server);
+            acceptors.add(acceptor);
+            byPort.put(port, server);
+
+            Thread applyThread = new Thread(learner, "apply-" + port);
+            applyThread.setDaemon(true);
+            applyThread.start();
+            applyThreads.add(applyThread);
+        }
+
+        PeerConnectionManager peers = new PeerConnectionManager(FIRST_PORT, ports, new LocalTransport(byPort));
+        CommitPropagator commitPropagator = new CommitPropagator(peers);
+        learners.get(0).setCommitPropagator(commitPropagator);
+        commitPropagator.start();
+        proposer = new ConsensusProposer(learners.get(0).getStateStore(), FIRST_PORT, acceptors, learners.get(0), mode);
+    }
+
+    /**
+     * @return The proposer of the first server.
+     */
+    ConsensusProposer getProposer() {
+        return proposer;
+    }
+
+    /**
+     * @return The learner of the server with the given index; that of the first server announces decisions.
+     */
+    ConsensusLearner getLearner(int index) {
+        return learners.get(index);
+    }
+
+    void close() {
+        for (Thread applyThread : applyThreads) {
+            applyThread.interrupt();
+        }
+        for (ServerCommunicator server : servers) {
+            try {
+                UnicastRemoteObject.unexportObject(server, true);
+            } catch (NoSuchObjectException e) {
+                // Not exported, nothing to release
+            }
+        }
+    }
+
+    // Resolves every port to the server object itself, so calls cost no more than the work they do
+    private static final class LocalTransport implements PeerTransport {
+        private final Map<Integer, ServerInterface> servers;
+
+        LocalTransport(Map<Integer, ServerInterface> servers) {
+            this.servers = servers;
+        }
+
+        @Override
+        public void start(ServerInterface localServer) {
+        }
+
+        @Override
+        public ServerInterface connect(int port) throws RemoteException {
+            ServerInterface server = servers.get(port);
+            if (server == null) {
+                throw new RemoteException("No server on port " + port);
+            }
+            return server;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package bench.jmh;
+
+import common.ConsensusUtils;
+import consensus.participant.ConsensusLearner;
+import consensus.participant.PaxosMode;
+import consensus.state.Operation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Commits of decided slots from the first server of an {@link InProcessCluster} to all five: every call
+ * commits a PUT in the next slot through the first server's {@link ConsensusLearner}, which applies it and
+ * queues it for the other servers, and returns once every server has applied it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dpaxos.log.level=off")
+public class LearnerFanOutBenchmark {
+
+    private static final int KEYS = 100_000;
+
+    @Param({"16", "1024"})
+    public int valueSize;
+
+    private InProcessCluster cluster;
+    private String value;
+    private final AtomicLong nextSlot = new AtomicLong();
+
+    @Setup
+    public void setUp() throws RemoteException {
+        cluster = new InProcessCluster(PaxosMode.MULTI_PAXOS);
+        value = Payloads.text(valueSize, 'v');
+    }
+
+    @TearDown
+    public void tearDown() {
+        cluster.close();
+    }
+
+    @Benchmark
+    public boolean commit() throws RemoteException {
+        long slot = nextSlot.getAndIncrement();
+        boolean applied = cluster.getLearner(0).learn(slot, new Operation(0, "PUT", Payloads.key(slot % KEYS, 16), value));
+        for (int i = 1; i < InProcessCluster.SIZE; i++) {
+            applied &= cluster.getLearner(i).awaitApplied(slot, ConsensusUtils.DEFAULT_TIMEOUT_MS);
+        }
+        return applied;
+    }
+}
@@ -0,0 +1,80 @@
+package bench.jmh;
+
+import consensus.message.MessageCodec;
+import consensus.state.Operation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips of one PUT {@link Operation}: encoded and decoded again as RMI would, through Java
+ * serialization with and without the compact wire form, and through the raw {@link MessageCodec} as the
+ * NIO transport does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dpaxos.log.level=off")
+public class OperationCodecBenchmark {
+
+    @Param({"16", "64"})
+    public int keySize;
+
+    @Param({"16", "1024"})
+    public int valueSize;
+
+    private Operation operation;
+
+    /**
+     * How Java serialization writes operations.
+     */
+    @State(Scope.Benchmark)
+    public static class Serialization {
+        // true to serialize through the compact wire form, false for default Java serialization
+        @Param({"true", "false"})
+        public boolean compact;
+
+        @Setup
+        public void setUp() {
+            MessageCodec.setEnabled(compact);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        operation = new Operation(1234501, "PUT", Payloads.key(42, keySize), Payloads.text(valueSize, 'v'));
+    }
+
+    @Benchmark
+    public Object javaSerialization(Serialization serialization) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(operation);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return in.readObject();
+        }
+    }
+
+    @Benchmark
+    public Object codec() {
+        return MessageCodec.decode(MessageCodec.encode(operation));
+    }
+}
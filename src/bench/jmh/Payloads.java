@@ -0,0 +1,29 @@
+package bench.jmh;
+
+import java.util.Arrays;
+
+/**
+ * Keys and values of a fixed size for the benchmarks.
+ */
+final class Payloads {
+
+    private Payloads() {
+    }
+
+    /**
+     * @return A string of the given length made of one repeated character.
+     */
+    static String text(int length, char fill) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, fill);
+        return new String(chars);
+    }
+
+    /**
+     * @return A key unique to the index, padded to the given length; never shorter than the index needs.
+     */
+    static String key(long index, int length) {
+        String suffix = Long.toString(index);
+        return length <= suffix.length() + 1 ? "k" + suffix : "k" + text(length - suffix.length() - 1, '0') + suffix;
+    }
+}
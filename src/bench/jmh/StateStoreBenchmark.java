@@ -0,0 +1,108 @@
+package bench.jmh;
+
+import consensus.state.Operation;
+import consensus.state.StateStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads and writes on one {@link StateStore} holding {@link #KEYS} keys.
+ *
+ * {@code get} is called by every benchmark thread at once. The store has a single writer, the learner's
+ * apply stage, so {@code applyWhileReading} runs one thread applying PUTs to random keys in increasing
+ * slots, collecting old versions after every batch as the learner does, while the other threads of its
+ * group keep reading; run it with {@code -tg 1,<readers>}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dpaxos.log.level=off")
+public class StateStoreBenchmark {
+
+    static final int KEYS = 100_000;
+    private static final int APPLY_BATCH_SIZE = 1024;
+    private static final int GC_KEYS_PER_BATCH = 256;
+
+    /**
+     * A store filled with one value of the given size per key.
+     */
+    @State(Scope.Benchmark)
+    public abstract static class Store {
+        @Param({"16", "64"})
+        public int keySize;
+
+        @Param({"16", "1024"})
+        public int valueSize;
+
+        StateStore store;
+        String[] keys;
+        Operation[] puts;
+        long slot;
+
+        @Setup
+        public void setUp() {
+            store = new StateStore();
+            keys = new String[KEYS];
+            puts = new Operation[KEYS];
+            String value = Payloads.text(valueSize, 'v');
+            for (int i = 0; i < KEYS; i++) {
+                keys[i] = Payloads.key(i, keySize);
+                puts[i] = new Operation(0, "PUT", keys[i], value);
+                store.applyOperation(puts[i], slot++);
+            }
+        }
+
+        String get() {
+            return store.get(keys[ThreadLocalRandom.current().nextInt(KEYS)]);
+        }
+    }
+
+    // Read by all benchmark threads
+    @State(Scope.Benchmark)
+    public static class SharedStore extends Store {
+    }
+
+    // Written by one thread of a group and read by the others
+    @State(Scope.Group)
+    public static class GroupStore extends Store {
+    }
+
+    @Benchmark
+    public String get(SharedStore state) {
+        return state.get();
+    }
+
+    @Benchmark
+    @Group("applyWhileReading")
+    @GroupThreads(1)
+    public boolean apply(GroupStore state) {
+        long slot = state.slot++;
+        boolean applied = state.store.applyOperation(state.puts[ThreadLocalRandom.current().nextInt(KEYS)], slot);
+        if (slot % APPLY_BATCH_SIZE == APPLY_BATCH_SIZE - 1) {
+            state.store.collectGarbage(slot, GC_KEYS_PER_BATCH);
+        }
+        return applied;
+    }
+
+    @Benchmark
+    @Group("applyWhileReading")
+    @GroupThreads(3)
+    public String read(GroupStore state) {
+        return state.get();
+    }
+}
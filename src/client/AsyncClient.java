@@ -0,0 +1,328 @@
+package client;
+
+import common.ThreadModel;
+import consensus.message.ReadResult;
+import consensus.state.Operation;
+import network.PeerConnectionManager;
+import network.PeerConnectionManager.PeerCall;
+import network.PeerTransport;
+import network.RmiTransport;
+import network.ServerInterface;
+import network.ShardMap;
+import network.TransportType;
+import network.nio.NioTransport;
+
+import java.rmi.RemoteException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * A client of the cluster whose calls return at once with a {@link CompletableFuture}, so that one thread
+ * can keep many requests outstanding. Settings come from an {@link AsyncClientConfig}.
+ *
+ * The client holds a stub to every server, and with several shards to every replica of each; a request
+ * goes to the replicas of the shard owning its key, see {@link ShardMap}. Writes and linearizable reads go
+ * to the shard's leader, the replica holding the Multi-Paxos read lease, which the client asks the replicas
+ * for and caches; while no leader is known they go to the first reachable replica, home replica first,
+ * which forwards writes itself. Bounded-staleness reads are spread over all replicas; one too far behind
+ * answers with a redirect to the leader, which the client follows and caches.
+ *
+ * A call that fails, returns false or gets no reply within the failover timeout is tried again on another
+ * server, every server at most once, and the leader is looked up again. A write that only timed out may
+ * still be decided, so it can be applied twice.
+ *
+ * Calls run on {@code maxOutstanding} threads, virtual ones under {@link ThreadModel#VIRTUAL}, and later
+ * ones wait for a free thread. Over RMI every
+ * outstanding call takes a connection of its own. Over the NIO transport all calls to a server share one
+ * connection and their replies are matched to them by correlation ID.
+ */
+public class AsyncClient implements AutoCloseable {
+
+    private static final int NO_PORT = -1;
+    // The connection manager's own port; no server listens on it
+    private static final int CLIENT_PORT = 0;
+    private static final long LEADER_LOOKUP_INTERVAL_MS = 250;
+
+    private final AsyncClientConfig config;
+    private final ShardMap shardMap;
+    private final Shard[] shards;
+    private final PeerTransport transport;
+    private final PeerConnectionManager servers;
+    private final ExecutorService callers;
+    private final AtomicInteger nextServer = new AtomicInteger();
+
+    /**
+     * The replicas of one shard and what the client knows of its leader.
+     */
+    private static final class Shard {
+        // Home replica first
+        final List<Integer> ports;
+        final AtomicBoolean lookingUpLeader = new AtomicBoolean();
+        volatile long lastLeaderLookupNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(LEADER_LOOKUP_INTERVAL_MS);
+        volatile int leaderPort = NO_PORT;
+
+        Shard(List<Integer> ports) {
+            this.ports = ports;
+        }
+    }
+
+    /**
+     * Connects to the servers and starts looking up the leader of every shard.
+     * @param config The servers, transport and failover settings.
+     * @throws RemoteException If the transport cannot be opened.
+     */
+    public AsyncClient(AsyncClientConfig config) throws RemoteException {
+        this.config = config;
+        this.shardMap = new ShardMap(config.getPorts(), config.getShardCount());
+        this.shards = new Shard[shardMap.getShardCount()];
+        for (int shard = 0; shard < shards.length; shard++) {
+            shards[shard] = new Shard(shardMap.preferredPortsOf(shard));
+        }
+        this.transport = config.getTransport() == TransportType.NIO ? new NioTransport(CLIENT_PORT) : new RmiTransport();
+        this.servers = new PeerConnectionManager(CLIENT_PORT, shardMap.allPorts(), transport);
+        this.callers = Executors.newFixedThreadPool(config.getMaxOutstanding(), ThreadModel.current().threadFactory("client-call"));
+        for (Shard shard : shards) {
+            lookUpLeader(shard);
+        }
+    }
+
+    /**
+     * @return A future completed with true once the PUT is decided, or false if no server could get it decided.
+     */
+    public CompletableFuture<Boolean> put(String key, String value) {
+        return propose(new Operation(0, "PUT", key, value));
+    }
+
+    /**
+     * @return A future completed with true once the DELETE is decided, or false if no server could get it decided.
+     */
+    public CompletableFuture<Boolean> delete(String key) {
+        return propose(new Operation(0, "DELETE", key, null));
+    }
+
+    /**
+     * Proposes an operation through the leader.
+     * @param operation The operation to be proposed.
+     * @return A future completed with true once the operation is decided, or false if no server could get it
+     *         decided; completed exceptionally if no server replied.
+     */
+    public CompletableFuture<Boolean> propose(Operation operation) {
+        return new Request<Boolean>(operation.getKey(), stub -> stub.propose(operation), decided -> decided, decided -> NO_PORT, true).start();
+    }
+
+    /**
+     * Reads a value linearizably, through the leader if one is known.
+     * @param key The key whose value is to be retrieved.
+     * @return A future completed with the value, or null if the key has none.
+     */
+    public CompletableFuture<String> get(String key) {
+        return new Request<String>(key, stub -> stub.getValue(key), value -> true, value -> NO_PORT, true).start();
+    }
+
+    /**
+     * Reads a value from any server whose store is recent enough, following a redirect to the leader.
+     * @param key The key whose value is to be retrieved.
+     * @param minAppliedSlot The slot the store must have applied, see {@link ServerInterface#readValue}; -1 for none.
+     * @param maxStalenessMs How long ago the newest write the store may be missing completed; -1 for no bound.
+     * @return A future completed with the value and its slot, or with the last redirect if no server was recent enough.
+     */
+    public CompletableFuture<ReadResult> read(String key, long minAppliedSlot, long maxStalenessMs) {
+        return new Request<ReadResult>(key, stub -> stub.readValue(key, minAppliedSlot, maxStalenessMs),
+                result -> !result.isRedirected(), ReadResult::getRedirectPort, false).start();
+    }
+
+    /**
+     * @return Where keys and replicas belong.
+     */
+    public ShardMap getShardMap() {
+        return shardMap;
+    }
+
+    /**
+     * @return The port of the replica the shard's writes are sent to first, or -1 while no leader is known.
+     */
+    public int getLeaderPort(int shard) {
+        return shards[shard].leaderPort;
+    }
+
+    /**
+     * Stops the call threads, abandoning outstanding calls, and closes all connections.
+     */
+    @Override
+    public void close() {
+        callers.shutdownNow();
+        transport.close();
+    }
+
+    /**
+     * One client call, sent to one server after another until a reply is accepted or every server has been tried.
+     * Attempts follow each other, so the fields are only ever touched by one thread at a time.
+     */
+    private final class Request<T> {
+        private final Shard shard;
+        private final PeerCall<T> call;
+        private final Predicate<T> accepted;
+        private final ToIntFunction<T> redirectPort;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final Set<Integer> tried = new HashSet<>();
+        private boolean toLeader;
+        private boolean rejected;
+        private T lastRejected;
+        private Throwable lastFailure;
+
+        Request(String key, PeerCall<T> call, Predicate<T> accepted, ToIntFunction<T> redirectPort, boolean toLeader) {
+            this.shard = shards[shardMap.shardOf(key)];
+            this.call = call;
+            this.accepted = accepted;
+            this.redirectPort = redirectPort;
+            this.toLeader = toLeader;
+        }
+
+        CompletableFuture<T> start() {
+            send();
+            return result;
+        }
+
+        private void send() {
+            int port = choosePort(shard, toLeader, tried);
+            if (port == NO_PORT) {
+                if (rejected) {
+                    result.complete(lastRejected);
+                } else {
+                    result.completeExceptionally(lastFailure != null ? lastFailure : new RemoteException("No server to send the request to"));
+                }
+                return;
+            }
+            tried.add(port);
+            try {
+                CompletableFuture.supplyAsync(() -> invoke(port, call), callers)
+                        .orTimeout(config.getFailoverTimeoutMs(), TimeUnit.MILLISECONDS)
+                        .whenComplete((reply, failure) -> onReply(port, reply, failure));
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(new RemoteException("The client is closed"));
+            }
+        }
+
+        private void onReply(int port, T reply, Throwable failure) {
+            if (failure == null && accepted.test(reply)) {
+                result.complete(reply);
+                return;
+            }
+            if (failure == null) {
+                rejected = true;
+                lastRejected = reply;
+                int redirect = redirectPort.applyAsInt(reply);
+                if (shard.ports.contains(redirect)) {
+                    shard.leaderPort = redirect;
+                    toLeader = true;
+                    send();
+                    return;
+                }
+            } else {
+                lastFailure = describe(port, failure);
+            }
+            if (port == shard.leaderPort) {
+                shard.leaderPort = NO_PORT;
+            }
+            lookUpLeader(shard);
+            send();
+        }
+    }
+
+    // The cached leader if the request goes there and has not tried it yet. Otherwise the shard's next
+    // untried replica, reachable ones first: home replica first for requests meant for the leader, so that
+    // they keep to one replica rather than have every proposer compete for slots, and round-robin for the
+    // others. -1 once every replica has been tried
+    private int choosePort(Shard shard, boolean toLeader, Set<Integer> tried) {
+        int leader = shard.leaderPort;
+        if (toLeader && leader != NO_PORT && !tried.contains(leader) && servers.isHealthy(leader)) {
+            return leader;
+        }
+        if (toLeader && leader == NO_PORT) {
+            lookUpLeader(shard);
+        }
+        List<Integer> ports = shard.ports;
+        int start = toLeader ? 0 : Math.floorMod(nextServer.getAndIncrement(), ports.size());
+        int unreachable = NO_PORT;
+        for (int i = 0; i < ports.size(); i++) {
+            int port = ports.get((start + i) % ports.size());
+            if (tried.contains(port)) {
+                continue;
+            }
+            if (servers.isHealthy(port)) {
+                return port;
+            }
+            if (unreachable == NO_PORT) {
+                unreachable = port;
+            }
+        }
+        return unreachable;
+    }
+
+    private <T> T invoke(int port, PeerCall<T> call) {
+        try {
+            return servers.call(port, call);
+        } catch (RemoteException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private Throwable describe(int port, Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        if (cause instanceof TimeoutException) {
+            return new RemoteException("No reply from the server at port " + port + " within " + config.getFailoverTimeoutMs() + " ms");
+        }
+        return cause;
+    }
+
+    // Asks the shard's replicas in turn which of them holds the read lease, in the background and at most
+    // once per LEADER_LOOKUP_INTERVAL_MS, so that a shard without a leader is not asked on every request
+    private void lookUpLeader(Shard shard) {
+        if (System.nanoTime() - shard.lastLeaderLookupNanos < TimeUnit.MILLISECONDS.toNanos(LEADER_LOOKUP_INTERVAL_MS)
+                || !shard.lookingUpLeader.compareAndSet(false, true)) {
+            return;
+        }
+        shard.lastLeaderLookupNanos = System.nanoTime();
+        try {
+            callers.execute(() -> {
+                try {
+                    shard.leaderPort = findLeader(shard.ports);
+                } finally {
+                    shard.lookingUpLeader.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The client is closed
+            shard.lookingUpLeader.set(false);
+        }
+    }
+
+    private int findLeader(List<Integer> ports) {
+        for (int port : ports) {
+            if (!servers.isHealthy(port)) {
+                continue;
+            }
+            try {
+                int leader = servers.call(port, ServerInterface::getLeaderPort);
+                if (ports.contains(leader)) {
+                    return leader;
+                }
+            } catch (RemoteException e) {
+                // Ask the next server
+            }
+        }
+        return NO_PORT;
+    }
+}
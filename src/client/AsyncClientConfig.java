@@ -0,0 +1,91 @@
+package client;
+
+import network.TransportType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings of an {@link AsyncClient}. Every setting has a default that can be overridden with a system
+ * property, for example {@code -Dclient.failoverTimeoutMs=500}.
+ */
+public class AsyncClientConfig {
+
+    private List<Integer> ports = List.of(5001, 5002, 5003, 5004, 5005);
+    private TransportType transport = TransportType.RMI;
+    private long failoverTimeoutMs = 2000;
+    private int maxOutstanding = 256;
+    private int shardCount = 1;
+
+    /**
+     * Builds a configuration from the defaults and any {@code client.*} system properties.
+     * <ul>
+     *     <li>{@code client.ports}: comma-separated ports of the servers of the cluster, their replicas of shard 0</li>
+     *     <li>{@code client.transport}: rmi, or nio to share one connection per server between all calls;
+     *     nio needs the cluster to run with {@code -Dpaxos.transport=nio}</li>
+     *     <li>{@code client.failoverTimeoutMs}: how long to wait for a server's reply before trying another</li>
+     *     <li>{@code client.maxOutstanding}: requests sent at once; later ones wait for one of them to complete</li>
+     *     <li>{@code client.shards}: the cluster's {@code paxos.shards}; with fewer, the servers pass requests on</li>
+     * </ul>
+     * @return The configuration.
+     */
+    public static AsyncClientConfig fromSystemProperties() {
+        AsyncClientConfig config = new AsyncClientConfig();
+        String ports = System.getProperty("client.ports");
+        if (ports != null) {
+            List<Integer> parsed = new ArrayList<>();
+            for (String port : ports.split(",")) {
+                parsed.add(Integer.parseInt(port.trim()));
+            }
+            config.setPorts(parsed);
+        }
+        String transport = System.getProperty("client.transport");
+        if (transport != null) {
+            config.setTransport(TransportType.fromString(transport));
+        }
+        config.setFailoverTimeoutMs(Long.getLong("client.failoverTimeoutMs", config.getFailoverTimeoutMs()));
+        config.setMaxOutstanding(Integer.getInteger("client.maxOutstanding", config.getMaxOutstanding()));
+        config.setShardCount(Integer.getInteger("client.shards", config.getShardCount()));
+        return config;
+    }
+
+    public List<Integer> getPorts() {
+        return ports;
+    }
+
+    public void setPorts(List<Integer> ports) {
+        this.ports = List.copyOf(ports);
+    }
+
+    public TransportType getTransport() {
+        return transport;
+    }
+
+    public void setTransport(TransportType transport) {
+        this.transport = transport;
+    }
+
+    public long getFailoverTimeoutMs() {
+        return failoverTimeoutMs;
+    }
+
+    public void setFailoverTimeoutMs(long failoverTimeoutMs) {
+        this.failoverTimeoutMs = failoverTimeoutMs;
+    }
+
+    public int getMaxOutstanding() {
+        return maxOutstanding;
+    }
+
+    public void setMaxOutstanding(int maxOutstanding) {
+        this.maxOutstanding = maxOutstanding;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public void setShardCount(int shardCount) {
+        this.shardCount = shardCount;
+    }
+}
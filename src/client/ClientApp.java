@@ -1,23 +1,28 @@
 package client;
 
-import network.ServerInterface;
 import consensus.state.Operation;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
-import java.util.Random;
-import java.util.Scanner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
 
 public class ClientApp {
 
-    private ServerInterface server;
+    private AsyncClient client;
 
-    public ClientApp(String host, int port) {
-        //Random random = new Random();
-        //int port = 5001 + random.nextInt(5); // Randomly selects a port from 5001 to 5005
+    /**
+     * Connects to every server of the cluster, see {@link AsyncClientConfig} for the {@code client.*} settings,
+     * so that requests fail over when a server goes down.
+     * @param port The server tried first while the leader is not yet known.
+     */
+    public ClientApp(int port) {
+        AsyncClientConfig config = AsyncClientConfig.fromSystemProperties();
+        List<Integer> ports = new ArrayList<>(config.getPorts());
+        ports.remove(Integer.valueOf(port));
+        ports.add(0, port);
+        config.setPorts(ports);
         try {
-            Registry registry = LocateRegistry.getRegistry(host, port);
-            server = (ServerInterface) registry.lookup("PaxosServer");
-            System.out.println("Connected to server at " + host + ":" + port);
+            client = new AsyncClient(config);
+            System.out.println("Connected to servers at ports " + ports);
         } catch (Exception e) {
             System.err.println("Client exception: " + e.toString());
             e.printStackTrace();
@@ -47,24 +52,29 @@ public class ClientApp {
         try {
             Operation operation = new Operation(0, operationType, key, value);
             if (operationType.equalsIgnoreCase("GET")) {
-                String result = server.getValue(key);
+                String result = client.get(key).join();
                 System.out.println("GET result for " + key + ": " + result);
             } else {
-                boolean success = server.propose(operation);
+                boolean success = client.propose(operation).join();
                 System.out.println(operationType + " operation " + (success ? "succeeded" : "failed") + " for " + key);
             }
-        } catch (Exception e) {
-            System.err.println("Error during remote operation: " + e.getMessage());
-            e.printStackTrace();
+        } catch (CompletionException e) {
+            System.err.println("Error during remote operation: " + e.getCause().getMessage());
         }
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
         if (args.length < 1 ) {
-            System.out.println("Usage: java ClientApp <port>");
+            System.out.println("Usage: java [-Dclient.*=...] ClientApp <port>");
+            System.out.println("       java [-Dload.*=...] ClientApp load");
+            return;
+        }
+        if ("load".equalsIgnoreCase(args[0])) {
+            // Benchmark driver mode, see LoadGenerator
+            LoadGenerator.main(new String[0]);
             return;
         }
-        ClientApp client = new ClientApp("localhost", Integer.parseInt(args[0]));
+        ClientApp client = new ClientApp(Integer.parseInt(args[0]));
         UserInterface ui = new UserInterface(client);
         ui.start();
     }
@@ -0,0 +1,98 @@
+package client;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Picks the keys of reads and writes following a {@link KeyDistribution}. Safe for use by many threads.
+ */
+final class KeyChooser {
+
+    private static final double ZIPFIAN_CONSTANT = 0.99;
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    private final KeyDistribution distribution;
+    private final long records;
+    private final AtomicLong inserted;
+
+    // Zipfian ranks after Gray et al., "Quickly Generating Billion-Record Synthetic Databases"
+    private final double zetaN;
+    private final double theta = ZIPFIAN_CONSTANT;
+    private final double alpha;
+    private final double eta;
+    private final double halfPowTheta;
+
+    KeyChooser(KeyDistribution distribution, long records) {
+        this.distribution = distribution;
+        this.records = records;
+        this.inserted = new AtomicLong(records);
+        double zeta2 = zeta(2);
+        zetaN = zeta(records);
+        alpha = 1.0 / (1.0 - theta);
+        eta = (1 - Math.pow(2.0 / records, 1 - theta)) / (1 - zeta2 / zetaN);
+        halfPowTheta = 1 + Math.pow(0.5, theta);
+    }
+
+    /**
+     * @return The key of a read, among those written so far.
+     */
+    String nextReadKey() {
+        switch (distribution) {
+            case UNIFORM:
+                return keyOf(ThreadLocalRandom.current().nextLong(records));
+            case ZIPFIAN:
+                return keyOf(scramble(nextRank()));
+            default:
+                return keyOf(Math.max(0, inserted.get() - 1 - nextRank()));
+        }
+    }
+
+    /**
+     * @return The key of a write: an existing key, or with {@link KeyDistribution#LATEST} a new one.
+     */
+    String nextWriteKey() {
+        if (distribution == KeyDistribution.LATEST) {
+            return keyOf(inserted.getAndIncrement());
+        }
+        return nextReadKey();
+    }
+
+    /**
+     * @return The key of the given record, as written when the store is preloaded.
+     */
+    static String keyOf(long record) {
+        return "user" + record;
+    }
+
+    // A rank between 0 and records - 1, 0 being the most likely
+    private long nextRank() {
+        double u = ThreadLocalRandom.current().nextDouble();
+        double uz = u * zetaN;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < halfPowTheta) {
+            return 1;
+        }
+        return Math.min(records - 1, (long) (records * Math.pow(eta * u - eta + 1, alpha)));
+    }
+
+    // Spreads ranks over the key space with the FNV-1a hash, as YCSB's scrambled Zipfian does
+    private long scramble(long rank) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < 8; i++) {
+            hash ^= (rank >>> (i * 8)) & 0xFF;
+            hash *= FNV_PRIME;
+        }
+        return Math.floorMod(hash, records);
+    }
+
+    private double zeta(long n) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+}
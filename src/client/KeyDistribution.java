@@ -0,0 +1,43 @@
+package client;
+
+/**
+ * How the {@link LoadGenerator} picks the keys of its requests, after the workloads of YCSB.
+ */
+public enum KeyDistribution {
+    /**
+     * Every key is equally likely.
+     */
+    UNIFORM,
+
+    /**
+     * A few keys get most requests: the key of rank r is picked with a probability proportional to
+     * 1 / r^0.99. Ranks are scattered over the key space, so hot keys are not neighbours.
+     */
+    ZIPFIAN,
+
+    /**
+     * Writes add new keys and reads favour the most recently added ones, with the same skew as
+     * {@link #ZIPFIAN} counted back from the newest key.
+     */
+    LATEST;
+
+    /**
+     * Parses a distribution name ("uniform", "zipfian" or "latest").
+     * @param name The distribution name, case-insensitive.
+     * @return The matching distribution.
+     * @throws IllegalArgumentException if the name does not match any distribution.
+     */
+    public static KeyDistribution fromString(String name) {
+        String normalized = name.trim().toUpperCase();
+        if (normalized.equals("UNIFORM")) {
+            return UNIFORM;
+        }
+        if (normalized.equals("ZIPFIAN") || normalized.equals("ZIPF")) {
+            return ZIPFIAN;
+        }
+        if (normalized.equals("LATEST")) {
+            return LATEST;
+        }
+        throw new IllegalArgumentException("Unknown key distribution: " + name);
+    }
+}
@@ -0,0 +1,209 @@
+package client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings of a {@link LoadGenerator} run. Every setting has a default that can be overridden with a
+ * system property, for example {@code -Dload.threads=32}.
+ */
+public class LoadConfig {
+
+    /**
+     * How client threads pace their requests.
+     */
+    public enum LoopMode {
+        /**
+         * Every thread sends its next request when the previous one has completed, at most at the target rate.
+         */
+        CLOSED,
+
+        /**
+         * Requests are started on a fixed schedule at the target rate, whether earlier ones have completed or not.
+         */
+        OPEN;
+
+        /**
+         * Parses a loop mode name ("closed" or "open").
+         * @param name The name, case-insensitive.
+         * @return The matching loop mode.
+         * @throws IllegalArgumentException if the name does not match any loop mode.
+         */
+        public static LoopMode fromString(String name) {
+            String normalized = name.trim().toUpperCase();
+            if (normalized.equals("CLOSED")) {
+                return CLOSED;
+            }
+            if (normalized.equals("OPEN")) {
+                return OPEN;
+            }
+            throw new IllegalArgumentException("Unknown loop mode: " + name);
+        }
+    }
+
+    private String host = "localhost";
+    private List<Integer> ports = List.of(5001, 5002, 5003, 5004, 5005);
+    private int threads = 16;
+    private LoopMode loopMode = LoopMode.CLOSED;
+    private double targetRate = 0;
+    private int seconds = 30;
+    private int warmupSeconds = 5;
+    private double readRatio = 0.5;
+    private KeyDistribution distribution = KeyDistribution.ZIPFIAN;
+    private int records = 10_000;
+    private int valueSize = 100;
+    private boolean preload = true;
+
+    /**
+     * Builds a configuration from the defaults and any {@code load.*} system properties.
+     * <ul>
+     *     <li>{@code load.host}: host of the servers</li>
+     *     <li>{@code load.ports}: comma-separated server ports the threads are spread over</li>
+     *     <li>{@code load.threads}: client threads, each with requests outstanding one at a time</li>
+     *     <li>{@code load.loop}: closed or open; open needs a target rate</li>
+     *     <li>{@code load.rate}: target requests per second over all threads; 0 lets a closed loop run flat out</li>
+     *     <li>{@code load.seconds}: how long to measure</li>
+     *     <li>{@code load.warmupSeconds}: how long to run first without measuring</li>
+     *     <li>{@code load.readRatio}: share of requests that are reads, between 0 and 1</li>
+     *     <li>{@code load.distribution}: uniform, zipfian or latest, how keys are chosen</li>
+     *     <li>{@code load.records}: number of keys</li>
+     *     <li>{@code load.valueSize}: bytes per written value</li>
+     *     <li>{@code load.preload}: true to write every key once before the run, so reads find them</li>
+     * </ul>
+     * @return The configuration.
+     */
+    public static LoadConfig fromSystemProperties() {
+        LoadConfig config = new LoadConfig();
+        config.setHost(System.getProperty("load.host", config.getHost()));
+        String ports = System.getProperty("load.ports");
+        if (ports != null) {
+            List<Integer> parsed = new ArrayList<>();
+            for (String port : ports.split(",")) {
+                parsed.add(Integer.parseInt(port.trim()));
+            }
+            config.setPorts(parsed);
+        }
+        config.setThreads(Integer.getInteger("load.threads", config.getThreads()));
+        String loop = System.getProperty("load.loop");
+        if (loop != null) {
+            config.setLoopMode(LoopMode.fromString(loop));
+        }
+        String rate = System.getProperty("load.rate");
+        if (rate != null) {
+            config.setTargetRate(Double.parseDouble(rate));
+        }
+        config.setSeconds(Integer.getInteger("load.seconds", config.getSeconds()));
+        config.setWarmupSeconds(Integer.getInteger("load.warmupSeconds", config.getWarmupSeconds()));
+        String readRatio = System.getProperty("load.readRatio");
+        if (readRatio != null) {
+            config.setReadRatio(Double.parseDouble(readRatio));
+        }
+        String distribution = System.getProperty("load.distribution");
+        if (distribution != null) {
+            config.setDistribution(KeyDistribution.fromString(distribution));
+        }
+        config.setRecords(Integer.getInteger("load.records", config.getRecords()));
+        config.setValueSize(Integer.getInteger("load.valueSize", config.getValueSize()));
+        String preload = System.getProperty("load.preload");
+        if (preload != null) {
+            config.setPreload(Boolean.parseBoolean(preload));
+        }
+        return config;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public List<Integer> getPorts() {
+        return ports;
+    }
+
+    public void setPorts(List<Integer> ports) {
+        this.ports = List.copyOf(ports);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public LoopMode getLoopMode() {
+        return loopMode;
+    }
+
+    public void setLoopMode(LoopMode loopMode) {
+        this.loopMode = loopMode;
+    }
+
+    public double getTargetRate() {
+        return targetRate;
+    }
+
+    public void setTargetRate(double targetRate) {
+        this.targetRate = targetRate;
+    }
+
+    public int getSeconds() {
+        return seconds;
+    }
+
+    public void setSeconds(int seconds) {
+        this.seconds = seconds;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public void setWarmupSeconds(int warmupSeconds) {
+        this.warmupSeconds = warmupSeconds;
+    }
+
+    public double getReadRatio() {
+        return readRatio;
+    }
+
+    public void setReadRatio(double readRatio) {
+        this.readRatio = readRatio;
+    }
+
+    public KeyDistribution getDistribution() {
+        return distribution;
+    }
+
+    public void setDistribution(KeyDistribution distribution) {
+        this.distribution = distribution;
+    }
+
+    public int getRecords() {
+        return records;
+    }
+
+    public void setRecords(int records) {
+        this.records = records;
+    }
+
+    public int getValueSize() {
+        return valueSize;
+    }
+
+    public void setValueSize(int valueSize) {
+        this.valueSize = valueSize;
+    }
+
+    public boolean isPreload() {
+        return preload;
+    }
+
+    public void setPreload(boolean preload) {
+        this.preload = preload;
+    }
+}
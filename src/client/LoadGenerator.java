@@ -0,0 +1,271 @@
+package client;
+
+import common.LatencyHistogram;
+import consensus.state.Operation;
+import network.ServerInterface;
+
+import java.rmi.registry.LocateRegistry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the cluster with many client threads and reports throughput and latency percentiles, for
+ * capacity planning. Settings come from system properties, see {@link LoadConfig}.
+ *
+ * Reads are linearizable {@code getValue} calls and writes are PUTs; the threads are spread over the
+ * configured servers. In a closed loop every thread waits for a reply before its next request, paced to
+ * the target rate if one is set. In an open loop, requests are started on a fixed schedule at the target
+ * rate and queue for a free thread when the cluster falls behind.
+ *
+ * Latency is reported twice. Service time runs from sending a request to its reply. Response time runs
+ * from when the schedule meant the request to start, so a stall that holds requests back counts against
+ * every request it delayed, not just the one that was waiting. That corrects for coordinated omission;
+ * without a target rate there is no schedule and only service time is reported.
+ *
+ * Usage: java [-Dload.*=...] client.LoadGenerator
+ */
+public class LoadGenerator {
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999, 0.9999};
+    private static final String[] PERCENTILE_LABELS = {"p50", "p90", "p99", "p99.9", "p99.99"};
+    private static final int PRELOAD_THREADS = 16;
+
+    private final LoadConfig config;
+    private final List<ServerInterface> servers = new ArrayList<>();
+    private final KeyChooser keys;
+    private final String value;
+
+    // Only requests scheduled after the warm-up are recorded
+    private final LatencyHistogram readService = new LatencyHistogram();
+    private final LatencyHistogram readResponse = new LatencyHistogram();
+    private final LatencyHistogram writeService = new LatencyHistogram();
+    private final LatencyHistogram writeResponse = new LatencyHistogram();
+    private final LongAdder readErrors = new LongAdder();
+    private final LongAdder writeErrors = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+
+    public LoadGenerator(LoadConfig config) throws Exception {
+        this.config = config;
+        for (int port : config.getPorts()) {
+            servers.add((ServerInterface) LocateRegistry.getRegistry(config.getHost(), port).lookup("PaxosServer"));
+        }
+        this.keys = new KeyChooser(config.getDistribution(), config.getRecords());
+        char[] chars = new char[config.getValueSize()];
+        Arrays.fill(chars, 'v');
+        this.value = new String(chars);
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadConfig config = LoadConfig.fromSystemProperties();
+        if (config.getLoopMode() == LoadConfig.LoopMode.OPEN && config.getTargetRate() <= 0) {
+            System.err.println("An open loop needs a target rate, e.g. -Dload.rate=1000");
+            return;
+        }
+        new LoadGenerator(config).run();
+        System.exit(0);
+    }
+
+    /**
+     * Preloads the store if configured, runs the warm-up and the measured period, and prints the report.
+     */
+    public void run() throws InterruptedException {
+        System.out.printf("Load: %d threads, %s loop at %s, %.0f%% reads, %s keys over %d records, %d-byte values, ports %s%n",
+                config.getThreads(), config.getLoopMode().name().toLowerCase(),
+                config.getTargetRate() > 0 ? String.format("%.0f ops/s", config.getTargetRate()) : "full speed",
+                config.getReadRatio() * 100, config.getDistribution().name().toLowerCase(), config.getRecords(),
+                config.getValueSize(), config.getPorts());
+        if (config.isPreload()) {
+            preload();
+        }
+
+        long startNanos = System.nanoTime();
+        long measureStartNanos = startNanos + TimeUnit.SECONDS.toNanos(config.getWarmupSeconds());
+        long endNanos = measureStartNanos + TimeUnit.SECONDS.toNanos(config.getSeconds());
+        Thread progress = startProgressReporter(measureStartNanos);
+        long unfinished = config.getLoopMode() == LoadConfig.LoopMode.OPEN
+                ? runOpenLoop(startNanos, measureStartNanos, endNanos)
+                : runClosedLoop(startNanos, measureStartNanos, endNanos);
+        progress.interrupt();
+        // Requests still queued at the end of an open loop complete late, so throughput counts that time too
+        report((System.nanoTime() - measureStartNanos) / 1e9, unfinished);
+    }
+
+    // Writes every record once, so that reads find a value
+    private void preload() throws InterruptedException {
+        long start = System.nanoTime();
+        AtomicLong next = new AtomicLong();
+        List<Thread> loaders = new ArrayList<>();
+        for (int t = 0; t < PRELOAD_THREADS; t++) {
+            ServerInterface server = servers.get(t % servers.size());
+            Thread loader = new Thread(() -> {
+                long record;
+                while ((record = next.getAndIncrement()) < config.getRecords()) {
+                    try {
+                        server.propose(new Operation(0, "PUT", KeyChooser.keyOf(record), value));
+                    } catch (Exception e) {
+                        // The record stays missing; reads of it return nothing
+                    }
+                }
+            }, "preload-" + t);
+            loaders.add(loader);
+            loader.start();
+        }
+        for (Thread loader : loaders) {
+            loader.join();
+        }
+        System.out.printf("Preloaded %d records in %.1f s%n", config.getRecords(), (System.nanoTime() - start) / 1e9);
+    }
+
+    // Each thread follows its own schedule, staggered against the others, and never has two requests outstanding
+    private long runClosedLoop(long startNanos, long measureStartNanos, long endNanos) throws InterruptedException {
+        int threads = config.getThreads();
+        long intervalNanos = config.getTargetRate() > 0 ? (long) (threads * 1e9 / config.getTargetRate()) : 0;
+        List<Thread> clients = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            ServerInterface server = servers.get(t % servers.size());
+            long firstNanos = startNanos + intervalNanos * t / threads;
+            Thread client = new Thread(() -> {
+                for (long i = 0; ; i++) {
+                    long intendedNanos = intervalNanos > 0 ? firstNanos + i * intervalNanos : System.nanoTime();
+                    if (intendedNanos >= endNanos) {
+                        return;
+                    }
+                    awaitTime(intendedNanos);
+                    execute(server, intendedNanos, intendedNanos >= measureStartNanos);
+                }
+            }, "load-" + t);
+            clients.add(client);
+            client.start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        return 0;
+    }
+
+    // The calling thread starts requests on schedule and the client threads execute them in order.
+    // Returns how many had not completed shortly after the end of the run.
+    private long runOpenLoop(long startNanos, long measureStartNanos, long endNanos) throws InterruptedException {
+        ExecutorService clients = Executors.newFixedThreadPool(config.getThreads());
+        long intervalNanos = (long) (1e9 / config.getTargetRate());
+        long scheduled = 0;
+        for (long i = 0; ; i++) {
+            long intendedNanos = startNanos + i * intervalNanos;
+            if (intendedNanos >= endNanos) {
+                break;
+            }
+            awaitTime(intendedNanos);
+            ServerInterface server = servers.get((int) (i % servers.size()));
+            boolean measured = intendedNanos >= measureStartNanos;
+            clients.execute(() -> execute(server, intendedNanos, measured));
+            if (measured) {
+                scheduled++;
+            }
+        }
+        clients.shutdown();
+        if (!clients.awaitTermination(10, TimeUnit.SECONDS)) {
+            clients.shutdownNow();
+        }
+        return scheduled - completed.sum() - readErrors.sum() - writeErrors.sum();
+    }
+
+    private void execute(ServerInterface server, long intendedNanos, boolean measured) {
+        boolean read = ThreadLocalRandom.current().nextDouble() < config.getReadRatio();
+        long sentNanos = System.nanoTime();
+        boolean succeeded;
+        try {
+            if (read) {
+                server.getValue(keys.nextReadKey());
+                succeeded = true;
+            } else {
+                succeeded = server.propose(new Operation(0, "PUT", keys.nextWriteKey(), value));
+            }
+        } catch (Exception e) {
+            succeeded = false;
+        }
+        if (!measured) {
+            return;
+        }
+        long doneNanos = System.nanoTime();
+        if (!succeeded) {
+            (read ? readErrors : writeErrors).increment();
+            return;
+        }
+        completed.increment();
+        (read ? readService : writeService).record(doneNanos - sentNanos);
+        (read ? readResponse : writeResponse).record(doneNanos - intendedNanos);
+    }
+
+    private static void awaitTime(long nanos) {
+        long remaining;
+        while ((remaining = nanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    // Prints the completed requests of every second of the measured period
+    private Thread startProgressReporter(long measureStartNanos) {
+        Thread progress = new Thread(() -> {
+            try {
+                awaitTime(measureStartNanos);
+                long last = 0;
+                for (int second = 1; !Thread.currentThread().isInterrupted(); second++) {
+                    Thread.sleep(1000);
+                    long total = completed.sum();
+                    System.out.printf("%4d s %10d ops/s %8d errors%n", second, total - last, readErrors.sum() + writeErrors.sum());
+                    last = total;
+                }
+            } catch (InterruptedException e) {
+                // The run is over
+            }
+        }, "load-progress");
+        progress.setDaemon(true);
+        progress.start();
+        return progress;
+    }
+
+    private void report(double seconds, long unfinished) {
+        System.out.printf("%nThroughput: %.0f ops/s (%d reads, %d writes, %d failed reads, %d failed writes",
+                completed.sum() / seconds, readService.snapshot().getCount(), writeService.snapshot().getCount(),
+                readErrors.sum(), writeErrors.sum());
+        if (unfinished > 0) {
+            System.out.printf(", %d scheduled but not completed", unfinished);
+        }
+        System.out.println(")");
+        StringBuilder header = new StringBuilder(String.format("%-22s", "latency (ms)"));
+        for (String label : PERCENTILE_LABELS) {
+            header.append(String.format(" %9s", label));
+        }
+        header.append(String.format(" %9s", "max"));
+        System.out.println(header);
+        boolean scheduled = config.getTargetRate() > 0;
+        printRow("read, response time", readResponse, scheduled);
+        printRow("read, service time", readService, true);
+        printRow("write, response time", writeResponse, scheduled);
+        printRow("write, service time", writeService, true);
+        if (!scheduled) {
+            System.out.println("(no target rate: response times need a schedule, set -Dload.rate to correct for coordinated omission)");
+        }
+    }
+
+    private static void printRow(String label, LatencyHistogram histogram, boolean show) {
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        if (!show || snapshot.getCount() == 0) {
+            return;
+        }
+        StringBuilder row = new StringBuilder(String.format("%-22s", label));
+        for (double percentile : PERCENTILES) {
+            row.append(String.format(" %9.2f", snapshot.getValueAtQuantile(percentile) / 1e6));
+        }
+        row.append(String.format(" %9.2f", snapshot.getMax() / 1e6));
+        System.out.println(row);
+    }
+}
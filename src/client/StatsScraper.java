@@ -0,0 +1,61 @@
+package client;
+
+import consensus.message.ServerStats;
+import network.ServerInterface;
+
+import java.rmi.registry.LocateRegistry;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Prints the consensus metrics of every server of the cluster side by side, one row per metric.
+ *
+ * Latencies are in microseconds; a server that cannot be reached gets an empty column.
+ *
+ * Usage: java client.StatsScraper [host] [port...]
+ */
+public class StatsScraper {
+
+    public static void main(String[] args) {
+        String host = args.length > 0 ? args[0] : "localhost";
+        List<Integer> ports = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            ports.add(Integer.parseInt(args[i]));
+        }
+        if (ports.isEmpty()) {
+            for (int port = 5001; port <= 5005; port++) {
+                ports.add(port);
+            }
+        }
+
+        List<ServerStats> stats = new ArrayList<>();
+        Set<String> names = new LinkedHashSet<>();
+        for (int port : ports) {
+            try {
+                ServerInterface server = (ServerInterface) LocateRegistry.getRegistry(host, port).lookup("PaxosServer");
+                ServerStats serverStats = server.getStats();
+                stats.add(serverStats);
+                names.addAll(serverStats.getValues().keySet());
+            } catch (Exception e) {
+                System.err.println("Cannot read the metrics of " + host + ":" + port + ": " + e.getMessage());
+                stats.add(null);
+            }
+        }
+
+        StringBuilder header = new StringBuilder(String.format("%-26s", "metric"));
+        for (int port : ports) {
+            header.append(String.format(" %10d", port));
+        }
+        System.out.println(header);
+        for (String name : names) {
+            StringBuilder row = new StringBuilder(String.format("%-26s", name));
+            for (ServerStats serverStats : stats) {
+                Long value = serverStats == null ? null : serverStats.getValues().get(name);
+                row.append(String.format(" %10s", value == null ? "" : value));
+            }
+            System.out.println(row);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package common;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Latency histograms and counters of one server's consensus pipeline.
+ *
+ * The proposer, acceptor and learner of a server share one instance and record into it as they go; recording
+ * never locks or allocates. {@link #toMap()} reads everything at once, and {@link #register(int)} publishes
+ * the same values as the attributes of a JMX MBean named {@code paxos:type=Consensus,port=<port>}.
+ */
+public class ConsensusMetrics {
+
+    // Latencies of the phases of a proposal, and of a client's propose call as a whole
+    public final LatencyHistogram prepare = new LatencyHistogram();
+    public final LatencyHistogram accept = new LatencyHistogram();
+    public final LatencyHistogram commit = new LatencyHistogram();
+    public final LatencyHistogram apply = new LatencyHistogram();
+    public final LatencyHistogram propose = new LatencyHistogram();
+
+    // Proposer: proposals started and decided, phases without a quorum and further attempts after one
+    public final LongAdder proposalsStarted = new LongAdder();
+    public final LongAdder proposalsSucceeded = new LongAdder();
+    public final LongAdder proposalsRejected = new LongAdder();
+    public final LongAdder proposalsRetried = new LongAdder();
+
+    // Acceptor: replies to prepare and accept requests
+    public final LongAdder promises = new LongAdder();
+    public final LongAdder promisesRejected = new LongAdder();
+    public final LongAdder accepts = new LongAdder();
+    public final LongAdder acceptsRejected = new LongAdder();
+
+    /**
+     * @return Every counter, and the count, p50, p99, p99.9 and maximum of every histogram in microseconds,
+     *         by name in a fixed order.
+     */
+    public Map<String, Long> toMap() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        putHistogram(values, "propose", propose);
+        putHistogram(values, "prepare", prepare);
+        putHistogram(values, "accept", accept);
+        putHistogram(values, "commit", commit);
+        putHistogram(values, "apply", apply);
+        values.put("proposer.started", proposalsStarted.sum());
+        values.put("proposer.succeeded", proposalsSucceeded.sum());
+        values.put("proposer.rejected", proposalsRejected.sum());
+        values.put("proposer.retried", proposalsRetried.sum());
+        values.put("acceptor.promised", promises.sum());
+        values.put("acceptor.promiseRejected", promisesRejected.sum());
+        values.put("acceptor.accepted", accepts.sum());
+        values.put("acceptor.acceptRejected", acceptsRejected.sum());
+        return values;
+    }
+
+    private static void putHistogram(Map<String, Long> values, String name, LatencyHistogram histogram) {
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        values.put(name + ".count", snapshot.getCount());
+        values.put(name + ".p50Micros", TimeUnit.NANOSECONDS.toMicros(snapshot.getValueAtQuantile(0.5)));
+        values.put(name + ".p99Micros", TimeUnit.NANOSECONDS.toMicros(snapshot.getValueAtQuantile(0.99)));
+        values.put(name + ".p999Micros", TimeUnit.NANOSECONDS.toMicros(snapshot.getValueAtQuantile(0.999)));
+        values.put(name + ".maxMicros", TimeUnit.NANOSECONDS.toMicros(snapshot.getMax()));
+    }
+
+    /**
+     * Publishes the metrics on the platform MBean server, replacing those of an earlier server on the port.
+     * @param port The port of the server they belong to.
+     */
+    public void register(int port) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("paxos:type=Consensus,port=" + port);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new MetricsMBean(), name);
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register the consensus metrics of port " + port, e);
+        }
+    }
+
+    // Read-only attributes, one per entry of toMap()
+    private class MetricsMBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Long value = toMap().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Long> values = toMap();
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                Long value = values.get(attribute);
+                if (value != null) {
+                    list.add(new Attribute(attribute, value));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Consensus metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException("Consensus metrics have no operations");
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            Map<String, Long> values = toMap();
+            MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[values.size()];
+            int i = 0;
+            for (String name : values.keySet()) {
+                attributes[i++] = new MBeanAttributeInfo(name, Long.class.getName(), name, true, false, false);
+            }
+            return new MBeanInfo(ConsensusMetrics.class.getName(), "Latencies and counters of the consensus pipeline",
+                    attributes, null, null, null);
+        }
+    }
+}
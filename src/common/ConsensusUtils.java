@@ -1,5 +1,8 @@
 package common;
 
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Utility class providing helper methods and constants for the consensus system.
  */
@@ -9,18 +12,42 @@ public class ConsensusUtils {
     public static final String OPERATION_PUT = "PUT";
     public static final String OPERATION_GET = "GET";
     public static final String OPERATION_DELETE = "DELETE";
+    // Fills a log slot that a new leader found without any accepted value
+    public static final String OPERATION_NOOP = "NOOP";
+    // Several client operations decided together in one log slot
+    public static final String OPERATION_BATCH = "BATCH";
 
     // Default values for timeouts and retries
     public static final int DEFAULT_TIMEOUT_MS = 3000; // default timeout in milliseconds
     public static final int DEFAULT_RETRY_ATTEMPTS = 3; // default number of retry attempts
 
+    // Ballots carry the proposing server's port in their low bits, below the round
+    private static final int BALLOT_NODE_BITS = 16;
+
+    /**
+     * Builds a ballot from a round and the ID of the proposing node. Ballots order by round first, so a
+     * proposer that learns of a higher ballot gets ahead of it by moving to the next round, and two
+     * proposers never share a ballot because their node IDs differ.
+     * @param round The proposer's round, counting up from 1.
+     * @param nodeId The proposing node, its server port.
+     * @return The ballot.
+     */
+    public static long ballotOf(long round, int nodeId) {
+        return (round << BALLOT_NODE_BITS) | (nodeId & ((1 << BALLOT_NODE_BITS) - 1));
+    }
+
+    /**
+     * @return The round of a ballot.
+     */
+    public static long roundOf(long ballot) {
+        return ballot >>> BALLOT_NODE_BITS;
+    }
+
     /**
-     * Generates a unique proposal ID based on the current time and the server port.
-     * @param serverPort The port of the server generating the proposal ID.
-     * @return A unique proposal ID.
+     * @return The ID of the node that proposed under a ballot, its server port.
      */
-    public static int generateProposalId(int serverPort) {
-        return (int) (System.currentTimeMillis() % Integer.MAX_VALUE + serverPort);
+    public static int nodeOf(long ballot) {
+        return (int) (ballot & ((1 << BALLOT_NODE_BITS) - 1));
     }
 
     /**
@@ -43,4 +70,18 @@ public class ConsensusUtils {
             Thread.currentThread().interrupt();
         }
     }
+
+    /**
+     * Creates a thread factory for background worker threads that must not keep the JVM alive.
+     * @param namePrefix The prefix of the thread names; a sequence number is appended.
+     * @return A factory producing named daemon threads.
+     */
+    public static ThreadFactory daemonThreadFactory(String namePrefix) {
+        AtomicInteger threadCount = new AtomicInteger(0);
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
 }
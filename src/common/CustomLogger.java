@@ -2,19 +2,37 @@ package common;
 
 /**
  * A simple logging class to standardize log messages for the application.
- * For simplicity, it just prints messages to the standard output.
- * In a real-world application, you'd likely want to use a more sophisticated logging framework.
+ *
+ * Messages are templates whose {@code {}} placeholders are filled with the arguments in order, for example
+ * {@code logger.info("Acceptor on port {} accepts the proposal for slot {}: {}", port, slot, operation)}.
+ * Nothing is built unless the level is enabled, and even then the calling thread only hands the template and
+ * its arguments to a preallocated ring; a background thread builds the text, calling {@code toString()} on
+ * object arguments, and prints it. Arguments must therefore not change after the call. Numbers passed where
+ * an overload takes a {@code long} are not boxed, so the common call shapes of the consensus path allocate
+ * nothing; other shapes fall back to the {@code Object} overloads.
+ *
+ * Settings, read once at startup:
+ * <ul>
+ *     <li>{@code paxos.log.level}: {@code debug}, {@code info} (default), {@code warn}, {@code error} or
+ *     {@code off}. Messages below it are dropped by every logger.</li>
+ *     <li>{@code paxos.log.async}: {@code true} (default) to print from the background thread, {@code false}
+ *     to print on the calling thread.</li>
+ * </ul>
  */
 public class CustomLogger {
 
-    // Enum for log levels to control the verbosity
+    // Enum for log levels to control the verbosity, from the most to the least verbose
     public enum LogLevel {
-        INFO,
         DEBUG,
+        INFO,
         WARN,
-        ERROR
+        ERROR,
+        OFF
     }
 
+    private static volatile LogLevel threshold = parseLevel(System.getProperty("paxos.log.level"));
+    private static final boolean ASYNC = !"false".equalsIgnoreCase(System.getProperty("paxos.log.async"));
+
     private LogLevel logLevel;
 
     public CustomLogger() {
@@ -26,32 +44,156 @@ public class CustomLogger {
         this.logLevel = logLevel;
     }
 
+    /**
+     * Sets the level below which every logger drops its messages.
+     */
+    public static void setThreshold(LogLevel level) {
+        threshold = level;
+    }
+
+    public static LogLevel getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Waits until every message logged so far has been printed.
+     */
+    public static void flush() {
+        if (ASYNC) {
+            RingHolder.RING.flush();
+        }
+    }
+
+    /**
+     * @return true if messages of the level are printed by this logger. Call sites that need work to
+     *         compute their arguments can check this first.
+     */
+    public boolean isEnabled(LogLevel level) {
+        return level != LogLevel.OFF && level.compareTo(logLevel) >= 0 && level.compareTo(threshold) >= 0;
+    }
+
     // Logs an informational message
     public void info(String message) {
-        if (this.logLevel.ordinal() <= LogLevel.INFO.ordinal()) {
-            System.out.println("[INFO] " + message);
-        }
+        log(LogLevel.INFO, message, 0, 0, null, null, null, null, 0, 0, 0, 0);
+    }
+
+    public void info(String template, Object a) {
+        log(LogLevel.INFO, template, 1, 0, a, null, null, null, 0, 0, 0, 0);
+    }
+
+    public void info(String template, long a) {
+        log(LogLevel.INFO, template, 1, 0b1, null, null, null, null, a, 0, 0, 0);
+    }
+
+    public void info(String template, Object a, Object b) {
+        log(LogLevel.INFO, template, 2, 0, a, b, null, null, 0, 0, 0, 0);
+    }
+
+    public void info(String template, long a, Object b) {
+        log(LogLevel.INFO, template, 2, 0b1, null, b, null, null, a, 0, 0, 0);
+    }
+
+    public void info(String template, long a, long b) {
+        log(LogLevel.INFO, template, 2, 0b11, null, null, null, null, a, b, 0, 0);
+    }
+
+    public void info(String template, Object a, Object b, Object c) {
+        log(LogLevel.INFO, template, 3, 0, a, b, c, null, 0, 0, 0, 0);
+    }
+
+    public void info(String template, long a, long b, Object c) {
+        log(LogLevel.INFO, template, 3, 0b11, null, null, c, null, a, b, 0, 0);
+    }
+
+    public void info(String template, long a, long b, long c) {
+        log(LogLevel.INFO, template, 3, 0b111, null, null, null, null, a, b, c, 0);
+    }
+
+    public void info(String template, Object a, Object b, Object c, Object d) {
+        log(LogLevel.INFO, template, 4, 0, a, b, c, d, 0, 0, 0, 0);
     }
 
     // Logs a debug message
     public void debug(String message) {
-        if (this.logLevel.ordinal() <= LogLevel.DEBUG.ordinal()) {
-            System.out.println("[DEBUG] " + message);
-        }
+        log(LogLevel.DEBUG, message, 0, 0, null, null, null, null, 0, 0, 0, 0);
+    }
+
+    public void debug(String template, Object a) {
+        log(LogLevel.DEBUG, template, 1, 0, a, null, null, null, 0, 0, 0, 0);
+    }
+
+    public void debug(String template, Object a, Object b) {
+        log(LogLevel.DEBUG, template, 2, 0, a, b, null, null, 0, 0, 0, 0);
+    }
+
+    public void debug(String template, Object a, Object b, Object c) {
+        log(LogLevel.DEBUG, template, 3, 0, a, b, c, null, 0, 0, 0, 0);
     }
 
     // Logs a warning message
     public void warn(String message) {
-        if (this.logLevel.ordinal() <= LogLevel.WARN.ordinal()) {
-            System.out.println("[WARN] " + message);
-        }
+        log(LogLevel.WARN, message, 0, 0, null, null, null, null, 0, 0, 0, 0);
+    }
+
+    public void warn(String template, Object a) {
+        log(LogLevel.WARN, template, 1, 0, a, null, null, null, 0, 0, 0, 0);
+    }
+
+    public void warn(String template, long a) {
+        log(LogLevel.WARN, template, 1, 0b1, null, null, null, null, a, 0, 0, 0);
+    }
+
+    public void warn(String template, Object a, Object b) {
+        log(LogLevel.WARN, template, 2, 0, a, b, null, null, 0, 0, 0, 0);
+    }
+
+    public void warn(String template, long a, Object b) {
+        log(LogLevel.WARN, template, 2, 0b1, null, b, null, null, a, 0, 0, 0);
+    }
+
+    public void warn(String template, long a, long b) {
+        log(LogLevel.WARN, template, 2, 0b11, null, null, null, null, a, b, 0, 0);
+    }
+
+    public void warn(String template, Object a, Object b, Object c) {
+        log(LogLevel.WARN, template, 3, 0, a, b, c, null, 0, 0, 0, 0);
+    }
+
+    public void warn(String template, long a, long b, Object c) {
+        log(LogLevel.WARN, template, 3, 0b11, null, null, c, null, a, b, 0, 0);
+    }
+
+    public void warn(String template, long a, long b, long c) {
+        log(LogLevel.WARN, template, 3, 0b111, null, null, null, null, a, b, c, 0);
+    }
+
+    public void warn(String template, Object a, Object b, Object c, Object d) {
+        log(LogLevel.WARN, template, 4, 0, a, b, c, d, 0, 0, 0, 0);
     }
 
     // Logs an error message
     public void error(String message) {
-        if (this.logLevel.ordinal() <= LogLevel.ERROR.ordinal()) {
-            System.err.println("[ERROR] " + message);
-        }
+        log(LogLevel.ERROR, message, 0, 0, null, null, null, null, 0, 0, 0, 0);
+    }
+
+    public void error(String template, Object a) {
+        log(LogLevel.ERROR, template, 1, 0, a, null, null, null, 0, 0, 0, 0);
+    }
+
+    public void error(String template, Object a, Object b) {
+        log(LogLevel.ERROR, template, 2, 0, a, b, null, null, 0, 0, 0, 0);
+    }
+
+    public void error(String template, long a, Object b) {
+        log(LogLevel.ERROR, template, 2, 0b1, null, b, null, null, a, 0, 0, 0);
+    }
+
+    public void error(String template, Object a, Object b, Object c) {
+        log(LogLevel.ERROR, template, 3, 0, a, b, c, null, 0, 0, 0, 0);
+    }
+
+    public void error(String template, long a, long b, Object c) {
+        log(LogLevel.ERROR, template, 3, 0b11, null, null, c, null, a, b, 0, 0);
     }
 
     // Set the log level for the logger
@@ -63,4 +205,53 @@ public class CustomLogger {
     public LogLevel getLogLevel() {
         return logLevel;
     }
+
+    private void log(LogLevel level, String template, int argumentCount, int longMask,
+                     Object o0, Object o1, Object o2, Object o3, long l0, long l1, long l2, long l3) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        if (ASYNC) {
+            RingHolder.RING.publish(level, template, argumentCount, longMask, o0, o1, o2, o3, l0, l1, l2, l3);
+            return;
+        }
+        StringBuilder message = new StringBuilder("[").append(level.name()).append("] ");
+        appendFormatted(message, template, argumentCount, longMask, new Object[]{o0, o1, o2, o3}, new long[]{l0, l1, l2, l3}, 0);
+        (level == LogLevel.ERROR ? System.err : System.out).println(message);
+    }
+
+    // Fills the placeholders of a template with the arguments stored from the offset on
+    static void appendFormatted(StringBuilder target, String template, int argumentCount, int longMask,
+                                Object[] objects, long[] longs, int offset) {
+        int argument = 0;
+        int from = 0;
+        int placeholder;
+        while (argument < argumentCount && (placeholder = template.indexOf("{}", from)) >= 0) {
+            target.append(template, from, placeholder);
+            if ((longMask & (1 << argument)) != 0) {
+                target.append(longs[offset + argument]);
+            } else {
+                target.append(objects[offset + argument]);
+            }
+            argument++;
+            from = placeholder + 2;
+        }
+        target.append(template, from, template.length());
+    }
+
+    private static LogLevel parseLevel(String name) {
+        if (name == null) {
+            return LogLevel.INFO;
+        }
+        try {
+            return LogLevel.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return LogLevel.INFO;
+        }
+    }
+
+    // The ring and its writer thread are created on the first message logged
+    private static final class RingHolder {
+        static final LogRing RING = new LogRing();
+    }
 }
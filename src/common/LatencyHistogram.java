@@ -0,0 +1,139 @@
+package common;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of latencies in nanoseconds with log-linear buckets, in the manner of HdrHistogram.
+ *
+ * Values below 64 ns get a bucket each; above that, every power of two is split into 32 buckets, so a
+ * bucket is never wider than about 3% of the values in it, from nanoseconds up to about half an hour.
+ * Recording picks a stripe by thread and increments one counter in it, so it takes no lock, allocates
+ * nothing and keeps threads recording at the same time mostly off each other's cache lines. Reading
+ * sums the stripes; a value recorded meanwhile may or may not be included.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40; // 2^41 ns, about 36 minutes
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    private static final int STRIPES = Math.max(4, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+    private final AtomicLongArray maxima = new AtomicLongArray(STRIPES * 8); // One per cache line
+
+    public LatencyHistogram() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS);
+        }
+    }
+
+    /**
+     * Records one latency.
+     * @param nanos The latency in nanoseconds; negative values count as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        stripes[stripe].getAndIncrement(bucketOf(value));
+        int maxIndex = stripe * 8;
+        long max = maxima.get(maxIndex);
+        while (value > max && !maxima.compareAndSet(maxIndex, max, value)) {
+            max = maxima.get(maxIndex);
+        }
+    }
+
+    /**
+     * Records the time elapsed since a {@link System#nanoTime()} reading.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return The counts recorded so far, summed over the stripes.
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (AtomicLongArray stripe : stripes) {
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                counts[bucket] += stripe.get(bucket);
+            }
+        }
+        long max = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            max = Math.max(max, maxima.get(i * 8));
+        }
+        return new Snapshot(counts, max);
+    }
+
+    private static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_EXPONENT);
+        int shift = exponent - SUB_BUCKET_BITS;
+        long subBucket = Math.min(value >>> shift, 2 * SUB_BUCKETS - 1);
+        return shift * SUB_BUCKETS + (int) subBucket;
+    }
+
+    // The highest value that falls into a bucket
+    private static long highestValueIn(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * The state of a histogram at one moment.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long max;
+
+        private Snapshot(long[] counts, long max) {
+            this.counts = counts;
+            long total = 0;
+            for (long bucketCount : counts) {
+                total += bucketCount;
+            }
+            this.count = total;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return The largest value recorded, or 0 if none was.
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @param quantile Between 0 and 1, for example 0.99.
+         * @return A value at least as large as that share of the recorded values, within the width of its bucket,
+         *         or 0 if nothing was recorded.
+         */
+        public long getValueAtQuantile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int bucket = 0; bucket < counts.length; bucket++) {
+                seen += counts[bucket];
+                if (seen >= rank) {
+                    return Math.min(highestValueIn(bucket), max);
+                }
+            }
+            return max;
+        }
+    }
+}
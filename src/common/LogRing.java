@@ -0,0 +1,158 @@
+package common;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A preallocated, lock-free ring of log records on their way to standard output, drained by one background
+ * thread so that logging threads never wait on the console.
+ *
+ * A record is a level, a message template and up to four arguments, each kept either as a reference or as a
+ * primitive long, so publishing it allocates nothing; the writer thread builds the message text. Records are
+ * numbered in publishing order. A publisher claims the next number with a compare-and-set, fills the cell
+ * the number maps to and then publishes the number in it, so the writer never sees a half-written record.
+ * When the writer falls a full ring behind, records are dropped and counted instead of blocking the caller.
+ */
+final class LogRing {
+
+    static final int MAX_ARGUMENTS = 4;
+    private static final int CAPACITY = 1 << 13;
+    private static final int MASK = CAPACITY - 1;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final CustomLogger.LogLevel[] levels = new CustomLogger.LogLevel[CAPACITY];
+    private final String[] templates = new String[CAPACITY];
+    private final int[] argumentCounts = new int[CAPACITY];
+    private final int[] longMasks = new int[CAPACITY]; // Bit i set: argument i is in longArguments
+    private final Object[] objectArguments = new Object[CAPACITY * MAX_ARGUMENTS];
+    private final long[] longArguments = new long[CAPACITY * MAX_ARGUMENTS];
+    private final AtomicLongArray publishedNumbers = new AtomicLongArray(CAPACITY);
+
+    private final AtomicLong nextToClaim = new AtomicLong();
+    private volatile long nextToWrite = 0; // Advanced by the thread holding the ring's lock
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicBoolean writerIdle = new AtomicBoolean();
+    private final Thread writer;
+
+    // Reused by the thread draining the ring
+    private final StringBuilder out = new StringBuilder(8192);
+    private final StringBuilder err = new StringBuilder(1024);
+
+    LogRing() {
+        for (int cell = 0; cell < CAPACITY; cell++) {
+            publishedNumbers.set(cell, -1);
+        }
+        writer = new Thread(this::run, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        // Records still in the ring when the JVM exits are written out first
+        Runtime.getRuntime().addShutdownHook(new Thread(this::drain, "log-flush"));
+    }
+
+    /**
+     * Publishes a record. Arguments past the count are ignored.
+     * @return false if the ring was full and the record was dropped.
+     */
+    boolean publish(CustomLogger.LogLevel level, String template, int argumentCount, int longMask,
+                    Object o0, Object o1, Object o2, Object o3, long l0, long l1, long l2, long l3) {
+        long number;
+        while (true) {
+            number = nextToClaim.get();
+            if (number - nextToWrite >= CAPACITY) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            if (nextToClaim.compareAndSet(number, number + 1)) {
+                break;
+            }
+        }
+        int cell = (int) (number & MASK);
+        int base = cell * MAX_ARGUMENTS;
+        levels[cell] = level;
+        templates[cell] = template;
+        argumentCounts[cell] = argumentCount;
+        longMasks[cell] = longMask;
+        objectArguments[base] = o0;
+        objectArguments[base + 1] = o1;
+        objectArguments[base + 2] = o2;
+        objectArguments[base + 3] = o3;
+        longArguments[base] = l0;
+        longArguments[base + 1] = l1;
+        longArguments[base + 2] = l2;
+        longArguments[base + 3] = l3;
+        publishedNumbers.set(cell, number); // Releases the record to the writer
+        if (writerIdle.get() && writerIdle.compareAndSet(true, false)) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    /**
+     * Waits until every record published before this call has been written.
+     */
+    void flush() {
+        long target = nextToClaim.get();
+        while (nextToWrite < target) {
+            if (drain() == 0) {
+                Thread.yield(); // A publisher is between its claim and its release
+            }
+        }
+    }
+
+    private void run() {
+        while (true) {
+            if (drain() == 0) {
+                writerIdle.set(true);
+                // A record published between the drain and the flag is picked up at the latest when the park times out
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                writerIdle.set(false);
+            }
+        }
+    }
+
+    // Writes the records published so far in one go, and returns how many there were
+    private synchronized int drain() {
+        long number = nextToWrite;
+        int written = 0;
+        while (publishedNumbers.get((int) (number & MASK)) == number) {
+            int cell = (int) (number & MASK);
+            StringBuilder target = levels[cell] == CustomLogger.LogLevel.ERROR ? err : out;
+            format(target, cell);
+            // Let go of the arguments so the ring keeps nothing alive
+            int base = cell * MAX_ARGUMENTS;
+            for (int i = 0; i < MAX_ARGUMENTS; i++) {
+                objectArguments[base + i] = null;
+            }
+            templates[cell] = null;
+            number++;
+            written++;
+            nextToWrite = number;
+        }
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            out.append("[WARN] ").append(lost).append(" log record(s) dropped, the log writer fell behind\n");
+        }
+        print(System.out, out);
+        print(System.err, err);
+        return written;
+    }
+
+    private void format(StringBuilder target, int cell) {
+        target.append('[').append(levels[cell].name()).append("] ");
+        CustomLogger.appendFormatted(target, templates[cell], argumentCounts[cell], longMasks[cell],
+                objectArguments, longArguments, cell * MAX_ARGUMENTS);
+        target.append('\n');
+    }
+
+    private static void print(PrintStream stream, StringBuilder text) {
+        if (text.length() > 0) {
+            stream.print(text);
+            stream.flush();
+            text.setLength(0);
+        }
+    }
+}
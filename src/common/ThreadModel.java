@@ -0,0 +1,173 @@
+package common;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Selects the kind of thread that runs the server's blocking work: proposals handed to the batching
+ * pipeline, the per-peer sends of a consensus phase, commit propagation, requests arriving over the NIO
+ * transport and the acceptor's background tasks.
+ *
+ * With {@link #VIRTUAL}, each of those tasks gets a virtual thread of its own, which gives its carrier
+ * thread back while it waits on a peer, a lock or the disk, so tens of thousands of requests can wait at
+ * once on a handful of carriers. Virtual threads need Java 21; they are looked up by reflection so the
+ * code still builds and runs on Java 17, where {@link #VIRTUAL} falls back to platform threads.
+ *
+ * The model in use is set with {@code -Dpaxos.threads=platform|virtual} and read when a component
+ * creates its threads, so it must be chosen before the servers are started.
+ */
+public enum ThreadModel {
+    /**
+     * Daemon platform threads, pooled where a component runs many short tasks.
+     */
+    PLATFORM,
+
+    /**
+     * A virtual thread per task, where the running Java version has them.
+     */
+    VIRTUAL;
+
+    private static final CustomLogger logger = new CustomLogger(CustomLogger.LogLevel.INFO);
+
+    // Thread.ofVirtual(), Thread.Builder.name(String, long), Thread.Builder.name(String),
+    // Thread.Builder.unstarted(Runnable), Thread.Builder.factory() and Executors.newThreadPerTaskExecutor
+    private static final Method OF_VIRTUAL;
+    private static final Method NAME_WITH_COUNTER;
+    private static final Method NAME;
+    private static final Method UNSTARTED;
+    private static final Method FACTORY;
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null;
+        Method nameWithCounter = null;
+        Method name = null;
+        Method unstarted = null;
+        Method factory = null;
+        Method newThreadPerTaskExecutor = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            nameWithCounter = builder.getMethod("name", String.class, long.class);
+            name = builder.getMethod("name", String.class);
+            unstarted = builder.getMethod("unstarted", Runnable.class);
+            factory = builder.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            ofVirtual = null; // Before Java 21
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME_WITH_COUNTER = nameWithCounter;
+        NAME = name;
+        UNSTARTED = unstarted;
+        FACTORY = factory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
+    private static volatile ThreadModel current = parse(System.getProperty("paxos.threads"));
+    private static volatile boolean fallbackLogged;
+
+    /**
+     * @return The thread model components create their threads with.
+     */
+    public static ThreadModel current() {
+        return current;
+    }
+
+    public static void setCurrent(ThreadModel model) {
+        current = model;
+    }
+
+    /**
+     * @return true if this Java version has virtual threads.
+     */
+    public static boolean isVirtualSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Parses a thread model name ("platform" or "virtual").
+     * @param name The thread model name, case-insensitive.
+     * @return The matching thread model.
+     * @throws IllegalArgumentException if the name does not match any thread model.
+     */
+    public static ThreadModel fromString(String name) {
+        String normalized = name.trim().toUpperCase();
+        if (normalized.equals("PLATFORM")) {
+            return PLATFORM;
+        }
+        if (normalized.equals("VIRTUAL")) {
+            return VIRTUAL;
+        }
+        throw new IllegalArgumentException("Unknown thread model: " + name);
+    }
+
+    /**
+     * Creates a factory for threads that must not keep the JVM alive.
+     * @param namePrefix The prefix of the thread names; a sequence number is appended.
+     * @return A factory producing named virtual threads, or daemon platform threads.
+     */
+    public ThreadFactory threadFactory(String namePrefix) {
+        if (!usesVirtualThreads()) {
+            return ConsensusUtils.daemonThreadFactory(namePrefix);
+        }
+        return (ThreadFactory) invoke(FACTORY, invoke(NAME_WITH_COUNTER, invoke(OF_VIRTUAL, null), namePrefix + "-", 1L));
+    }
+
+    /**
+     * Creates an executor for short blocking tasks, such as the calls of one consensus phase to its peers.
+     * @param namePrefix The prefix of the thread names.
+     * @return An executor starting a virtual thread per task, or a cached pool of daemon platform threads.
+     */
+    public ExecutorService newTaskExecutor(String namePrefix) {
+        if (!usesVirtualThreads()) {
+            return Executors.newCachedThreadPool(ConsensusUtils.daemonThreadFactory(namePrefix));
+        }
+        return (ExecutorService) invoke(NEW_THREAD_PER_TASK_EXECUTOR, null, threadFactory(namePrefix));
+    }
+
+    /**
+     * Creates an unstarted thread for a long-running task. Virtual threads are always daemon threads.
+     * @param task The task the thread runs.
+     * @param name The name of the thread.
+     * @return The thread.
+     */
+    public Thread newThread(Runnable task, String name) {
+        if (!usesVirtualThreads()) {
+            return new Thread(task, name);
+        }
+        return (Thread) invoke(UNSTARTED, invoke(NAME, invoke(OF_VIRTUAL, null), name), task);
+    }
+
+    private boolean usesVirtualThreads() {
+        if (this != VIRTUAL) {
+            return false;
+        }
+        if (!isVirtualSupported()) {
+            if (!fallbackLogged) {
+                fallbackLogged = true;
+                logger.warn("Virtual threads need Java 21 or later, running on Java {}; using platform threads",
+                        System.getProperty("java.version"));
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot call " + method, e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Call to " + method + " failed", e.getCause());
+        }
+    }
+
+    private static ThreadModel parse(String name) {
+        return name == null ? PLATFORM : fromString(name);
+    }
+}
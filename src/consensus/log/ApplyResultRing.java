@@ -0,0 +1,58 @@
+package consensus.log;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The outcome of applying each of the most recently applied slots, one result per entry of the slot's
+ * operation, so the proposer of a batch can tell every caller whether its own operation took effect.
+ *
+ * Each slot has a fixed cell, slot modulo the capacity, written by the apply stage before it moves past the
+ * slot. A cell holds the slot together with its results, so a reader never mistakes the results of a later
+ * lap for those of the slot it asked for.
+ */
+public class ApplyResultRing {
+
+    public static final int DEFAULT_CAPACITY = 1 << 12;
+
+    private static final class Recorded {
+        final long slot;
+        final boolean[] results;
+
+        Recorded(long slot, boolean[] results) {
+            this.slot = slot;
+            this.results = results;
+        }
+    }
+
+    private final int mask;
+    private final AtomicReferenceArray<Recorded> cells;
+
+    /**
+     * @param capacity The number of cells, a power of two.
+     */
+    public ApplyResultRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.cells = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Records the outcome of applying a slot, replacing the slot a lap behind it.
+     * @param slot The applied slot.
+     * @param results One result per entry of the slot's operation, in batch order.
+     */
+    public void record(long slot, boolean[] results) {
+        cells.set((int) (slot & mask), new Recorded(slot, results));
+    }
+
+    /**
+     * @return The results recorded for the slot, or null if it has not been applied through the apply stage
+     *         or was applied too long ago. The array must not be modified.
+     */
+    public boolean[] get(long slot) {
+        Recorded recorded = cells.get((int) (slot & mask));
+        return recorded == null || recorded.slot != slot ? null : recorded.results;
+    }
+}
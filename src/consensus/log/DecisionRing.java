@@ -0,0 +1,94 @@
+package consensus.log;
+
+import consensus.state.Operation;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A preallocated, lock-free ring of decided operations on their way to the apply stage.
+ *
+ * Each slot has a fixed cell, slot modulo the capacity, so any number of threads can publish decisions in
+ * whatever order they are learned while the single consumer takes them in slot order. A cell records the
+ * slot it holds: a publisher claims the cell with a compare-and-set, writes the operation and then the slot,
+ * so the consumer never sees a half-published entry, and a late publisher never overwrites a newer lap.
+ * Slots too far ahead of the consumer to have a free cell are not published; the consumer finds them in
+ * the replicated log once it gets there.
+ */
+public class DecisionRing {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final long CLAIMED = Long.MIN_VALUE;
+
+    private final int mask;
+    private final Operation[] operations;
+    private final AtomicLongArray publishedSlots;
+
+    /**
+     * @param capacity The number of cells, a power of two.
+     */
+    public DecisionRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.operations = new Operation[capacity];
+        this.publishedSlots = new AtomicLongArray(capacity);
+        for (int cell = 0; cell < capacity; cell++) {
+            publishedSlots.set(cell, -1);
+        }
+    }
+
+    public int capacity() {
+        return operations.length;
+    }
+
+    /**
+     * Publishes the operation decided in a slot, to be taken by the consumer.
+     * @param slot The decided slot.
+     * @param operation The operation decided in it.
+     * @param nextToTake The first slot the consumer has not taken yet.
+     * @return false if the slot has already been passed, published or is a full lap ahead of the consumer.
+     */
+    public boolean publish(long slot, Operation operation, long nextToTake) {
+        if (slot < nextToTake || slot - nextToTake >= operations.length) {
+            return false;
+        }
+        int cell = (int) (slot & mask);
+        while (true) {
+            long held = publishedSlots.get(cell);
+            if (held == CLAIMED) {
+                Thread.onSpinWait(); // Another publisher is between its claim and its release
+                continue;
+            }
+            if (held >= slot) {
+                return false;
+            }
+            if (publishedSlots.compareAndSet(cell, held, CLAIMED)) {
+                break;
+            }
+        }
+        operations[cell] = operation;
+        publishedSlots.set(cell, slot); // Releases the operation to the consumer
+        return true;
+    }
+
+    /**
+     * @return true if the operation of the slot is waiting to be taken.
+     */
+    public boolean isPublished(long slot) {
+        return publishedSlots.get((int) (slot & mask)) == slot;
+    }
+
+    /**
+     * Takes the operation of a slot out of the ring. Only the consumer calls this, once per slot, in slot order.
+     * @return The operation, or null if the slot has not been published.
+     */
+    public Operation take(long slot) {
+        int cell = (int) (slot & mask);
+        if (publishedSlots.get(cell) != slot) {
+            return null;
+        }
+        Operation operation = operations[cell];
+        operations[cell] = null;
+        return operation;
+    }
+}
@@ -0,0 +1,257 @@
+package consensus.log;
+
+import consensus.message.AcceptedValue;
+import consensus.state.Operation;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-slot acceptor state for the replicated log: the promised ballot, the accepted (ballot, operation)
+ * pair and whether the slot has been decided.
+ *
+ * Slots are stored in fixed-size segments of primitive arrays that are allocated on first write, so the
+ * log holds no boxed slot numbers or per-slot entry objects. Slots covered by a snapshot can be
+ * truncated; they count as decided but their values are gone. This class is not thread-safe; callers
+ * must synchronize access.
+ */
+public class ReplicatedLog {
+
+    private static final int SEGMENT_SHIFT = 12;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT; // 4096 slots per segment
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    private static final int INITIAL_SEGMENTS = 16;
+
+    private static final class Segment {
+        final long[] promisedBallots = new long[SEGMENT_SIZE];
+        final long[] acceptedBallots = new long[SEGMENT_SIZE];
+        final Operation[] acceptedValues = new Operation[SEGMENT_SIZE];
+        final boolean[] decided = new boolean[SEGMENT_SIZE];
+    }
+
+    // segments[i] holds segment baseSegment + i; the segments below baseSegment were truncated and dropped
+    private Segment[] segments = new Segment[INITIAL_SEGMENTS];
+    private long baseSegment = 0;
+    private long highestSlot = -1;
+    private long highestAcceptedSlot = -1;
+    private long firstSlot = 0; // Slots below this one have been truncated
+
+    /**
+     * @return The highest slot that has been written to, or -1 if the log is empty.
+     */
+    public long getHighestSlot() {
+        return highestSlot;
+    }
+
+    /**
+     * @return The highest slot a value has been accepted or decided in, or -1 if there is none.
+     */
+    public long getHighestAcceptedSlot() {
+        return highestAcceptedSlot;
+    }
+
+    /**
+     * @return The lowest slot still held by the log; every slot below it was truncated after a snapshot.
+     */
+    public long getFirstSlot() {
+        return firstSlot;
+    }
+
+    /**
+     * Drops every slot below the given one. The dropped slots must be decided and covered by a snapshot.
+     * @param slot The new first slot of the log.
+     */
+    public void truncateBefore(long slot) {
+        if (slot <= firstSlot) {
+            return;
+        }
+        firstSlot = slot;
+        highestSlot = Math.max(highestSlot, slot - 1);
+        highestAcceptedSlot = Math.max(highestAcceptedSlot, slot - 1);
+        // Shift the segments still in use to the front, so the array only spans the slots the log holds
+        long newBaseSegment = slot >>> SEGMENT_SHIFT;
+        long dropped = newBaseSegment - baseSegment;
+        if (dropped <= 0) {
+            return;
+        }
+        if (dropped >= segments.length) {
+            segments = new Segment[INITIAL_SEGMENTS];
+        } else {
+            int kept = segments.length - (int) dropped;
+            Segment[] shifted = new Segment[Math.max(INITIAL_SEGMENTS, kept)];
+            System.arraycopy(segments, (int) dropped, shifted, 0, kept);
+            segments = shifted;
+        }
+        baseSegment = newBaseSegment;
+    }
+
+    public long getPromisedBallot(long slot) {
+        Segment segment = segmentFor(slot);
+        return segment == null ? 0 : segment.promisedBallots[offset(slot)];
+    }
+
+    public void setPromisedBallot(long slot, long ballot) {
+        writableSegment(slot).promisedBallots[offset(slot)] = ballot;
+    }
+
+    /**
+     * @return The highest ballot promised for any slot from the given slot upwards.
+     */
+    public long getHighestPromisedBallotFrom(long fromSlot) {
+        long highest = 0;
+        for (long slot = Math.max(fromSlot, firstSlot); slot <= highestSlot; slot = nextSegmentStart(slot)) {
+            Segment segment = segmentFor(slot);
+            if (segment == null) {
+                continue; // Nothing was ever written in this segment
+            }
+            int end = segmentEnd(slot);
+            for (int offset = offset(slot); offset < end; offset++) {
+                highest = Math.max(highest, segment.promisedBallots[offset]);
+            }
+        }
+        return highest;
+    }
+
+    public long getAcceptedBallot(long slot) {
+        Segment segment = segmentFor(slot);
+        return segment == null ? 0 : segment.acceptedBallots[offset(slot)];
+    }
+
+    public Operation getAcceptedValue(long slot) {
+        Segment segment = segmentFor(slot);
+        return segment == null ? null : segment.acceptedValues[offset(slot)];
+    }
+
+    public void setAccepted(long slot, long ballot, Operation operation) {
+        Segment segment = writableSegment(slot);
+        int offset = offset(slot);
+        segment.acceptedBallots[offset] = ballot;
+        segment.acceptedValues[offset] = operation;
+        highestAcceptedSlot = Math.max(highestAcceptedSlot, slot);
+    }
+
+    /**
+     * @return The accepted value of the slot, or null if nothing has been accepted there.
+     */
+    public AcceptedValue getAccepted(long slot) {
+        Operation operation = getAcceptedValue(slot);
+        return operation == null ? null : new AcceptedValue(slot, getAcceptedBallot(slot), operation);
+    }
+
+    /**
+     * Collects every accepted value from the given slot upwards, in slot order.
+     * @param fromSlot The first slot to include.
+     * @return The accepted values, possibly empty.
+     */
+    public List<AcceptedValue> getAcceptedFrom(long fromSlot) {
+        List<AcceptedValue> accepted = new ArrayList<>();
+        for (long slot = Math.max(fromSlot, firstSlot); slot <= highestSlot; slot = nextSegmentStart(slot)) {
+            Segment segment = segmentFor(slot);
+            if (segment == null) {
+                continue;
+            }
+            long segmentStart = slot & ~(long) SEGMENT_MASK;
+            int end = segmentEnd(slot);
+            for (int offset = offset(slot); offset < end; offset++) {
+                Operation operation = segment.acceptedValues[offset];
+                if (operation != null) {
+                    accepted.add(new AcceptedValue(segmentStart + offset, segment.acceptedBallots[offset], operation));
+                }
+            }
+        }
+        return accepted;
+    }
+
+    public boolean isDecided(long slot) {
+        if (slot < firstSlot) {
+            return true;
+        }
+        Segment segment = segmentFor(slot);
+        return segment != null && segment.decided[offset(slot)];
+    }
+
+    /**
+     * Records the chosen operation of a slot.
+     * @param slot The decided slot.
+     * @param operation The operation chosen for the slot.
+     * @return true if the slot was not decided before, false if this is a repeated decision.
+     */
+    public boolean markDecided(long slot, Operation operation) {
+        if (slot < firstSlot) {
+            return false;
+        }
+        Segment segment = writableSegment(slot);
+        int offset = offset(slot);
+        if (segment.decided[offset]) {
+            return false;
+        }
+        segment.decided[offset] = true;
+        segment.acceptedValues[offset] = operation;
+        highestAcceptedSlot = Math.max(highestAcceptedSlot, slot);
+        return true;
+    }
+
+    /**
+     * Forgets all promises and the accepted values of undecided slots, as an acceptor restarting without
+     * stable storage would. Decided slots are kept.
+     */
+    public void resetUndecided() {
+        highestAcceptedSlot = firstSlot - 1;
+        for (int index = 0; index < segments.length; index++) {
+            Segment segment = segments[index];
+            if (segment == null) {
+                continue;
+            }
+            for (int i = 0; i < SEGMENT_SIZE; i++) {
+                segment.promisedBallots[i] = 0;
+                if (!segment.decided[i]) {
+                    segment.acceptedBallots[i] = 0;
+                    segment.acceptedValues[i] = null;
+                } else {
+                    highestAcceptedSlot = Math.max(highestAcceptedSlot, ((baseSegment + index) << SEGMENT_SHIFT) + i);
+                }
+            }
+        }
+    }
+
+    private Segment segmentFor(long slot) {
+        long index = (slot >>> SEGMENT_SHIFT) - baseSegment;
+        return slot < firstSlot || index < 0 || index >= segments.length ? null : segments[(int) index];
+    }
+
+    private Segment writableSegment(long slot) {
+        if (slot < 0) {
+            throw new IllegalArgumentException("Negative slot: " + slot);
+        }
+        if (slot < firstSlot) {
+            throw new IllegalArgumentException("Truncated slot: " + slot);
+        }
+        int index = Math.toIntExact((slot >>> SEGMENT_SHIFT) - baseSegment);
+        if (index >= segments.length) {
+            Segment[] grown = new Segment[Math.max(segments.length * 2, index + 1)];
+            System.arraycopy(segments, 0, grown, 0, segments.length);
+            segments = grown;
+        }
+        Segment segment = segments[index];
+        if (segment == null) {
+            segment = new Segment();
+            segments[index] = segment;
+        }
+        highestSlot = Math.max(highestSlot, slot);
+        return segment;
+    }
+
+    // The first slot of the segment after the one holding the given slot
+    private static long nextSegmentStart(long slot) {
+        return ((slot >>> SEGMENT_SHIFT) + 1) << SEGMENT_SHIFT;
+    }
+
+    // The offset just past the last slot to scan in the segment holding the given slot
+    private int segmentEnd(long slot) {
+        long segmentStart = slot & ~(long) SEGMENT_MASK;
+        return (int) Math.min(SEGMENT_SIZE, highestSlot - segmentStart + 1);
+    }
+
+    private static int offset(long slot) {
+        return (int) (slot & SEGMENT_MASK);
+    }
+}
@@ -0,0 +1,245 @@
+package consensus.log;
+
+import consensus.message.SnapshotChunk;
+import consensus.message.WireReader;
+import consensus.message.WireWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Point-in-time snapshots of the key-value store, one file per snapshot named after the last slot it covers.
+ *
+ * A snapshot file is a magic number, a format version and the covered slot, followed by a stream of
+ * varint-length-prefixed UTF-8 keys and values ended by a null key, and a CRC32C of everything before it.
+ * A snapshot is written to a temporary file and renamed into place once it is on disk, so a crash never
+ * leaves a partial snapshot behind under a real name.
+ */
+public class SnapshotStore {
+
+    /**
+     * Receives the entries of a snapshot being written.
+     */
+    public interface EntrySink {
+        void put(String key, String value);
+    }
+
+    private static final int MAGIC = 0x50584E53; // "PXSN"
+    private static final byte VERSION = 1;
+    private static final int FLUSH_THRESHOLD = 256 * 1024;
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final String TRANSFER_SUFFIX = ".transfer";
+
+    private final Path directory;
+
+    public SnapshotStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Writes a snapshot and makes it durable.
+     * @param slot The last slot whose effects the snapshot contains.
+     * @param contents Streams the entries into the sink it is given.
+     * @return The size of the snapshot file in bytes.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public long write(long slot, Consumer<EntrySink> contents) throws IOException {
+        Path temporary = directory.resolve(fileName(slot) + TEMPORARY_SUFFIX);
+        long size;
+        try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32C checksum = new CRC32C();
+            WireWriter out = new WireWriter(FLUSH_THRESHOLD + 1024);
+            out.writeBytes(ByteBuffer.allocate(4).putInt(MAGIC).array());
+            out.writeByte(VERSION);
+            out.writeVarLong(slot);
+            try {
+                contents.accept((key, value) -> {
+                    out.writeString(key);
+                    out.writeString(value);
+                    if (out.size() >= FLUSH_THRESHOLD) {
+                        flush(file, out, checksum);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            out.writeString(null);
+            flush(file, out, checksum);
+            ByteBuffer trailer = ByteBuffer.allocate(4).putInt((int) checksum.getValue());
+            trailer.flip();
+            while (trailer.hasRemaining()) {
+                file.write(trailer);
+            }
+            file.force(true);
+            size = file.size();
+        }
+        Files.move(temporary, directory.resolve(fileName(slot)), StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+        return size;
+    }
+
+    /**
+     * @return The slot covered by the newest snapshot, or -1 if there is none.
+     */
+    public long latestSlot() throws IOException {
+        List<Long> slots = snapshotSlots();
+        return slots.isEmpty() ? -1 : slots.get(slots.size() - 1);
+    }
+
+    /**
+     * Streams the entries of a snapshot after verifying its checksum.
+     * @param slot The slot the snapshot covers.
+     * @param consumer Receives every key and value.
+     * @throws IOException If the snapshot cannot be read or is damaged.
+     */
+    public void load(long slot, BiConsumer<String, String> consumer) throws IOException {
+        load(directory.resolve(fileName(slot)), slot, consumer);
+    }
+
+    /**
+     * Streams the entries of a snapshot file anywhere on disk after verifying its checksum.
+     * @param path The snapshot file.
+     * @param slot The slot the snapshot is expected to cover.
+     * @param consumer Receives every key and value.
+     * @throws IOException If the snapshot cannot be read or is damaged.
+     */
+    public static void load(Path path, long slot, BiConsumer<String, String> consumer) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = file.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot " + path + " is too large to map: " + size + " bytes");
+            }
+            MappedByteBuffer mapped = file.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (size < 9 || mapped.getInt(0) != MAGIC || mapped.get(4) != VERSION) {
+                throw new IOException("Not a snapshot file: " + path);
+            }
+            CRC32C checksum = new CRC32C();
+            ByteBuffer body = mapped.duplicate();
+            body.limit((int) size - 4);
+            checksum.update(body);
+            if ((int) checksum.getValue() != mapped.getInt((int) size - 4)) {
+                throw new IOException("Snapshot " + path + " is damaged");
+            }
+            mapped.position(5);
+            mapped.limit((int) size - 4);
+            WireReader in = new WireReader(mapped);
+            if (in.readVarLong() != slot) {
+                throw new IOException("Snapshot " + path + " does not cover slot " + slot);
+            }
+            String key;
+            while ((key = in.readString()) != null) {
+                consumer.accept(key, in.readString());
+            }
+        }
+    }
+
+    /**
+     * Reads part of a snapshot file, to send it to another server.
+     * @param slot The slot the snapshot covers.
+     * @param offset The position in the file to read from.
+     * @param maxBytes The most bytes to read.
+     * @return The bytes at the offset, fewer than maxBytes only at the end of the file.
+     * @throws IOException If the snapshot does not exist, for example because a newer one replaced it.
+     */
+    public SnapshotChunk readChunk(long slot, long offset, int maxBytes) throws IOException {
+        try (FileChannel file = FileChannel.open(directory.resolve(fileName(slot)), StandardOpenOption.READ)) {
+            long size = file.size();
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, Math.min(maxBytes, size - offset)));
+            while (buffer.hasRemaining()) {
+                if (file.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("Snapshot of slot " + slot + " shrank while being read");
+                }
+            }
+            return new SnapshotChunk(slot, offset, size, buffer.array());
+        }
+    }
+
+    /**
+     * @return Where to receive a snapshot transferred from another server; left-overs are removed with the
+     *         temporary files.
+     */
+    public Path transferFile(long slot) {
+        return directory.resolve(fileName(slot) + TRANSFER_SUFFIX + TEMPORARY_SUFFIX);
+    }
+
+    /**
+     * Makes a snapshot received from another server the newest one of this server.
+     * @param slot The slot the snapshot covers.
+     * @param received The complete snapshot file, already forced to disk.
+     * @throws IOException If the file cannot be moved into place.
+     */
+    public void install(long slot, Path received) throws IOException {
+        Files.move(received, directory.resolve(fileName(slot)), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+    }
+
+    /**
+     * Deletes every snapshot older than the given one, along with any temporary file left by a crash.
+     */
+    public void deleteBefore(long slot) throws IOException {
+        for (long older : snapshotSlots()) {
+            if (older < slot) {
+                Files.deleteIfExists(directory.resolve(fileName(older)));
+            }
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*" + TEMPORARY_SUFFIX)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static void flush(FileChannel file, WireWriter out, CRC32C checksum) {
+        byte[] bytes = out.toByteArray();
+        checksum.update(bytes);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            while (buffer.hasRemaining()) {
+                file.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        out.reset();
+    }
+
+    // Makes the rename of a finished snapshot durable
+    private void syncDirectory() {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException ignored) {
+            // Not supported on every platform; the rename is still atomic
+        }
+    }
+
+    private List<Long> snapshotSlots() throws IOException {
+        List<Long> slots = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                slots.add(Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length())));
+            }
+        }
+        slots.sort(null);
+        return slots;
+    }
+
+    private static String fileName(long slot) {
+        return String.format("%s%020d%s", SNAPSHOT_PREFIX, slot, SNAPSHOT_SUFFIX);
+    }
+}
@@ -0,0 +1,472 @@
+package consensus.log;
+
+import consensus.message.MessageCodec;
+import consensus.message.WireReader;
+import consensus.message.WireWriter;
+import consensus.state.Operation;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of acceptor state changes: promises, accepted values and decided slots.
+ *
+ * Records go to a sequence of segment files named after the log position they start at. Each record is
+ * a 4-byte length, a CRC32C checksum and a type byte followed by a {@link MessageCodec} payload. The
+ * position just past a record is its log sequence number (LSN); an acceptor must not answer a request
+ * before {@link #awaitDurable} has returned for the LSN of the record it wrote.
+ *
+ * With {@link SyncMode#GROUP} the first thread that needs durability forces the file once for every
+ * record written so far, while later threads wait and are released by that same force. On opening, the
+ * log is replayed into a {@link RecordHandler} and a torn record at the end is cut off.
+ */
+public class WriteAheadLog implements AutoCloseable {
+
+    /**
+     * When appended records are forced to disk.
+     */
+    public enum SyncMode {
+        /**
+         * Records are written to the file but never forced; a machine crash may lose them.
+         */
+        NONE,
+
+        /**
+         * Every record is forced before its append returns, one fsync per record.
+         */
+        RECORD,
+
+        /**
+         * Concurrent records share one fsync, performed when the first of them awaits durability.
+         */
+        GROUP;
+
+        /**
+         * Parses a sync mode name ("none", "record" or "group").
+         * @param name The mode name, case-insensitive.
+         * @return The matching mode.
+         * @throws IllegalArgumentException if the name does not match any mode.
+         */
+        public static SyncMode fromString(String name) {
+            return SyncMode.valueOf(name.trim().toUpperCase());
+        }
+    }
+
+    /**
+     * Receives the records of the log in the order they were written.
+     */
+    public interface RecordHandler {
+        void onPromise(long slot, long ballot);
+
+        void onRangePromise(long fromSlot, long ballot);
+
+        void onAccept(long slot, long ballot, Operation operation);
+
+        void onDecision(long slot, Operation operation);
+    }
+
+    private static final byte RECORD_PROMISE = 1;
+    private static final byte RECORD_RANGE_PROMISE = 2;
+    private static final byte RECORD_ACCEPT = 3;
+    private static final byte RECORD_DECISION = 4;
+
+    private static final int HEADER_SIZE = 8; // Length and checksum
+    private static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final SyncMode syncMode;
+
+    // Guarded by appendLock
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final WireWriter payload = new WireWriter(256);
+    private final CRC32C checksum = new CRC32C();
+    private ByteBuffer writeBuffer = ByteBuffer.allocateDirect(64 * 1024);
+    private FileChannel channel;
+    private long segmentStart;
+    private long writtenLsn;
+
+    // Guarded by forceLock, which is only ever taken inside appendLock, never the other way round
+    private final ReentrantLock forceLock = new ReentrantLock();
+
+    // Guarded by syncLock
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition syncDone = syncLock.newCondition();
+    private boolean syncing;
+    private volatile long durableLsn;
+    private final AtomicLong forceCount = new AtomicLong();
+
+    private WriteAheadLog(Path directory, SyncMode syncMode) {
+        this.directory = directory;
+        this.syncMode = syncMode;
+    }
+
+    /**
+     * Opens the log in a directory, replays every intact record into the handler and prepares the log
+     * for appending after the last one.
+     * @param directory The directory holding the segment files; created if missing.
+     * @param syncMode When records are forced to disk.
+     * @param handler Receives the replayed records.
+     * @return The open log.
+     * @throws IOException If the directory cannot be read or written.
+     */
+    public static WriteAheadLog open(Path directory, SyncMode syncMode, RecordHandler handler) throws IOException {
+        Files.createDirectories(directory);
+        WriteAheadLog wal = new WriteAheadLog(directory, syncMode);
+        wal.replay(handler);
+        return wal;
+    }
+
+    public SyncMode getSyncMode() {
+        return syncMode;
+    }
+
+    /**
+     * @return The LSN just past the last record written.
+     */
+    public long getWrittenLsn() {
+        appendLock.lock();
+        try {
+            return writtenLsn;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * @return How many times the log has been forced to disk since it was opened.
+     */
+    public long getForceCount() {
+        return forceCount.get();
+    }
+
+    public long appendPromise(long slot, long ballot) throws IOException {
+        appendLock.lock();
+        try {
+            payload.reset();
+            payload.writeVarLong(slot);
+            payload.writeSignedVarLong(ballot);
+            return append(RECORD_PROMISE);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public long appendRangePromise(long fromSlot, long ballot) throws IOException {
+        appendLock.lock();
+        try {
+            payload.reset();
+            payload.writeVarLong(fromSlot);
+            payload.writeSignedVarLong(ballot);
+            return append(RECORD_RANGE_PROMISE);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public long appendAccept(long slot, long ballot, Operation operation) throws IOException {
+        appendLock.lock();
+        try {
+            payload.reset();
+            payload.writeVarLong(slot);
+            payload.writeSignedVarLong(ballot);
+            MessageCodec.writeOperation(payload, operation);
+            return append(RECORD_ACCEPT);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public long appendDecision(long slot, Operation operation) throws IOException {
+        appendLock.lock();
+        try {
+            payload.reset();
+            payload.writeVarLong(slot);
+            MessageCodec.writeOperation(payload, operation);
+            return append(RECORD_DECISION);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until every record up to the given LSN is on disk. In group mode the calling thread either
+     * forces the log itself or waits for a force already under way that covers its record.
+     * @param lsn The LSN returned by an append.
+     * @throws IOException If forcing the log fails or the thread is interrupted.
+     */
+    public void awaitDurable(long lsn) throws IOException {
+        if (syncMode != SyncMode.GROUP || lsn <= durableLsn) {
+            return;
+        }
+        while (true) {
+            syncLock.lock();
+            try {
+                while (syncing && durableLsn < lsn) {
+                    syncDone.await();
+                }
+                if (durableLsn >= lsn) {
+                    return;
+                }
+                syncing = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the write-ahead log");
+            } finally {
+                syncLock.unlock();
+            }
+            long forced = 0;
+            try {
+                forced = force();
+            } finally {
+                syncLock.lock();
+                try {
+                    syncing = false;
+                    durableLsn = Math.max(durableLsn, forced);
+                    syncDone.signalAll();
+                } finally {
+                    syncLock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts a new segment so that the records appended next can replace everything before them.
+     * Once those records are durable, {@link #deleteSegmentsBefore} removes the older segments.
+     * @return The LSN the new segment starts at.
+     * @throws IOException If the new segment cannot be created.
+     */
+    public long startCheckpoint() throws IOException {
+        appendLock.lock();
+        try {
+            if (writtenLsn > segmentStart) {
+                rollSegment();
+            }
+            return segmentStart;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Deletes every segment that ends at or before the given LSN.
+     * @param lsn An LSN returned by {@link #startCheckpoint()}.
+     * @return The number of segments deleted.
+     */
+    public int deleteSegmentsBefore(long lsn) throws IOException {
+        int deleted = 0;
+        long current;
+        appendLock.lock();
+        try {
+            current = segmentStart;
+        } finally {
+            appendLock.unlock();
+        }
+        for (long start : segmentStarts()) {
+            if (start < lsn && start < current && Files.deleteIfExists(segmentPath(start))) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public void close() throws IOException {
+        appendLock.lock();
+        try {
+            forceLock.lock();
+            try {
+                if (channel != null && channel.isOpen()) {
+                    channel.force(false);
+                    channel.close();
+                }
+            } finally {
+                forceLock.unlock();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // Writes the payload as one record and returns its LSN; caller holds appendLock
+    private long append(byte type) throws IOException {
+        int length = 1 + payload.size();
+        if (writtenLsn - segmentStart + HEADER_SIZE + length > SEGMENT_SIZE && writtenLsn > segmentStart) {
+            rollSegment();
+        }
+        if (writeBuffer.capacity() < HEADER_SIZE + length) {
+            writeBuffer = ByteBuffer.allocateDirect(HEADER_SIZE + length);
+        }
+        writeBuffer.clear();
+        writeBuffer.position(HEADER_SIZE);
+        writeBuffer.put(type);
+        payload.writeTo(writeBuffer);
+        writeBuffer.flip();
+        checksum.reset();
+        writeBuffer.position(HEADER_SIZE);
+        checksum.update(writeBuffer);
+        writeBuffer.putInt(0, length);
+        writeBuffer.putInt(4, (int) checksum.getValue());
+        writeBuffer.position(0);
+        while (writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
+        }
+        writtenLsn += HEADER_SIZE + length;
+        if (syncMode == SyncMode.RECORD) {
+            channel.force(false);
+            forceCount.incrementAndGet();
+            durableLsn = writtenLsn;
+        }
+        return writtenLsn;
+    }
+
+    // Forces every record written so far and returns the LSN it covers
+    private long force() throws IOException {
+        FileChannel target;
+        long lsn;
+        appendLock.lock();
+        try {
+            target = channel;
+            lsn = writtenLsn;
+        } finally {
+            appendLock.unlock();
+        }
+        forceLock.lock();
+        try {
+            // A segment closed in the meantime was forced completely when it was rolled over
+            if (target.isOpen()) {
+                target.force(false);
+                forceCount.incrementAndGet();
+            }
+        } finally {
+            forceLock.unlock();
+        }
+        return lsn;
+    }
+
+    // Finishes the current segment and starts a new one at the current LSN; caller holds appendLock
+    private void rollSegment() throws IOException {
+        forceLock.lock();
+        try {
+            channel.force(false);
+            channel.close();
+        } finally {
+            forceLock.unlock();
+        }
+        segmentStart = writtenLsn;
+        channel = openSegment(segmentStart);
+    }
+
+    private FileChannel openSegment(long start) throws IOException {
+        return FileChannel.open(segmentPath(start), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+    }
+
+    private Path segmentPath(long start) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, start, SEGMENT_SUFFIX));
+    }
+
+    private void replay(RecordHandler handler) throws IOException {
+        List<Long> starts = segmentStarts();
+        long start = starts.isEmpty() ? 0 : starts.get(0);
+        long validEnd = 0;
+        for (int i = 0; i < starts.size(); i++) {
+            start = starts.get(i);
+            validEnd = replaySegment(segmentPath(start), handler);
+            if (i + 1 == starts.size() || starts.get(i + 1) != start + validEnd) {
+                // The log ends here, at its last segment or at a damaged record; nothing after that can be trusted
+                for (int j = i + 1; j < starts.size(); j++) {
+                    Files.deleteIfExists(segmentPath(starts.get(j)));
+                }
+                break;
+            }
+        }
+        segmentStart = start;
+        channel = openSegment(start);
+        channel.truncate(validEnd);
+        channel.position(validEnd);
+        writtenLsn = start + validEnd;
+        durableLsn = writtenLsn;
+    }
+
+    // Replays the intact records of one segment and returns the offset just past the last of them
+    private long replaySegment(Path path, RecordHandler handler) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = file.size();
+            if (size == 0) {
+                return 0;
+            }
+            MappedByteBuffer mapped = file.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            CRC32C crc = new CRC32C();
+            while (mapped.remaining() >= HEADER_SIZE) {
+                int start = mapped.position();
+                int length = mapped.getInt();
+                int expected = mapped.getInt();
+                if (length <= 0 || length > mapped.remaining()) {
+                    return start;
+                }
+                ByteBuffer record = mapped.slice();
+                record.limit(length);
+                crc.reset();
+                crc.update(record.duplicate());
+                if ((int) crc.getValue() != expected) {
+                    return start;
+                }
+                dispatch(record, handler);
+                mapped.position(mapped.position() + length);
+            }
+            return mapped.position();
+        }
+    }
+
+    private static void dispatch(ByteBuffer record, RecordHandler handler) {
+        byte type = record.get();
+        WireReader in = new WireReader(record);
+        switch (type) {
+            case RECORD_PROMISE:
+                handler.onPromise(in.readVarLong(), in.readSignedVarLong());
+                break;
+            case RECORD_RANGE_PROMISE:
+                handler.onRangePromise(in.readVarLong(), in.readSignedVarLong());
+                break;
+            case RECORD_ACCEPT: {
+                long slot = in.readVarLong();
+                long ballot = in.readSignedVarLong();
+                handler.onAccept(slot, ballot, MessageCodec.readOperation(in));
+                break;
+            }
+            case RECORD_DECISION: {
+                long slot = in.readVarLong();
+                handler.onDecision(slot, MessageCodec.readOperation(in));
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown write-ahead log record type " + type);
+        }
+    }
+
+    private List<Long> segmentStarts() throws IOException {
+        List<Long> starts = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                starts.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        starts.sort(null);
+        return starts;
+    }
+}
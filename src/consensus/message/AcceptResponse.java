@@ -0,0 +1,49 @@
+package consensus.message;
+
+import java.io.Serializable;
+
+/**
+ * An acceptor's reply to an accept request.
+ * A rejection carries the highest ballot the acceptor has seen and the value it had accepted in the slot, if any.
+ */
+public class AcceptResponse implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final boolean accepted;
+    private final long highestBallot;
+    private final AcceptedValue previouslyAccepted;
+
+    private AcceptResponse(boolean accepted, long highestBallot, AcceptedValue previouslyAccepted) {
+        this.accepted = accepted;
+        this.highestBallot = highestBallot;
+        this.previouslyAccepted = previouslyAccepted;
+    }
+
+    public static AcceptResponse accept(long ballot) {
+        return new AcceptResponse(true, ballot, null);
+    }
+
+    public static AcceptResponse reject(long highestBallot, AcceptedValue previouslyAccepted) {
+        return new AcceptResponse(false, highestBallot, previouslyAccepted);
+    }
+
+    public boolean isAccepted() {
+        return accepted;
+    }
+
+    public long getHighestBallot() {
+        return highestBallot;
+    }
+
+    /**
+     * @return The value the acceptor held for the slot when it rejected the request, or null.
+     */
+    public AcceptedValue getPreviouslyAccepted() {
+        return previouslyAccepted;
+    }
+
+    // Serialized in its compact wire form, see MessageCodec
+    private Object writeReplace() {
+        return WireForm.replace(this);
+    }
+}
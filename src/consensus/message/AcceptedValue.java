@@ -0,0 +1,47 @@
+package consensus.message;
+
+import consensus.state.Operation;
+import java.io.Serializable;
+
+/**
+ * An operation an acceptor has accepted for a slot, together with the ballot it was accepted under.
+ */
+public class AcceptedValue implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long slot;
+    private final long ballot;
+    private final Operation operation;
+
+    public AcceptedValue(long slot, long ballot, Operation operation) {
+        this.slot = slot;
+        this.ballot = ballot;
+        this.operation = operation;
+    }
+
+    public long getSlot() {
+        return slot;
+    }
+
+    public long getBallot() {
+        return ballot;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    @Override
+    public String toString() {
+        return "AcceptedValue{" +
+                "slot=" + slot +
+                ", ballot=" + ballot +
+                ", operation=" + operation +
+                '}';
+    }
+
+    // Serialized in its compact wire form, see MessageCodec
+    private Object writeReplace() {
+        return WireForm.replace(this);
+    }
+}
@@ -0,0 +1,62 @@
+package consensus.message;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A server's reply to a replica catching up on decided slots.
+ * It carries a run of consecutive decided slots, or, if the requested slots have already been truncated
+ * after a snapshot, the slot of the snapshot the replica has to fetch instead.
+ */
+public class CatchUpResponse implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final List<Decision> decisions;
+    private final long highestAppliedSlot;
+    private final long snapshotSlot;
+
+    private CatchUpResponse(List<Decision> decisions, long highestAppliedSlot, long snapshotSlot) {
+        this.decisions = decisions;
+        this.highestAppliedSlot = highestAppliedSlot;
+        this.snapshotSlot = snapshotSlot;
+    }
+
+    public static CatchUpResponse decisions(List<Decision> decisions, long highestAppliedSlot) {
+        return new CatchUpResponse(decisions, highestAppliedSlot, -1);
+    }
+
+    public static CatchUpResponse snapshotRequired(long snapshotSlot, long highestAppliedSlot) {
+        return new CatchUpResponse(Collections.emptyList(), highestAppliedSlot, snapshotSlot);
+    }
+
+    /**
+     * @return The decided slots from the requested one onwards, in slot order; empty if none are available.
+     */
+    public List<Decision> getDecisions() {
+        return decisions;
+    }
+
+    /**
+     * @return The highest slot the responding server has applied.
+     */
+    public long getHighestAppliedSlot() {
+        return highestAppliedSlot;
+    }
+
+    public boolean isSnapshotRequired() {
+        return snapshotSlot >= 0;
+    }
+
+    /**
+     * @return The slot of the snapshot to fetch, or -1 if the decisions could be sent.
+     */
+    public long getSnapshotSlot() {
+        return snapshotSlot;
+    }
+
+    // Serialized in its compact wire form, see MessageCodec
+    private Object writeReplace() {
+        return WireForm.replace(this);
+    }
+}
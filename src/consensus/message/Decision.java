@@ -0,0 +1,40 @@
+package consensus.message;
+
+import consensus.state.Operation;
+import java.io.Serializable;
+
+/**
+ * An operation that has been chosen for a log slot, as announced to the learners of other servers.
+ */
+public class Decision implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long slot;
+    private final Operation operation;
+
+    public Decision(long slot, Operation operation) {
+        this.slot = slot;
+        this.operation = operation;
+    }
+
+    public long getSlot() {
+        return slot;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    @Override
+    public String toString() {
+        return "Decision{" +
+                "slot=" + slot +
+                ", operation=" + operation +
+                '}';
+    }
+
+    // Serialized in its compact wire form, see MessageCodec
+    private Object writeReplace() {
+        return WireForm.replace(this);
+    }
+}
@@ -0,0 +1,419 @@
+package consensus.message;
+
+import common.ConsensusUtils;
+import consensus.state.Operation;
+import consensus.state.VersionedValue;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hand-written compact encoding of operations and consensus messages, shared by every transport.
+ *
+ * An operation is a one-byte opcode instead of its type string, a zigzag varint proposal ID and
+ * varint-length-prefixed UTF-8 key and value; slots are varints and ballots zigzag varints. A top-level message
+ * starts with a one-byte kind so it can be decoded without knowing its type in advance.
+ *
+ * Under Java serialization the message classes replace themselves with a {@link WireForm} carrying
+ * these bytes. Setting {@code -Dpaxos.codec=java} falls back to default serialization.
+ */
+public final class MessageCodec {
+
+    // Message kinds
+    public static final byte KIND_OPERATION = 1;
+    public static final byte KIND_ACCEPTED_VALUE = 2;
+    public static final byte KIND_PREPARE_RESPONSE = 3;
+    public static final byte KIND_ACCEPT_RESPONSE = 4;
+    public static final byte KIND_DECISION = 5;
+    public static final byte KIND_CATCH_UP_RESPONSE = 6;
+    public static final byte KIND_SNAPSHOT_CHUNK = 7;
+    public static final byte KIND_READ_INDEX_RESPONSE = 8;
+    public static final byte KIND_READ_RESULT = 9;
+    public static final byte KIND_SNAPSHOT_READ_RESULT = 10;
+    public static final byte KIND_SERVER_STATS = 11;
+
+    // Operation opcodes; OPCODE_OTHER is followed by the type string for types the codec does not know
+    private static final byte OPCODE_OTHER = 0;
+    private static final byte OPCODE_PUT = 1;
+    private static final byte OPCODE_GET = 2;
+    private static final byte OPCODE_DELETE = 3;
+    private static final byte OPCODE_NOOP = 4;
+    private static final byte OPCODE_BATCH = 5;
+
+    private static final byte FLAG_POSITIVE = 1;
+    private static final byte FLAG_HAS_VALUE = 2;
+    private static final byte FLAG_LEASE_RENEWED = 4;
+    private static final byte FLAG_LEASED = 8;
+
+    private static volatile boolean enabled = !"java".equalsIgnoreCase(System.getProperty("paxos.codec"));
+
+    private MessageCodec() {
+    }
+
+    /**
+     * @return true if message classes serialize through this codec rather than default Java serialization.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        MessageCodec.enabled = enabled;
+    }
+
+    /**
+     * Encodes a top-level message, prefixed with its kind.
+     * @param message An Operation, AcceptedValue, PrepareResponse, AcceptResponse, Decision, CatchUpResponse or SnapshotChunk.
+     * @return The encoded bytes.
+     */
+    public static byte[] encode(Object message) {
+        WireWriter out = new WireWriter();
+        write(out, message);
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes a top-level message, prefixed with its kind.
+     */
+    public static void write(WireWriter out, Object message) {
+        if (message instanceof Operation) {
+            out.writeByte(KIND_OPERATION);
+            writeOperation(out, (Operation) message);
+        } else if (message instanceof AcceptedValue) {
+            out.writeByte(KIND_ACCEPTED_VALUE);
+            writeAcceptedValue(out, (AcceptedValue) message);
+        } else if (message instanceof PrepareResponse) {
+            out.writeByte(KIND_PREPARE_RESPONSE);
+            writePrepareResponse(out, (PrepareResponse) message);
+        } else if (message instanceof AcceptResponse) {
+            out.writeByte(KIND_ACCEPT_RESPONSE);
+            writeAcceptResponse(out, (AcceptResponse) message);
+        } else if (message instanceof Decision) {
+            out.writeByte(KIND_DECISION);
+            writeDecision(out, (Decision) message);
+        } else if (message instanceof CatchUpResponse) {
+            out.writeByte(KIND_CATCH_UP_RESPONSE);
+            writeCatchUpResponse(out, (CatchUpResponse) message);
+        } else if (message instanceof SnapshotChunk) {
+            out.writeByte(KIND_SNAPSHOT_CHUNK);
+            writeSnapshotChunk(out, (SnapshotChunk) message);
+        } else if (message instanceof ReadIndexResponse) {
+            out.writeByte(KIND_READ_INDEX_RESPONSE);
+            writeReadIndexResponse(out, (ReadIndexResponse) message);
+        } else if (message instanceof ReadResult) {
+            out.writeByte(KIND_READ_RESULT);
+            writeReadResult(out, (ReadResult) message);
+        } else if (message instanceof SnapshotReadResult) {
+            out.writeByte(KIND_SNAPSHOT_READ_RESULT);
+            writeSnapshotReadResult(out, (SnapshotReadResult) message);
+        } else if (message instanceof ServerStats) {
+            out.writeByte(KIND_SERVER_STATS);
+            writeServerStats(out, (ServerStats) message);
+        } else {
+            throw new IllegalArgumentException("No wire encoding for " + message.getClass().getName());
+        }
+    }
+
+    /**
+     * Decodes a top-level message written by {@link #encode(Object)}.
+     */
+    public static Object decode(byte[] bytes) {
+        return read(new WireReader(bytes));
+    }
+
+    /**
+     * Reads a top-level message written by {@link #write(WireWriter, Object)}.
+     */
+    public static Object read(WireReader in) {
+        byte kind = in.readByte();
+        switch (kind) {
+            case KIND_OPERATION:
+                return readOperation(in);
+            case KIND_ACCEPTED_VALUE:
+                return readAcceptedValue(in);
+            case KIND_PREPARE_RESPONSE:
+                return readPrepareResponse(in);
+            case KIND_ACCEPT_RESPONSE:
+                return readAcceptResponse(in);
+            case KIND_DECISION:
+                return readDecision(in);
+            case KIND_CATCH_UP_RESPONSE:
+                return readCatchUpResponse(in);
+            case KIND_SNAPSHOT_CHUNK:
+                return readSnapshotChunk(in);
+            case KIND_READ_INDEX_RESPONSE:
+                return readReadIndexResponse(in);
+            case KIND_READ_RESULT:
+                return readReadResult(in);
+            case KIND_SNAPSHOT_READ_RESULT:
+                return readSnapshotReadResult(in);
+            case KIND_SERVER_STATS:
+                return readServerStats(in);
+            default:
+                throw new IllegalArgumentException("Unknown message kind: " + kind);
+        }
+    }
+
+    public static void writeOperation(WireWriter out, Operation operation) {
+        byte opcode = opcodeOf(operation.getOperationType());
+        out.writeByte(opcode);
+        if (opcode == OPCODE_OTHER) {
+            out.writeString(operation.getOperationType());
+        }
+        out.writeSignedVarLong(operation.getProposalId());
+        out.writeVarLong(operation.getClientId());
+        out.writeVarLong(operation.getSequence());
+        if (opcode == OPCODE_BATCH) {
+            List<Operation> batched = operation.getBatchedOperations();
+            out.writeVarInt(batched.size());
+            for (Operation batchedOperation : batched) {
+                writeOperation(out, batchedOperation);
+            }
+            return;
+        }
+        out.writeString(operation.getKey());
+        out.writeString(operation.getValue());
+    }
+
+    public static Operation readOperation(WireReader in) {
+        byte opcode = in.readByte();
+        String type = opcode == OPCODE_OTHER ? in.readString() : typeOf(opcode);
+        int proposalId = (int) in.readSignedVarLong();
+        long clientId = in.readVarLong();
+        long sequence = in.readVarLong();
+        if (opcode == OPCODE_BATCH) {
+            int size = in.readVarInt();
+            List<Operation> batched = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                batched.add(readOperation(in));
+            }
+            return Operation.batchOf(clientId, sequence, proposalId, batched);
+        }
+        String key = in.readString();
+        String value = in.readString();
+        return new Operation(clientId, sequence, proposalId, type, key, value);
+    }
+
+    public static void writeAcceptedValue(WireWriter out, AcceptedValue value) {
+        out.writeVarLong(value.getSlot());
+        out.writeSignedVarLong(value.getBallot());
+        writeOperation(out, value.getOperation());
+    }
+
+    public static AcceptedValue readAcceptedValue(WireReader in) {
+        long slot = in.readVarLong();
+        long ballot = in.readSignedVarLong();
+        return new AcceptedValue(slot, ballot, readOperation(in));
+    }
+
+    public static void writePrepareResponse(WireWriter out, PrepareResponse response) {
+        boolean leased = response.getLeaseHolderPort() >= 0;
+        out.writeByte((response.isPromised() ? FLAG_POSITIVE : 0) | (leased ? FLAG_LEASED : 0));
+        out.writeSignedVarLong(response.getHighestBallot());
+        if (leased) {
+            out.writeVarInt(response.getLeaseHolderPort());
+        }
+        List<AcceptedValue> acceptedValues = response.getAcceptedValues();
+        out.writeVarInt(acceptedValues.size());
+        for (AcceptedValue value : acceptedValues) {
+            writeAcceptedValue(out, value);
+        }
+    }
+
+    public static PrepareResponse readPrepareResponse(WireReader in) {
+        byte flags = in.readByte();
+        long highestBallot = in.readSignedVarLong();
+        int leaseHolderPort = (flags & FLAG_LEASED) != 0 ? in.readVarInt() : -1;
+        int count = in.readVarInt();
+        if ((flags & FLAG_POSITIVE) == 0) {
+            return leaseHolderPort >= 0 ? PrepareResponse.leased(highestBallot, leaseHolderPort) : PrepareResponse.reject(highestBallot);
+        }
+        List<AcceptedValue> acceptedValues = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            acceptedValues.add(readAcceptedValue(in));
+        }
+        return PrepareResponse.promise(highestBallot, acceptedValues);
+    }
+
+    public static void writeAcceptResponse(WireWriter out, AcceptResponse response) {
+        AcceptedValue previous = response.getPreviouslyAccepted();
+        out.writeByte((response.isAccepted() ? FLAG_POSITIVE : 0) | (previous != null ? FLAG_HAS_VALUE : 0));
+        out.writeSignedVarLong(response.getHighestBallot());
+        if (previous != null) {
+            writeAcceptedValue(out, previous);
+        }
+    }
+
+    public static AcceptResponse readAcceptResponse(WireReader in) {
+        byte flags = in.readByte();
+        long highestBallot = in.readSignedVarLong();
+        if ((flags & FLAG_POSITIVE) != 0) {
+            return AcceptResponse.accept(highestBallot);
+        }
+        AcceptedValue previous = (flags & FLAG_HAS_VALUE) != 0 ? readAcceptedValue(in) : null;
+        return AcceptResponse.reject(highestBallot, previous);
+    }
+
+    public static void writeDecision(WireWriter out, Decision decision) {
+        out.writeVarLong(decision.getSlot());
+        writeOperation(out, decision.getOperation());
+    }
+
+    public static Decision readDecision(WireReader in) {
+        long slot = in.readVarLong();
+        return new Decision(slot, readOperation(in));
+    }
+
+    public static void writeCatchUpResponse(WireWriter out, CatchUpResponse response) {
+        out.writeSignedVarLong(response.getHighestAppliedSlot());
+        out.writeSignedVarLong(response.getSnapshotSlot());
+        List<Decision> decisions = response.getDecisions();
+        out.writeVarInt(decisions.size());
+        for (Decision decision : decisions) {
+            writeDecision(out, decision);
+        }
+    }
+
+    public static CatchUpResponse readCatchUpResponse(WireReader in) {
+        long highestAppliedSlot = in.readSignedVarLong();
+        long snapshotSlot = in.readSignedVarLong();
+        int count = in.readVarInt();
+        if (snapshotSlot >= 0) {
+            return CatchUpResponse.snapshotRequired(snapshotSlot, highestAppliedSlot);
+        }
+        List<Decision> decisions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            decisions.add(readDecision(in));
+        }
+        return CatchUpResponse.decisions(decisions, highestAppliedSlot);
+    }
+
+    public static void writeSnapshotChunk(WireWriter out, SnapshotChunk chunk) {
+        out.writeVarLong(chunk.getSnapshotSlot());
+        out.writeVarLong(chunk.getOffset());
+        out.writeVarLong(chunk.getTotalSize());
+        out.writeVarInt(chunk.getData().length);
+        out.writeBytes(chunk.getData());
+    }
+
+    public static SnapshotChunk readSnapshotChunk(WireReader in) {
+        long snapshotSlot = in.readVarLong();
+        long offset = in.readVarLong();
+        long totalSize = in.readVarLong();
+        byte[] data = in.readBytes(in.readVarInt());
+        return new SnapshotChunk(snapshotSlot, offset, totalSize, data);
+    }
+
+    public static void writeReadIndexResponse(WireWriter out, ReadIndexResponse response) {
+        out.writeByte((response.isConfirmed() ? FLAG_POSITIVE : 0) | (response.isLeaseRenewed() ? FLAG_LEASE_RENEWED : 0));
+        out.writeSignedVarLong(response.getHighestAcceptedSlot());
+    }
+
+    public static ReadIndexResponse readReadIndexResponse(WireReader in) {
+        byte flags = in.readByte();
+        long highestAcceptedSlot = in.readSignedVarLong();
+        if ((flags & FLAG_POSITIVE) == 0) {
+            return ReadIndexResponse.reject();
+        }
+        return ReadIndexResponse.confirm(highestAcceptedSlot, (flags & FLAG_LEASE_RENEWED) != 0);
+    }
+
+    public static void writeReadResult(WireWriter out, ReadResult result) {
+        out.writeByte(result.isRedirected() ? 0 : FLAG_POSITIVE);
+        out.writeSignedVarLong(result.getAppliedSlot());
+        if (result.isRedirected()) {
+            out.writeSignedVarLong(result.getRedirectPort());
+            return;
+        }
+        out.writeSignedVarLong(result.getVersion());
+        out.writeString(result.getValue());
+    }
+
+    public static ReadResult readReadResult(WireReader in) {
+        boolean read = (in.readByte() & FLAG_POSITIVE) != 0;
+        long appliedSlot = in.readSignedVarLong();
+        if (!read) {
+            return ReadResult.redirect((int) in.readSignedVarLong(), appliedSlot);
+        }
+        long version = in.readSignedVarLong();
+        String value = in.readString();
+        return ReadResult.of(value == null ? null : new VersionedValue(value, version), appliedSlot);
+    }
+
+    public static void writeSnapshotReadResult(WireWriter out, SnapshotReadResult result) {
+        out.writeSignedVarLong(result.getSlot());
+        List<String> values = result.getValues();
+        out.writeVarInt(values.size());
+        for (String value : values) {
+            out.writeString(value);
+        }
+    }
+
+    public static SnapshotReadResult readSnapshotReadResult(WireReader in) {
+        long slot = in.readSignedVarLong();
+        int count = in.readVarInt();
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(in.readString());
+        }
+        return new SnapshotReadResult(slot, values);
+    }
+
+    public static void writeServerStats(WireWriter out, ServerStats stats) {
+        out.writeVarInt(stats.getServerPort());
+        Map<String, Long> values = stats.getValues();
+        out.writeVarInt(values.size());
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            out.writeString(entry.getKey());
+            out.writeSignedVarLong(entry.getValue());
+        }
+    }
+
+    public static ServerStats readServerStats(WireReader in) {
+        int serverPort = in.readVarInt();
+        int count = in.readVarInt();
+        Map<String, Long> values = new LinkedHashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            values.put(in.readString(), in.readSignedVarLong());
+        }
+        return new ServerStats(serverPort, values);
+    }
+
+    private static byte opcodeOf(String type) {
+        if (type == null) {
+            return OPCODE_OTHER;
+        }
+        switch (type) {
+            case ConsensusUtils.OPERATION_PUT:
+                return OPCODE_PUT;
+            case ConsensusUtils.OPERATION_GET:
+                return OPCODE_GET;
+            case ConsensusUtils.OPERATION_DELETE:
+                return OPCODE_DELETE;
+            case ConsensusUtils.OPERATION_NOOP:
+                return OPCODE_NOOP;
+            case ConsensusUtils.OPERATION_BATCH:
+                return OPCODE_BATCH;
+            default:
+                return OPCODE_OTHER;
+        }
+    }
+
+    private static String typeOf(byte opcode) {
+        switch (opcode) {
+            case OPCODE_PUT:
+                return ConsensusUtils.OPERATION_PUT;
+            case OPCODE_GET:
+                return ConsensusUtils.OPERATION_GET;
+            case OPCODE_DELETE:
+                return ConsensusUtils.OPERATION_DELETE;
+            case OPCODE_NOOP:
+                return ConsensusUtils.OPERATION_NOOP;
+            case OPCODE_BATCH:
+                return ConsensusUtils.OPERATION_BATCH;
+            default:
+                throw new IllegalArgumentException("Unknown operation opcode: " + opcode);
+        }
+    }
+}
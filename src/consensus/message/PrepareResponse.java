@@ -0,0 +1,71 @@
+package consensus.message;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An acceptor's reply to a prepare request.
+ * A promise carries the values the acceptor has already accepted in the prepared slots, so the proposer
+ * can re-propose them. A rejection carries the highest ballot the acceptor has seen, so the proposer can
+ * retry above it, and tells from the ballot's node who preempted it. A rejection because another proposer
+ * holds the acceptor's read lease also names that proposer's server.
+ */
+public class PrepareResponse implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final boolean promised;
+    private final long highestBallot;
+    private final List<AcceptedValue> acceptedValues;
+    private final int leaseHolderPort;
+
+    private PrepareResponse(boolean promised, long highestBallot, List<AcceptedValue> acceptedValues, int leaseHolderPort) {
+        this.promised = promised;
+        this.highestBallot = highestBallot;
+        this.acceptedValues = acceptedValues;
+        this.leaseHolderPort = leaseHolderPort;
+    }
+
+    public static PrepareResponse promise(long ballot, List<AcceptedValue> acceptedValues) {
+        return new PrepareResponse(true, ballot, acceptedValues, -1);
+    }
+
+    public static PrepareResponse reject(long highestBallot) {
+        return new PrepareResponse(false, highestBallot, Collections.emptyList(), -1);
+    }
+
+    /**
+     * A rejection because another proposer holds the acceptor's read lease.
+     * @param leaseHolderPort The port of the lease holder's server, or -1 if the acceptor is in its quiet period.
+     */
+    public static PrepareResponse leased(long highestBallot, int leaseHolderPort) {
+        return new PrepareResponse(false, highestBallot, Collections.emptyList(), leaseHolderPort);
+    }
+
+    public boolean isPromised() {
+        return promised;
+    }
+
+    /**
+     * @return The requested ballot for a promise; for a rejection, the highest ballot the acceptor has seen.
+     */
+    public long getHighestBallot() {
+        return highestBallot;
+    }
+
+    public List<AcceptedValue> getAcceptedValues() {
+        return acceptedValues;
+    }
+
+    /**
+     * @return For a rejection because of a valid read lease, the port of the lease holder's server; otherwise -1.
+     */
+    public int getLeaseHolderPort() {
+        return leaseHolderPort;
+    }
+
+    // Serialized in its compact wire form, see MessageCodec
+    private Object writeReplace() {
+        return WireForm.replace(this);
+    }
+}
@@ -0,0 +1,53 @@
+package consensus.message;
+
+import java.io.Serializable;
+
+/**
+ * An acceptor's reply to a read-index request: the highest slot it has accepted a value in, and whether
+ * the request renewed the leader's read lease.
+ * A rejection carries neither, as the acceptor is not taking part in consensus at the moment.
+ */
+public class ReadIndexResponse implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final boolean confirmed;
+    private final long highestAcceptedSlot;
+    private final boolean leaseRenewed;
+
+    private ReadIndexResponse(boolean confirmed, long highestAcceptedSlot, boolean leaseRenewed) {
+        this.confirmed = confirmed;
+        this.highestAcceptedSlot = highestAcceptedSlot;
+        this.leaseRenewed = leaseRenewed;
+    }
+
+    public static ReadIndexResponse confirm(long highestAcceptedSlot, boolean leaseRenewed) {
+        return new ReadIndexResponse(true, highestAcceptedSlot, leaseRenewed);
+    }
+
+    public static ReadIndexResponse reject() {
+        return new ReadIndexResponse(false, -1, false);
+    }
+
+    public boolean isConfirmed() {
+        return confirmed;
+    }
+
+    /**
+     * @return The highest slot the acceptor has accepted or learned a value in, or -1 if none.
+     */
+    public long getHighestAcceptedSlot() {
+        return highestAcceptedSlot;
+    }
+
+    /**
+     * @return true if the acceptor extended the lease of the leader that asked.
+     */
+    public boolean isLeaseRenewed() {
+        return leaseRenewed;
+    }
+
+    // Serialized in its compact wire form, see MessageCodec
+    private Object writeReplace() {
+        return WireForm.replace(this);
+    }
+}
@@ -0,0 +1,85 @@
+package consensus.message;
+
+import consensus.state.VersionedValue;
+import java.io.Serializable;
+
+/**
+ * A server's reply to a bounded-staleness read.
+ * It carries the value with the slot that last wrote it and the slot the server had applied when it read it,
+ * or, if the server was not fresh enough to answer, a redirect to a server that may be.
+ */
+public class ReadResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final boolean redirected;
+    private final String value;
+    private final long version;
+    private final long appliedSlot;
+    private final int redirectPort;
+
+    private ReadResult(boolean redirected, String value, long version, long appliedSlot, int redirectPort) {
+        this.redirected = redirected;
+        this.value = value;
+        this.version = version;
+        this.appliedSlot = appliedSlot;
+        this.redirectPort = redirectPort;
+    }
+
+    /**
+     * @param entry The value read and its version, or null if the key does not exist.
+     * @param appliedSlot The highest slot applied before the value was read.
+     */
+    public static ReadResult of(VersionedValue entry, long appliedSlot) {
+        return entry == null ? new ReadResult(false, null, -1, appliedSlot, -1)
+                : new ReadResult(false, entry.getValue(), entry.getVersion(), appliedSlot, -1);
+    }
+
+    /**
+     * @param redirectPort The port of the server to ask instead, or -1 if none is known.
+     * @param appliedSlot The highest slot the redirecting server has applied.
+     */
+    public static ReadResult redirect(int redirectPort, long appliedSlot) {
+        return new ReadResult(true, null, -1, appliedSlot, redirectPort);
+    }
+
+    /**
+     * @return true if the server was not fresh enough and did not read the value.
+     */
+    public boolean isRedirected() {
+        return redirected;
+    }
+
+    /**
+     * @return The value read, or null if the key does not exist or the read was redirected.
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @return The slot that last wrote the value, or -1 if there is none.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return The highest slot the server had applied; passed as the minimum applied slot of the next read,
+     *         it keeps a client's reads from going back in time when they go to different servers.
+     */
+    public long getAppliedSlot() {
+        return appliedSlot;
+    }
+
+    /**
+     * @return The port of the server to retry a redirected read at, or -1 if none is known.
+     */
+    public int getRedirectPort() {
+        return redirectPort;
+    }
+
+    // Serialized in its compact wire form, see MessageCodec
+    private Object writeReplace() {
+        return WireForm.replace(this);
+    }
+}
@@ -0,0 +1,37 @@
+package consensus.message;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A server's latency percentiles and counters at one moment, by name, as collected by its consensus metrics.
+ */
+public class ServerStats implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int serverPort;
+    private final Map<String, Long> values;
+
+    public ServerStats(int serverPort, Map<String, Long> values) {
+        this.serverPort = serverPort;
+        this.values = new LinkedHashMap<>(values);
+    }
+
+    public int getServerPort() {
+        return serverPort;
+    }
+
+    /**
+     * @return The values in the order the server reported them; latencies are in microseconds.
+     */
+    public Map<String, Long> getValues() {
+        return Collections.unmodifiableMap(values);
+    }
+
+    // Serialized in its compact wire form, see MessageCodec
+    private Object writeReplace() {
+        return WireForm.replace(this);
+    }
+}
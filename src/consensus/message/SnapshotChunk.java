@@ -0,0 +1,53 @@
+package consensus.message;
+
+import java.io.Serializable;
+
+/**
+ * A piece of a snapshot file sent to a replica that is too far behind to catch up from the log.
+ */
+public class SnapshotChunk implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long snapshotSlot;
+    private final long offset;
+    private final long totalSize;
+    private final byte[] data;
+
+    public SnapshotChunk(long snapshotSlot, long offset, long totalSize, byte[] data) {
+        this.snapshotSlot = snapshotSlot;
+        this.offset = offset;
+        this.totalSize = totalSize;
+        this.data = data;
+    }
+
+    public long getSnapshotSlot() {
+        return snapshotSlot;
+    }
+
+    /**
+     * @return The position of this chunk in the snapshot file.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return The size of the whole snapshot file in bytes.
+     */
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public boolean isLast() {
+        return offset + data.length >= totalSize;
+    }
+
+    // Serialized in its compact wire form, see MessageCodec
+    private Object writeReplace() {
+        return WireForm.replace(this);
+    }
+}
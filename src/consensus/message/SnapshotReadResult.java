@@ -0,0 +1,40 @@
+package consensus.message;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A server's reply to a snapshot read: the values of several keys, all as of the same applied slot.
+ */
+public class SnapshotReadResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long slot;
+    private final List<String> values;
+
+    /**
+     * @param slot The slot the values are as of.
+     * @param values The value of each key read, in the order the keys were given; null for a key that did not exist.
+     */
+    public SnapshotReadResult(long slot, List<String> values) {
+        this.slot = slot;
+        this.values = new ArrayList<>(values);
+    }
+
+    /**
+     * @return The slot the values are as of; passed to the next snapshot read, it reads more keys at the same slot.
+     */
+    public long getSlot() {
+        return slot;
+    }
+
+    public List<String> getValues() {
+        return values;
+    }
+
+    // Serialized in its compact wire form, see MessageCodec
+    private Object writeReplace() {
+        return WireForm.replace(this);
+    }
+}
@@ -0,0 +1,31 @@
+package consensus.message;
+
+import java.io.Serializable;
+
+/**
+ * Serialization proxy for the message classes: Java serialization writes this class with the message's
+ * compact {@link MessageCodec} bytes instead of the message's own fields, and turns it back into the
+ * message on the receiving side.
+ */
+public final class WireForm implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] bytes;
+
+    private WireForm(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Returns the object Java serialization should write in place of a message.
+     * @param message The message being serialized.
+     * @return Its wire form, or the message itself if the codec is disabled.
+     */
+    public static Object replace(Object message) {
+        return MessageCodec.isEnabled() ? new WireForm(MessageCodec.encode(message)) : message;
+    }
+
+    private Object readResolve() {
+        return MessageCodec.decode(bytes);
+    }
+}
@@ -0,0 +1,81 @@
+package consensus.message;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the primitive encodings written by {@link WireWriter} from a buffer.
+ */
+public class WireReader {
+
+    private final ByteBuffer buffer;
+
+    public WireReader(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    public WireReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public byte readByte() {
+        return buffer.get();
+    }
+
+    public int readVarInt() {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    public long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varlong");
+    }
+
+    public long readSignedVarLong() {
+        long encoded = readVarLong();
+        return (encoded >>> 1) ^ -(encoded & 1);
+    }
+
+    public String readString() {
+        int lengthPlusOne = readVarInt();
+        if (lengthPlusOne == 0) {
+            return null;
+        }
+        int length = lengthPlusOne - 1;
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    public byte[] readBytes(int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    public boolean hasRemaining() {
+        return buffer.hasRemaining();
+    }
+}
@@ -0,0 +1,59 @@
+package consensus.participant;
+
+import consensus.message.AcceptResponse;
+import consensus.message.PrepareResponse;
+import consensus.message.ReadIndexResponse;
+import consensus.state.Operation;
+import java.rmi.RemoteException;
+
+/**
+ * The view a proposer has of a single acceptor, whether it lives in this process or on another server.
+ */
+public interface AcceptorEndpoint {
+
+    /**
+     * Asks the acceptor to promise, for a single slot, not to accept proposals lower than the given ID.
+     * @param slot The log slot being prepared.
+     * @param proposalId The ID of the proposal.
+     * @param proposerIdentifier The identifier of the proposer making this request.
+     * @return The promise, carrying any value already accepted in the slot, or a rejection.
+     * @throws RemoteException If the acceptor cannot be reached.
+     */
+    PrepareResponse prepare(long slot, long proposalId, String proposerIdentifier) throws RemoteException;
+
+    /**
+     * Asks the acceptor to promise the given ID for every slot from {@code fromSlot} onwards, as a
+     * Multi-Paxos leader does once for the whole range of future instances.
+     * @param fromSlot The first slot covered by the promise.
+     * @param proposalId The ID of the proposal.
+     * @param proposerIdentifier The identifier of the proposer making this request.
+     * @return The promise, carrying every value already accepted from {@code fromSlot} onwards, or a rejection.
+     * @throws RemoteException If the acceptor cannot be reached.
+     */
+    PrepareResponse prepareFrom(long fromSlot, long proposalId, String proposerIdentifier) throws RemoteException;
+
+    /**
+     * Asks the acceptor to accept an operation in a slot under the given proposal ID.
+     * @param slot The log slot of the operation.
+     * @param proposalId The ID of the proposal.
+     * @param operation The operation to be accepted.
+     * @return The acceptance, or a rejection carrying the acceptor's promised ballot.
+     * @throws RemoteException If the acceptor cannot be reached.
+     */
+    AcceptResponse accept(long slot, long proposalId, Operation operation) throws RemoteException;
+
+    /**
+     * Asks the acceptor for the highest slot it has accepted a value in, as the index a linearizable read must
+     * wait for. The current Multi-Paxos leader's request also renews its read lease.
+     * @param ballot The ballot the proposer leads with, or a negative value if it is not the leader.
+     * @param proposerIdentifier The identifier of the proposer making this request.
+     * @return The acceptor's highest accepted slot and whether the lease was renewed, or a rejection.
+     * @throws RemoteException If the acceptor cannot be reached.
+     */
+    ReadIndexResponse readIndex(long ballot, String proposerIdentifier) throws RemoteException;
+
+    /**
+     * @return The port of the server hosting this acceptor.
+     */
+    int getServerPort();
+}
@@ -1,21 +1,57 @@
 package consensus.participant;
 
+import common.ConsensusMetrics;
+import common.ConsensusUtils;
 import common.CustomLogger;
+import consensus.log.ReplicatedLog;
+import consensus.log.WriteAheadLog;
+import consensus.message.AcceptResponse;
+import consensus.message.AcceptedValue;
+import consensus.message.Decision;
+import consensus.message.PrepareResponse;
+import consensus.message.ReadIndexResponse;
 import consensus.state.Operation;
 import consensus.state.StateStore;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
-public class ConsensusAcceptor implements Runnable {
+public class ConsensusAcceptor implements Runnable, AcceptorEndpoint {
 
     private static final CustomLogger logger = new CustomLogger(CustomLogger.LogLevel.INFO);
 
-    private volatile int highestProposalIdReceived = 0;
-    private volatile String lastAcceptedValue = null;
+    // Guards all state below. A lock rather than the monitor, so a virtual thread waiting for it frees its carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    // Promises and accepted values for every slot of the replicated log
+    private final ReplicatedLog log = new ReplicatedLog();
+    // Multi-Paxos promise covering every slot from rangePromiseFromSlot onwards
+    private long rangePromiseBallot = 0;
+    private long rangePromiseFromSlot = Long.MAX_VALUE;
+    private String rangePromiseProposer;
+    // Highest ballot promised or accepted in any slot, sent back with every rejection
+    private long highestBallot = 0;
+    // The ballot of the last value accepted, and when, telling which proposer is active
+    private volatile long lastAcceptedBallot = 0;
+    private volatile long lastAcceptedNanos;
+    // Read lease granted to the proposer holding the range promise: until it expires no other proposer may
+    // prepare, so the holder can serve reads from its own store. A null holder with a pending expiry is the
+    // quiet period after a start, during which nobody may prepare.
+    private long leaseNanos = 0;
+    private String leaseHolder;
+    private long leaseExpiresNanos;
+    // Journal of the state above, or null to keep it in memory only
+    private WriteAheadLog writeAheadLog;
     private final StateStore stateStore;
 
     private final int serverPort;
     private final Random random = new Random();
-    private boolean active = true;
+    private volatile boolean active = true;
+    private ConsensusMetrics metrics = new ConsensusMetrics();
 
     private ConsensusLearner learner;
 
@@ -26,55 +62,489 @@ public class ConsensusAcceptor implements Runnable {
     }
 
 
+    @Override
     public int getServerPort() {
         return serverPort;
     }
 
+    /**
+     * Enables read leases. A lease is granted to a Multi-Paxos leader by its first accept or read-index request
+     * under the range promise, once it has won a quorum, and renewed by every later one; while it lasts,
+     * prepare requests of every other proposer are rejected. Starts a quiet period of one lease, as a lease granted before a restart may still be held.
+     * @param leaseMs How long a lease lasts after it was granted or renewed; 0 disables leases.
+     */
+    public void setLeaseMs(long leaseMs) {
+        lock.lock();
+        try {
+            this.leaseNanos = TimeUnit.MILLISECONDS.toNanos(leaseMs);
+            startQuietPeriod();
+        } finally {
+            lock.unlock();
+        }
+    }
 
-    // Method to respond to prepare requests
-    public synchronized boolean prepare(int proposalId, String proposerIdentifier) {
-        if (!active) return false;
+    /**
+     * Sets the metrics this acceptor's replies are counted in.
+     */
+    public void setMetrics(ConsensusMetrics metrics) {
+        this.metrics = metrics;
+    }
 
-        logger.info("Acceptor on port " + serverPort + " received prepare request from " + proposerIdentifier);
-        if (proposalId > highestProposalIdReceived) {
-            highestProposalIdReceived = proposalId;
-            logger.info("Acceptor on port " + serverPort + " promises not to accept proposals lower than " + proposalId);
-            return true;
+    /**
+     * @return The identifier of the proposer currently holding a read lease from this acceptor, or null if none does.
+     */
+    public String getLeaseHolder() {
+        lock.lock();
+        try {
+            return isLeaseValid() ? leaseHolder : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The port of the server whose proposer this acceptor last accepted a value from, if it did so in
+     *         the given time, or -1. In Multi-Paxos mode, that is a leader still at work.
+     */
+    public int getActiveProposerPort(long withinMs) {
+        long ballot = lastAcceptedBallot;
+        if (ballot == 0 || System.nanoTime() - lastAcceptedNanos > TimeUnit.MILLISECONDS.toNanos(withinMs)) {
+            return -1;
+        }
+        return ConsensusUtils.nodeOf(ballot);
+    }
+
+
+    /**
+     * Restores promises, accepted values and decided slots from a write-ahead log and journals every later
+     * change to it. Replies to prepare and accept requests are only sent once their record is durable.
+     * @param directory The directory of this acceptor's log.
+     * @param syncMode When records are forced to disk.
+     * @param snapshotSlot The last slot covered by the snapshot the store was restored from, or -1; records of
+     *                     earlier slots are skipped.
+     * @return The highest slot found decided in the log, or -1 if none.
+     * @throws IOException If the log cannot be read or opened for writing.
+     */
+    public long openWriteAheadLog(Path directory, WriteAheadLog.SyncMode syncMode, long snapshotSlot) throws IOException {
+        lock.lock();
+        try {
+            long[] highestDecided = {snapshotSlot};
+            log.truncateBefore(snapshotSlot + 1);
+            writeAheadLog = WriteAheadLog.open(directory, syncMode, new WriteAheadLog.RecordHandler() {
+                @Override
+                public void onPromise(long slot, long ballot) {
+                    if (slot >= log.getFirstSlot()) {
+                        log.setPromisedBallot(slot, Math.max(ballot, log.getPromisedBallot(slot)));
+                    }
+                    highestBallot = Math.max(highestBallot, ballot);
+                }
+
+                @Override
+                public void onRangePromise(long fromSlot, long ballot) {
+                    rangePromiseBallot = Math.max(rangePromiseBallot, ballot);
+                    rangePromiseFromSlot = Math.min(rangePromiseFromSlot, fromSlot);
+                    highestBallot = Math.max(highestBallot, ballot);
+                }
+
+                @Override
+                public void onAccept(long slot, long ballot, Operation operation) {
+                    if (!log.isDecided(slot)) { // Also skips slots covered by the snapshot
+                        log.setPromisedBallot(slot, Math.max(ballot, log.getPromisedBallot(slot)));
+                        log.setAccepted(slot, ballot, operation);
+                    }
+                    highestBallot = Math.max(highestBallot, ballot);
+                }
+
+                @Override
+                public void onDecision(long slot, Operation operation) {
+                    if (log.markDecided(slot, operation)) {
+                        highestDecided[0] = Math.max(highestDecided[0], slot);
+                    }
+                }
+            });
+            logger.info("Acceptor on port {} recovered its log from {} up to decided slot {}", serverPort, directory, highestDecided[0]);
+            return highestDecided[0];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the log below a snapshot. With a write-ahead log, the state of the remaining slots and the range
+     * promise are written to a fresh segment, and the older segments are deleted once that is durable.
+     * @param snapshotSlot The last slot covered by a durable snapshot.
+     * @return The number of write-ahead log segments deleted.
+     * @throws IOException If the remaining state cannot be journaled; the older segments are then kept.
+     */
+    public int compact(long snapshotSlot) throws IOException {
+        long checkpointStart;
+        long lsn = 0;
+        lock.lock();
+        try {
+            log.truncateBefore(snapshotSlot + 1);
+            if (writeAheadLog == null) {
+                return 0;
+            }
+            checkpointStart = writeAheadLog.startCheckpoint();
+            if (rangePromiseBallot > 0) {
+                lsn = writeAheadLog.appendRangePromise(rangePromiseFromSlot, rangePromiseBallot);
+            }
+            for (long slot = log.getFirstSlot(); slot <= log.getHighestSlot(); slot++) {
+                Operation accepted = log.getAcceptedValue(slot);
+                if (log.isDecided(slot)) {
+                    lsn = writeAheadLog.appendDecision(slot, accepted);
+                    continue;
+                }
+                if (log.getPromisedBallot(slot) > 0) {
+                    lsn = writeAheadLog.appendPromise(slot, log.getPromisedBallot(slot));
+                }
+                if (accepted != null) {
+                    lsn = writeAheadLog.appendAccept(slot, log.getAcceptedBallot(slot), accepted);
+                }
+            }
+        } finally {
+            lock.unlock();
         }
-        return false;
+        writeAheadLog.awaitDurable(lsn == 0 ? writeAheadLog.getWrittenLsn() : lsn);
+        return writeAheadLog.deleteSegmentsBefore(checkpointStart);
+    }
+
+    // Method to respond to prepare requests for a single slot
+    @Override
+    public PrepareResponse prepare(long slot, long proposalId, String proposerIdentifier) {
+        return countPromise(promiseSlot(slot, proposalId, proposerIdentifier));
+    }
+
+    // Method to respond to Multi-Paxos prepare requests covering every slot from fromSlot onwards
+    @Override
+    public PrepareResponse prepareFrom(long fromSlot, long proposalId, String proposerIdentifier) {
+        return countPromise(promiseSlotsFrom(fromSlot, proposalId, proposerIdentifier));
     }
 
     // Method to respond to accept requests
-    public synchronized boolean accept(int proposalId, Operation operation) {
-        if (!active) return false;
+    @Override
+    public AcceptResponse accept(long slot, long proposalId, Operation operation) {
+        AcceptResponse response = acceptValue(slot, proposalId, operation);
+        if (response.isAccepted()) {
+            metrics.accepts.increment();
+        } else {
+            metrics.acceptsRejected.increment();
+        }
+        return response;
+    }
+
+    private PrepareResponse countPromise(PrepareResponse response) {
+        if (response.isPromised()) {
+            metrics.promises.increment();
+        } else {
+            metrics.promisesRejected.increment();
+        }
+        return response;
+    }
+
+    private PrepareResponse promiseSlot(long slot, long proposalId, String proposerIdentifier) {
+        PrepareResponse response;
+        long lsn = 0;
+        lock.lock();
+        try {
+            if (!active) return PrepareResponse.reject(0);
+
+            logger.info("Acceptor on port {} received prepare request for slot {} from {}", serverPort, slot, proposerIdentifier);
+            long promisedBallot = promisedBallotFor(slot);
+            // A proposer refused for the lease learns who holds it, whatever its ballot
+            if (isLeasedToAnother(proposerIdentifier)) {
+                return PrepareResponse.leased(Math.max(promisedBallot, highestBallot), ConsensusProposer.portOf(leaseHolder));
+            }
+            if (proposalId <= promisedBallot || isCompacted(slot)) {
+                return PrepareResponse.reject(Math.max(promisedBallot, highestBallot));
+            }
+            try {
+                if (writeAheadLog != null) {
+                    lsn = writeAheadLog.appendPromise(slot, proposalId);
+                }
+            } catch (IOException e) {
+                journalFailed(e);
+                return PrepareResponse.reject(0);
+            }
+            log.setPromisedBallot(slot, proposalId);
+            highestBallot = Math.max(highestBallot, proposalId);
+            logger.info("Acceptor on port {} promises not to accept proposals lower than {} in slot {}", serverPort, proposalId, slot);
+            response = PrepareResponse.promise(proposalId, acceptedIn(slot));
+        } finally {
+            lock.unlock();
+        }
+        return awaitDurable(lsn) ? response : PrepareResponse.reject(0);
+    }
+
+    private PrepareResponse promiseSlotsFrom(long fromSlot, long proposalId, String proposerIdentifier) {
+        PrepareResponse response;
+        long lsn = 0;
+        lock.lock();
+        try {
+            if (!active) return PrepareResponse.reject(0);
+
+            logger.info("Acceptor on port {} received prepare request for slots from {} from {}", serverPort, fromSlot, proposerIdentifier);
+            long promisedBallot = Math.max(rangePromiseBallot, log.getHighestPromisedBallotFrom(fromSlot));
+            // A proposer refused for the lease learns who holds it, whatever its ballot
+            if (isLeasedToAnother(proposerIdentifier)) {
+                return PrepareResponse.leased(Math.max(promisedBallot, highestBallot), ConsensusProposer.portOf(leaseHolder));
+            }
+            if (proposalId <= promisedBallot) {
+                return PrepareResponse.reject(Math.max(promisedBallot, highestBallot));
+            }
+            try {
+                if (writeAheadLog != null) {
+                    lsn = writeAheadLog.appendRangePromise(fromSlot, proposalId);
+                }
+            } catch (IOException e) {
+                journalFailed(e);
+                return PrepareResponse.reject(0);
+            }
+            // Widening the covered range is always safe; narrowing it would drop an earlier promise
+            rangePromiseBallot = proposalId;
+            rangePromiseFromSlot = Math.min(rangePromiseFromSlot, fromSlot);
+            rangePromiseProposer = proposerIdentifier;
+            highestBallot = Math.max(highestBallot, proposalId);
+            logger.info("Acceptor on port {} promises not to accept proposals lower than {} from slot {}", serverPort, proposalId, fromSlot);
+            response = PrepareResponse.promise(proposalId, log.getAcceptedFrom(fromSlot));
+        } finally {
+            lock.unlock();
+        }
+        return awaitDurable(lsn) ? response : PrepareResponse.reject(0);
+    }
+
+    private AcceptResponse acceptValue(long slot, long proposalId, Operation operation) {
+        long lsn = 0;
+        lock.lock();
+        try {
+            if (!active) return AcceptResponse.reject(0, null);
+
+            long promisedBallot = promisedBallotFor(slot);
+            if (proposalId < promisedBallot || isCompacted(slot)) {
+                logger.warn("Acceptor on port {} rejects the proposal for slot {} as it has a lower id than {}", serverPort, slot, promisedBallot);
+                return AcceptResponse.reject(Math.max(promisedBallot, highestBallot), log.getAccepted(slot));
+            }
+            try {
+                if (writeAheadLog != null) {
+                    lsn = writeAheadLog.appendAccept(slot, proposalId, operation);
+                }
+            } catch (IOException e) {
+                journalFailed(e);
+                return AcceptResponse.reject(0, null);
+            }
+            log.setPromisedBallot(slot, proposalId);
+            log.setAccepted(slot, proposalId, operation);
+            highestBallot = Math.max(highestBallot, proposalId);
+            lastAcceptedBallot = proposalId;
+            lastAcceptedNanos = System.nanoTime();
+            if (proposalId == rangePromiseBallot && slot >= rangePromiseFromSlot) {
+                grantLease(rangePromiseProposer); // The leader is alive
+            }
+            logger.info("Acceptor on port {} accepts the proposal for slot {}: {}", serverPort, slot, operation);
+        } finally {
+            lock.unlock();
+        }
+        // The reply waits outside the lock so that concurrent requests share one fsync
+        return awaitDurable(lsn) ? AcceptResponse.accept(proposalId) : AcceptResponse.reject(0, null);
+    }
+
+    /**
+     * Reports how far this acceptor's log reaches, so that a read can wait until everything decided before it
+     * has been applied. A request from the proposer holding the range promise also grants or renews its lease.
+     * @param ballot The ballot the asking proposer leads with, or a negative value if it is not the leader.
+     * @param proposerIdentifier The identifier of the asking proposer.
+     * @return The highest slot a value was accepted in, and whether the lease was renewed.
+     */
+    @Override
+    public ReadIndexResponse readIndex(long ballot, String proposerIdentifier) {
+        lock.lock();
+        try {
+            if (!active) return ReadIndexResponse.reject();
+
+            boolean renewed = false;
+            if (ballot > 0 && ballot == rangePromiseBallot) {
+                // Ballots are unique to their proposer, so this also names the holder of a promise recovered from the log
+                rangePromiseProposer = proposerIdentifier;
+                renewed = grantLease(proposerIdentifier);
+            }
+            return ReadIndexResponse.confirm(log.getHighestAcceptedSlot(), renewed);
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        if (proposalId >= highestProposalIdReceived) {
-            highestProposalIdReceived = proposalId;
-            logger.info("Acceptor on port " + serverPort + " accepts the proposal: " + operation);
+    /**
+     * Records the operation chosen for a slot.
+     * @return true if this is the first time the slot is decided on this server.
+     */
+    public boolean markDecided(long slot, Operation operation) {
+        lock.lock();
+        try {
+            if (!log.markDecided(slot, operation)) {
+                return false;
+            }
+            if (writeAheadLog != null) {
+                // Decisions can be learned again from peers, so they are not waited for
+                try {
+                    writeAheadLog.appendDecision(slot, operation);
+                } catch (IOException e) {
+                    logger.error("Acceptor on port {} failed to journal the decision of slot {}: {}", serverPort, slot, e.getMessage());
+                }
+            }
             return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isDecided(long slot) {
+        lock.lock();
+        try {
+            return log.isDecided(slot);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The operation decided in the slot, or null if the slot is not decided yet.
+     */
+    public Operation getDecidedValue(long slot) {
+        lock.lock();
+        try {
+            return log.isDecided(slot) ? log.getAcceptedValue(slot) : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The first slot still held in the log; earlier ones are covered by a snapshot.
+     */
+    public long getFirstSlot() {
+        lock.lock();
+        try {
+            return log.getFirstSlot();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Collects the run of decided slots starting at a slot, for a server catching up.
+     * @param fromSlot The first slot to collect.
+     * @param maxSlots The most slots to collect.
+     * @return The decided slots from fromSlot up to the first undecided one; empty if fromSlot has been truncated.
+     */
+    public List<Decision> getDecidedFrom(long fromSlot, int maxSlots) {
+        lock.lock();
+        try {
+            List<Decision> decided = new ArrayList<>();
+            if (isCompacted(fromSlot)) {
+                return decided;
+            }
+            for (long slot = fromSlot; decided.size() < maxSlots && log.isDecided(slot); slot++) {
+                decided.add(new Decision(slot, log.getAcceptedValue(slot)));
+            }
+            return decided;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isLeaseValid() {
+        return leaseNanos > 0 && leaseExpiresNanos - System.nanoTime() > 0;
+    }
+
+    // Grants or renews the lease unless another proposer, or the quiet period, still holds it
+    private boolean grantLease(String proposerIdentifier) {
+        if (leaseNanos == 0 || proposerIdentifier == null || (isLeaseValid() && !proposerIdentifier.equals(leaseHolder))) {
+            return false;
+        }
+        leaseHolder = proposerIdentifier;
+        leaseExpiresNanos = System.nanoTime() + leaseNanos;
+        return true;
+    }
+
+    private boolean isLeasedToAnother(String proposerIdentifier) {
+        if (!isLeaseValid() || proposerIdentifier.equals(leaseHolder)) {
+            return false;
+        }
+        if (leaseHolder == null) {
+            logger.warn("Acceptor on port {} rejects prepare requests from {} while its quiet period lasts", serverPort, proposerIdentifier);
         } else {
-            logger.warn("Acceptor on port " + serverPort + " rejects the proposal as it has a lower id than " + highestProposalIdReceived);
+            logger.warn("Acceptor on port {} rejects prepare requests from {} while the lease of {} is valid", serverPort, proposerIdentifier, leaseHolder);
+        }
+        return true;
+    }
+
+    // Whoever was granted a lease before a (re)start may still rely on it, so nobody may prepare for one lease
+    private void startQuietPeriod() {
+        leaseHolder = null;
+        leaseExpiresNanos = System.nanoTime() + leaseNanos;
+    }
+
+    // A truncated slot was decided long ago; its value can no longer be reported, so it must not be re-proposed
+    private boolean isCompacted(long slot) {
+        return slot < log.getFirstSlot();
+    }
+
+    private long promisedBallotFor(long slot) {
+        long promisedBallot = log.getPromisedBallot(slot);
+        return slot >= rangePromiseFromSlot ? Math.max(promisedBallot, rangePromiseBallot) : promisedBallot;
+    }
+
+    // Waits until the record is on disk; false if it could not be made durable and the reply must be withheld
+    private boolean awaitDurable(long lsn) {
+        if (writeAheadLog == null || lsn == 0) {
+            return true;
+        }
+        try {
+            writeAheadLog.awaitDurable(lsn);
+            return true;
+        } catch (IOException e) {
+            journalFailed(e);
             return false;
         }
     }
 
+    private void journalFailed(IOException e) {
+        logger.error("Acceptor on port {} cannot write its write-ahead log: {}", serverPort, e.getMessage());
+    }
+
+    private List<AcceptedValue> acceptedIn(long slot) {
+        AcceptedValue accepted = log.getAccepted(slot);
+        return accepted == null ? Collections.emptyList() : Collections.singletonList(accepted);
+    }
+
     // Method to simulate failures and restarts
     private void simulateFailureAndRestart() throws InterruptedException {
         // Simulating normal operation
         Thread.sleep(random.nextInt(3000) + 2000); // Simulate longer operational periods (2 to 5 seconds)
 
         if (random.nextDouble() < 0.02) { // 2% chance of failure, less frequent
-            logger.warn("Acceptor on port " + serverPort + " failing.");
+            logger.warn("Acceptor on port {} failing.", serverPort);
             active = false; // Simulate acceptor being inactive
 
             // Simulate downtime during failure
             Thread.sleep(random.nextInt(60000) + 30000); // Failures last between 30 to 90 seconds
 
-            // Restart and start afresh
+            // Restart: without a write-ahead log the acceptor starts afresh, with one it keeps the state it had
+            // journaled, which is all it had ever replied with
+            lock.lock();
+            try {
+                if (writeAheadLog == null) {
+                    log.resetUndecided(); // Forget promises and undecided accepted values
+                    rangePromiseBallot = 0;
+                    rangePromiseFromSlot = Long.MAX_VALUE;
+                    rangePromiseProposer = null;
+                }
+                startQuietPeriod();
+            } finally {
+                lock.unlock();
+            }
             active = true; // Simulate acceptor being active again
-            highestProposalIdReceived = 0; // Reset state for a new start
-            lastAcceptedValue = null; // Reset the last accepted value
-            logger.info("Acceptor on port " + serverPort + " restarted.");
+            logger.info("Acceptor on port {} restarted.", serverPort);
         }
     }
 
@@ -87,7 +557,7 @@ public class ConsensusAcceptor implements Runnable {
                 simulateFailureAndRestart();
                 // Include additional logic for responding to Paxos messages if needed
             } catch (InterruptedException e) {
-                logger.error("Acceptor on port " + serverPort + " interrupted." + e.getMessage());
+                logger.error("Acceptor on port {} interrupted: {}", serverPort, e.getMessage());
                 Thread.currentThread().interrupt();
                 return;
             }
@@ -1,23 +1,65 @@
 package consensus.participant;
 
+import common.ConsensusMetrics;
+import common.ConsensusUtils;
 import common.CustomLogger;
+import consensus.log.ApplyResultRing;
+import consensus.log.DecisionRing;
 import consensus.state.Operation;
+import consensus.state.ReadSnapshot;
 import consensus.state.StateStore;
+import java.io.IOException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
+import network.CommitPropagator;
 import network.ServerCommunicator;
-import network.ServerInterface;
 
+/**
+ * Learns decided slots and applies them to the store in slot order.
+ *
+ * Decisions are published to a ring buffer by whichever thread learns them. A single apply stage, run by
+ * this learner's own thread, takes them out in slot order and applies them in batches, so the store has
+ * one writer and the order of the store follows the log rather than thread scheduling. Until that thread
+ * is started, the thread publishing a decision applies it itself. The outcome of each entry of the recently
+ * applied slots is kept, so the proposer of a batch can report to every caller whether its own operation
+ * took effect.
+ */
 public class ConsensusLearner implements Runnable {
 
+    private static final int APPLY_BATCH_SIZE = 1024;
+    private static final int GC_KEYS_PER_BATCH = 256;
+    private static final int AWAIT_YIELDS = 16;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
     private static final CustomLogger logger = new CustomLogger(CustomLogger.LogLevel.INFO);
     private final StateStore stateStore;
     private final int serverPort;
     private ServerCommunicator serverCommunicator;
+    private ConsensusAcceptor acceptor;
+    private CommitPropagator commitPropagator;
+    private ConsensusMetrics metrics = new ConsensusMetrics();
+    private final AtomicLong highestDecidedSlot = new AtomicLong(-1);
+
+    // Decided slots are applied strictly in slot order; later decisions wait in the ring or the acceptor log.
+    // The lock is taken once per applied batch, which also collects the versions no snapshot needs any more.
+    private final ReentrantLock applyLock = new ReentrantLock();
+    private final DecisionRing decisionRing = new DecisionRing(DecisionRing.DEFAULT_CAPACITY);
+    private final ApplyResultRing applyResults = new ApplyResultRing(ApplyResultRing.DEFAULT_CAPACITY);
+    private volatile long nextSlotToApply = 0; // Written with applyLock held
+    private volatile Thread applyThread;
+    private final AtomicBoolean applyThreadIdle = new AtomicBoolean();
+    // Threads waiting for their slot to be applied wait here, away from the lock the apply stage holds
+    private final ReentrantLock appliedLock = new ReentrantLock();
+    private final Condition appliedSignal = appliedLock.newCondition();
+    private int appliedWaiters = 0;
+    private long stalledSinceNanos = 0; // When the apply order first got stuck behind a missing slot, 0 if it is not
 
     public ConsensusLearner(StateStore stateStore, int serverPort) {
         this.stateStore = stateStore;
@@ -32,21 +74,332 @@ public class ConsensusLearner implements Runnable {
         this.serverCommunicator = serverCommunicator;
     }
 
+    /**
+     * Sets the propagator that announces decided slots to the learners of the other servers.
+     */
+    public void setCommitPropagator(CommitPropagator commitPropagator) {
+        this.commitPropagator = commitPropagator;
+    }
+
+    /**
+     * Sets the metrics the time taken to apply each slot is recorded in.
+     */
+    public void setMetrics(ConsensusMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the acceptor whose log records the decided slots of this server.
+     */
+    public void setAcceptor(ConsensusAcceptor acceptor) {
+        this.acceptor = acceptor;
+    }
+
+    /**
+     * @return The highest slot this learner has seen decided, or -1 if none.
+     */
+    public long getHighestDecidedSlot() {
+        return highestDecidedSlot.get();
+    }
+
+    /**
+     * @return The highest slot applied to the store, or -1 if none.
+     */
+    public long getHighestAppliedSlot() {
+        return getNextSlotToApply() - 1;
+    }
+
+    /**
+     * @return The first slot that has not been applied to the store yet.
+     */
+    public long getNextSlotToApply() {
+        return nextSlotToApply;
+    }
+
+    /**
+     * @param slot An applied slot.
+     * @return The outcome of applying each entry of the slot's operation, in batch order, or null if the slot
+     *         was applied too long ago or skipped over by a snapshot. The array must not be modified.
+     */
+    public boolean[] getApplyResults(long slot) {
+        return applyResults.get(slot);
+    }
+
+    /**
+     * Reports a slot that is holding back the apply order: later slots are decided but this one has
+     * not been for at least the given time, for example because its proposer failed or a commit
+     * notification was lost.
+     * @param stallMs How long the apply order must have been stuck.
+     * @return The missing slot, or -1 if nothing has been stuck for that long.
+     */
+    public long getStalledSlot(long stallMs) {
+        applyLock.lock();
+        try {
+            if (stalledSinceNanos == 0 || System.nanoTime() - stalledSinceNanos < TimeUnit.MILLISECONDS.toNanos(stallMs)) {
+                return -1;
+            }
+            return nextSlotToApply;
+        } finally {
+            applyLock.unlock();
+        }
+    }
+
+    /**
+     * Opens a consistent view of the store as of the highest applied slot; applying continues while it is read.
+     * The caller must close the snapshot when done.
+     * @return The snapshot, whose slot is -1 if nothing has been applied.
+     */
+    public ReadSnapshot openSnapshot() {
+        while (true) {
+            ReadSnapshot snapshot = stateStore.openSnapshot(getHighestAppliedSlot());
+            if (snapshot != null) {
+                return snapshot;
+            }
+            // The store moved past the slot read and collected it meanwhile; the next slot read is newer
+        }
+    }
+
+    /**
+     * Continues applying after a snapshot the store has been loaded from.
+     * @param snapshotSlot The last slot covered by the snapshot.
+     */
+    public void restoreSnapshot(long snapshotSlot) {
+        raiseHighestDecidedSlot(snapshotSlot);
+        applyLock.lock();
+        try {
+            nextSlotToApply = Math.max(nextSlotToApply, snapshotSlot + 1);
+        } finally {
+            applyLock.unlock();
+        }
+    }
+
+    /**
+     * Jumps ahead to a snapshot transferred from another server: the store is replaced with its content,
+     * the log below it is truncated and the decided slots after it are applied.
+     * @param snapshotSlot The last slot covered by the snapshot.
+     * @param entries The content of the snapshot.
+     * @return false if the store had already moved past the snapshot, which is then ignored.
+     * @throws IOException If the truncated log cannot be journaled.
+     */
+    public boolean installSnapshot(long snapshotSlot, Map<String, String> entries) throws IOException {
+        applyLock.lock();
+        try {
+            if (snapshotSlot < nextSlotToApply) {
+                return false;
+            }
+            stateStore.replaceAll(entries, snapshotSlot);
+            nextSlotToApply = snapshotSlot + 1;
+        } finally {
+            applyLock.unlock();
+        }
+        signalApplied();
+        raiseHighestDecidedSlot(snapshotSlot);
+        if (acceptor != null) {
+            acceptor.compact(snapshotSlot);
+        }
+        signalApplyStage();
+        logger.info("Learner on port {} installed a snapshot of slot {} with {} keys", serverPort, snapshotSlot, entries.size());
+        return true;
+    }
+
+    /**
+     * Applies the decided slots an acceptor has restored from its write-ahead log.
+     * @param highestDecidedSlot The highest slot found decided in the log, or -1 if none.
+     */
+    public void recover(long highestDecidedSlot) {
+        raiseHighestDecidedSlot(highestDecidedSlot);
+        while (applyDecidedSlots() > 0) {
+            // Apply every restored slot before the server handles requests
+        }
+        logger.info("Learner on port {} recovered the store up to slot {}", serverPort, getHighestAppliedSlot());
+    }
 
     /**
      * Learns and commits the operation to the store.
      * This method should be called once a consensus has been reached and an operation accepted by the quorum.
+     * It returns once every slot up to and including this one has been applied, or after the default timeout
+     * if an earlier slot is still missing.
+     * @param slot The log slot the operation was decided in.
+     * @param operation The decided operation.
+     * @return true once the slot has been applied, false if it was not applied within the default timeout;
+     *         the decision is recorded either way and the slot is applied once the slots before it are.
      */
-    public void learn(Operation operation) throws RemoteException {
+    public boolean learn(long slot, Operation operation) throws RemoteException {
         // Committing the operation
-        boolean isCommitted = stateStore.applyOperation(operation);
-        if (isCommitted) {
-            logger.info("Learner on port " + serverPort + " has committed the operation: " + operation);
-            notifyAllLearners(operation, serverPort);
-        } else {
-            logger.warn("Learner on port " + serverPort + " failed to commit the operation: " + operation);
+        if (decide(slot, operation)) {
+            // Peers must learn the decision even if applying it locally had no effect
+            notifyAllLearners(slot, operation);
+        }
+        return awaitApplied(slot, ConsensusUtils.DEFAULT_TIMEOUT_MS);
+    }
+
+    /**
+     * Commits an operation another server has announced as decided, without announcing it again.
+     * @param slot The log slot the operation was decided in.
+     * @param operation The decided operation.
+     * @return true once the decision is recorded; it is applied when all earlier slots have been.
+     */
+    public boolean learnFromPeer(long slot, Operation operation) {
+        if (!decide(slot, operation)) {
+            logger.info("Learner on port {} already committed slot {}", serverPort, slot);
+        }
+        return true;
+    }
+
+    // Returns false if the slot was already decided here, so each slot is applied once
+    private boolean decide(long slot, Operation operation) {
+        raiseHighestDecidedSlot(slot);
+        if (acceptor == null) {
+            // Without a log there is nothing to order against, so apply straight away
+            applyLock.lock();
+            try {
+                applyResults.record(slot, stateStore.applyEntries(operation, slot));
+                stateStore.collectGarbage(slot, GC_KEYS_PER_BATCH);
+            } finally {
+                applyLock.unlock();
+            }
+            return true;
+        }
+        if (!acceptor.markDecided(slot, operation)) {
+            return false;
+        }
+        // A slot without a free cell is taken from the acceptor log when its turn comes
+        decisionRing.publish(slot, operation, nextSlotToApply);
+        signalApplyStage();
+        return true;
+    }
+
+    // Hands newly decided slots to the apply stage, or applies them on this thread if there is none yet
+    private void signalApplyStage() {
+        Thread stage = applyThread;
+        if (stage == null) {
+            while (applyDecidedSlots() == APPLY_BATCH_SIZE) {
+                // Keep going while full batches are ready
+            }
+        } else if (applyThreadIdle.get() && applyThreadIdle.compareAndSet(true, false)) {
+            LockSupport.unpark(stage);
+        }
+    }
+
+    private void raiseHighestDecidedSlot(long slot) {
+        highestDecidedSlot.accumulateAndGet(slot, Math::max);
+    }
+
+    // Applies a batch of the decided slots that directly follow the applied prefix of the log and
+    // returns how many were applied
+    private int applyDecidedSlots() {
+        if (acceptor == null) {
+            return 0;
+        }
+        int applied;
+        applyLock.lock();
+        try {
+            long firstSlot = nextSlotToApply;
+            long slot = firstSlot;
+            while (slot - firstSlot < APPLY_BATCH_SIZE) {
+                Operation operation = decisionRing.take(slot);
+                if (operation == null) {
+                    operation = acceptor.getDecidedValue(slot);
+                    if (operation == null) {
+                        break;
+                    }
+                }
+                long startNanos = System.nanoTime();
+                boolean[] results = stateStore.applyEntries(operation, slot);
+                metrics.apply.recordSince(startNanos);
+                applyResults.record(slot, results);
+                if (operation.isBatch() || results[0]) {
+                    logger.info("Learner on port {} has committed the operation in slot {}: {}", serverPort, slot, operation);
+                } else {
+                    logger.warn("Learner on port {} failed to commit the operation in slot {}: {}", serverPort, slot, operation);
+                }
+                slot++;
+            }
+            nextSlotToApply = slot;
+            stateStore.collectGarbage(slot - 1, GC_KEYS_PER_BATCH);
+            boolean blocked = slot <= highestDecidedSlot.get();
+            if (!blocked) {
+                stalledSinceNanos = 0;
+            } else if (stalledSinceNanos == 0 || slot != firstSlot) {
+                stalledSinceNanos = System.nanoTime();
+            }
+            applied = (int) (slot - firstSlot);
+        } finally {
+            applyLock.unlock();
+        }
+        if (applied > 0) {
+            signalApplied();
+        }
+        return applied;
+    }
+
+    private void signalApplied() {
+        appliedLock.lock();
+        try {
+            if (appliedWaiters > 0) {
+                appliedSignal.signalAll();
+            }
+        } finally {
+            appliedLock.unlock();
+        }
+    }
+
+    // Parks the apply stage until a decision is published; slots that did not fit in the ring are
+    // picked up from the acceptor log at the latest when the park times out
+    private void awaitDecisions() {
+        for (int i = 0; i < AWAIT_YIELDS; i++) {
+            if (decisionRing.isPublished(nextSlotToApply)) {
+                return;
+            }
+            Thread.yield();
+        }
+        applyThreadIdle.set(true);
+        if (!decisionRing.isPublished(nextSlotToApply)) {
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+        applyThreadIdle.set(false);
+    }
+
+    /**
+     * Waits until every slot up to and including the given one has been applied to the store.
+     * @param slot The slot to wait for; -1 returns at once.
+     * @param timeoutMs How long to wait at most.
+     * @return true if the slot has been applied, false if the wait timed out or was interrupted.
+     */
+    public boolean awaitApplied(long slot, long timeoutMs) {
+        if (acceptor == null) {
+            return true;
+        }
+        // The apply stage usually gets there within a few time slices; blocking costs more than yielding to it
+        for (int i = 0; i < AWAIT_YIELDS && nextSlotToApply <= slot; i++) {
+            Thread.yield();
+        }
+        if (nextSlotToApply > slot) {
+            return true;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        appliedLock.lock();
+        try {
+            appliedWaiters++;
+            try {
+                while (nextSlotToApply <= slot) {
+                    long remainingNanos = deadline - System.nanoTime();
+                    if (remainingNanos <= 0) {
+                        logger.warn("Learner on port {} is still waiting for slot {} before applying slot {}", serverPort, nextSlotToApply, slot);
+                        return false;
+                    }
+                    appliedSignal.awaitNanos(remainingNanos);
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                appliedWaiters--;
+            }
+        } finally {
+            appliedLock.unlock();
         }
-        //return isCommitted;
     }
 
 /*    private void notifyOtherLearners(Operation operation) throws RemoteException {
@@ -57,35 +410,32 @@ public class ConsensusLearner implements Runnable {
 
     /**
      * Notify all learners about a committed operation to ensure consistency across all servers.
+     * The notifications are queued per peer and sent in the background, so this returns immediately.
+     * @param slot The log slot the operation was decided in.
      * @param operation The operation that has been committed.
-     * @throws RemoteException if a remote error occurs during notification.
      */
-    public void notifyAllLearners(Operation operation, int port) throws RemoteException {
-        List<Integer> allLearnerAddresses = new ArrayList<>();
-
-        for (int i = 1; i <= 5; i++) {
-            allLearnerAddresses.add(5000 + i);
-        }
-
-        // Notify other learners using RMI
-        logger.info("Notifying all learners about the committed operation: " + operation);
-        for (int address : allLearnerAddresses) {
-            if (address == port){
-                continue;
-            }
-            try {
-                String host = "localhost";
-                Registry registry = LocateRegistry.getRegistry(host, address);
-                ServerInterface learnerStub = (ServerInterface) registry.lookup("PaxosServer");
-                learnerStub.commit(operation, address);
-            } catch (Exception e) {
-                logger.error("Failed to notify learner at " + address + ": " + e.getMessage());
-            }
+    public void notifyAllLearners(long slot, Operation operation) {
+        if (commitPropagator == null) {
+            return;
         }
+        logger.info("Notifying all learners about the committed operation in slot {}: {}", slot, operation);
+        commitPropagator.propagate(slot, operation);
     }
 
+    /**
+     * Runs the apply stage, the only thread that applies decided slots to the store from now on.
+     */
     @Override
     public void run() {
-
+        applyThread = Thread.currentThread();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (applyDecidedSlots() == 0) {
+                    awaitDecisions();
+                }
+            }
+        } finally {
+            applyThread = null;
+        }
     }
 }
@@ -1,93 +1,606 @@
 package consensus.participant;
 
+import common.ConsensusMetrics;
+import common.ConsensusUtils;
 import common.CustomLogger;
+import common.ThreadModel;
+import consensus.message.AcceptResponse;
+import consensus.message.AcceptedValue;
+import consensus.message.PrepareResponse;
+import consensus.message.ReadIndexResponse;
 import consensus.state.Operation;
 import consensus.state.StateStore;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class ConsensusProposer implements Runnable {
+    /**
+     * Returned by {@link #readIndex()} when no quorum of acceptors could be reached.
+     */
+    public static final long NO_READ_INDEX = Long.MIN_VALUE;
+    public static final long DEFAULT_LEASE_MS = 1000;
+    public static final long DEFAULT_BACKOFF_BASE_MS = 5;
+    public static final long DEFAULT_BACKOFF_MAX_MS = 200;
+
     private static final CustomLogger logger = new CustomLogger(CustomLogger.LogLevel.INFO);
-    private static final AtomicInteger proposalIdCounter = new AtomicInteger(0);
+
+    // Marks that a proposal did not reach consensus in any slot
+    private static final long NO_SLOT = -1;
+    // Marks that this proposer does not currently hold a prepared ballot in Multi-Paxos mode
+    private static final long NO_LEADER_BALLOT = -1;
+    // One attempt with the current leadership and one behind a fresh prepare after being preempted
+    private static final int MAX_LEADER_ATTEMPTS = 2;
+    private static final int GAP_CHECK_INTERVAL_MS = 500;
+    // Long enough for an in-flight proposal to finish before its slot is considered abandoned
+    private static final long GAP_STALL_MS = ConsensusUtils.DEFAULT_TIMEOUT_MS;
+    // How long a proposer preempted in its accept phase leaves the slots to the server that preempted it
+    private static final long PREEMPTED_LEADER_MS = 500;
+    // The leader gives up its lease this fraction early, covering clocks that run at slightly different rates
+    private static final int LEASE_GUARD_DIVISOR = 10;
+    private static final String IDENTIFIER_PREFIX = "Proposer@";
 
     private final StateStore stateStore;
     private final int serverPort;
-    private final List<ConsensusAcceptor> acceptors;
+    private final String proposerIdentifier;
+    private final List<AcceptorEndpoint> acceptors;
     private final int quorumSize;
+    private final PaxosMode mode;
 
     private final ConsensusLearner learner;
+    private final QuorumFanOut fanOut;
+    private volatile long phaseTimeoutMs = ConsensusUtils.DEFAULT_TIMEOUT_MS;
+    private volatile long backoffBaseMs = DEFAULT_BACKOFF_BASE_MS;
+    private volatile long backoffMaxMs = DEFAULT_BACKOFF_MAX_MS;
+    private ConsensusMetrics metrics = new ConsensusMetrics();
+
+    // The round of this proposer's latest ballot, moved past every higher round an acceptor reports
+    private final AtomicLong round = new AtomicLong(0);
+    private final ReentrantLock leadershipLock = new ReentrantLock();
+    private volatile long leaderBallot = NO_LEADER_BALLOT;
+    // Reads may be served locally until then, as no other proposer can be prepared by a quorum before
+    private volatile long leaseNanos = 0;
+    private volatile long leaseValidUntilNanos = System.nanoTime();
+    // Another server an acceptor has named as the leader, and until when this proposer leaves the slots to it
+    private volatile int leaderHintPort = -1;
+    private volatile long leaderHintUntilNanos = System.nanoTime();
+    private volatile long leaderHintNanos = 0;
+    // Next log slot this proposer will try to fill
+    private final AtomicLong nextSlot = new AtomicLong(0);
+
+    public ConsensusProposer(StateStore stateStore, int serverPort, List<AcceptorEndpoint> acceptors, ConsensusLearner learner) {
+        this(stateStore, serverPort, acceptors, learner, PaxosMode.CLASSIC);
+    }
 
-    public ConsensusProposer(StateStore stateStore, int serverPort, List<ConsensusAcceptor> acceptors, ConsensusLearner learner) {
+    public ConsensusProposer(StateStore stateStore, int serverPort, List<AcceptorEndpoint> acceptors, ConsensusLearner learner, PaxosMode mode) {
         this.stateStore = stateStore;
         this.serverPort = serverPort;
+        this.proposerIdentifier = identifierOf(serverPort);
         this.acceptors = acceptors;
         this.learner = learner;
+        this.mode = mode;
         this.quorumSize = acceptors.size() / 2 + 1; // Majority
+        ExecutorService fanOutExecutor = ThreadModel.current().newTaskExecutor("proposer-" + serverPort + "-fanout");
+        this.fanOut = new QuorumFanOut(acceptors, quorumSize, fanOutExecutor);
+    }
+
+    /**
+     * Sets how long a prepare or accept phase waits for a quorum before giving up.
+     * @param phaseTimeoutMs The per-phase deadline in milliseconds.
+     */
+    public void setPhaseTimeoutMs(long phaseTimeoutMs) {
+        this.phaseTimeoutMs = phaseTimeoutMs;
+    }
+
+    /**
+     * Sets how long the read lease a quorum grants a Multi-Paxos leader lasts. The acceptors must use the same value.
+     * @param leaseMs The lease duration in milliseconds; 0 disables leases, so every read needs a read-index round.
+     */
+    public void setLeaseMs(long leaseMs) {
+        this.leaseNanos = TimeUnit.MILLISECONDS.toNanos(leaseMs);
+    }
+
+    /**
+     * Sets how long a preempted proposer waits before its next attempt. The wait doubles with every attempt
+     * of the same proposal up to the maximum, and a random part of it is dropped so that proposers preempting
+     * each other fall out of step.
+     * @param baseMs The wait before the second attempt in milliseconds; 0 retries at once.
+     * @param maxMs The longest wait in milliseconds.
+     */
+    public void setBackoffMs(long baseMs, long maxMs) {
+        this.backoffBaseMs = baseMs;
+        this.backoffMaxMs = maxMs;
+    }
+
+    /**
+     * Sets the metrics the phases and outcomes of this proposer's proposals are recorded in.
+     */
+    public void setMetrics(ConsensusMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public PaxosMode getMode() {
+        return mode;
     }
 
+    /**
+     * @return The identifier this proposer sends with its prepare requests.
+     */
+    public static String identifierOf(int serverPort) {
+        return IDENTIFIER_PREFIX + serverPort;
+    }
+
+    /**
+     * @return The port of the server whose proposer has the given identifier, or -1 if it is not one.
+     */
+    public static int portOf(String proposerIdentifier) {
+        if (proposerIdentifier == null || !proposerIdentifier.startsWith(IDENTIFIER_PREFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(proposerIdentifier.substring(IDENTIFIER_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return true if this proposer currently holds a prepared ballot as the Multi-Paxos leader.
+     */
+    public boolean isLeader() {
+        return leaderBallot != NO_LEADER_BALLOT;
+    }
+
+    /**
+     * @return The port of another server an acceptor has just named as the Multi-Paxos leader, by the read
+     *         lease it holds or by the ballot it preempted this proposer with, or -1. While there is one, this
+     *         proposer runs no prepare phase and fails its proposals at once, so they can be sent to that server.
+     */
+    public int getLeaderHintPort() {
+        int port = leaderHintPort;
+        if (port < 0 || leaderBallot != NO_LEADER_BALLOT || leaderHintUntilNanos - System.nanoTime() <= 0) {
+            return -1;
+        }
+        return port;
+    }
+
+    /**
+     * @return true if this proposer is the Multi-Paxos leader and a quorum's lease guarantees that no other
+     *         proposer can have decided anything it has not seen, so reads can be served from its own store.
+     */
+    public boolean hasReadLease() {
+        return mode == PaxosMode.MULTI_PAXOS && leaseNanos > 0 && leaderBallot != NO_LEADER_BALLOT
+                && leaseValidUntilNanos - System.nanoTime() > 0;
+    }
+
+    /**
+     * Finds the index a linearizable read must wait for: every slot decided before this call has been
+     * accepted by a quorum, so it is at or below the highest slot a quorum of acceptors reports. The
+     * leader's request also gains or renews its lease when every acceptor of the quorum granted it.
+     * @return The read index, or {@link #NO_READ_INDEX} if no quorum replied in time.
+     */
+    public long readIndex() {
+        long ballot = leaderBallot;
+        long sentNanos = System.nanoTime();
+        List<ReadIndexResponse> replies = fanOut.collect("read index",
+                acceptor -> acceptor.readIndex(ballot, proposerIdentifier),
+                ReadIndexResponse::isConfirmed,
+                rejection -> {},
+                phaseTimeoutMs);
+        if (replies == null) {
+            return NO_READ_INDEX;
+        }
+        long index = -1;
+        boolean renewed = ballot != NO_LEADER_BALLOT;
+        for (ReadIndexResponse reply : replies) {
+            index = Math.max(index, reply.getHighestAcceptedSlot());
+            renewed &= reply.isLeaseRenewed();
+        }
+        if (renewed) {
+            extendLease(ballot, sentNanos);
+        }
+        return index;
+    }
+
+    /**
+     * Proposes an operation and waits until it has been applied.
+     * @param operation The operation, possibly a batch.
+     * @return true if consensus was reached and every entry of the operation took effect.
+     */
     public boolean propose(Operation operation) {
-        int proposalId = generateUniqueProposalId();
-        logger.info("Proposer on port " + serverPort + " starting proposal with ID: " + proposalId);
+        boolean[] results = proposeEntries(operation);
+        if (results == null) {
+            return false;
+        }
+        for (boolean applied : results) {
+            if (!applied) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Proposes an operation and waits until it has been applied.
+     * @param operation The operation, possibly a batch.
+     * @return Whether each entry of the operation took effect, in batch order, or null if consensus was not
+     *         reached. Where the outcome is no longer known, an entry counts as applied once it is decided.
+     */
+    public boolean[] proposeEntries(Operation operation) {
+        metrics.proposalsStarted.increment();
+        long slot = mode == PaxosMode.MULTI_PAXOS ? proposeAsLeader(operation) : proposeInSlots(operation);
+        if (slot == NO_SLOT) {
+            return null;
+        }
+        metrics.proposalsSucceeded.increment();
+        boolean[] results = learner == null ? null : awaitApplyResults(slot);
+        if (results == null) {
+            results = new boolean[operation.isBatch() ? operation.getBatchedOperations().size() : 1];
+            Arrays.fill(results, true);
+        }
+        return results;
+    }
+
+    // A decided slot is never reported as failed: its outcome is known only once the slots before it have
+    // been applied, however long filling them takes. Returns null if the outcome is no longer known
+    private boolean[] awaitApplyResults(long slot) {
+        while (!learner.awaitApplied(slot, ConsensusUtils.DEFAULT_TIMEOUT_MS)) {
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            logger.warn("Slot {} is decided but still not applied, an earlier slot is still missing", slot);
+        }
+        return learner.getApplyResults(slot);
+    }
 
-        if (sendPrepareRequests(proposalId)) {
-            if (sendAcceptRequests(proposalId, operation)) {
-                logger.info("Consensus reached on proposal ID: " + proposalId + " for operation: " + operation);
+    // Classic path: a full round per attempt, in the next free slot whenever the last one was taken.
+    // Returns the slot the operation was decided in
+    private long proposeInSlots(Operation operation) {
+        long slot = claimSlot();
+        long deadline = retryDeadline();
+        for (int attempt = 0; shouldRetry(attempt, deadline); attempt++) {
+            if (attempt > 0) {
+                metrics.proposalsRetried.increment();
+                backOff(attempt);
+            }
+            Operation decided = decideSlot(slot, operation);
+            if (decided == null) {
+                continue; // Preempted in this slot, retry it with a higher proposal ID
+            }
+            if (decided.equals(operation)) {
+                return slot;
+            }
+            logger.info("Slot {} was already taken, proposing operation in the next slot: {}", slot, operation);
+            slot = claimSlot();
+        }
+        logger.warn("Failed to reach consensus in slot {} for operation: {}", slot, operation);
+        return NO_SLOT;
+    }
+
+    /**
+     * Drives a slot that is holding back the apply order to a decision. A value already accepted in the
+     * slot is completed; otherwise the slot is filled with a no-op.
+     * @param slot The slot to fill.
+     * @return true if the slot was decided.
+     */
+    public boolean fillSlot(long slot) {
+        Operation noop = new Operation(0, ConsensusUtils.OPERATION_NOOP, null, null);
+        long deadline = retryDeadline();
+        for (int attempt = 0; shouldRetry(attempt, deadline); attempt++) {
+            if (attempt > 0) {
+                backOff(attempt);
+            }
+            if (decideSlot(slot, noop) != null) {
                 return true;
             }
         }
-        logger.warn("Failed to reach consensus on proposal ID: " + proposalId);
         return false;
     }
 
-    private int generateUniqueProposalId() {
-        return proposalIdCounter.incrementAndGet() + serverPort;
+    /**
+     * Runs one classic Paxos round (prepare and accept) for a single slot.
+     * @return The operation decided in the slot, which is a previously accepted value instead of
+     *         {@code operation} if one was found, or null if the round was preempted.
+     */
+    private Operation decideSlot(long slot, Operation operation) {
+        long proposalId = nextBallot();
+        logger.info("Proposer on port {} starting proposal with ID: {} for slot {}", serverPort, proposalId, slot);
+
+        List<PrepareResponse> promises = sendPrepareRequests(slot, proposalId, false);
+        if (promises == null) {
+            return null;
+        }
+        // A value already accepted in the slot may have been chosen and must be proposed instead of ours
+        AcceptedValue prior = highestAcceptedValues(promises).get(slot);
+        Operation value = prior == null ? operation : prior.getOperation();
+        if (!sendAcceptRequests(slot, proposalId, value)) {
+            return null;
+        }
+        commit(slot, proposalId, value);
+        return value;
     }
 
-    private boolean sendPrepareRequests(int proposalId) {
-        int promiseCount = 0;
-        for (ConsensusAcceptor acceptor : acceptors) {
-            try {
-                if (acceptor.prepare(proposalId, "Proposer@" + serverPort)) {
-                    promiseCount++;
-                    if (promiseCount >= quorumSize) {
-                        logger.info("Majority of promises received for proposal ID: " + proposalId);
-                        return true;
-                    }
+    /**
+     * Multi-Paxos path. The prepare phase runs only when this proposer does not hold leadership yet, so
+     * consecutive proposals from a stable leader cost a single accept round. A rejected accept round means
+     * another proposer has prepared a higher ballot; leadership is dropped and the operation is retried
+     * behind a full prepare, after a backoff that leaves the other proposer time to finish its round. When
+     * an acceptor names another server as the leader instead, the proposal fails at once rather than
+     * preparing against that leader. Returns the slot the operation was decided in.
+     */
+    private long proposeAsLeader(Operation operation) {
+        long deadline = retryDeadline();
+        for (int attempt = 0; attempt < MAX_LEADER_ATTEMPTS || System.nanoTime() - deadline < 0; attempt++) {
+            if (attempt > 0) {
+                metrics.proposalsRetried.increment();
+                backOff(attempt);
+            }
+            long ballot = acquireLeadership();
+            if (ballot == NO_LEADER_BALLOT) {
+                int leaderPort = getLeaderHintPort();
+                if (leaderPort >= 0) {
+                    logger.info("Proposer on port {} leaves operation to the leader on port {}: {}", serverPort, leaderPort, operation);
+                    return NO_SLOT;
                 }
-            } catch (Exception e) {
-                logger.error("Error sending prepare request to acceptor: " + e.getMessage());
+                continue;
+            }
+            long slot = claimSlot();
+            if (sendAcceptRequests(slot, ballot, operation)) {
+                commit(slot, ballot, operation);
+                return slot;
             }
+            relinquishLeadership(ballot);
         }
-        return false;
+        logger.warn("Proposer on port {} failed to reach consensus as leader for operation: {}", serverPort, operation);
+        return NO_SLOT;
     }
 
-    private boolean sendAcceptRequests(int proposalId, Operation operation) {
-        int acceptanceCount = 0;
-        for (ConsensusAcceptor acceptor : acceptors) {
-            try {
-                if (acceptor.accept(proposalId, operation)) {
-                    acceptanceCount++;
-                    if (acceptanceCount >= quorumSize) {
-                        logger.info("Majority of acceptances received for proposal ID: " + proposalId);
+    private long acquireLeadership() {
+        long ballot = leaderBallot;
+        if (ballot != NO_LEADER_BALLOT) {
+            return ballot;
+        }
+        if (getLeaderHintPort() >= 0) {
+            return NO_LEADER_BALLOT; // Preparing would only preempt the leader another server already is
+        }
+        leadershipLock.lock();
+        try {
+            // Another client thread may have completed the prepare phase, or learned of another leader, while
+            // this one was waiting
+            if (leaderBallot == NO_LEADER_BALLOT && getLeaderHintPort() < 0) {
+                long candidate = nextBallot();
+                // Start at the first unapplied slot so holes left by earlier leaders are filled too
+                long fromSlot = learner == null ? 0 : learner.getNextSlotToApply();
+                logger.info("Proposer on port {} running prepare phase for leadership with ID: {} from slot {}", serverPort, candidate, fromSlot);
+                List<PrepareResponse> promises = sendPrepareRequests(fromSlot, candidate, true);
+                if (promises != null && recoverAcceptedSlots(fromSlot, candidate, promises)) {
+                    leaderBallot = candidate;
+                    logger.info("Proposer on port {} is now leader with ballot {}", serverPort, candidate);
+                }
+            }
+            return leaderBallot;
+        } finally {
+            leadershipLock.unlock();
+        }
+    }
+
+    /**
+     * Completes the slots a previous leader may have left in flight. Every slot from {@code fromSlot} up to
+     * the highest one reported by the promises is re-proposed under the new ballot, with the highest-ballot
+     * accepted value where there is one and a no-op for gaps, before the new leader takes fresh slots.
+     */
+    private boolean recoverAcceptedSlots(long fromSlot, long ballot, List<PrepareResponse> promises) {
+        TreeMap<Long, AcceptedValue> accepted = highestAcceptedValues(promises);
+        if (accepted.isEmpty()) {
+            return true;
+        }
+        long lastSlot = accepted.lastKey();
+        for (long slot = fromSlot; slot <= lastSlot; slot++) {
+            AcceptedValue prior = accepted.get(slot);
+            Operation value = prior == null ? new Operation(0, ConsensusUtils.OPERATION_NOOP, null, null) : prior.getOperation();
+            if (!sendAcceptRequests(slot, ballot, value)) {
+                return false;
+            }
+            commit(slot, ballot, value);
+        }
+        nextSlot.accumulateAndGet(lastSlot + 1, Math::max);
+        logger.info("Proposer on port {} recovered slots {} to {}", serverPort, fromSlot, lastSlot);
+        return true;
+    }
+
+    private void relinquishLeadership(long ballot) {
+        leadershipLock.lock();
+        try {
+            if (leaderBallot == ballot) {
+                leaderBallot = NO_LEADER_BALLOT;
+                leaseValidUntilNanos = System.nanoTime();
+                logger.warn("Proposer on port {} lost leadership for ballot {}", serverPort, ballot);
+            }
+        } finally {
+            leadershipLock.unlock();
+        }
+    }
+
+    private void extendLease(long ballot, long sentNanos) {
+        long lease = leaseNanos;
+        if (lease == 0) {
+            return;
+        }
+        leadershipLock.lock();
+        try {
+            long validUntil = sentNanos + lease - lease / LEASE_GUARD_DIVISOR;
+            if (leaderBallot == ballot && validUntil - leaseValidUntilNanos > 0) {
+                leaseValidUntilNanos = validUntil;
+            }
+        } finally {
+            leadershipLock.unlock();
+        }
+    }
+
+    // Takes the next free slot, skipping past every slot this server has already seen decided
+    private long claimSlot() {
+        long floor = learner == null ? 0 : learner.getHighestDecidedSlot() + 1;
+        long claimed = nextSlot.getAndAccumulate(floor, (current, min) -> Math.max(current, min) + 1);
+        return Math.max(claimed, floor);
+    }
+
+    // A ballot in a round of this proposer's own, which no other proposer can ever use
+    private long nextBallot() {
+        return ConsensusUtils.ballotOf(round.incrementAndGet(), serverPort);
+    }
+
+    /**
+     * Keeps leaving the slots to the leader named by {@link #getLeaderHintPort()}, after it has decided an
+     * operation handed to it, for as long again as it was first named for.
+     * @param port The port of the server that decided the operation.
+     */
+    public void confirmLeaderHint(int port) {
+        if (port == leaderHintPort) {
+            observeLeader(port, leaderHintNanos);
+        }
+    }
 
-                    }
+    // Leaves the slots to another server for a while, see getLeaderHintPort()
+    private void observeLeader(int port, long forNanos) {
+        if (port < 0 || port == serverPort || forNanos <= 0) {
+            return;
+        }
+        leaderHintNanos = forNanos;
+        leaderHintUntilNanos = System.nanoTime() + forNanos;
+        leaderHintPort = port;
+    }
+
+    // Moves the round past a ballot an acceptor has already seen, so the next attempt can win
+    private void observeBallot(long ballot) {
+        round.accumulateAndGet(ConsensusUtils.roundOf(ballot), Math::max);
+    }
+
+    // Retries are bounded by time rather than only by count, so a proposer that loses a few quick rounds,
+    // or finds a peer briefly unreachable, keeps at its slot instead of abandoning it as a hole
+    private long retryDeadline() {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ConsensusUtils.DEFAULT_TIMEOUT_MS);
+    }
+
+    private static boolean shouldRetry(int attempt, long deadline) {
+        return attempt < ConsensusUtils.DEFAULT_RETRY_ATTEMPTS || System.nanoTime() - deadline < 0;
+    }
+
+    // Sleeps a random time between half and all of the exponential backoff for the given attempt
+    private void backOff(int attempt) {
+        long base = backoffBaseMs;
+        if (base <= 0) {
+            return;
+        }
+        long cap = Math.min(backoffMaxMs, base << Math.min(attempt - 1, 20));
+        ConsensusUtils.sleepThread((int) (cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1)));
+    }
+
+    // Keeps, per slot, the accepted value with the highest ballot across all promises
+    private static TreeMap<Long, AcceptedValue> highestAcceptedValues(List<PrepareResponse> promises) {
+        TreeMap<Long, AcceptedValue> highest = new TreeMap<>();
+        for (PrepareResponse promise : promises) {
+            for (AcceptedValue value : promise.getAcceptedValues()) {
+                AcceptedValue current = highest.get(value.getSlot());
+                if (current == null || value.getBallot() > current.getBallot()) {
+                    highest.put(value.getSlot(), value);
                 }
-            } catch (Exception e) {
-                logger.error("Error sending accept request to acceptor: " + e.getMessage());
             }
         }
+        return highest;
+    }
+
+    /**
+     * Runs the prepare phase against all acceptors in parallel.
+     * @param coverFollowingSlots true for a Multi-Paxos prepare covering every slot from {@code slot} onwards.
+     * @return The promises of the first quorum to reply, or null if no quorum promised in time.
+     */
+    private List<PrepareResponse> sendPrepareRequests(long slot, long proposalId, boolean coverFollowingSlots) {
+        long startNanos = System.nanoTime();
+        List<PrepareResponse> promises = fanOut.collect("prepare",
+                acceptor -> coverFollowingSlots
+                        ? acceptor.prepareFrom(slot, proposalId, proposerIdentifier)
+                        : acceptor.prepare(slot, proposalId, proposerIdentifier),
+                PrepareResponse::isPromised,
+                rejection -> {
+                    observeBallot(rejection.getHighestBallot());
+                    observeLeader(rejection.getLeaseHolderPort(), leaseNanos);
+                },
+                phaseTimeoutMs);
+        metrics.prepare.recordSince(startNanos);
+        if (promises != null) {
+            logger.info("Majority of promises received for proposal ID: {}", proposalId);
+        } else {
+            metrics.proposalsRejected.increment();
+        }
+        return promises;
+    }
+
+    private boolean sendAcceptRequests(long slot, long proposalId, Operation operation) {
+        long startNanos = System.nanoTime();
+        long[] highestRejecting = {0};
+        List<AcceptResponse> acceptances = fanOut.collect("accept",
+                acceptor -> acceptor.accept(slot, proposalId, operation),
+                AcceptResponse::isAccepted,
+                rejection -> {
+                    observeBallot(rejection.getHighestBallot());
+                    highestRejecting[0] = Math.max(highestRejecting[0], rejection.getHighestBallot());
+                },
+                phaseTimeoutMs);
+        metrics.accept.recordSince(startNanos);
+        // In Multi-Paxos a higher ballot belongs to another server that has prepared to lead
+        boolean outbid = mode == PaxosMode.MULTI_PAXOS && highestRejecting[0] > proposalId;
+        if (acceptances != null) {
+            logger.info("Majority of acceptances received for proposal ID: {} in slot {}", proposalId, slot);
+            if (outbid) {
+                // A minority promised the higher ballot and now rejects every accept of this leader; a new
+                // prepare phase brings it back before the quorum depends on it
+                relinquishLeadership(proposalId);
+            }
+            return true;
+        }
+        if (outbid) {
+            observeLeader(ConsensusUtils.nodeOf(highestRejecting[0]), TimeUnit.MILLISECONDS.toNanos(PREEMPTED_LEADER_MS));
+        }
+        metrics.proposalsRejected.increment();
+        return false;
+    }
+
+    // Hands a value a quorum has accepted, and so is decided, to the learner
+    private void commit(long slot, long proposalId, Operation operation) {
+        logger.info("Consensus reached on proposal ID: {} in slot {} for operation: {}", proposalId, slot, operation);
         if (learner != null) {
+            long startNanos = System.nanoTime();
             try {
-                learner.learn(operation);  // Learner commits the operation
-                return true;
+                // Learner commits the operation. The slot is decided even if it was not applied in time, so
+                // proposeEntries waits for it before reporting its outcome
+                if (!learner.learn(slot, operation)) {
+                    logger.warn("Slot {} was decided but not applied in time, an earlier slot is still missing", slot);
+                }
+                metrics.commit.recordSince(startNanos);
             } catch (Exception e) {
-                logger.error("Error notifying learner: " + e.getMessage());
+                logger.error("Error notifying learner: {}", e.getMessage());
             }
         }
-        return false;
     }
 
+    /**
+     * Background repair loop: whenever the learner's apply order has been stuck behind a missing slot
+     * for a while, the slot is driven to a decision so the decided slots behind it can be applied.
+     */
     @Override
     public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            ConsensusUtils.sleepThread(GAP_CHECK_INTERVAL_MS);
+            long stalledSlot = learner == null ? -1 : learner.getStalledSlot(GAP_STALL_MS);
+            if (stalledSlot >= 0) {
+                logger.warn("Proposer on port {} filling stalled slot {}", serverPort, stalledSlot);
+                fillSlot(stalledSlot);
+            }
+        }
     }
 }
@@ -0,0 +1,34 @@
+package consensus.participant;
+
+/**
+ * Selects how a proposer drives consensus rounds.
+ */
+public enum PaxosMode {
+    /**
+     * Every proposal runs a full prepare phase followed by an accept phase.
+     */
+    CLASSIC,
+
+    /**
+     * A proposer that has won a prepare phase keeps its ballot as the stable leader and sends only
+     * accept messages for subsequent proposals until another proposer preempts it.
+     */
+    MULTI_PAXOS;
+
+    /**
+     * Parses a mode name as given on the command line ("classic" or "multi").
+     * @param name The mode name, case-insensitive.
+     * @return The matching mode.
+     * @throws IllegalArgumentException if the name does not match any mode.
+     */
+    public static PaxosMode fromString(String name) {
+        String normalized = name.trim().toUpperCase();
+        if (normalized.equals("MULTI") || normalized.equals("MULTI_PAXOS") || normalized.equals("MULTI-PAXOS")) {
+            return MULTI_PAXOS;
+        }
+        if (normalized.equals("CLASSIC")) {
+            return CLASSIC;
+        }
+        throw new IllegalArgumentException("Unknown Paxos mode: " + name);
+    }
+}
@@ -0,0 +1,94 @@
+package consensus.participant;
+
+import common.CustomLogger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Sends one request to every acceptor at once and collects replies until a quorum of positive replies has
+ * arrived, a quorum can no longer be reached, or the phase deadline passes. The caller resumes as soon as
+ * that happens; replies from slower acceptors are ignored, although their requests still complete.
+ */
+class QuorumFanOut {
+
+    private static final CustomLogger logger = new CustomLogger(CustomLogger.LogLevel.INFO);
+
+    /**
+     * A single request to one acceptor.
+     */
+    interface AcceptorCall<T> {
+        T call(AcceptorEndpoint acceptor) throws Exception;
+    }
+
+    private final List<AcceptorEndpoint> acceptors;
+    private final int quorumSize;
+    private final ExecutorService executor;
+
+    QuorumFanOut(List<AcceptorEndpoint> acceptors, int quorumSize, ExecutorService executor) {
+        this.acceptors = acceptors;
+        this.quorumSize = quorumSize;
+        this.executor = executor;
+    }
+
+    /**
+     * Runs one phase against all acceptors in parallel.
+     * @param phase The phase name used in log messages.
+     * @param call The request sent to each acceptor.
+     * @param isPositive Tells a positive reply from a rejection.
+     * @param onRejected Receives every rejection that arrives before the phase resolves.
+     * @param timeoutMs The phase deadline in milliseconds.
+     * @return The first quorum of positive replies, or null if no quorum was reached in time.
+     */
+    <T> List<T> collect(String phase, AcceptorCall<T> call, Predicate<T> isPositive, Consumer<T> onRejected, long timeoutMs) {
+        CompletionService<T> completion = new ExecutorCompletionService<>(executor);
+        for (AcceptorEndpoint acceptor : acceptors) {
+            completion.submit(() -> {
+                try {
+                    return call.call(acceptor);
+                } catch (Exception e) {
+                    logger.error("Error sending {} request to acceptor on port {}: {}", phase, acceptor.getServerPort(), e.getMessage());
+                    return null;
+                }
+            });
+        }
+
+        List<T> positives = new ArrayList<>(quorumSize);
+        int pending = acceptors.size();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        try {
+            // Stop early once the outstanding replies could no longer complete a quorum
+            while (positives.size() < quorumSize && positives.size() + pending >= quorumSize) {
+                long remaining = deadline - System.nanoTime();
+                Future<T> done = remaining > 0 ? completion.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                if (done == null) {
+                    logger.warn("The {} phase timed out after {} ms with {} positive replies", phase, timeoutMs, positives.size());
+                    break;
+                }
+                pending--;
+                T reply = done.get();
+                if (reply == null) {
+                    continue;
+                }
+                if (isPositive.test(reply)) {
+                    positives.add(reply);
+                } else {
+                    onRejected.accept(reply);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Requests report their own failures and return null, so this is not expected
+            logger.error("Unexpected failure in the {} phase: {}", phase, e.getMessage());
+        }
+        return positives.size() >= quorumSize ? positives : null;
+    }
+}
@@ -0,0 +1,86 @@
+package consensus.participant;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tracks how stale this server's store may be, so reads can be answered locally without a consensus round
+ * when the caller accepts some staleness.
+ *
+ * The store is fresh as of the moment a read index was taken, once that index has been applied: every write
+ * completed before that moment is in the store. Each linearizable read moves that moment forward, and reads
+ * that need a fresher store than the last one share a single new read-index round.
+ */
+public class ReadFreshness {
+
+    private final ConsensusProposer proposer;
+    private final ConsensusLearner learner;
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private final ReentrantLock freshLock = new ReentrantLock();
+    private volatile long freshAsOfNanos;
+    private volatile boolean everFresh;
+
+    public ReadFreshness(ConsensusProposer proposer, ConsensusLearner learner) {
+        this.proposer = proposer;
+        this.learner = learner;
+    }
+
+    /**
+     * Waits until every write completed before this call has been applied here. The leader holding a read
+     * lease knows every decided slot already; any other server asks a quorum of acceptors how far the log
+     * reaches first.
+     * @param timeoutMs How long to wait for the read index to be applied.
+     * @return false if no quorum confirmed the read index or it was not applied in time.
+     */
+    public boolean awaitLinearizable(long timeoutMs) {
+        long startNanos = System.nanoTime();
+        long readIndex = proposer.hasReadLease() ? learner.getHighestDecidedSlot() : proposer.readIndex();
+        if (readIndex == ConsensusProposer.NO_READ_INDEX || !learner.awaitApplied(readIndex, timeoutMs)) {
+            return false;
+        }
+        markFresh(startNanos);
+        return true;
+    }
+
+    /**
+     * Waits until the store holds every write completed more than the given time ago.
+     * @param maxStalenessMs How old the newest missing write may be.
+     * @param timeoutMs How long to wait for a new read index to be applied, if one is needed.
+     * @return false if the store could not be brought that far in time.
+     */
+    public boolean awaitFresh(long maxStalenessMs, long timeoutMs) {
+        if (isFresh(maxStalenessMs)) {
+            return true;
+        }
+        refreshLock.lock();
+        try {
+            // Another read may have refreshed the store while this one waited for the lock
+            return isFresh(maxStalenessMs) || awaitLinearizable(timeoutMs);
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * @return How long ago the store was last known to hold every completed write, or Long.MAX_VALUE if never.
+     */
+    public long getStalenessMs() {
+        return everFresh ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - freshAsOfNanos) : Long.MAX_VALUE;
+    }
+
+    private boolean isFresh(long maxStalenessMs) {
+        return everFresh && System.nanoTime() - freshAsOfNanos <= TimeUnit.MILLISECONDS.toNanos(maxStalenessMs);
+    }
+
+    private void markFresh(long sinceNanos) {
+        freshLock.lock();
+        try {
+            if (!everFresh || sinceNanos - freshAsOfNanos > 0) {
+                freshAsOfNanos = sinceNanos;
+                everFresh = true;
+            }
+        } finally {
+            freshLock.unlock();
+        }
+    }
+}
@@ -16,6 +16,7 @@ public class AcceptorProcess implements Runnable {
     private final ConsensusAcceptor acceptor;
     private final BlockingQueue<Operation> incomingProposals;
     private final CustomLogger logger = new CustomLogger(CustomLogger.LogLevel.INFO);
+    private long nextSlot = 0;
 
     /**
      * Constructs an AcceptorProcess with a given state store and communication queue.
@@ -33,22 +34,23 @@ public class AcceptorProcess implements Runnable {
         try {
             while (!Thread.currentThread().isInterrupted()) {
                 Operation operation = incomingProposals.take();  // This blocks until an operation is available
-                logger.info("Acceptor at port " + acceptor.getServerPort() + " received operation: " + operation);
+                logger.info("Acceptor at port {} received operation: {}", acceptor.getServerPort(), operation);
 
-                boolean prepared = acceptor.prepare(operation.getProposalId(), "ProposerIdentifer");
+                long slot = nextSlot++;
+                boolean prepared = acceptor.prepare(slot, operation.getProposalId(), "ProposerIdentifer").isPromised();
                 if (prepared) {
-                    boolean accepted = acceptor.accept(operation.getProposalId(), operation);
+                    boolean accepted = acceptor.accept(slot, operation.getProposalId(), operation).isAccepted();
                     if (accepted) {
-                        logger.info("Operation accepted: " + operation);
+                        logger.info("Operation accepted: {}", operation);
                     } else {
-                        logger.warn("Operation not accepted: " + operation);
+                        logger.warn("Operation not accepted: {}", operation);
                     }
                 } else {
-                    logger.warn("Preparation failed for operation: " + operation);
+                    logger.warn("Preparation failed for operation: {}", operation);
                 }
             }
         } catch (InterruptedException e) {
-            logger.error("Acceptor process interrupted: " + e.getMessage());
+            logger.error("Acceptor process interrupted: {}", e.getMessage());
             Thread.currentThread().interrupt(); // Restore interruption status
         }
     }
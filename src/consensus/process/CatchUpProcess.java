@@ -0,0 +1,278 @@
+package consensus.process;
+
+import common.ConsensusUtils;
+import common.CustomLogger;
+import common.ThreadModel;
+import consensus.log.SnapshotStore;
+import consensus.message.CatchUpResponse;
+import consensus.message.Decision;
+import consensus.message.MessageCodec;
+import consensus.message.SnapshotChunk;
+import consensus.message.WireWriter;
+import consensus.participant.ConsensusLearner;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import network.PeerConnectionManager;
+
+/**
+ * Brings a server that restarted or was cut off back up to date by pulling what it missed from the most
+ * advanced peer, instead of waiting for the proposer's gap repair to go through the slots one round at a time.
+ *
+ * Decided slots are fetched in large batches, and the next batch is already on its way while the current one
+ * is applied. A server so far behind that the peer has truncated the slots it needs receives the peer's latest
+ * snapshot in chunks instead, then continues from the log after it.
+ *
+ * A catch-up runs once at startup and again whenever the apply order has been stuck behind a missing slot.
+ */
+public class CatchUpProcess implements Runnable {
+
+    public static final int BATCH_SLOTS = 4096;
+    public static final int SNAPSHOT_CHUNK_BYTES = 1024 * 1024;
+    private static final int CHECK_INTERVAL_MS = 500;
+    private static final long STALL_MS = 500;
+
+    private final ConsensusLearner learner;
+    private final PeerConnectionManager peers;
+    private final SnapshotProcess snapshotProcess;
+    private final ExecutorService prefetcher;
+    private final WireWriter sizer = new WireWriter(256);
+    // One catch-up at a time; it fetches from a peer while holding it
+    private final ReentrantLock lock = new ReentrantLock();
+    private final CustomLogger logger = new CustomLogger(CustomLogger.LogLevel.INFO);
+
+    // Totals over every catch-up so far, for throughput reporting
+    private volatile long caughtUpSlots;
+    private volatile long caughtUpBytes;
+    private volatile long caughtUpNanos;
+    private volatile long snapshotBytes;
+    private volatile long snapshotNanos;
+
+    /**
+     * @param learner The learner the fetched slots are applied through.
+     * @param peers The connections to the other servers.
+     * @param snapshotProcess Where transferred snapshots are kept, or null if this server keeps none on disk.
+     */
+    public CatchUpProcess(ConsensusLearner learner, PeerConnectionManager peers, SnapshotProcess snapshotProcess) {
+        this.learner = learner;
+        this.peers = peers;
+        this.snapshotProcess = snapshotProcess;
+        this.prefetcher = Executors.newSingleThreadExecutor(ThreadModel.current().threadFactory("catch-up-" + peers.getSelfPort() + "-fetch"));
+    }
+
+    /**
+     * Pulls every slot the most advanced reachable peer has applied and this server has not.
+     * @return The number of slots this server moved ahead by.
+     */
+    public long catchUp() {
+        lock.lock();
+        try {
+            long startSlot = learner.getNextSlotToApply();
+            int source = mostAdvancedPeer(startSlot);
+            if (source < 0) {
+                return 0;
+            }
+            try {
+                CatchUpResponse response = fetchDecided(source, learner.getNextSlotToApply());
+                if (response.isSnapshotRequired()) {
+                    transferSnapshot(source, response.getSnapshotSlot());
+                    response = fetchDecided(source, learner.getNextSlotToApply());
+                }
+                streamDecided(source, response);
+            } catch (IOException e) {
+                logger.warn("Catch-up from server on port {} stopped: {}", source, e.getMessage());
+            }
+            return learner.getNextSlotToApply() - startSlot;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The slots fetched from peers' logs so far.
+     */
+    public long getCaughtUpSlots() {
+        return caughtUpSlots;
+    }
+
+    /**
+     * @return The encoded size of the slots fetched from peers' logs so far.
+     */
+    public long getCaughtUpBytes() {
+        return caughtUpBytes;
+    }
+
+    /**
+     * @return The bytes of snapshots transferred from peers so far.
+     */
+    public long getSnapshotBytes() {
+        return snapshotBytes;
+    }
+
+    /**
+     * @return Slots fetched and applied per second, over every catch-up from a log so far.
+     */
+    public double getSlotsPerSecond() {
+        return perSecond(caughtUpSlots, caughtUpNanos);
+    }
+
+    /**
+     * @return Megabytes fetched and applied per second, over every catch-up from a log so far.
+     */
+    public double getMegabytesPerSecond() {
+        return perSecond(caughtUpBytes, caughtUpNanos) / (1024 * 1024);
+    }
+
+    /**
+     * @return Megabytes received per second, over every snapshot transfer so far.
+     */
+    public double getSnapshotMegabytesPerSecond() {
+        return perSecond(snapshotBytes, snapshotNanos) / (1024 * 1024);
+    }
+
+    // Asks every peer how far it has applied; -1 if none is reachable and ahead of this server
+    private int mostAdvancedPeer(long nextSlot) {
+        int best = -1;
+        long bestApplied = nextSlot - 1;
+        for (int port : peers.getPeerPorts()) {
+            try {
+                long applied = peers.call(port, stub -> stub.fetchDecided(nextSlot, 0)).getHighestAppliedSlot();
+                if (applied > bestApplied) {
+                    best = port;
+                    bestApplied = applied;
+                }
+            } catch (RemoteException e) {
+                // Unreachable peers are skipped; the connection manager keeps track of them
+            }
+        }
+        return best;
+    }
+
+    // Applies batch after batch, fetching the next one while the current one is applied
+    private void streamDecided(int source, CatchUpResponse response) throws IOException {
+        long startNanos = System.nanoTime();
+        long slots = 0;
+        long bytes = 0;
+        while (!response.isSnapshotRequired() && !response.getDecisions().isEmpty()) {
+            List<Decision> batch = response.getDecisions();
+            long nextSlot = batch.get(batch.size() - 1).getSlot() + 1;
+            Future<CatchUpResponse> next = batch.size() < BATCH_SLOTS ? null
+                    : prefetcher.submit(() -> fetchDecided(source, nextSlot));
+            for (Decision decision : batch) {
+                learner.learnFromPeer(decision.getSlot(), decision.getOperation());
+                sizer.reset();
+                MessageCodec.writeDecision(sizer, decision);
+                bytes += sizer.size();
+            }
+            slots += batch.size();
+            if (next == null) {
+                break;
+            }
+            response = await(next);
+        }
+        if (slots == 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - startNanos;
+        caughtUpSlots += slots;
+        caughtUpBytes += bytes;
+        caughtUpNanos += nanos;
+        logger.info("Caught up {} slot(s), {} bytes, from server on port {} in {} ms", slots, bytes, source, nanos / 1_000_000);
+        logger.info("Caught up from server on port {} at {} entries/s, {} MB/s", source, Math.round(perSecond(slots, nanos)),
+                megabytesPerSecond(bytes, nanos));
+    }
+
+    // Receives a peer's snapshot chunk by chunk, fetching the next chunk while the current one is written
+    private void transferSnapshot(int source, long snapshotSlot) throws IOException {
+        long startNanos = System.nanoTime();
+        Path file = snapshotProcess != null ? snapshotProcess.transferFile(snapshotSlot)
+                : Files.createTempFile("snapshot-" + snapshotSlot, ".transfer");
+        long size = 0;
+        try {
+            try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                SnapshotChunk chunk = fetchSnapshot(source, snapshotSlot, 0);
+                size = chunk.getTotalSize();
+                while (true) {
+                    long nextOffset = chunk.getOffset() + chunk.getData().length;
+                    if (chunk.getData().length == 0 && nextOffset < size) {
+                        throw new IOException("Snapshot of slot " + snapshotSlot + " ended early at " + nextOffset + " of " + size + " bytes");
+                    }
+                    Future<SnapshotChunk> next = chunk.isLast() ? null : prefetcher.submit(() -> fetchSnapshot(source, snapshotSlot, nextOffset));
+                    ByteBuffer data = ByteBuffer.wrap(chunk.getData());
+                    while (data.hasRemaining()) {
+                        out.write(data, chunk.getOffset() + data.position());
+                    }
+                    if (next == null) {
+                        break;
+                    }
+                    chunk = await(next);
+                }
+                out.force(true);
+            }
+            if (snapshotProcess != null) {
+                snapshotProcess.installSnapshot(snapshotSlot, file);
+            } else {
+                ConcurrentHashMap<String, String> entries = new ConcurrentHashMap<>();
+                SnapshotStore.load(file, snapshotSlot, entries::put);
+                learner.installSnapshot(snapshotSlot, entries);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        long nanos = System.nanoTime() - startNanos;
+        snapshotBytes += size;
+        snapshotNanos += nanos;
+        logger.info("Installed the snapshot of slot {}, {} bytes, from server on port {}", snapshotSlot, size, source);
+        logger.info("Installed the snapshot of slot {} in {} ms: {} MB/s", snapshotSlot, nanos / 1_000_000, megabytesPerSecond(size, nanos));
+    }
+
+    private CatchUpResponse fetchDecided(int source, long fromSlot) throws RemoteException {
+        return peers.call(source, stub -> stub.fetchDecided(fromSlot, BATCH_SLOTS));
+    }
+
+    private SnapshotChunk fetchSnapshot(int source, long snapshotSlot, long offset) throws RemoteException {
+        return peers.call(source, stub -> stub.fetchSnapshot(snapshotSlot, offset, SNAPSHOT_CHUNK_BYTES));
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while catching up");
+        }
+    }
+
+    private static double perSecond(long amount, long nanos) {
+        return nanos == 0 ? 0 : amount * 1e9 / nanos;
+    }
+
+    // Only the rate is formatted up front, the rest of the summary is filled in by the logger
+    private static String megabytesPerSecond(long bytes, long nanos) {
+        return String.format("%.1f", perSecond(bytes, nanos) / (1024 * 1024));
+    }
+
+    @Override
+    public void run() {
+        catchUp();
+        while (!Thread.currentThread().isInterrupted()) {
+            ConsensusUtils.sleepThread(CHECK_INTERVAL_MS);
+            if (learner.getStalledSlot(STALL_MS) >= 0) {
+                catchUp();
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package consensus.process;
+
+import consensus.state.Operation;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A client operation waiting in the proposer queue, together with the future its caller waits on.
+ * The future completes with true once the slot carrying the operation has been committed and the
+ * operation took effect, or with false if consensus could not be reached or applying the operation had no
+ * effect, such as deleting a missing key.
+ */
+public class PendingProposal {
+    private final Operation operation;
+    private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+    public PendingProposal(Operation operation) {
+        this.operation = operation;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public CompletableFuture<Boolean> getResult() {
+        return result;
+    }
+}
@@ -3,49 +3,154 @@ package consensus.process;
 import consensus.participant.ConsensusProposer;
 import consensus.state.Operation;
 import common.CustomLogger;
+import common.ThreadModel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class encapsulates the runnable process for a proposer in the Paxos consensus algorithm.
- * It is responsible for creating and sending proposals to the system based on input or predefined conditions.
+ * It drains client operations from a queue, groups them into batches bounded by size and waiting time,
+ * and proposes each batch as a single value so the whole batch is decided in one log slot.
+ * Up to a configurable window of batches are in flight at once, each in its own slot; the learner still
+ * applies them in slot order.
  */
 public class ProposerProcess implements Runnable {
 
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+    // By default a batch holds whatever queued up while the previous round was in flight
+    public static final long DEFAULT_MAX_BATCH_DELAY_MS = 0;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
     private final ConsensusProposer proposer;
-    private final BlockingQueue<Operation> proposalQueue;
+    private final BlockingQueue<PendingProposal> proposalQueue;
+    private final int maxBatchSize;
+    private final long maxBatchDelayMs;
+    private final Semaphore inFlightPermits;
+    private final ExecutorService proposalExecutor;
     private final CustomLogger logger = new CustomLogger(CustomLogger.LogLevel.INFO);
 
 
 
+    /**
+     * Constructs a ProposerProcess with the proposer's required dependencies and default batch limits.
+     * @param proposer The proposer instance that will handle creating and sending proposals.
+     * @param proposalQueue A thread-safe queue for receiving operations to propose.
+     */
+    public ProposerProcess(ConsensusProposer proposer, BlockingQueue<PendingProposal> proposalQueue) {
+        this(proposer, proposalQueue, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_DELAY_MS, DEFAULT_MAX_IN_FLIGHT);
+    }
+
     /**
      * Constructs a ProposerProcess with the proposer's required dependencies.
      * @param proposer The proposer instance that will handle creating and sending proposals.
      * @param proposalQueue A thread-safe queue for receiving operations to propose.
+     * @param maxBatchSize The maximum number of operations decided in one slot.
+     * @param maxBatchDelayMs How long the first operation of a batch may wait for more operations to join it.
+     * @param maxInFlight The maximum number of batches being decided at the same time.
      */
-    public ProposerProcess(ConsensusProposer proposer, BlockingQueue<Operation> proposalQueue) {
+    public ProposerProcess(ConsensusProposer proposer, BlockingQueue<PendingProposal> proposalQueue, int maxBatchSize, long maxBatchDelayMs, int maxInFlight) {
         this.proposer = proposer;
         this.proposalQueue = proposalQueue;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxBatchDelayMs = Math.max(0, maxBatchDelayMs);
+        this.inFlightPermits = new Semaphore(Math.max(1, maxInFlight));
+        this.proposalExecutor = ThreadModel.current().newTaskExecutor("proposal");
+    }
+
+    /**
+     * Queues an operation for the next batch.
+     * @param operation The client operation.
+     * @return A future completed once the operation's batch has been committed or has failed: with true if the
+     *         operation took effect, with false if consensus was not reached or applying it had no effect.
+     */
+    public CompletableFuture<Boolean> submit(Operation operation) {
+        PendingProposal pending = new PendingProposal(operation);
+        proposalQueue.add(pending);
+        return pending.getResult();
     }
 
     @Override
     public void run() {
         try {
             while (!Thread.currentThread().isInterrupted()) {
-                // Wait for an operation to arrive in the queue
-                Operation operation = proposalQueue.take();
-                logger.info("Proposer process received operation to propose: " + operation);
-
-                // Propose the operation and handle the outcome
-                boolean success = proposer.propose(operation);
-                if (success) {
-                    logger.info("Proposer successfully proposed and achieved consensus for operation: " + operation);
-                } else {
-                    logger.warn("Proposer failed to achieve consensus for operation: " + operation);
+                // Wait for a free slot in the window first, so operations keep accumulating into the
+                // next batch while the window is full
+                inFlightPermits.acquire();
+                List<PendingProposal> batch;
+                try {
+                    // Wait for an operation to arrive in the queue, then gather a batch behind it
+                    batch = nextBatch();
+                } catch (InterruptedException e) {
+                    inFlightPermits.release();
+                    throw e;
                 }
+                logger.info("Proposer process received {} operation(s) to propose", batch.size());
+                proposalExecutor.execute(() -> {
+                    try {
+                        proposeBatch(batch);
+                    } finally {
+                        inFlightPermits.release();
+                    }
+                });
             }
         } catch (InterruptedException e) {
-            logger.error("Proposer process was interrupted: " + e.getMessage());
+            logger.error("Proposer process was interrupted: {}", e.getMessage());
             Thread.currentThread().interrupt(); // Restore interruption status
         }
     }
+
+    // Proposes the batch and hands every waiting caller the outcome of its own operation
+    private void proposeBatch(List<PendingProposal> batch) {
+        boolean[] results;
+        try {
+            results = proposer.proposeEntries(toProposal(batch));
+        } catch (RuntimeException e) {
+            logger.error("Proposer failed while proposing a batch: {}", e.getMessage());
+            results = null;
+        }
+        if (results != null) {
+            logger.info("Proposer successfully proposed and achieved consensus for a batch of {}", batch.size());
+        } else {
+            logger.warn("Proposer failed to achieve consensus for a batch of {}", batch.size());
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).getResult().complete(results != null && results[i]);
+        }
+    }
+
+    private List<PendingProposal> nextBatch() throws InterruptedException {
+        List<PendingProposal> batch = new ArrayList<>();
+        batch.add(proposalQueue.take());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMs);
+        while (batch.size() < maxBatchSize) {
+            proposalQueue.drainTo(batch, maxBatchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= maxBatchSize || remaining <= 0) {
+                break;
+            }
+            PendingProposal next = proposalQueue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    // A single operation is proposed as is; anything larger travels as one BATCH value
+    private static Operation toProposal(List<PendingProposal> batch) {
+        if (batch.size() == 1) {
+            return batch.get(0).getOperation();
+        }
+        List<Operation> operations = new ArrayList<>(batch.size());
+        for (PendingProposal pending : batch) {
+            operations.add(pending.getOperation());
+        }
+        return Operation.batchOf(0, operations);
+    }
 }
@@ -0,0 +1,166 @@
+package consensus.process;
+
+import common.ConsensusUtils;
+import common.CustomLogger;
+import consensus.log.SnapshotStore;
+import consensus.log.WriteAheadLog;
+import consensus.message.SnapshotChunk;
+import consensus.participant.ConsensusAcceptor;
+import consensus.participant.ConsensusLearner;
+import consensus.state.ReadSnapshot;
+import consensus.state.StateStore;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class encapsulates the durable state of a server: the snapshots of its store and the write-ahead
+ * log of its acceptor, kept in one directory.
+ *
+ * On startup it restores the store from the latest snapshot and replays only the part of the log after it.
+ * While running, it takes a snapshot in the background whenever enough slots have been applied since the
+ * last one, then truncates the log below the snapshot.
+ */
+public class SnapshotProcess implements Runnable {
+
+    public static final long DEFAULT_SNAPSHOT_EVERY_SLOTS = 50_000;
+    private static final int CHECK_INTERVAL_MS = 1000;
+
+    private final ConsensusAcceptor acceptor;
+    private final ConsensusLearner learner;
+    private final StateStore stateStore;
+    private final Path directory;
+    private final SnapshotStore snapshots;
+    private final long snapshotEverySlots;
+    private volatile long lastSnapshotSlot = -1;
+    // Serializes taking and installing snapshots, which write to disk while holding it
+    private final ReentrantLock lock = new ReentrantLock();
+    private final CustomLogger logger = new CustomLogger(CustomLogger.LogLevel.INFO);
+
+    /**
+     * @param acceptor The acceptor whose log is persisted and compacted.
+     * @param learner The learner applying decided slots to the store.
+     * @param directory The directory holding the snapshots and the write-ahead log.
+     * @param snapshotEverySlots How many slots must be applied after a snapshot before the next one is taken.
+     * @throws IOException If the directory cannot be created.
+     */
+    public SnapshotProcess(ConsensusAcceptor acceptor, ConsensusLearner learner, Path directory, long snapshotEverySlots) throws IOException {
+        this.acceptor = acceptor;
+        this.learner = learner;
+        this.stateStore = learner.getStateStore();
+        this.directory = directory;
+        this.snapshots = new SnapshotStore(directory);
+        this.snapshotEverySlots = snapshotEverySlots;
+    }
+
+    /**
+     * Restores the store from the latest snapshot, replays the write-ahead log after it and applies the
+     * decided slots found there. Must be called before the server handles any request.
+     * @param syncMode When write-ahead log records are forced to disk.
+     * @throws IOException If the snapshot or the log cannot be read.
+     */
+    public void recover(WriteAheadLog.SyncMode syncMode) throws IOException {
+        long startNanos = System.nanoTime();
+        long snapshotSlot = snapshots.latestSlot();
+        if (snapshotSlot >= 0) {
+            snapshots.load(snapshotSlot, (key, value) -> stateStore.restore(key, value, snapshotSlot));
+            learner.restoreSnapshot(snapshotSlot);
+            lastSnapshotSlot = snapshotSlot;
+        }
+        learner.recover(acceptor.openWriteAheadLog(directory, syncMode, snapshotSlot));
+        logger.info("Recovered {} keys from snapshot slot {} and the log up to slot {} in {} ms", stateStore.size(), snapshotSlot,
+                learner.getHighestAppliedSlot(), (System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    /**
+     * Writes a snapshot of everything applied so far and truncates the log below it.
+     * @return The slot covered by the snapshot, or -1 if nothing new was applied since the last one.
+     * @throws IOException If the snapshot cannot be written or the log cannot be compacted.
+     */
+    public long takeSnapshot() throws IOException {
+        lock.lock();
+        try {
+            long startNanos = System.nanoTime();
+            long slot;
+            long size;
+            try (ReadSnapshot snapshot = learner.openSnapshot()) {
+                slot = snapshot.getSlot();
+                if (slot <= lastSnapshotSlot) {
+                    return -1;
+                }
+                size = snapshots.write(slot, sink -> snapshot.forEach(sink::put));
+            }
+            lastSnapshotSlot = slot;
+            int deletedSegments = acceptor.compact(slot);
+            snapshots.deleteBefore(slot);
+            logger.info("Snapshot of slot {} written ({} bytes) in {} ms, {} log segment(s) deleted", slot, size,
+                    (System.nanoTime() - startNanos) / 1_000_000, deletedSegments);
+            return slot;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads part of a snapshot of this server for another server catching up.
+     * @throws IOException If the snapshot has been replaced by a newer one since it was announced.
+     */
+    public SnapshotChunk readSnapshotChunk(long slot, long offset, int maxBytes) throws IOException {
+        return snapshots.readChunk(slot, offset, maxBytes);
+    }
+
+    /**
+     * @return Where a snapshot transferred from another server should be received.
+     */
+    public Path transferFile(long slot) {
+        return snapshots.transferFile(slot);
+    }
+
+    /**
+     * Replaces the store with a snapshot transferred from another server, keeps the snapshot as this
+     * server's newest one and truncates the log below it.
+     * @param slot The slot the snapshot covers.
+     * @param received The complete snapshot file, already forced to disk.
+     * @return false if the store had already moved past the snapshot, which is then discarded.
+     * @throws IOException If the snapshot is damaged or cannot be installed.
+     */
+    public boolean installSnapshot(long slot, Path received) throws IOException {
+        lock.lock();
+        try {
+            ConcurrentHashMap<String, String> entries = new ConcurrentHashMap<>();
+            SnapshotStore.load(received, slot, entries::put);
+            if (slot <= learner.getHighestAppliedSlot()) {
+                Files.deleteIfExists(received);
+                return false;
+            }
+            // Durable first: once the log is truncated, recovery depends on it
+            snapshots.install(slot, received);
+            lastSnapshotSlot = slot;
+            snapshots.deleteBefore(slot);
+            return learner.installSnapshot(slot, entries);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getLastSnapshotSlot() {
+        return lastSnapshotSlot;
+    }
+
+    @Override
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            ConsensusUtils.sleepThread(CHECK_INTERVAL_MS);
+            if (learner.getHighestAppliedSlot() - lastSnapshotSlot < snapshotEverySlots) {
+                continue;
+            }
+            try {
+                takeSnapshot();
+            } catch (IOException e) {
+                logger.error("Failed to take a snapshot: {}", e.getMessage());
+            }
+        }
+    }
+}
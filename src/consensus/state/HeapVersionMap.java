@@ -0,0 +1,69 @@
+package consensus.state;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Keeps the versions of every key as objects in a {@link ConcurrentHashMap}, each key mapped to its newest
+ * version with the older ones chained behind it.
+ */
+final class HeapVersionMap implements VersionMap {
+
+    private final ConcurrentHashMap<String, VersionedValue> map;
+
+    HeapVersionMap(int expectedSize) {
+        this.map = new ConcurrentHashMap<>(Math.max(16, expectedSize * 4 / 3 + 1));
+    }
+
+    @Override
+    public VersionedValue get(String key) {
+        return map.get(key);
+    }
+
+    @Override
+    public void put(String key, VersionedValue version) {
+        map.put(key, version);
+    }
+
+    @Override
+    public boolean remove(String key, VersionedValue version) {
+        return map.remove(key, version);
+    }
+
+    @Override
+    public int truncate(String key, VersionedValue head, long horizon) {
+        return head.truncate(horizon);
+    }
+
+    @Override
+    public int dropOlderVersions() {
+        // Older versions hang off their keys' newest ones and are truncated key by key
+        return 0;
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public Iterator<String> keys() {
+        return map.keySet().iterator();
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, VersionedValue> action) {
+        map.forEach(action);
+    }
+
+    @Override
+    public VersionMap emptyCopy(int expectedSize) {
+        return new HeapVersionMap(expectedSize);
+    }
+
+    @Override
+    public long offHeapBytes() {
+        return 0;
+    }
+}
@@ -0,0 +1,566 @@
+package consensus.state;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+
+/**
+ * Keeps the newest version of every key as UTF-8 bytes in direct memory, so that millions of keys cost the
+ * Java heap one long per index slot and leave the collector no objects to trace.
+ *
+ * Records are appended to arenas of {@link #ARENA_BYTES} and never changed once written, so readers need no
+ * lock. A record holds the key, the value (none if deleted) and the slot that wrote it. An open-addressing
+ * index of longs, probed linearly, maps every key to its record; an entry packs the arena, the record's
+ * offset in it and 16 bits of the key's hash, which skip most records of other keys without reading them.
+ * Writing a key appends a new record and re-points its entry, leaving the old record as garbage; once
+ * garbage fills half of the arenas, the arena with the least live data is compacted by copying its live
+ * records to the newest arena and dropping it. Readers still holding a dropped arena finish reading it; its
+ * memory is returned once the collector finds the buffer unreachable.
+ *
+ * Versions older than the newest one are only kept while a reader may see them. They stay on the heap,
+ * chained as in {@link HeapVersionMap} in a side map of their own, which the store empties whenever it has
+ * no reader left behind, see {@link #dropOlderVersions()}.
+ */
+final class OffHeapVersionMap implements VersionMap {
+
+    static final int ARENA_BYTES = 16 * 1024 * 1024;
+    private static final int MIN_INDEX_CAPACITY = 1024;
+    // Key length, value length (-1 if deleted) and version, followed by the key and the value
+    private static final int HEADER_BYTES = 16;
+
+    // Index entries: 16 bits of hash, 24 bits of arena id, 24 bits of offset. Arena ids start at 1, so no
+    // entry is 0, and no record starts at the last offset, so none is -1 either
+    private static final int OFFSET_BITS = 24;
+    private static final int ARENA_ID_BITS = 24;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    private static final long ARENA_ID_MASK = (1L << ARENA_ID_BITS) - 1;
+    private static final long EMPTY = 0;
+    private static final long REMOVED = -1;
+    // Returned by a probe that met an arena newer than the view it read
+    private static final long RETRY = -1;
+
+    private volatile Arenas arenas = Arenas.NONE;
+    private volatile AtomicLongArray index;
+    private volatile ConcurrentHashMap<String, VersionedValue> older = new ConcurrentHashMap<>();
+    private volatile int size;
+    private volatile long allocatedBytes;
+    // Readers visiting every entry; arenas are not dropped while any is
+    private final AtomicInteger pins = new AtomicInteger();
+
+    // Applying thread only
+    private Arena head;
+    private int nextArenaId = 1;
+    private int removedEntries;
+    private long liveBytes;
+    private final List<Arena> compacted = new ArrayList<>();
+
+    private static final class Arena {
+        final int id;
+        final ByteBuffer buffer;
+        int used;
+        long liveBytes;
+
+        Arena(int id, int capacity) {
+            this.id = id;
+            this.buffer = ByteBuffer.allocateDirect(capacity);
+        }
+    }
+
+    // The arenas readers may find records in, by id; replaced as a whole when one is added or dropped
+    private static final class Arenas {
+        static final Arenas NONE = new Arenas(1, new Arena[0]);
+
+        final int firstId;
+        final Arena[] byId;
+
+        Arenas(int firstId, Arena[] byId) {
+            this.firstId = firstId;
+            this.byId = byId;
+        }
+
+        Arena get(int id) {
+            int i = id - firstId;
+            return i >= 0 && i < byId.length ? byId[i] : null;
+        }
+
+        Arenas with(Arena arena) {
+            int firstId = byId.length == 0 ? arena.id : this.firstId;
+            Arena[] grown = new Arena[arena.id - firstId + 1];
+            System.arraycopy(byId, 0, grown, this.firstId - firstId, byId.length);
+            grown[arena.id - firstId] = arena;
+            return new Arenas(firstId, grown);
+        }
+
+        Arenas without(List<Arena> dropped) {
+            Arena[] kept = byId.clone();
+            for (Arena arena : dropped) {
+                kept[arena.id - firstId] = null;
+            }
+            int from = 0;
+            while (from < kept.length && kept[from] == null) {
+                from++;
+            }
+            Arena[] trimmed = new Arena[kept.length - from];
+            System.arraycopy(kept, from, trimmed, 0, trimmed.length);
+            return new Arenas(firstId + from, trimmed);
+        }
+    }
+
+    OffHeapVersionMap(int expectedSize) {
+        int capacity = MIN_INDEX_CAPACITY;
+        while (capacity < expectedSize * 4L / 3 + 1) {
+            capacity *= 2;
+        }
+        index = new AtomicLongArray(capacity);
+    }
+
+    @Override
+    public VersionedValue get(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(keyBytes);
+        while (true) {
+            Arenas arenas = this.arenas;
+            long entry = probe(index, arenas, keyBytes, hash);
+            if (entry == EMPTY) {
+                return null;
+            }
+            if (entry != RETRY) {
+                // The older versions are put before the record that hides them is, so they are read after it
+                return decode(arenas.get(arenaIdOf(entry)), offsetOf(entry), older.get(key));
+            }
+        }
+    }
+
+    @Override
+    public void put(String key, VersionedValue version) {
+        dropCompactedArenas();
+        VersionedValue previous = version.getPrevious();
+        if (previous != null) {
+            older.put(key, previous);
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        String value = version.getValue();
+        long hash = hash(keyBytes);
+        long address = append(keyBytes, value == null ? null : value.getBytes(StandardCharsets.UTF_8), version.getVersion());
+        AtomicLongArray index = this.index;
+        int position = findForWrite(index, keyBytes, hash);
+        long replaced = index.get(position);
+        index.set(position, tagOf(hash) | address);
+        if (replaced == EMPTY || replaced == REMOVED) {
+            size++;
+            if (replaced == REMOVED) {
+                removedEntries--;
+            }
+        } else {
+            release(replaced);
+        }
+        if (previous == null && !older.isEmpty()) {
+            older.remove(key);
+        }
+        if ((size + removedEntries) * 4L > index.length() * 3L) {
+            rehash();
+        }
+        maybeCompact();
+    }
+
+    @Override
+    public boolean remove(String key, VersionedValue version) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        AtomicLongArray index = this.index;
+        int position = findExisting(index, keyBytes, hash(keyBytes));
+        if (position < 0) {
+            return false;
+        }
+        long entry = index.get(position);
+        Arena arena = arenas.get(arenaIdOf(entry));
+        if (arena.buffer.getLong(offsetOf(entry) + 8) != version.getVersion()) {
+            return false;
+        }
+        index.set(position, REMOVED);
+        size--;
+        removedEntries++;
+        release(entry);
+        older.remove(key);
+        return true;
+    }
+
+    @Override
+    public int truncate(String key, VersionedValue head, long horizon) {
+        int dropped = head.truncate(horizon);
+        if (dropped > 0 && head.getPrevious() == null) {
+            older.remove(key);
+        }
+        return dropped;
+    }
+
+    @Override
+    public int dropOlderVersions() {
+        if (older.isEmpty()) {
+            return 0;
+        }
+        int dropped = 0;
+        for (VersionedValue chain : older.values()) {
+            for (VersionedValue version = chain; version != null; version = version.getPrevious()) {
+                dropped++;
+            }
+        }
+        older = new ConcurrentHashMap<>();
+        return dropped;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<String> keys() {
+        return new Iterator<>() {
+            private int position;
+            private String next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null) {
+                    // Follows the index as it grows, so keys already visited may come again
+                    AtomicLongArray current = index;
+                    if (position >= current.length()) {
+                        return false;
+                    }
+                    long entry = current.get(position++);
+                    if (entry != EMPTY && entry != REMOVED) {
+                        next = readKey(arenas.get(arenaIdOf(entry)), offsetOf(entry));
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String key = next;
+                next = null;
+                return key;
+            }
+        };
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, VersionedValue> action) {
+        pins.incrementAndGet();
+        try {
+            Arenas arenas = this.arenas;
+            AtomicLongArray index = this.index;
+            for (int i = 0; i < index.length(); i++) {
+                long entry = index.get(i);
+                if (entry == EMPTY || entry == REMOVED) {
+                    continue;
+                }
+                Arena arena = arenas.get(arenaIdOf(entry));
+                if (arena == null) {
+                    // Written to an arena added since; none is dropped while pinned
+                    arenas = this.arenas;
+                    arena = arenas.get(arenaIdOf(entry));
+                }
+                String key = readKey(arena, offsetOf(entry));
+                action.accept(key, decode(arena, offsetOf(entry), older.get(key)));
+            }
+        } finally {
+            pins.decrementAndGet();
+        }
+    }
+
+    @Override
+    public VersionMap emptyCopy(int expectedSize) {
+        return new OffHeapVersionMap(expectedSize);
+    }
+
+    @Override
+    public long offHeapBytes() {
+        return allocatedBytes;
+    }
+
+    // Finds the key's entry in an index, reading records from the given arenas. Returns the entry, EMPTY if
+    // the key has none, or RETRY if the entry is in an arena the view does not have yet
+    private static long probe(AtomicLongArray index, Arenas arenas, byte[] key, long hash) {
+        int mask = index.length() - 1;
+        long tag = tagOf(hash);
+        for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+            long entry = index.get(i);
+            if (entry == EMPTY) {
+                return EMPTY;
+            }
+            if (entry == REMOVED || tagOf(entry) != tag) {
+                continue;
+            }
+            Arena arena = arenas.get(arenaIdOf(entry));
+            if (arena == null) {
+                return RETRY;
+            }
+            if (keyEquals(arena.buffer, offsetOf(entry), key)) {
+                return entry;
+            }
+        }
+    }
+
+    // The key's position in the index, or -1; applying thread only
+    private int findExisting(AtomicLongArray index, byte[] key, long hash) {
+        Arenas arenas = this.arenas;
+        int mask = index.length() - 1;
+        long tag = tagOf(hash);
+        for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+            long entry = index.get(i);
+            if (entry == EMPTY) {
+                return -1;
+            }
+            if (entry != REMOVED && tagOf(entry) == tag
+                    && keyEquals(arenas.get(arenaIdOf(entry)).buffer, offsetOf(entry), key)) {
+                return i;
+            }
+        }
+    }
+
+    // The key's position in the index, or else where to insert it; applying thread only
+    private int findForWrite(AtomicLongArray index, byte[] key, long hash) {
+        int existing = findExisting(index, key, hash);
+        if (existing >= 0) {
+            return existing;
+        }
+        int mask = index.length() - 1;
+        int i = (int) hash & mask;
+        while (index.get(i) != EMPTY && index.get(i) != REMOVED) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    // Writes a record to the head arena, starting a new one when it is full, and returns its address
+    private long append(byte[] key, byte[] value, long version) {
+        int length = HEADER_BYTES + key.length + (value == null ? 0 : value.length);
+        Arena arena = head;
+        if (arena == null || arena.used + length > arena.buffer.capacity()) {
+            arena = addArena(Math.max(ARENA_BYTES, length));
+            // A record too large for an arena gets one of its own, and the head stays as it is
+            if (length <= ARENA_BYTES) {
+                head = arena;
+            }
+        }
+        int offset = arena.used;
+        ByteBuffer buffer = arena.buffer;
+        buffer.putInt(offset, key.length);
+        buffer.putInt(offset + 4, value == null ? -1 : value.length);
+        buffer.putLong(offset + 8, version);
+        buffer.put(offset + HEADER_BYTES, key);
+        if (value != null) {
+            buffer.put(offset + HEADER_BYTES + key.length, value);
+        }
+        arena.used += length;
+        arena.liveBytes += length;
+        liveBytes += length;
+        return ((long) arena.id << OFFSET_BITS) | offset;
+    }
+
+    private Arena addArena(int capacity) {
+        if (nextArenaId > ARENA_ID_MASK) {
+            throw new IllegalStateException("Off-heap store ran out of arena ids");
+        }
+        Arena arena = new Arena(nextArenaId++, capacity);
+        arenas = arenas.with(arena);
+        allocatedBytes += capacity;
+        return arena;
+    }
+
+    // Accounts for a record no entry points to any more
+    private void release(long entry) {
+        Arena arena = arenas.get(arenaIdOf(entry));
+        int length = recordLength(arena.buffer, offsetOf(entry));
+        arena.liveBytes -= length;
+        liveBytes -= length;
+    }
+
+    // Compacts the arena with the least live data once garbage fills half of the arenas. The free end of
+    // the head arena is not garbage; the unused end of a full one is
+    private void maybeCompact() {
+        long garbage = allocatedBytes - liveBytes - (head.buffer.capacity() - head.used);
+        if (garbage <= allocatedBytes / 2) {
+            return;
+        }
+        Arena victim = null;
+        for (Arena arena : arenas.byId) {
+            if (arena != null && arena != head && !compacted.contains(arena)
+                    && (victim == null || arena.liveBytes * victim.buffer.capacity() < victim.liveBytes * arena.buffer.capacity())) {
+                victim = arena;
+            }
+        }
+        if (victim != null) {
+            compact(victim);
+        }
+    }
+
+    // Copies the live records of an arena to the head arena and re-points their entries
+    private void compact(Arena victim) {
+        ByteBuffer buffer = victim.buffer;
+        AtomicLongArray index = this.index;
+        int mask = index.length() - 1;
+        for (int offset = 0; offset < victim.used && victim.liveBytes > 0; ) {
+            int keyLength = buffer.getInt(offset);
+            int length = recordLength(buffer, offset);
+            long hash = hash(buffer, offset + HEADER_BYTES, keyLength);
+            long address = ((long) victim.id << OFFSET_BITS) | offset;
+            for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+                long entry = index.get(i);
+                if (entry == EMPTY) {
+                    break;
+                }
+                if ((entry & (-1L >>> 16)) == address) {
+                    byte[] record = new byte[length];
+                    buffer.get(offset, record);
+                    index.set(i, tagOf(hash) | appendRecord(record));
+                    victim.liveBytes -= length;
+                    liveBytes -= length;
+                    break;
+                }
+            }
+            offset += length;
+        }
+        allocatedBytes -= victim.buffer.capacity();
+        compacted.add(victim);
+        dropCompactedArenas();
+    }
+
+    private long appendRecord(byte[] record) {
+        Arena arena = head;
+        if (arena.used + record.length > arena.buffer.capacity()) {
+            arena = addArena(Math.max(ARENA_BYTES, record.length));
+            if (record.length <= ARENA_BYTES) {
+                head = arena;
+            }
+        }
+        int offset = arena.used;
+        arena.buffer.put(offset, record);
+        arena.used += record.length;
+        arena.liveBytes += record.length;
+        liveBytes += record.length;
+        return ((long) arena.id << OFFSET_BITS) | offset;
+    }
+
+    // Takes compacted arenas out of the readers' view, unless a reader visiting every entry may still need them
+    private void dropCompactedArenas() {
+        if (!compacted.isEmpty() && pins.get() == 0) {
+            arenas = arenas.without(compacted);
+            compacted.clear();
+        }
+    }
+
+    // Moves every entry to a new index, twice as large if it is more than half full
+    private void rehash() {
+        AtomicLongArray current = index;
+        int capacity = current.length();
+        if (size * 2L > capacity) {
+            capacity *= 2;
+        }
+        AtomicLongArray resized = new AtomicLongArray(capacity);
+        int mask = capacity - 1;
+        Arenas arenas = this.arenas;
+        for (int i = 0; i < current.length(); i++) {
+            long entry = current.get(i);
+            if (entry == EMPTY || entry == REMOVED) {
+                continue;
+            }
+            ByteBuffer buffer = arenas.get(arenaIdOf(entry)).buffer;
+            int offset = offsetOf(entry);
+            long hash = hash(buffer, offset + HEADER_BYTES, buffer.getInt(offset));
+            int position = (int) hash & mask;
+            while (resized.get(position) != EMPTY) {
+                position = (position + 1) & mask;
+            }
+            resized.lazySet(position, entry);
+        }
+        // Publishing the index makes its entries visible to the readers that read it
+        index = resized;
+        removedEntries = 0;
+    }
+
+    private static VersionedValue decode(Arena arena, int offset, VersionedValue previous) {
+        ByteBuffer buffer = arena.buffer;
+        int keyLength = buffer.getInt(offset);
+        int valueLength = buffer.getInt(offset + 4);
+        long version = buffer.getLong(offset + 8);
+        String value = null;
+        if (valueLength >= 0) {
+            byte[] bytes = new byte[valueLength];
+            buffer.get(offset + HEADER_BYTES + keyLength, bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return new VersionedValue(value, version, previous);
+    }
+
+    private static String readKey(Arena arena, int offset) {
+        byte[] bytes = new byte[arena.buffer.getInt(offset)];
+        arena.buffer.get(offset + HEADER_BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean keyEquals(ByteBuffer buffer, int offset, byte[] key) {
+        if (buffer.getInt(offset) != key.length) {
+            return false;
+        }
+        int start = offset + HEADER_BYTES;
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(start + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int recordLength(ByteBuffer buffer, int offset) {
+        return HEADER_BYTES + buffer.getInt(offset) + Math.max(0, buffer.getInt(offset + 4));
+    }
+
+    private static int arenaIdOf(long entry) {
+        return (int) ((entry >>> OFFSET_BITS) & ARENA_ID_MASK);
+    }
+
+    private static int offsetOf(long entry) {
+        return (int) (entry & OFFSET_MASK);
+    }
+
+    private static long tagOf(long hash) {
+        return hash & ~(-1L >>> 16);
+    }
+
+    // FNV-1a over the key's bytes, with the bits mixed so that the low ones pick the slot and the high ones tag it
+    private static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            hash = (hash ^ b) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long hash(ByteBuffer buffer, int offset, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ buffer.get(i)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+}
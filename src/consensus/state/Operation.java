@@ -1,29 +1,98 @@
 package consensus.state;
 
+import common.ConsensusUtils;
+import consensus.message.WireForm;
 import java.io.Serializable;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Represents a single operation to be performed on the key-value store.
  * This class is designed to be serializable to facilitate easy transmission over a network if necessary.
+ *
+ * Every operation has an id made of the id of the process that created it and a sequence number within that
+ * process. Copies received from another server or read back from the log keep the id, so two operations are
+ * equal exactly when they are copies of the same one.
  */
 public class Operation implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // Identifies the operations created by this process
+    private static final long CLIENT_ID = new SecureRandom().nextLong() & Long.MAX_VALUE;
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
     private final String operationType;  // The type of operation (e.g., PUT, GET, DELETE)
     private final String key;            // The key involved in the operation
     private final String value;          // The value involved in the operation (for PUT)
 
     private final int proposalId;
+    private final List<Operation> batchedOperations; // The client operations of a BATCH, in order
+
+    private final long clientId;
+    private final long sequence;
 
     /**
-     * Constructor for Operation class.
+     * Constructor for Operation class. The operation gets a new id.
      * @param operationType The type of operation (e.g., "PUT", "GET", "DELETE")
      * @param key The key involved in the operation.
      * @param value The value to associate with the key (used for PUT operations).
      */
     public Operation(int proposalId, String operationType, String key, String value) {
+        this(CLIENT_ID, SEQUENCE.incrementAndGet(), proposalId, operationType, key, value);
+    }
+
+    /**
+     * Recreates an operation with the id it was created with, as when it is read from a message or the log.
+     * @param clientId The id of the process that created the operation.
+     * @param sequence The sequence number of the operation within that process.
+     */
+    public Operation(long clientId, long sequence, int proposalId, String operationType, String key, String value) {
+        this(clientId, sequence, proposalId, operationType, key, value, Collections.emptyList());
+    }
+
+    private Operation(long clientId, long sequence, int proposalId, String operationType, String key, String value,
+                      List<Operation> batchedOperations) {
+        this.clientId = clientId;
+        this.sequence = sequence;
         this.proposalId = proposalId;
         this.operationType = operationType;
         this.key = key;
         this.value = value;
+        this.batchedOperations = batchedOperations;
+    }
+
+    /**
+     * Wraps several client operations so they are decided together in a single log slot.
+     * @param proposalId The proposal ID of the batch.
+     * @param operations The operations, in the order they must be applied.
+     * @return A BATCH operation.
+     */
+    public static Operation batchOf(int proposalId, List<Operation> operations) {
+        return batchOf(CLIENT_ID, SEQUENCE.incrementAndGet(), proposalId, operations);
+    }
+
+    /**
+     * Recreates a batch with the id it was created with, as when it is read from a message or the log.
+     */
+    public static Operation batchOf(long clientId, long sequence, int proposalId, List<Operation> operations) {
+        return new Operation(clientId, sequence, proposalId, ConsensusUtils.OPERATION_BATCH, null, null, List.copyOf(operations));
+    }
+
+    /**
+     * @return true if this operation is a batch of client operations.
+     */
+    public boolean isBatch() {
+        return ConsensusUtils.OPERATION_BATCH.equals(operationType);
+    }
+
+    /**
+     * Gets the operations of a batch.
+     * @return The batched operations in apply order, or an empty list if this is not a batch.
+     */
+    public List<Operation> getBatchedOperations() {
+        return batchedOperations;
     }
 
     /**
@@ -54,12 +123,54 @@ public class Operation implements Serializable {
         return proposalId;
     }
 
+    /**
+     * @return The id of the process that created the operation.
+     */
+    public long getClientId() {
+        return clientId;
+    }
+
+    /**
+     * @return The sequence number of the operation within the process that created it.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Operation)) {
+            return false;
+        }
+        Operation other = (Operation) o;
+        return clientId == other.clientId && sequence == other.sequence;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(clientId * 31 + sequence);
+    }
+
     @Override
     public String toString() {
+        if (isBatch()) {
+            return "Operation{" +
+                    "operationType='" + operationType + '\'' +
+                    ", size=" + batchedOperations.size() +
+                    '}';
+        }
         return "Operation{" +
                 "operationType='" + operationType + '\'' +
                 ", key='" + key + '\'' +
                 ", value='" + value + '\'' +
                 '}';
     }
+
+    // Serialized in its compact wire form, see MessageCodec
+    private Object writeReplace() {
+        return WireForm.replace(this);
+    }
 }
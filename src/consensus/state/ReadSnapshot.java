@@ -0,0 +1,89 @@
+package consensus.state;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * A consistent view of the store as of one applied slot, opened with {@link StateStore#openSnapshot(long)}.
+ *
+ * Reads through it take no lock and see every key as it was right after that slot was applied, however many
+ * operations are applied meanwhile. The versions it needs are kept until it is closed, or until the lease
+ * set with {@link #retainFor(long)} runs out, so it should be closed as soon as it is no longer read.
+ */
+public class ReadSnapshot implements AutoCloseable {
+    private final StateStore owner;
+    private final VersionMap store;
+    private final long slot;
+    private volatile boolean closed;
+    private volatile boolean retained;
+    private volatile long retainedUntilNanos;
+
+    ReadSnapshot(StateStore owner, VersionMap store, long slot) {
+        this.owner = owner;
+        this.store = store;
+        this.slot = slot;
+    }
+
+    /**
+     * @return The last slot whose effects the snapshot contains, or -1 if it was opened before any was applied.
+     */
+    public long getSlot() {
+        return slot;
+    }
+
+    /**
+     * @return The value the key had as of the snapshot's slot, or null if it did not exist.
+     */
+    public String get(String key) {
+        VersionedValue version = getVersioned(key);
+        return version == null ? null : version.getValue();
+    }
+
+    /**
+     * @return The value the key had as of the snapshot's slot and the slot that wrote it, or null if it did
+     *         not exist.
+     */
+    public VersionedValue getVersioned(String key) {
+        VersionedValue head = store.get(key);
+        VersionedValue version = head == null ? null : head.asOf(slot);
+        return version == null || version.isDeleted() ? null : version;
+    }
+
+    /**
+     * Streams every key that existed as of the snapshot's slot with its value at that slot.
+     */
+    public void forEach(BiConsumer<String, String> consumer) {
+        store.forEach((key, head) -> {
+            VersionedValue version = head.asOf(slot);
+            if (version != null && !version.isDeleted()) {
+                consumer.accept(key, version.getValue());
+            }
+        });
+    }
+
+    /**
+     * Keeps the snapshot's versions for a while after it is closed, so a client can come back and read more
+     * keys at the same slot without holding anything open on the server.
+     * @param leaseMs How long after this call the versions are kept at least.
+     */
+    public void retainFor(long leaseMs) {
+        retainedUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(leaseMs);
+        retained = true;
+    }
+
+    /**
+     * Releases the versions the snapshot needs, once any lease set on it has run out.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (!retained) {
+            owner.release(this);
+        }
+    }
+
+    // Whether the versions the snapshot needs may be collected
+    boolean isReleased(long nowNanos) {
+        return closed && (!retained || nowNanos - retainedUntilNanos > 0);
+    }
+}
@@ -2,54 +2,272 @@ package consensus.state;
 
 import common.ConsensusUtils;
 import common.CustomLogger;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * StateStore manages the key-value state for the Paxos-based system.
- * This class provides thread-safe methods to modify and retrieve the state.
+ * This class provides thread-safe methods to retrieve the state; it is modified by a single applying thread.
+ *
+ * Every key keeps a short chain of versions, each tagged with the slot that wrote it, so a reader can open a
+ * {@link ReadSnapshot} at an applied slot and read any number of keys as of that slot without locking and
+ * without holding up the applying thread. Versions older than every open snapshot are collected by the
+ * applying thread as it goes, see {@link #collectGarbage(long, int)}; with no snapshot open a key keeps
+ * about one version.
+ *
+ * The versions are held by the {@link StorageEngine} chosen when the store is created: as objects on the
+ * heap, or with the newest version of every key as bytes in direct memory.
  */
 public class StateStore {
     private static final CustomLogger logger = new CustomLogger(CustomLogger.LogLevel.INFO);
-    private ConcurrentHashMap<String, String> store = new ConcurrentHashMap<>();
+    private final StorageEngine engine;
+    private volatile VersionMap store;
+
+    // Snapshots that may still be read, or whose lease has not run out yet
+    private final Set<ReadSnapshot> openSnapshots = ConcurrentHashMap.newKeySet();
+    // Snapshots at a slot below the published horizon cannot be opened any more. The applying thread first
+    // publishes the applied slot, then lowers it to the oldest open snapshot it finds; a snapshot registered
+    // too late to be found sees the first value and is turned away if it is older.
+    private volatile long publishedHorizon = -1;
+    // Every version older than the newest one at or before this slot may be dropped; applying thread only
+    private long collectHorizon = -1;
+    private Iterator<String> sweep;
+    private final AtomicInteger liveKeys = new AtomicInteger();
+    private final AtomicLong versionCount = new AtomicLong();
+
+    public StateStore() {
+        this(StorageEngine.HEAP);
+    }
+
+    public StateStore(StorageEngine engine) {
+        this.engine = engine;
+        this.store = engine.newMap(0);
+    }
+
+    public StorageEngine getStorageEngine() {
+        return engine;
+    }
 
     public String get(String key) {
-        return store.get(key);
+        VersionedValue entry = getVersioned(key);
+        return entry == null ? null : entry.getValue();
+    }
+
+    /**
+     * @return The latest value of the key and the slot that wrote it, or null if the key does not exist.
+     */
+    public VersionedValue getVersioned(String key) {
+        VersionedValue head = store.get(key);
+        return head == null || head.isDeleted() ? null : head;
+    }
+
+    /**
+     * @return The number of keys in the store.
+     */
+    public int size() {
+        return liveKeys.get();
+    }
+
+    /**
+     * @return The number of versions kept over all keys, including those of deleted keys not collected yet.
+     */
+    public long getVersionCount() {
+        return versionCount.get();
+    }
+
+    /**
+     * @return The bytes of direct memory the store holds its values in; 0 with the heap engine.
+     */
+    public long getOffHeapBytes() {
+        return store.offHeapBytes();
+    }
+
+    /**
+     * Opens a consistent view of the store as of an applied slot. It must be closed when no longer read.
+     * @param slot A slot that has been applied, or -1 for the state before the first one.
+     * @return The snapshot, or null if versions as of that slot may already have been collected.
+     */
+    public ReadSnapshot openSnapshot(long slot) {
+        ReadSnapshot snapshot = new ReadSnapshot(this, store, slot);
+        openSnapshots.add(snapshot);
+        if (slot < publishedHorizon) {
+            openSnapshots.remove(snapshot);
+            return null;
+        }
+        return snapshot;
+    }
+
+    // Called by a snapshot once its versions may be collected
+    void release(ReadSnapshot snapshot) {
+        openSnapshots.remove(snapshot);
+    }
+
+    /**
+     * Collects the versions no snapshot can read any more: on the keys written from now on, and by sweeping
+     * over a few more keys each call. Called by the applying thread after each batch it applies.
+     * @param appliedSlot The highest slot applied so far.
+     * @param maxKeys How many keys to sweep at most.
+     * @return How many versions were dropped.
+     */
+    public int collectGarbage(long appliedSlot, int maxKeys) {
+        publishedHorizon = appliedSlot;
+        long horizon = appliedSlot;
+        long nowNanos = System.nanoTime();
+        for (ReadSnapshot snapshot : openSnapshots) {
+            if (snapshot.isReleased(nowNanos)) {
+                openSnapshots.remove(snapshot);
+            } else {
+                horizon = Math.min(horizon, snapshot.getSlot());
+            }
+        }
+        publishedHorizon = horizon;
+        collectHorizon = horizon;
+        if (horizon == appliedSlot) {
+            // No reader is behind the last slot applied, so none can see anything but the newest versions
+            versionCount.addAndGet(-store.dropOlderVersions());
+        }
+        // Every key has a version of its own; only keys with more, or deleted ones, need a sweep
+        int keys = store.size();
+        if (versionCount.get() == keys && liveKeys.get() == keys) {
+            return 0;
+        }
+        VersionMap current = store;
+        if (sweep == null || !sweep.hasNext()) {
+            sweep = current.keys();
+        }
+        int dropped = 0;
+        for (int i = 0; i < maxKeys && sweep.hasNext(); i++) {
+            String key = sweep.next();
+            VersionedValue head = current.get(key);
+            if (head == null) {
+                continue;
+            }
+            if (head.isDeleted() && head.getVersion() <= horizon) {
+                // Nobody can see the key as it was before it was deleted any more
+                if (current.remove(key, head)) {
+                    int versions = 1;
+                    for (VersionedValue version = head.getPrevious(); version != null; version = version.getPrevious()) {
+                        versions++;
+                    }
+                    dropped += versions;
+                }
+            } else {
+                dropped += current.truncate(key, head, horizon);
+            }
+        }
+        versionCount.addAndGet(-dropped);
+        return dropped;
+    }
+
+    /**
+     * Puts an entry loaded from a snapshot, before any operation is applied. Snapshots keep no versions, so
+     * the entry gets the snapshot's slot, the latest slot that can have written it.
+     */
+    public void restore(String key, String value, long snapshotSlot) {
+        boolean added = store.get(key) == null;
+        store.put(key, new VersionedValue(value, snapshotSlot));
+        if (added) {
+            liveKeys.incrementAndGet();
+            versionCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Replaces the whole state with one transferred from another server, as of a slot this server had
+     * not reached yet. Snapshots already open keep reading the state they were opened on.
+     * @param entries The new content of the store.
+     * @param snapshotSlot The slot the content is as of, which becomes the version of every entry.
+     */
+    public void replaceAll(Map<String, String> entries, long snapshotSlot) {
+        VersionMap replacement = store.emptyCopy(entries.size());
+        entries.forEach((key, value) -> replacement.put(key, new VersionedValue(value, snapshotSlot)));
+        store = replacement;
+        sweep = null;
+        liveKeys.set(replacement.size());
+        versionCount.set(replacement.size());
+    }
+
+    // Makes a new version the head of the key's chain and drops the versions it hides from every reader
+    private void write(String key, String value, long slot) {
+        VersionedValue head = store.get(key);
+        VersionedValue version = new VersionedValue(value, slot, head);
+        int dropped = version.truncate(collectHorizon);
+        store.put(key, version);
+        versionCount.addAndGet(1 - dropped);
+        boolean existed = head != null && !head.isDeleted();
+        if (existed == (value == null)) {
+            liveKeys.addAndGet(existed ? -1 : 1);
+        }
     }
 
     /**
      * Applies an operation to the state store.
+     * Operations are applied by one thread at a time, the learner's apply stage, so this takes no lock;
+     * readers never lock either and see every key as of the last operation applied to it, or as of the slot
+     * of their snapshot. A delete keeps the key's older versions for open snapshots.
      * @param operation The operation to apply.
+     * @param slot The slot the operation was decided in, which becomes the version of the keys it writes.
      * @return true if the operation is successfully applied, false otherwise.
      */
-    public synchronized boolean applyOperation(Operation operation) {
+    public boolean applyOperation(Operation operation, long slot) {
         String key = operation.getKey();
         String value = operation.getValue();
 
         switch (operation.getOperationType()) {
             case ConsensusUtils.OPERATION_PUT:
-                store.put(key, value);
-                logger.info("PUT operation applied: " + key + " = " + value);
+                write(key, value, slot);
+                logger.info("PUT operation applied: {} = {}", key, value);
                 return true;
             case ConsensusUtils.OPERATION_DELETE:
-                if (store.containsKey(key)) {
-                    store.remove(key);
-                    logger.info("DELETE operation applied: " + key);
+                if (getVersioned(key) != null) {
+                    write(key, null, slot);
+                    logger.info("DELETE operation applied: {}", key);
                     return true;
                 } else {
-                    logger.warn("DELETE operation failed: Key not found - " + key);
+                    logger.warn("DELETE operation failed: Key not found - {}", key);
                     return false;
                 }
             case ConsensusUtils.OPERATION_GET:
                 // Note: GET doesn't alter the state, just retrieves the value.
-                if (store.containsKey(key)) {
-                    logger.info("GET operation retrieved: " + key + " = " + store.get(key));
+                if (getVersioned(key) != null) {
+                    logger.info("GET operation retrieved: {} = {}", key, get(key));
                 } else {
-                    logger.warn("GET operation failed: Key not found - " + key);
+                    logger.warn("GET operation failed: Key not found - {}", key);
                 }
-                return store.containsKey(key);
+                return getVersioned(key) != null;
+            case ConsensusUtils.OPERATION_NOOP:
+                return true;
+            case ConsensusUtils.OPERATION_BATCH:
+                // Entries are applied in batch order; an entry that has no effect does not fail the batch
+                applyEntries(operation, slot);
+                return true;
             default:
-                logger.error("Unknown operation type: " + operation.getOperationType());
+                logger.error("Unknown operation type: {}", operation.getOperationType());
                 return false;
         }
     }
+
+    /**
+     * Applies an operation to the state store and reports the outcome of each entry of a batch, which
+     * {@link #applyOperation(Operation, long)} does not.
+     * @param operation The operation to apply.
+     * @param slot The slot the operation was decided in.
+     * @return One result per batched operation, in batch order, or the single result of any other operation.
+     */
+    public boolean[] applyEntries(Operation operation, long slot) {
+        if (!operation.isBatch()) {
+            return new boolean[]{applyOperation(operation, slot)};
+        }
+        List<Operation> entries = operation.getBatchedOperations();
+        boolean[] results = new boolean[entries.size()];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = applyOperation(entries.get(i), slot);
+        }
+        return results;
+    }
 }
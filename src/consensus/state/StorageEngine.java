@@ -0,0 +1,38 @@
+package consensus.state;
+
+/**
+ * Selects how a {@link StateStore} holds its keys and values.
+ */
+public enum StorageEngine {
+    /**
+     * Keys, values and versions are Java objects in a concurrent hash map.
+     */
+    HEAP,
+
+    /**
+     * The newest version of every key is kept as UTF-8 bytes in direct memory arenas, indexed by an array
+     * of longs, see {@link OffHeapVersionMap}.
+     */
+    OFF_HEAP;
+
+    /**
+     * Parses a storage engine name ("heap" or "offheap").
+     * @param name The engine name, case-insensitive.
+     * @return The matching engine.
+     * @throws IllegalArgumentException if the name does not match any engine.
+     */
+    public static StorageEngine fromString(String name) {
+        String normalized = name.trim().toUpperCase().replace("-", "").replace("_", "");
+        if (normalized.equals("HEAP")) {
+            return HEAP;
+        }
+        if (normalized.equals("OFFHEAP")) {
+            return OFF_HEAP;
+        }
+        throw new IllegalArgumentException("Unknown storage engine: " + name);
+    }
+
+    VersionMap newMap(int expectedSize) {
+        return this == OFF_HEAP ? new OffHeapVersionMap(expectedSize) : new HeapVersionMap(expectedSize);
+    }
+}
@@ -0,0 +1,68 @@
+package consensus.state;
+
+import java.util.Iterator;
+import java.util.function.BiConsumer;
+
+/**
+ * Where a {@link StateStore} keeps the newest version of every key, with the older versions still kept
+ * chained behind it. Only the store's applying thread writes; any number of threads read without locking.
+ */
+interface VersionMap {
+
+    /**
+     * @return The key's newest version, deleted or not, with its older versions behind it; null if the key has none.
+     */
+    VersionedValue get(String key);
+
+    /**
+     * Makes a version the newest of its key. The older versions readers may still see must already be chained
+     * behind it.
+     */
+    void put(String key, VersionedValue version);
+
+    /**
+     * Forgets a key with all its versions, if its newest version is still the given one.
+     * @return true if the key was removed.
+     */
+    boolean remove(String key, VersionedValue version);
+
+    /**
+     * Drops the versions of a key no reader at or after the horizon can see.
+     * @param head The key's newest version, as returned by {@link #get(String)}.
+     * @return How many versions were dropped.
+     */
+    int truncate(String key, VersionedValue head, long horizon);
+
+    /**
+     * Drops every version but the newest of each key. Only called when the horizon has reached the newest
+     * slot applied, so that no reader can see an older one. Maps that keep older versions in the chains of
+     * their entries leave them to {@link #truncate} and drop nothing here.
+     * @return How many versions were dropped.
+     */
+    int dropOlderVersions();
+
+    /**
+     * @return The number of keys, including deleted ones whose versions are still kept.
+     */
+    int size();
+
+    /**
+     * @return The keys, as the applying thread sweeps them; writes made meanwhile may or may not be seen.
+     */
+    Iterator<String> keys();
+
+    /**
+     * Visits every key with its newest version; writes made meanwhile may or may not be seen.
+     */
+    void forEach(BiConsumer<String, VersionedValue> action);
+
+    /**
+     * @return An empty map of the same kind, sized for the given number of keys.
+     */
+    VersionMap emptyCopy(int expectedSize);
+
+    /**
+     * @return The bytes of memory held outside the Java heap.
+     */
+    long offHeapBytes();
+}
@@ -0,0 +1,72 @@
+package consensus.state;
+
+/**
+ * A value of the store together with its version: the log slot of the operation that wrote it.
+ *
+ * In the store, versions of a key form a chain from the newest to older ones, so a reader can find the
+ * value the key had as of any slot still kept. A null value marks the slot that deleted the key.
+ */
+public final class VersionedValue {
+    private final String value;
+    private final long version;
+    // Cut by the applying thread once no reader can need the older versions
+    private volatile VersionedValue previous;
+
+    public VersionedValue(String value, long version) {
+        this(value, version, null);
+    }
+
+    VersionedValue(String value, long version, VersionedValue previous) {
+        this.value = value;
+        this.version = version;
+        this.previous = previous;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @return The slot that wrote the value. Values restored from a snapshot carry the snapshot's slot.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    boolean isDeleted() {
+        return value == null;
+    }
+
+    VersionedValue getPrevious() {
+        return previous;
+    }
+
+    /**
+     * @return The newest version in this chain written at or before the slot, or null if there is none left.
+     */
+    VersionedValue asOf(long slot) {
+        VersionedValue version = this;
+        while (version != null && version.version > slot) {
+            version = version.previous;
+        }
+        return version;
+    }
+
+    /**
+     * Drops the versions no reader at or after the horizon can see: everything older than the newest version
+     * written at or before it.
+     * @return How many versions were dropped.
+     */
+    int truncate(long horizon) {
+        VersionedValue kept = asOf(horizon);
+        if (kept == null || kept.previous == null) {
+            return 0;
+        }
+        int dropped = 0;
+        for (VersionedValue version = kept.previous; version != null; version = version.previous) {
+            dropped++;
+        }
+        kept.previous = null;
+        return dropped;
+    }
+}
@@ -0,0 +1,161 @@
+package network;
+
+import common.CustomLogger;
+import common.ThreadModel;
+import consensus.message.Decision;
+import consensus.state.Operation;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends decided slots to the learners of the other servers in the background.
+ *
+ * Every peer has its own ordered queue drained by its own sender thread, so a slow or unreachable peer
+ * delays neither the client nor the other peers. A sender ships whatever has queued up in one commit
+ * call and the peer acknowledges with the highest slot it has applied. Failed sends are retried with
+ * exponential backoff. If a peer stays down long enough for its queue to overflow, the oldest decisions
+ * are dropped; the peer later finds the resulting gap in its log and fills it through consensus.
+ */
+public class CommitPropagator {
+
+    private static final CustomLogger logger = new CustomLogger(CustomLogger.LogLevel.INFO);
+    private static final int MAX_DECISIONS_PER_COMMIT = 256;
+    private static final int MAX_QUEUED_PER_PEER = 100_000;
+    private static final int INITIAL_BACKOFF_MS = 50;
+    private static final int MAX_BACKOFF_MS = 5000;
+
+    /**
+     * Outgoing queue and replication progress of one peer.
+     */
+    private final class PeerChannel implements Runnable {
+        final int port;
+        final LinkedBlockingQueue<Decision> queue = new LinkedBlockingQueue<>();
+        final AtomicLong ackedSlot = new AtomicLong(-1);
+        final AtomicLong droppedDecisions = new AtomicLong();
+        volatile boolean lagging;
+
+        PeerChannel(int port) {
+            this.port = port;
+        }
+
+        void enqueue(Decision decision) {
+            queue.add(decision);
+            if (queue.size() > MAX_QUEUED_PER_PEER && queue.poll() != null && droppedDecisions.getAndIncrement() == 0) {
+                logger.warn("Commit queue for peer at port {} overflowed, dropping its oldest decisions", port);
+            }
+        }
+
+        @Override
+        public void run() {
+            List<Decision> batch = new ArrayList<>();
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    batch.clear();
+                    batch.add(queue.take());
+                    queue.drainTo(batch, MAX_DECISIONS_PER_COMMIT - 1);
+                    sendWithRetry(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Retries the same batch until the peer takes it, so decisions reach the peer in slot order
+        private void sendWithRetry(List<Decision> batch) throws InterruptedException {
+            int backoffMs = INITIAL_BACKOFF_MS;
+            List<Decision> decisions = new ArrayList<>(batch);
+            while (true) {
+                try {
+                    long applied = peers.call(port, stub -> stub.commit(decisions, selfPort));
+                    ackedSlot.accumulateAndGet(applied, Math::max);
+                    if (lagging) {
+                        logger.info("Peer at port {} is receiving commits again, applied up to slot {}", port, applied);
+                        lagging = false;
+                    }
+                    return;
+                } catch (RemoteException e) {
+                    if (!lagging) {
+                        logger.warn("Failed to send commits to peer at port {}, retrying with backoff: {}", port, e.getMessage());
+                        lagging = true;
+                    }
+                    Thread.sleep(backoffMs);
+                    backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+                }
+            }
+        }
+    }
+
+    private final PeerConnectionManager peers;
+    private final int selfPort;
+    private final Map<Integer, PeerChannel> channels = new LinkedHashMap<>();
+
+    public CommitPropagator(PeerConnectionManager peers) {
+        this.peers = peers;
+        this.selfPort = peers.getSelfPort();
+        for (int port : peers.getPeerPorts()) {
+            channels.put(port, new PeerChannel(port));
+        }
+    }
+
+    /**
+     * Starts one sender thread per peer.
+     */
+    public void start() {
+        for (PeerChannel channel : channels.values()) {
+            ThreadModel.current().threadFactory("commit-" + selfPort + "-to-" + channel.port).newThread(channel).start();
+        }
+    }
+
+    /**
+     * Queues a decided slot for every peer and returns immediately.
+     * @param slot The decided slot.
+     * @param operation The operation chosen for the slot.
+     */
+    public void propagate(long slot, Operation operation) {
+        Decision decision = new Decision(slot, operation);
+        for (PeerChannel channel : channels.values()) {
+            channel.enqueue(decision);
+        }
+    }
+
+    /**
+     * @return The highest slot the peer has acknowledged as applied, or -1 if it has not acknowledged any.
+     */
+    public long getAckedSlot(int port) {
+        return channel(port).ackedSlot.get();
+    }
+
+    /**
+     * @return The number of decisions queued for the peer and not yet sent.
+     */
+    public int getPendingCount(int port) {
+        return channel(port).queue.size();
+    }
+
+    /**
+     * @return true while sends to the peer are failing and being retried.
+     */
+    public boolean isLagging(int port) {
+        return channel(port).lagging;
+    }
+
+    /**
+     * @return The number of decisions dropped for the peer because its queue overflowed.
+     */
+    public long getDroppedCount(int port) {
+        return channel(port).droppedDecisions.get();
+    }
+
+    private PeerChannel channel(int port) {
+        PeerChannel channel = channels.get(port);
+        if (channel == null) {
+            throw new IllegalArgumentException("Unknown peer port: " + port);
+        }
+        return channel;
+    }
+}
@@ -0,0 +1,186 @@
+package network;
+
+import common.CustomLogger;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Resolves and caches the {@link ServerInterface} stub of every server in the cluster.
+ *
+ * A stub is obtained from the {@link PeerTransport} once and reused for every later call. When a call
+ * through it fails with a {@link RemoteException} the peer is marked unhealthy and its stub dropped, so
+ * the next call resolves it again; while a peer stays unreachable, lookups are retried at most once per
+ * {@link #RESOLVE_RETRY_MS} instead of on every call.
+ */
+public class PeerConnectionManager {
+
+    private static final CustomLogger logger = new CustomLogger(CustomLogger.LogLevel.INFO);
+    public static final long RESOLVE_RETRY_MS = 1000;
+
+    /**
+     * A single remote call made through a peer's stub.
+     */
+    public interface PeerCall<T> {
+        T call(ServerInterface stub) throws RemoteException;
+    }
+
+    /**
+     * Connection and health state of one peer.
+     */
+    private static final class Peer {
+        final int port;
+        volatile ServerInterface stub;
+        volatile boolean healthy = true;
+        volatile int consecutiveFailures;
+        volatile long lastFailureNanos;
+        // Held while the stub is resolved, so concurrent callers wait for one lookup
+        final ReentrantLock resolveLock = new ReentrantLock();
+
+        Peer(int port) {
+            this.port = port;
+        }
+    }
+
+    private final int selfPort;
+    private final PeerTransport transport;
+    private final Map<Integer, Peer> peers = new LinkedHashMap<>();
+
+    /**
+     * Creates a manager that reaches its peers over RMI.
+     * @param selfPort The port of the server owning this manager.
+     * @param clusterPorts The ports of all servers in the cluster, including this one.
+     */
+    public PeerConnectionManager(int selfPort, List<Integer> clusterPorts) {
+        this(selfPort, clusterPorts, new RmiTransport());
+    }
+
+    /**
+     * @param selfPort The port of the server owning this manager.
+     * @param clusterPorts The ports of all servers in the cluster, including this one.
+     * @param transport The transport the peers are reached through.
+     */
+    public PeerConnectionManager(int selfPort, List<Integer> clusterPorts, PeerTransport transport) {
+        this.selfPort = selfPort;
+        this.transport = transport;
+        for (int port : clusterPorts) {
+            peers.put(port, new Peer(port));
+        }
+    }
+
+    public int getSelfPort() {
+        return selfPort;
+    }
+
+    /**
+     * @return The ports of every server in the cluster except this one.
+     */
+    public List<Integer> getPeerPorts() {
+        List<Integer> peerPorts = new ArrayList<>();
+        for (int port : peers.keySet()) {
+            if (port != selfPort) {
+                peerPorts.add(port);
+            }
+        }
+        return Collections.unmodifiableList(peerPorts);
+    }
+
+    /**
+     * Invokes a call on a peer through its cached stub and updates the peer's health from the outcome.
+     * @param port The peer's port.
+     * @param call The remote call.
+     * @return The result of the call.
+     * @throws RemoteException If the peer cannot be resolved or the call fails.
+     */
+    public <T> T call(int port, PeerCall<T> call) throws RemoteException {
+        Peer peer = peer(port);
+        ServerInterface stub = resolve(peer);
+        try {
+            T result = call.call(stub);
+            markHealthy(peer);
+            return result;
+        } catch (RemoteException e) {
+            markFailed(peer, e);
+            throw e;
+        }
+    }
+
+    /**
+     * @return The cached stub of a peer, resolving it first if needed.
+     * @throws RemoteException If the peer cannot be resolved.
+     */
+    public ServerInterface getStub(int port) throws RemoteException {
+        return resolve(peer(port));
+    }
+
+    /**
+     * @return false if the last call to or lookup of the peer failed.
+     */
+    public boolean isHealthy(int port) {
+        return peer(port).healthy;
+    }
+
+    /**
+     * @return The number of calls to the peer that failed since its last successful one.
+     */
+    public int getConsecutiveFailures(int port) {
+        return peer(port).consecutiveFailures;
+    }
+
+    private Peer peer(int port) {
+        Peer peer = peers.get(port);
+        if (peer == null) {
+            throw new IllegalArgumentException("Unknown peer port: " + port);
+        }
+        return peer;
+    }
+
+    private ServerInterface resolve(Peer peer) throws RemoteException {
+        ServerInterface stub = peer.stub;
+        if (stub != null) {
+            return stub;
+        }
+        peer.resolveLock.lock();
+        try {
+            if (peer.stub != null) {
+                return peer.stub;
+            }
+            if (!peer.healthy && System.nanoTime() - peer.lastFailureNanos < TimeUnit.MILLISECONDS.toNanos(RESOLVE_RETRY_MS)) {
+                throw new RemoteException("Peer at port " + peer.port + " is unreachable");
+            }
+            try {
+                peer.stub = transport.connect(peer.port);
+                logger.info("Resolved peer stub at port {}", peer.port);
+                return peer.stub;
+            } catch (RemoteException e) {
+                markFailed(peer, e);
+                throw e;
+            }
+        } finally {
+            peer.resolveLock.unlock();
+        }
+    }
+
+    private void markHealthy(Peer peer) {
+        if (!peer.healthy || peer.consecutiveFailures != 0) {
+            logger.info("Peer at port {} is reachable again", peer.port);
+        }
+        peer.consecutiveFailures = 0;
+        peer.healthy = true;
+    }
+
+    private void markFailed(Peer peer, RemoteException e) {
+        peer.stub = null; // Resolve the stub again on the next call
+        peer.lastFailureNanos = System.nanoTime();
+        peer.consecutiveFailures++;
+        if (peer.healthy) {
+            logger.warn("Peer at port {} became unreachable: {}", peer.port, e.getMessage());
+        }
+        peer.healthy = false;
+    }
+}
@@ -0,0 +1,29 @@
+package network;
+
+import java.rmi.RemoteException;
+
+/**
+ * Carries {@link ServerInterface} calls between the servers of the cluster.
+ */
+public interface PeerTransport {
+
+    /**
+     * Starts accepting calls from other servers and dispatching them to the local server.
+     * @param localServer The server that handles incoming calls.
+     * @throws RemoteException If the transport cannot listen for calls.
+     */
+    void start(ServerInterface localServer) throws RemoteException;
+
+    /**
+     * Returns a stub through which calls reach the server listening on a given port.
+     * @param port The port of the peer.
+     * @return The peer's stub.
+     * @throws RemoteException If the peer cannot be resolved.
+     */
+    ServerInterface connect(int port) throws RemoteException;
+
+    /**
+     * Stops accepting calls and closes all connections.
+     */
+    void close();
+}
@@ -0,0 +1,47 @@
+package network;
+
+import consensus.message.AcceptResponse;
+import consensus.message.PrepareResponse;
+import consensus.message.ReadIndexResponse;
+import consensus.participant.AcceptorEndpoint;
+import consensus.state.Operation;
+import java.rmi.RemoteException;
+
+/**
+ * Reaches the acceptor of another server through that server's cached stub.
+ */
+public class RemoteAcceptor implements AcceptorEndpoint {
+
+    private final PeerConnectionManager peers;
+    private final int serverPort;
+
+    public RemoteAcceptor(PeerConnectionManager peers, int serverPort) {
+        this.peers = peers;
+        this.serverPort = serverPort;
+    }
+
+    @Override
+    public PrepareResponse prepare(long slot, long proposalId, String proposerIdentifier) throws RemoteException {
+        return peers.call(serverPort, stub -> stub.prepare(slot, proposalId, proposerIdentifier));
+    }
+
+    @Override
+    public PrepareResponse prepareFrom(long fromSlot, long proposalId, String proposerIdentifier) throws RemoteException {
+        return peers.call(serverPort, stub -> stub.prepareFrom(fromSlot, proposalId, proposerIdentifier));
+    }
+
+    @Override
+    public AcceptResponse accept(long slot, long proposalId, Operation operation) throws RemoteException {
+        return peers.call(serverPort, stub -> stub.accept(slot, proposalId, operation));
+    }
+
+    @Override
+    public ReadIndexResponse readIndex(long ballot, String proposerIdentifier) throws RemoteException {
+        return peers.call(serverPort, stub -> stub.readIndex(ballot, proposerIdentifier));
+    }
+
+    @Override
+    public int getServerPort() {
+        return serverPort;
+    }
+}
@@ -0,0 +1,34 @@
+package network;
+
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+
+/**
+ * Reaches other servers through the {@link ServerInterface} they export in their RMI registry.
+ */
+public class RmiTransport implements PeerTransport {
+
+    private static final String HOST = "localhost";
+    private static final String BINDING_NAME = "PaxosServer";
+
+    @Override
+    public void start(ServerInterface localServer) {
+        // The server node already exports itself over RMI for clients, which serves peers as well
+    }
+
+    @Override
+    public ServerInterface connect(int port) throws RemoteException {
+        try {
+            Registry registry = LocateRegistry.getRegistry(HOST, port);
+            return (ServerInterface) registry.lookup(BINDING_NAME);
+        } catch (NotBoundException e) {
+            throw new RemoteException("No " + BINDING_NAME + " bound at port " + port, e);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -1,31 +1,68 @@
 package network;
 
+import consensus.message.AcceptResponse;
+import consensus.message.CatchUpResponse;
+import consensus.message.Decision;
+import consensus.message.PrepareResponse;
+import consensus.message.ReadIndexResponse;
+import consensus.message.ReadResult;
+import consensus.message.SnapshotChunk;
+import consensus.message.ServerStats;
+import consensus.message.SnapshotReadResult;
 import consensus.state.Operation;
+import consensus.state.ReadSnapshot;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ExecutionException;
 
+import common.ConsensusMetrics;
+import common.ConsensusUtils;
 import common.CustomLogger;
 import consensus.participant.ConsensusAcceptor;
 import consensus.participant.ConsensusLearner;
 import consensus.participant.ConsensusProposer;
+import consensus.participant.PaxosMode;
+import consensus.participant.ReadFreshness;
+import consensus.process.ProposerProcess;
+import consensus.process.SnapshotProcess;
 
 /**
  * Implements the ServerInterface and handles remote interactions for the Paxos protocol using RMI.
  */
 public class ServerCommunicator extends UnicastRemoteObject implements ServerInterface {
+    private static final long serialVersionUID = 1L;
+
+    // Upper bounds on what one catch-up call returns, whatever the caller asks for
+    private static final int MAX_CATCH_UP_SLOTS = 8192;
+    private static final int MAX_SNAPSHOT_CHUNK_BYTES = 4 * 1024 * 1024;
+    // How long a bounded-staleness read may wait for this server to catch up before it is redirected
+    private static final long BOUNDED_READ_WAIT_MS = 100;
+    // How recently another server's proposer must have had a value accepted here to be taken for the leader
+    private static final long ACTIVE_LEADER_WINDOW_MS = 500;
 
     private ConsensusProposer proposer;
     private ConsensusAcceptor acceptor;
     private ConsensusLearner learner;
+    private ProposerProcess proposerProcess;
+    private SnapshotProcess snapshotProcess;
+    private PeerConnectionManager peers;
+    private ShardMap shardMap;
+    private PeerConnectionManager shardRoutes;
+    private int shard;
+    private ReadFreshness readFreshness;
+    private ConsensusMetrics metrics = new ConsensusMetrics();
     private List<Integer> allLearnerAddresses;  // List of all other learner's RMI registry addresses
     private CustomLogger logger = new CustomLogger(CustomLogger.LogLevel.INFO);
 
-    private BlockingQueue<Operation> acceptedOperationsQueue = new LinkedBlockingQueue<>();
 
     public ServerCommunicator(ConsensusProposer proposer, ConsensusAcceptor acceptor, ConsensusLearner learner, List<Integer> allLearnerAddresses) throws RemoteException {
         super();
@@ -39,57 +76,320 @@ public class ServerCommunicator extends UnicastRemoteObject implements ServerInt
         this.learner = learner;
     }
 
+    /**
+     * Routes client proposals through a batching proposer process instead of proposing each one directly.
+     */
+    public void setProposerProcess(ProposerProcess proposerProcess) {
+        this.proposerProcess = proposerProcess;
+    }
+
+    /**
+     * Serves snapshots to lagging servers once the log below them has been truncated.
+     */
+    public void setSnapshotProcess(SnapshotProcess snapshotProcess) {
+        this.snapshotProcess = snapshotProcess;
+    }
+
+    /**
+     * Makes reads linearizable, and lets bounded-staleness reads be answered locally while the store is fresh enough.
+     */
+    public void setReadFreshness(ReadFreshness readFreshness) {
+        this.readFreshness = readFreshness;
+    }
+
+    /**
+     * Sets the metrics the latency of client proposals is recorded in and {@link #getStats()} reports.
+     */
+    public void setMetrics(ConsensusMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Forwards client proposals to the server holding the read lease, as no other server can get its own
+     * proposals accepted while the lease lasts.
+     */
+    public void setPeers(PeerConnectionManager peers) {
+        this.peers = peers;
+    }
+
+    /**
+     * Passes requests for keys of other shards on to the groups owning them, home replica first. Must be
+     * called after {@link #setPeers(PeerConnectionManager)}.
+     * @param shardMap Where keys and replicas belong.
+     * @param shardRoutes Stubs of the replicas of every shard.
+     */
+    public void setShards(ShardMap shardMap, PeerConnectionManager shardRoutes) {
+        this.shardMap = shardMap;
+        this.shardRoutes = shardRoutes;
+        this.shard = shardMap.shardOfPort(peers.getSelfPort());
+    }
+
+    // The shard owning a key if this server's group does not, otherwise -1
+    private int foreignShard(String key) {
+        if (shardMap == null) {
+            return -1;
+        }
+        int owner = shardMap.shardOf(key);
+        return owner == shard ? -1 : owner;
+    }
+
+    // Makes a call on the replicas of a shard in turn until one of them answers
+    private <T> T routeToShard(int owner, PeerConnectionManager.PeerCall<T> call) throws RemoteException {
+        RemoteException failure = null;
+        for (int port : shardMap.preferredPortsOf(owner)) {
+            try {
+                return shardRoutes.call(port, call);
+            } catch (RemoteException e) {
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
     @Override
     public boolean propose(Operation operation) throws RemoteException {
-        logger.info("Proposing operation: " + operation);
-        return proposer.propose(operation);
+        int owner = foreignShard(operation.getKey());
+        if (owner >= 0) {
+            logger.info("Routing operation {} to shard {}", operation, owner);
+            return routeToShard(owner, stub -> stub.propose(operation));
+        }
+        logger.info("Proposing operation: {}", operation);
+        long startNanos = System.nanoTime();
+        try {
+            return forwardOrProposeLocally(operation);
+        } finally {
+            metrics.propose.recordSince(startNanos);
+        }
+    }
+
+    // A leader holding a lease, or named by an acceptor that refused this server's proposer, is never proposed
+    // beside: if it cannot be reached the operation fails, as a local proposal would only duel with it
+    private boolean forwardOrProposeLocally(Operation operation) {
+        int leaderPort = leaseHolderPort();
+        if (leaderPort < 0) {
+            leaderPort = leaderHintPort();
+        }
+        boolean leaderNamed = leaderPort >= 0;
+        if (!leaderNamed) {
+            leaderPort = activeLeaderPort();
+        }
+        if (leaderPort >= 0) {
+            int forwardPort = leaderPort;
+            try {
+                boolean decided = peers.call(forwardPort, stub -> stub.proposeForwarded(operation, peers.getSelfPort()));
+                if (decided) {
+                    proposer.confirmLeaderHint(forwardPort);
+                }
+                return decided;
+            } catch (RemoteException e) {
+                logger.warn("Could not forward operation {} to the leader on port {}: {}", operation, leaderPort, e.getMessage());
+                if (leaderNamed) {
+                    return false;
+                }
+            }
+        }
+        return proposeLocally(operation);
+    }
+
+    @Override
+    public boolean proposeForwarded(Operation operation, int senderPort) throws RemoteException {
+        logger.info("Proposing operation forwarded by server on port {}: {}", senderPort, operation);
+        return proposeLocally(operation);
+    }
+
+    // The port of another server holding the read lease of this server's acceptor, or -1 if there is none
+    private int leaseHolderPort() {
+        if (peers == null || proposer == null || proposer.getMode() != PaxosMode.MULTI_PAXOS) {
+            return -1;
+        }
+        int port = ConsensusProposer.portOf(acceptor.getLeaseHolder());
+        return port == peers.getSelfPort() ? -1 : port;
+    }
+
+    // The port of another server an acceptor has just named as the leader to this server's proposer, or -1
+    private int leaderHintPort() {
+        if (peers == null || proposer == null || proposer.getMode() != PaxosMode.MULTI_PAXOS) {
+            return -1;
+        }
+        int port = proposer.getLeaderHintPort();
+        return port == peers.getSelfPort() ? -1 : port;
+    }
+
+    // The port of another server whose proposer this server's acceptor has just accepted values from, or -1.
+    // Without leases that is the only sign of a working Multi-Paxos leader, and proposing beside it would
+    // only preempt it; a server that is itself the leader keeps its writes.
+    private int activeLeaderPort() {
+        if (peers == null || proposer == null || proposer.getMode() != PaxosMode.MULTI_PAXOS || proposer.isLeader()) {
+            return -1;
+        }
+        int port = acceptor.getActiveProposerPort(ACTIVE_LEADER_WINDOW_MS);
+        return port == peers.getSelfPort() ? -1 : port;
+    }
+
+    private boolean proposeLocally(Operation operation) {
+        if (proposerProcess == null) {
+            return proposer.propose(operation);
+        }
+        // The caller is released once the batch carrying its operation has been committed
+        try {
+            return proposerProcess.submit(operation).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            logger.error("Proposal failed for operation {}: {}", operation, e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public PrepareResponse prepare(long slot, long proposalId, String proposerId) throws RemoteException {
+        logger.info("Received prepare request: Proposal ID {} for slot {} from Proposer {}", proposalId, slot, proposerId);
+        return acceptor.prepare(slot, proposalId, proposerId);
     }
 
     @Override
-    public boolean prepare(int proposalId, String proposerId) throws RemoteException {
-        logger.info("Received prepare request: Proposal ID " + proposalId + " from Proposer " + proposerId);
-        return acceptor.prepare(proposalId, proposerId);
+    public PrepareResponse prepareFrom(long fromSlot, long proposalId, String proposerId) throws RemoteException {
+        logger.info("Received prepare request: Proposal ID {} for slots from {} from Proposer {}", proposalId, fromSlot, proposerId);
+        return acceptor.prepareFrom(fromSlot, proposalId, proposerId);
     }
 
     @Override
-    public boolean accept(int proposalId, Operation operation) throws RemoteException {
-        logger.info("Received accept request: Proposal ID " + proposalId + " for Operation " + operation);
-        boolean result = acceptor.accept(proposalId, operation);
-        if (result) {
-            acceptedOperationsQueue.add(operation); // Add to queue if accepted
+    public AcceptResponse accept(long slot, long proposalId, Operation operation) throws RemoteException {
+        logger.info("Received accept request: Proposal ID {} for slot {} for Operation {}", proposalId, slot, operation);
+        return acceptor.accept(slot, proposalId, operation);
+    }
+
+
+    @Override
+    public ReadIndexResponse readIndex(long ballot, String proposerId) throws RemoteException {
+        return acceptor.readIndex(ballot, proposerId);
+    }
+
+    @Override
+    public long commit(List<Decision> decisions, int senderPort) throws RemoteException {
+        logger.info("Received commit request for {} slot(s) from server on port {}", decisions.size(), senderPort);
+        for (Decision decision : decisions) {
+            learner.learnFromPeer(decision.getSlot(), decision.getOperation());
         }
-        return result;
+        return learner.getHighestAppliedSlot();
     }
 
+    @Override
+    public CatchUpResponse fetchDecided(long fromSlot, int maxSlots) throws RemoteException {
+        logger.info("Received catch-up request for slots from {}", fromSlot);
+        List<Decision> decisions = acceptor.getDecidedFrom(fromSlot, Math.min(maxSlots, MAX_CATCH_UP_SLOTS));
+        if (decisions.isEmpty() && fromSlot < acceptor.getFirstSlot() && snapshotProcess != null) {
+            return CatchUpResponse.snapshotRequired(snapshotProcess.getLastSnapshotSlot(), learner.getHighestAppliedSlot());
+        }
+        return CatchUpResponse.decisions(decisions, learner.getHighestAppliedSlot());
+    }
 
     @Override
-    public boolean commit(Operation operation, int serverPort) throws RemoteException {
-        logger.info("Received commit request for Operation " + operation);
-        boolean isCommitted = learner.getStateStore().applyOperation(operation);
-        if (isCommitted) {
-            logger.info("Learner on port " + serverPort + " has committed the operation: " + operation);
-        } else {
-            logger.warn("Learner on port " + serverPort + " failed to commit the operation: " + operation);
+    public SnapshotChunk fetchSnapshot(long snapshotSlot, long offset, int maxBytes) throws RemoteException {
+        logger.info("Received snapshot request for slot {} at offset {}", snapshotSlot, offset);
+        if (snapshotProcess == null) {
+            throw new RemoteException("Server keeps no snapshots");
+        }
+        try {
+            return snapshotProcess.readSnapshotChunk(snapshotSlot, offset, Math.min(maxBytes, MAX_SNAPSHOT_CHUNK_BYTES));
+        } catch (IOException e) {
+            throw new RemoteException("Cannot read the snapshot of slot " + snapshotSlot, e);
         }
-        return isCommitted;
     }
 
     @Override
     public String getValue(String key) throws RemoteException {
-        logger.info("Received get value request for key: " + key);
+        int owner = foreignShard(key);
+        if (owner >= 0) {
+            return routeToShard(owner, stub -> stub.getValue(key));
+        }
+        logger.info("Received get value request for key: {}", key);
+        if (readFreshness != null && !readFreshness.awaitLinearizable(ConsensusUtils.DEFAULT_TIMEOUT_MS)) {
+            throw new RemoteException("Could not confirm that every completed write is applied before reading key " + key);
+        }
         return learner.getStateStore().get(key);
     }
 
+    @Override
+    public ReadResult readValue(String key, long minAppliedSlot, long maxStalenessMs) throws RemoteException {
+        int owner = foreignShard(key);
+        if (owner >= 0) {
+            return routeToShard(owner, stub -> stub.readValue(key, minAppliedSlot, maxStalenessMs));
+        }
+        logger.info("Received read request for key {} at slot {} or later, at most {} ms stale", key, minAppliedSlot, maxStalenessMs);
+        boolean fresh = learner.awaitApplied(minAppliedSlot, BOUNDED_READ_WAIT_MS)
+                && (maxStalenessMs < 0 || readFreshness == null || readFreshness.awaitFresh(maxStalenessMs, BOUNDED_READ_WAIT_MS));
+        // The applied slot is taken before the value, so the value is at least that recent
+        long appliedSlot = learner.getHighestAppliedSlot();
+        if (!fresh) {
+            return ReadResult.redirect(leaseHolderPort(), appliedSlot);
+        }
+        return ReadResult.of(learner.getStateStore().getVersioned(key), appliedSlot);
+    }
 
-    /**
-     * Waits for an accepted operation to be available and returns it. This is a blocking method and should be
-     * called from a thread that handles operation commitment.
-     *
-     * @return The next accepted operation.
-     * @throws InterruptedException if interrupted while waiting.
-     */
-    public Operation waitForAcceptedOperation() throws InterruptedException {
-        return acceptedOperationsQueue.take();
+    @Override
+    public ServerStats getStats() {
+        Map<String, Long> values = metrics.toMap();
+        // Virtual threads are not counted, so these show how many platform threads the JVM needs
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        values.put("jvm.threads", (long) threads.getThreadCount());
+        values.put("jvm.threads.peak", (long) threads.getPeakThreadCount());
+        return new ServerStats(peers == null ? -1 : peers.getSelfPort(), values);
+    }
+
+    @Override
+    public int getLeaderPort() {
+        if (peers != null && proposer != null && proposer.hasReadLease()) {
+            return peers.getSelfPort();
+        }
+        int leaderPort = leaseHolderPort();
+        if (leaderPort < 0) {
+            leaderPort = leaderHintPort();
+        }
+        return leaderPort >= 0 ? leaderPort : activeLeaderPort();
+    }
+
+    @Override
+    public SnapshotReadResult readAtSlot(List<String> keys, long slot, long leaseMs) throws RemoteException {
+        if (shardMap != null && !keys.isEmpty()) {
+            // Slots are numbered per shard, so one snapshot can only cover the keys of one shard
+            int owner = shardMap.shardOf(keys.get(0));
+            for (String key : keys) {
+                if (shardMap.shardOf(key) != owner) {
+                    throw new RemoteException("Keys " + keys.get(0) + " and " + key + " belong to different shards");
+                }
+            }
+            if (owner != shard) {
+                return routeToShard(owner, stub -> stub.readAtSlot(keys, slot, leaseMs));
+            }
+        }
+        logger.info("Received snapshot read request for {} key(s) at slot {} with a lease of {} ms", keys.size(), slot, leaseMs);
+        try (ReadSnapshot snapshot = openSnapshotAt(slot)) {
+            List<String> values = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                values.add(snapshot.get(key));
+            }
+            if (leaseMs > 0) {
+                snapshot.retainFor(leaseMs);
+            }
+            return new SnapshotReadResult(snapshot.getSlot(), values);
+        }
+    }
+
+    // A negative slot stands for the latest applied one
+    private ReadSnapshot openSnapshotAt(long slot) throws RemoteException {
+        if (slot < 0) {
+            return learner.openSnapshot();
+        }
+        if (!learner.awaitApplied(slot, BOUNDED_READ_WAIT_MS)) {
+            throw new RemoteException("Slot " + slot + " is not applied on this server yet");
+        }
+        ReadSnapshot snapshot = learner.getStateStore().openSnapshot(slot);
+        if (snapshot == null) {
+            throw new RemoteException("The versions as of slot " + slot + " have been collected");
+        }
+        return snapshot;
     }
 
 }
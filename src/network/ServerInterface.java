@@ -1,8 +1,18 @@
 package network;
 
+import consensus.message.AcceptResponse;
+import consensus.message.CatchUpResponse;
+import consensus.message.Decision;
+import consensus.message.PrepareResponse;
+import consensus.message.ReadIndexResponse;
+import consensus.message.ReadResult;
+import consensus.message.SnapshotChunk;
+import consensus.message.ServerStats;
+import consensus.message.SnapshotReadResult;
 import consensus.state.Operation;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
 
 /**
  * Defines the remote methods that can be invoked over the network by different components
@@ -11,30 +21,72 @@ import java.rmi.RemoteException;
 public interface ServerInterface extends Remote {
 
     /**
-     * Asks the server to prepare for a proposal with a given proposal ID.
+     * Asks the server to prepare a single log slot for a proposal with a given proposal ID.
+     * @param slot The log slot being prepared.
      * @param proposalId The ID of the proposal.
      * @param proposerId The identifier of the proposer making this request.
-     * @return true if the proposal can proceed (promise not to accept lower proposal IDs), false otherwise.
+     * @return A promise carrying any value already accepted in the slot, or a rejection carrying the higher promised ID.
      * @throws RemoteException If there is an issue with remote method invocation.
      */
-    boolean prepare(int proposalId, String proposerId) throws RemoteException;
+    PrepareResponse prepare(long slot, long proposalId, String proposerId) throws RemoteException;
 
     /**
-     * Asks the server to accept a proposed operation.
+     * Asks the server to prepare every log slot from a given slot onwards, as a Multi-Paxos leader does.
+     * @param fromSlot The first slot covered by the prepare request.
+     * @param proposalId The ID of the proposal.
+     * @param proposerId The identifier of the proposer making this request.
+     * @return A promise carrying every value already accepted in the covered slots, or a rejection.
+     * @throws RemoteException If there is an issue with remote method invocation.
+     */
+    PrepareResponse prepareFrom(long fromSlot, long proposalId, String proposerId) throws RemoteException;
+
+    /**
+     * Asks the server to accept a proposed operation in a log slot.
+     * @param slot The log slot of the operation.
      * @param proposalId The ID of the proposal.
      * @param operation The operation to be accepted.
-     * @return true if the operation is accepted, false otherwise.
+     * @return The acceptance, or a rejection carrying the higher promised ID.
      * @throws RemoteException If there is an issue with remote method invocation.
      */
-    boolean accept(int proposalId, Operation operation) throws RemoteException;
+    AcceptResponse accept(long slot, long proposalId, Operation operation) throws RemoteException;
 
     /**
-     * Commits an operation that has been accepted by a quorum.
-     * @param operation The operation to commit.
-     * @return true if the operation is successfully committed, false otherwise.
+     * Asks the server's acceptor for the highest slot it has accepted a value in, for a linearizable read.
+     * @param ballot The ballot the asking proposer leads with, or a negative value if it is not the leader.
+     * @param proposerId The identifier of the proposer making this request.
+     * @return The highest accepted slot and whether the leader's read lease was renewed, or a rejection.
      * @throws RemoteException If there is an issue with remote method invocation.
      */
-    boolean commit(Operation operation, int serverport) throws RemoteException;
+    ReadIndexResponse readIndex(long ballot, String proposerId) throws RemoteException;
+
+    /**
+     * Commits operations that have been accepted by a quorum, in the order the sender decided them.
+     * @param decisions The decided slots and their operations.
+     * @param senderPort The port of the server announcing the decisions.
+     * @return The highest slot this server has applied, as an acknowledgement.
+     * @throws RemoteException If there is an issue with remote method invocation.
+     */
+    long commit(List<Decision> decisions, int senderPort) throws RemoteException;
+
+    /**
+     * Sends decided slots to a server catching up after a restart or a partition.
+     * @param fromSlot The first slot the caller has not applied.
+     * @param maxSlots The most slots to return.
+     * @return The consecutive decided slots from fromSlot onwards, or, if they have been truncated after a
+     *         snapshot, the slot of the snapshot to fetch instead.
+     * @throws RemoteException If there is an issue with remote method invocation.
+     */
+    CatchUpResponse fetchDecided(long fromSlot, int maxSlots) throws RemoteException;
+
+    /**
+     * Sends part of a snapshot file to a server too far behind to catch up from the log.
+     * @param snapshotSlot The slot of the snapshot, as reported by {@link #fetchDecided(long, int)}.
+     * @param offset The position in the snapshot file to read from.
+     * @param maxBytes The most bytes to return.
+     * @return The chunk of the snapshot file at the offset.
+     * @throws RemoteException If the snapshot no longer exists or there is an issue with remote method invocation.
+     */
+    SnapshotChunk fetchSnapshot(long snapshotSlot, long offset, int maxBytes) throws RemoteException;
 
     /**
      * Retrieves a value for a specified key from the key-value store.
@@ -45,5 +97,56 @@ public interface ServerInterface extends Remote {
      */
     String getValue(String key) throws RemoteException;
 
+    /**
+     * Reads a value from this server's store without a consensus round, as long as the store is recent enough.
+     * Reads spread over the replicas this way scale with their number.
+     * @param key The key whose value is to be retrieved.
+     * @param minAppliedSlot The slot the store must have applied, for example the applied slot of the caller's
+     *                       previous read so that its reads never go back in time; -1 for none.
+     * @param maxStalenessMs How long ago the newest write the store may be missing completed; -1 for no bound.
+     * @return The value with the slot that last wrote it, or a redirect if the server could not catch up briefly.
+     * @throws RemoteException If there is an issue with remote method invocation.
+     */
+    ReadResult readValue(String key, long minAppliedSlot, long maxStalenessMs) throws RemoteException;
+
+    /**
+     * Reads several keys from this server's store, all as of the same applied slot, without a consensus round
+     * and without holding up writes.
+     * @param keys The keys whose values are to be retrieved.
+     * @param slot The slot to read at, typically the slot of an earlier snapshot read; -1 for the latest applied slot.
+     * @param leaseMs How long the server keeps the versions as of that slot for further reads; 0 for none.
+     * @return The values of the keys with the slot they are as of.
+     * @throws RemoteException If the slot is not applied here briefly, its versions have been collected, or the
+     *                         keys belong to different shards.
+     */
+    SnapshotReadResult readAtSlot(List<String> keys, long slot, long leaseMs) throws RemoteException;
+
+    /**
+     * Reports this server's consensus metrics: latency percentiles of each phase and of propose calls, and
+     * the proposer's and acceptor's counters, as also published through JMX, and the live and peak number
+     * of platform threads of the server's JVM.
+     * @return The current values by name.
+     * @throws RemoteException If there is an issue with remote method invocation.
+     */
+    ServerStats getStats() throws RemoteException;
+
+    /**
+     * Tells clients where to send writes and linearizable reads, so they need not be forwarded.
+     * @return The port of the server holding the Multi-Paxos read lease as far as this server knows, which
+     *         may be this server itself; -1 if no lease is in force.
+     * @throws RemoteException If there is an issue with remote method invocation.
+     */
+    int getLeaderPort() throws RemoteException;
+
     boolean propose(Operation operation) throws RemoteException;
+
+    /**
+     * Proposes an operation another server received from a client while this server held the read lease.
+     * Unlike {@link #propose(Operation)}, the operation is never forwarded again.
+     * @param operation The operation to be proposed.
+     * @param senderPort The port of the server forwarding the operation.
+     * @return true if the operation was decided.
+     * @throws RemoteException If there is an issue with remote method invocation.
+     */
+    boolean proposeForwarded(Operation operation, int senderPort) throws RemoteException;
 }
@@ -0,0 +1,96 @@
+package network;
+
+import network.nio.NioTransport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Places keys and server ports in shards. Every shard is an independent Paxos group with one replica on
+ * each server and its own log, store and leader, so writes to different shards are decided in parallel.
+ *
+ * A key belongs to the shard its hash picks. Replica {@code i} of shard {@code s} listens on the port of
+ * server {@code i} plus {@code s * PORT_STRIDE}, so shard 0 keeps the ports of an unsharded cluster. The
+ * replica on server {@code s mod servers} is the shard's home: requests are sent there first, which puts
+ * the Multi-Paxos leaders of the shards on different servers.
+ */
+public class ShardMap {
+
+    public static final int PORT_STRIDE = 100;
+    // Beyond this, replicas would take the NIO ports of shard 0
+    public static final int MAX_SHARDS = NioTransport.PORT_OFFSET / PORT_STRIDE;
+
+    private final List<Integer> serverPorts;
+    private final int shardCount;
+
+    /**
+     * @param serverPorts The ports of the servers' replicas of shard 0.
+     * @param shardCount The number of shards, between 1 and {@link #MAX_SHARDS}.
+     * @throws IllegalArgumentException If the shard count is out of range.
+     */
+    public ShardMap(List<Integer> serverPorts, int shardCount) {
+        if (shardCount < 1 || shardCount > MAX_SHARDS) {
+            throw new IllegalArgumentException("Shard count must be between 1 and " + MAX_SHARDS + ": " + shardCount);
+        }
+        this.serverPorts = List.copyOf(serverPorts);
+        this.shardCount = shardCount;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * @return The shard a key belongs to; keyless operations belong to shard 0.
+     */
+    public int shardOf(String key) {
+        return key == null ? 0 : Math.floorMod(key.hashCode(), shardCount);
+    }
+
+    /**
+     * @return The shard whose replica listens on a port.
+     * @throws IllegalArgumentException If no replica listens on the port.
+     */
+    public int shardOfPort(int port) {
+        for (int shard = 0; shard < shardCount; shard++) {
+            if (serverPorts.contains(port - shard * PORT_STRIDE)) {
+                return shard;
+            }
+        }
+        throw new IllegalArgumentException("No shard replica at port " + port);
+    }
+
+    /**
+     * @return The ports of the shard's replicas, in server order.
+     */
+    public List<Integer> portsOf(int shard) {
+        List<Integer> ports = new ArrayList<>();
+        for (int serverPort : serverPorts) {
+            ports.add(serverPort + shard * PORT_STRIDE);
+        }
+        return Collections.unmodifiableList(ports);
+    }
+
+    /**
+     * @return The ports of the shard's replicas, the home replica first and the others in server order after it.
+     */
+    public List<Integer> preferredPortsOf(int shard) {
+        List<Integer> ports = portsOf(shard);
+        int home = shard % ports.size();
+        List<Integer> preferred = new ArrayList<>(ports.subList(home, ports.size()));
+        preferred.addAll(ports.subList(0, home));
+        return Collections.unmodifiableList(preferred);
+    }
+
+    /**
+     * @return The ports of every replica of every shard.
+     */
+    public List<Integer> allPorts() {
+        List<Integer> ports = new ArrayList<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            ports.addAll(portsOf(shard));
+        }
+        return Collections.unmodifiableList(ports);
+    }
+}
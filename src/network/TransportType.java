@@ -0,0 +1,34 @@
+package network;
+
+/**
+ * Selects how servers exchange prepare, accept and commit messages with each other.
+ * Clients reach the servers over RMI, or through {@link client.AsyncClient} over either transport.
+ */
+public enum TransportType {
+    /**
+     * Every call is a Java RMI invocation on the peer's exported {@link ServerInterface}.
+     */
+    RMI,
+
+    /**
+     * Calls are multiplexed over one persistent non-blocking TCP connection per peer, see {@link network.nio.NioTransport}.
+     */
+    NIO;
+
+    /**
+     * Parses a transport name ("rmi" or "nio").
+     * @param name The transport name, case-insensitive.
+     * @return The matching transport.
+     * @throws IllegalArgumentException if the name does not match any transport.
+     */
+    public static TransportType fromString(String name) {
+        String normalized = name.trim().toUpperCase();
+        if (normalized.equals("RMI")) {
+            return RMI;
+        }
+        if (normalized.equals("NIO") || normalized.equals("TCP")) {
+            return NIO;
+        }
+        throw new IllegalArgumentException("Unknown transport: " + name);
+    }
+}
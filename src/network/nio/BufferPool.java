@@ -0,0 +1,61 @@
+package network.nio;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recycles fixed-size direct buffers for socket reads and writes, so steady traffic allocates no
+ * new direct memory. Requests for more than the pooled size get a one-off heap buffer instead.
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * @param bufferSize The capacity of every pooled buffer.
+     * @param maxPooled How many released buffers are kept for reuse.
+     */
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @param minCapacity The number of bytes the buffer must hold.
+     * @return A cleared buffer of at least the given capacity.
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        if (minCapacity > bufferSize) {
+            return ByteBuffer.allocate(minCapacity);
+        }
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer for reuse. Buffers not handed out by the pool are left to the garbage collector.
+     */
+    public void release(ByteBuffer buffer) {
+        if (!buffer.isDirect() || buffer.capacity() != bufferSize) {
+            return;
+        }
+        if (pooled.incrementAndGet() > maxPooled) {
+            pooled.decrementAndGet();
+            return;
+        }
+        free.offer(buffer);
+    }
+}
@@ -0,0 +1,182 @@
+package network.nio;
+
+import consensus.message.WireWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One TCP connection carrying length-prefixed frames: a 4-byte big-endian length followed by that many bytes.
+ *
+ * Reads and writes happen on the event loop thread only. Any thread may {@link #send} a frame; it is copied
+ * into a pooled buffer, queued, and written out by the event loop.
+ */
+public class FrameChannel {
+
+    static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+    private static final int LENGTH_PREFIX = 4;
+
+    /**
+     * Receives the frames and the closing of a channel, on the event loop thread.
+     */
+    public interface Listener {
+        void onFrame(FrameChannel channel, byte[] frame);
+
+        void onClose(FrameChannel channel, IOException cause);
+    }
+
+    private final SocketChannel socket;
+    private final NioEventLoop loop;
+    private final BufferPool pool;
+    private final Listener listener;
+    private final ConcurrentLinkedQueue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private ByteBuffer readBuffer;
+    private SelectionKey key;
+    private volatile boolean closed;
+
+    // Completed once an outgoing connection is established
+    final CompletableFuture<FrameChannel> connected = new CompletableFuture<>();
+
+    FrameChannel(SocketChannel socket, NioEventLoop loop, BufferPool pool, Listener listener) {
+        this.socket = socket;
+        this.loop = loop;
+        this.pool = pool;
+        this.listener = listener;
+        this.readBuffer = pool.acquire(pool.getBufferSize());
+    }
+
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Queues a frame holding the bytes written so far and has the event loop write it out.
+     * @param body The frame contents, copied before this returns.
+     * @throws IOException If the channel is closed or the frame is too large.
+     */
+    public void send(WireWriter body) throws IOException {
+        if (closed) {
+            throw new IOException("Connection is closed");
+        }
+        if (body.size() > MAX_FRAME_SIZE) {
+            throw new IOException("Frame of " + body.size() + " bytes exceeds the limit of " + MAX_FRAME_SIZE);
+        }
+        ByteBuffer frame = pool.acquire(LENGTH_PREFIX + body.size());
+        frame.putInt(body.size());
+        body.writeTo(frame);
+        frame.flip();
+        writeQueue.add(frame);
+        if (flushScheduled.compareAndSet(false, true)) {
+            loop.execute(this::flushQueued);
+        }
+    }
+
+    void register(SelectionKey key) {
+        this.key = key;
+    }
+
+    SocketChannel getSocket() {
+        return socket;
+    }
+
+    // Called by the event loop when the socket is readable
+    void handleRead() throws IOException {
+        if (socket.read(readBuffer) < 0) {
+            throw new EOFException("Connection closed by peer");
+        }
+        readBuffer.flip();
+        while (readBuffer.remaining() >= LENGTH_PREFIX) {
+            int length = readBuffer.getInt(readBuffer.position());
+            if (length < 0 || length > MAX_FRAME_SIZE) {
+                throw new IOException("Invalid frame length " + length);
+            }
+            if (readBuffer.remaining() < LENGTH_PREFIX + length) {
+                break;
+            }
+            readBuffer.getInt();
+            byte[] frame = new byte[length];
+            readBuffer.get(frame);
+            listener.onFrame(this, frame);
+        }
+        readBuffer.compact();
+        resizeReadBuffer();
+    }
+
+    // Grows the read buffer for a frame larger than a pooled buffer, and returns to a pooled one once it is consumed
+    private void resizeReadBuffer() {
+        int needed = readBuffer.position() >= LENGTH_PREFIX ? LENGTH_PREFIX + readBuffer.getInt(0) : 0;
+        if (needed > readBuffer.capacity() || (readBuffer.capacity() != pool.getBufferSize() && needed <= pool.getBufferSize())) {
+            ByteBuffer resized = pool.acquire(Math.max(needed, pool.getBufferSize()));
+            readBuffer.flip();
+            resized.put(readBuffer);
+            pool.release(readBuffer);
+            readBuffer = resized;
+        }
+    }
+
+    // Called by the event loop when the socket is writable again
+    void handleWrite() throws IOException {
+        if (flush()) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void flushQueued() {
+        flushScheduled.set(false);
+        if (closed || key == null) {
+            return;
+        }
+        try {
+            if (!flush()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        } catch (IOException e) {
+            close(e);
+        }
+    }
+
+    // Writes queued frames until the socket buffer is full; returns true if the queue was drained
+    private boolean flush() throws IOException {
+        ByteBuffer frame;
+        while ((frame = writeQueue.peek()) != null) {
+            socket.write(frame);
+            if (frame.hasRemaining()) {
+                return false;
+            }
+            writeQueue.poll();
+            pool.release(frame);
+        }
+        return true;
+    }
+
+    /**
+     * Closes the connection and tells the listener why. Must run on the event loop thread.
+     */
+    void close(IOException cause) {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Already closing
+        }
+        pool.release(readBuffer);
+        ByteBuffer frame;
+        while ((frame = writeQueue.poll()) != null) {
+            pool.release(frame);
+        }
+        connected.completeExceptionally(cause);
+        listener.onClose(this, cause);
+    }
+}
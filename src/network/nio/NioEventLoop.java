@@ -0,0 +1,216 @@
+package network.nio;
+
+import common.ConsensusUtils;
+import common.CustomLogger;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single selector thread that accepts, connects, reads and writes every {@link FrameChannel} of a transport.
+ * Other threads hand it work through {@link #execute}.
+ */
+public class NioEventLoop implements Runnable {
+
+    private static final CustomLogger logger = new CustomLogger(CustomLogger.LogLevel.INFO);
+
+    /**
+     * Accepts incoming connections on a listening socket.
+     */
+    private static final class Listening {
+        final ServerSocketChannel server;
+        final FrameChannel.Listener listener;
+
+        Listening(ServerSocketChannel server, FrameChannel.Listener listener) {
+            this.server = server;
+            this.listener = listener;
+        }
+    }
+
+    private final Selector selector;
+    private final BufferPool pool;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    public NioEventLoop(BufferPool pool) throws IOException {
+        this.selector = Selector.open();
+        this.pool = pool;
+    }
+
+    /**
+     * Starts the selector thread.
+     * @param name The name of the thread.
+     */
+    public void start(String name) {
+        ConsensusUtils.daemonThreadFactory(name).newThread(this).start();
+    }
+
+    /**
+     * Runs a task on the selector thread.
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Accepts connections on a bound server socket; every accepted channel reports to the given listener.
+     */
+    public void listen(ServerSocketChannel server, FrameChannel.Listener listener) throws IOException {
+        server.configureBlocking(false);
+        CompletableFuture<Void> registered = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                server.register(selector, SelectionKey.OP_ACCEPT, new Listening(server, listener));
+                registered.complete(null);
+            } catch (IOException e) {
+                registered.completeExceptionally(e);
+            }
+        });
+        try {
+            registered.join();
+        } catch (RuntimeException e) {
+            throw new IOException("Cannot listen on " + server.getLocalAddress(), e.getCause());
+        }
+    }
+
+    /**
+     * Opens a connection to a remote address.
+     * @return A future completed with the channel once it is connected.
+     */
+    public CompletableFuture<FrameChannel> connect(InetSocketAddress address, FrameChannel.Listener listener) {
+        CompletableFuture<FrameChannel> connected = new CompletableFuture<>();
+        execute(() -> {
+            FrameChannel channel = null;
+            try {
+                SocketChannel socket = SocketChannel.open();
+                socket.configureBlocking(false);
+                socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel = new FrameChannel(socket, this, pool, listener);
+                channel.connected.whenComplete((c, e) -> {
+                    if (e != null) {
+                        connected.completeExceptionally(e);
+                    } else {
+                        connected.complete(c);
+                    }
+                });
+                boolean immediate = socket.connect(address);
+                channel.register(socket.register(selector, immediate ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, channel));
+                if (immediate) {
+                    channel.connected.complete(channel);
+                }
+            } catch (IOException e) {
+                if (channel != null) {
+                    channel.close(e);
+                } else {
+                    connected.completeExceptionally(e);
+                }
+            }
+        });
+        return connected;
+    }
+
+    /**
+     * Stops the selector thread and closes every channel.
+     */
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                runTasks();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid()) {
+                        handle(key);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            logger.error("Event loop stopped: {}", e.getMessage());
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        Object attachment = key.attachment();
+        if (attachment instanceof Listening) {
+            accept((Listening) attachment);
+            return;
+        }
+        FrameChannel channel = (FrameChannel) attachment;
+        try {
+            if (key.isConnectable()) {
+                channel.getSocket().finishConnect();
+                key.interestOps(SelectionKey.OP_READ);
+                channel.connected.complete(channel);
+            }
+            if (key.isValid() && key.isReadable()) {
+                channel.handleRead();
+            }
+            if (key.isValid() && key.isWritable()) {
+                channel.handleWrite();
+            }
+        } catch (IOException e) {
+            channel.close(e);
+        }
+    }
+
+    private void accept(Listening listening) {
+        try {
+            SocketChannel socket;
+            while ((socket = listening.server.accept()) != null) {
+                socket.configureBlocking(false);
+                socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                FrameChannel channel = new FrameChannel(socket, this, pool, listening.listener);
+                channel.register(socket.register(selector, SelectionKey.OP_READ, channel));
+            }
+        } catch (IOException e) {
+            logger.error("Failed to accept a connection: {}", e.getMessage());
+        }
+    }
+
+    private void closeAll() {
+        IOException cause = new IOException("Event loop stopped");
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            try {
+                if (attachment instanceof FrameChannel) {
+                    ((FrameChannel) attachment).close(cause);
+                } else if (attachment instanceof Listening) {
+                    ((Listening) attachment).server.close();
+                }
+            } catch (IOException ignored) {
+                // Shutting down anyway
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+            // Shutting down anyway
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package network.nio;
+
+import consensus.message.AcceptResponse;
+import consensus.message.CatchUpResponse;
+import consensus.message.Decision;
+import consensus.message.MessageCodec;
+import consensus.message.PrepareResponse;
+import consensus.message.ReadIndexResponse;
+import consensus.message.ReadResult;
+import consensus.message.SnapshotChunk;
+import consensus.message.ServerStats;
+import consensus.message.SnapshotReadResult;
+import consensus.message.WireReader;
+import consensus.message.WireWriter;
+import consensus.state.Operation;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.rmi.ConnectException;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import network.ServerInterface;
+
+/**
+ * Calls another server over one persistent connection, shared by every thread of this server.
+ * Each call gets a correlation ID and waits for the reply carrying it, so calls never queue behind each other.
+ * A lost connection fails the calls waiting on it and is reopened by the next call.
+ */
+public class NioPeerStub implements ServerInterface, FrameChannel.Listener {
+
+    private final NioEventLoop loop;
+    private final InetSocketAddress address;
+    private final long callTimeoutMs;
+    private final AtomicLong nextCorrelationId = new AtomicLong();
+    private final Map<Long, CompletableFuture<byte[]>> pendingCalls = new ConcurrentHashMap<>();
+    private final ReentrantLock connectLock = new ReentrantLock();
+    private volatile FrameChannel channel;
+
+    public NioPeerStub(NioEventLoop loop, InetSocketAddress address, long callTimeoutMs) {
+        this.loop = loop;
+        this.address = address;
+        this.callTimeoutMs = callTimeoutMs;
+    }
+
+    @Override
+    public PrepareResponse prepare(long slot, long proposalId, String proposerId) throws RemoteException {
+        long id = nextCorrelationId.incrementAndGet();
+        WireWriter out = NioProtocol.request(id, NioProtocol.PREPARE);
+        out.writeVarLong(slot);
+        out.writeSignedVarLong(proposalId);
+        out.writeString(proposerId);
+        return MessageCodec.readPrepareResponse(invoke(id, out));
+    }
+
+    @Override
+    public PrepareResponse prepareFrom(long fromSlot, long proposalId, String proposerId) throws RemoteException {
+        long id = nextCorrelationId.incrementAndGet();
+        WireWriter out = NioProtocol.request(id, NioProtocol.PREPARE_FROM);
+        out.writeVarLong(fromSlot);
+        out.writeSignedVarLong(proposalId);
+        out.writeString(proposerId);
+        return MessageCodec.readPrepareResponse(invoke(id, out));
+    }
+
+    @Override
+    public AcceptResponse accept(long slot, long proposalId, Operation operation) throws RemoteException {
+        long id = nextCorrelationId.incrementAndGet();
+        WireWriter out = NioProtocol.request(id, NioProtocol.ACCEPT);
+        out.writeVarLong(slot);
+        out.writeSignedVarLong(proposalId);
+        MessageCodec.writeOperation(out, operation);
+        return MessageCodec.readAcceptResponse(invoke(id, out));
+    }
+
+    @Override
+    public ReadIndexResponse readIndex(long ballot, String proposerId) throws RemoteException {
+        long id = nextCorrelationId.incrementAndGet();
+        WireWriter out = NioProtocol.request(id, NioProtocol.READ_INDEX);
+        out.writeSignedVarLong(ballot);
+        out.writeString(proposerId);
+        return MessageCodec.readReadIndexResponse(invoke(id, out));
+    }
+
+    @Override
+    public long commit(List<Decision> decisions, int senderPort) throws RemoteException {
+        long id = nextCorrelationId.incrementAndGet();
+        WireWriter out = NioProtocol.request(id, NioProtocol.COMMIT);
+        out.writeVarInt(decisions.size());
+        for (Decision decision : decisions) {
+            MessageCodec.writeDecision(out, decision);
+        }
+        out.writeVarInt(senderPort);
+        return invoke(id, out).readSignedVarLong();
+    }
+
+    @Override
+    public CatchUpResponse fetchDecided(long fromSlot, int maxSlots) throws RemoteException {
+        long id = nextCorrelationId.incrementAndGet();
+        WireWriter out = NioProtocol.request(id, NioProtocol.FETCH_DECIDED);
+        out.writeVarLong(fromSlot);
+        out.writeVarInt(maxSlots);
+        return MessageCodec.readCatchUpResponse(invoke(id, out));
+    }
+
+    @Override
+    public SnapshotChunk fetchSnapshot(long snapshotSlot, long offset, int maxBytes) throws RemoteException {
+        long id = nextCorrelationId.incrementAndGet();
+        WireWriter out = NioProtocol.request(id, NioProtocol.FETCH_SNAPSHOT);
+        out.writeVarLong(snapshotSlot);
+        out.writeVarLong(offset);
+        out.writeVarInt(maxBytes);
+        return MessageCodec.readSnapshotChunk(invoke(id, out));
+    }
+
+    @Override
+    public String getValue(String key) throws RemoteException {
+        long id = nextCorrelationId.incrementAndGet();
+        WireWriter out = NioProtocol.request(id, NioProtocol.GET_VALUE);
+        out.writeString(key);
+        return invoke(id, out).readString();
+    }
+
+    @Override
+    public ReadResult readValue(String key, long minAppliedSlot, long maxStalenessMs) throws RemoteException {
+        long id = nextCorrelationId.incrementAndGet();
+        WireWriter out = NioProtocol.request(id, NioProtocol.READ_VALUE);
+        out.writeString(key);
+        out.writeSignedVarLong(minAppliedSlot);
+        out.writeSignedVarLong(maxStalenessMs);
+        return MessageCodec.readReadResult(invoke(id, out));
+    }
+
+    @Override
+    public SnapshotReadResult readAtSlot(List<String> keys, long slot, long leaseMs) throws RemoteException {
+        long id = nextCorrelationId.incrementAndGet();
+        WireWriter out = NioProtocol.request(id, NioProtocol.READ_AT_SLOT);
+        out.writeVarInt(keys.size());
+        for (String key : keys) {
+            out.writeString(key);
+        }
+        out.writeSignedVarLong(slot);
+        out.writeVarLong(leaseMs);
+        return MessageCodec.readSnapshotReadResult(invoke(id, out));
+    }
+
+    @Override
+    public ServerStats getStats() throws RemoteException {
+        long id = nextCorrelationId.incrementAndGet();
+        WireWriter out = NioProtocol.request(id, NioProtocol.GET_STATS);
+        return MessageCodec.readServerStats(invoke(id, out));
+    }
+
+    @Override
+    public int getLeaderPort() throws RemoteException {
+        long id = nextCorrelationId.incrementAndGet();
+        WireWriter out = NioProtocol.request(id, NioProtocol.GET_LEADER_PORT);
+        return (int) invoke(id, out).readSignedVarLong();
+    }
+
+    @Override
+    public boolean propose(Operation operation) throws RemoteException {
+        long id = nextCorrelationId.incrementAndGet();
+        WireWriter out = NioProtocol.request(id, NioProtocol.PROPOSE);
+        MessageCodec.writeOperation(out, operation);
+        return invoke(id, out).readByte() != 0;
+    }
+
+    @Override
+    public boolean proposeForwarded(Operation operation, int senderPort) throws RemoteException {
+        long id = nextCorrelationId.incrementAndGet();
+        WireWriter out = NioProtocol.request(id, NioProtocol.PROPOSE_FORWARDED);
+        MessageCodec.writeOperation(out, operation);
+        out.writeVarInt(senderPort);
+        return invoke(id, out).readByte() != 0;
+    }
+
+    // Sends a request and returns a reader positioned at the result of its reply
+    private WireReader invoke(long id, WireWriter request) throws RemoteException {
+        FrameChannel connection = connection();
+        CompletableFuture<byte[]> reply = new CompletableFuture<>();
+        pendingCalls.put(id, reply);
+        try {
+            connection.send(request);
+            WireReader in = new WireReader(reply.get(callTimeoutMs, TimeUnit.MILLISECONDS));
+            in.readVarLong();
+            if (in.readByte() == NioProtocol.STATUS_ERROR) {
+                throw new RemoteException("Call to " + address + " failed: " + in.readString());
+            }
+            return in;
+        } catch (IOException e) {
+            throw new ConnectException("Connection to " + address + " failed", e);
+        } catch (ExecutionException e) {
+            throw new ConnectException("Connection to " + address + " failed", e);
+        } catch (TimeoutException e) {
+            throw new RemoteException("Call to " + address + " timed out after " + callTimeoutMs + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while calling " + address);
+        } finally {
+            pendingCalls.remove(id);
+        }
+    }
+
+    private FrameChannel connection() throws RemoteException {
+        FrameChannel current = channel;
+        if (current != null && current.isOpen()) {
+            return current;
+        }
+        connectLock.lock();
+        try {
+            current = channel;
+            if (current != null && current.isOpen()) {
+                return current;
+            }
+            try {
+                current = loop.connect(address, this).get(callTimeoutMs, TimeUnit.MILLISECONDS);
+                channel = current;
+                return current;
+            } catch (ExecutionException e) {
+                throw new ConnectException("Cannot connect to " + address, e);
+            } catch (TimeoutException e) {
+                throw new ConnectException("Timed out connecting to " + address);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConnectException("Interrupted while connecting to " + address);
+            }
+        } finally {
+            connectLock.unlock();
+        }
+    }
+
+    @Override
+    public void onFrame(FrameChannel channel, byte[] frame) {
+        CompletableFuture<byte[]> reply = pendingCalls.get(NioProtocol.correlationId(frame));
+        if (reply != null) {
+            reply.complete(frame);
+        }
+    }
+
+    @Override
+    public void onClose(FrameChannel channel, IOException cause) {
+        // Only one connection is open at a time, so every waiting call was sent on this one
+        for (CompletableFuture<byte[]> reply : pendingCalls.values()) {
+            reply.completeExceptionally(cause);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package network.nio;
+
+import consensus.message.Decision;
+import consensus.message.MessageCodec;
+import consensus.message.WireReader;
+import consensus.message.WireWriter;
+import consensus.state.Operation;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import network.ServerInterface;
+
+/**
+ * Frame layout of the NIO transport. Both directions start with a varint correlation ID, so one
+ * connection can carry many outstanding calls and replies can arrive in any order.
+ * <ul>
+ *     <li>Request: correlation ID, method byte, arguments in {@link MessageCodec} encoding.</li>
+ *     <li>Reply: correlation ID, status byte, then the result or an error message.</li>
+ * </ul>
+ */
+final class NioProtocol {
+
+    static final byte PREPARE = 1;
+    static final byte PREPARE_FROM = 2;
+    static final byte ACCEPT = 3;
+    static final byte COMMIT = 4;
+    static final byte GET_VALUE = 5;
+    static final byte PROPOSE = 6;
+    static final byte FETCH_DECIDED = 7;
+    static final byte FETCH_SNAPSHOT = 8;
+    static final byte READ_INDEX = 9;
+    static final byte PROPOSE_FORWARDED = 10;
+    static final byte READ_VALUE = 11;
+    static final byte READ_AT_SLOT = 12;
+    static final byte GET_STATS = 13;
+    static final byte GET_LEADER_PORT = 14;
+
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+
+    // Frames are copied out of the writer on send, so each thread reuses one
+    private static final ThreadLocal<WireWriter> WRITERS = ThreadLocal.withInitial(() -> new WireWriter(256));
+
+    private NioProtocol() {
+    }
+
+    /**
+     * @return This thread's writer, holding the header of a request.
+     */
+    static WireWriter request(long correlationId, byte method) {
+        WireWriter out = WRITERS.get();
+        out.reset();
+        out.writeVarLong(correlationId);
+        out.writeByte(method);
+        return out;
+    }
+
+    /**
+     * Decodes a request, invokes it on the local server and encodes the reply.
+     * @param server The server handling the call.
+     * @param frame The request frame.
+     * @return This thread's writer, holding the reply.
+     */
+    static WireWriter dispatch(ServerInterface server, byte[] frame) {
+        WireReader in = new WireReader(frame);
+        long correlationId = in.readVarLong();
+        byte method = in.readByte();
+        WireWriter out = WRITERS.get();
+        out.reset();
+        out.writeVarLong(correlationId);
+        try {
+            switch (method) {
+                case PREPARE: {
+                    long slot = in.readVarLong();
+                    long proposalId = in.readSignedVarLong();
+                    String proposerId = in.readString();
+                    out.writeByte(STATUS_OK);
+                    MessageCodec.writePrepareResponse(out, server.prepare(slot, proposalId, proposerId));
+                    break;
+                }
+                case PREPARE_FROM: {
+                    long fromSlot = in.readVarLong();
+                    long proposalId = in.readSignedVarLong();
+                    String proposerId = in.readString();
+                    out.writeByte(STATUS_OK);
+                    MessageCodec.writePrepareResponse(out, server.prepareFrom(fromSlot, proposalId, proposerId));
+                    break;
+                }
+                case ACCEPT: {
+                    long slot = in.readVarLong();
+                    long proposalId = in.readSignedVarLong();
+                    Operation operation = MessageCodec.readOperation(in);
+                    out.writeByte(STATUS_OK);
+                    MessageCodec.writeAcceptResponse(out, server.accept(slot, proposalId, operation));
+                    break;
+                }
+                case COMMIT: {
+                    int count = in.readVarInt();
+                    List<Decision> decisions = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        decisions.add(MessageCodec.readDecision(in));
+                    }
+                    int senderPort = in.readVarInt();
+                    out.writeByte(STATUS_OK);
+                    out.writeSignedVarLong(server.commit(decisions, senderPort));
+                    break;
+                }
+                case GET_VALUE: {
+                    String key = in.readString();
+                    out.writeByte(STATUS_OK);
+                    out.writeString(server.getValue(key));
+                    break;
+                }
+                case PROPOSE: {
+                    Operation operation = MessageCodec.readOperation(in);
+                    out.writeByte(STATUS_OK);
+                    out.writeByte(server.propose(operation) ? 1 : 0);
+                    break;
+                }
+                case FETCH_DECIDED: {
+                    long fromSlot = in.readVarLong();
+                    int maxSlots = in.readVarInt();
+                    out.writeByte(STATUS_OK);
+                    MessageCodec.writeCatchUpResponse(out, server.fetchDecided(fromSlot, maxSlots));
+                    break;
+                }
+                case FETCH_SNAPSHOT: {
+                    long snapshotSlot = in.readVarLong();
+                    long offset = in.readVarLong();
+                    int maxBytes = in.readVarInt();
+                    out.writeByte(STATUS_OK);
+                    MessageCodec.writeSnapshotChunk(out, server.fetchSnapshot(snapshotSlot, offset, maxBytes));
+                    break;
+                }
+                case READ_INDEX: {
+                    long ballot = in.readSignedVarLong();
+                    String proposerId = in.readString();
+                    out.writeByte(STATUS_OK);
+                    MessageCodec.writeReadIndexResponse(out, server.readIndex(ballot, proposerId));
+                    break;
+                }
+                case PROPOSE_FORWARDED: {
+                    Operation operation = MessageCodec.readOperation(in);
+                    int senderPort = in.readVarInt();
+                    out.writeByte(STATUS_OK);
+                    out.writeByte(server.proposeForwarded(operation, senderPort) ? 1 : 0);
+                    break;
+                }
+                case READ_VALUE: {
+                    String key = in.readString();
+                    long minAppliedSlot = in.readSignedVarLong();
+                    long maxStalenessMs = in.readSignedVarLong();
+                    out.writeByte(STATUS_OK);
+                    MessageCodec.writeReadResult(out, server.readValue(key, minAppliedSlot, maxStalenessMs));
+                    break;
+                }
+                case READ_AT_SLOT: {
+                    int count = in.readVarInt();
+                    List<String> keys = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        keys.add(in.readString());
+                    }
+                    long slot = in.readSignedVarLong();
+                    long leaseMs = in.readVarLong();
+                    out.writeByte(STATUS_OK);
+                    MessageCodec.writeSnapshotReadResult(out, server.readAtSlot(keys, slot, leaseMs));
+                    break;
+                }
+                case GET_STATS: {
+                    out.writeByte(STATUS_OK);
+                    MessageCodec.writeServerStats(out, server.getStats());
+                    break;
+                }
+                case GET_LEADER_PORT: {
+                    out.writeByte(STATUS_OK);
+                    out.writeSignedVarLong(server.getLeaderPort());
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown method " + method);
+            }
+        } catch (RemoteException | RuntimeException e) {
+            out.reset();
+            out.writeVarLong(correlationId);
+            out.writeByte(STATUS_ERROR);
+            out.writeString(e.toString());
+        }
+        return out;
+    }
+
+    /**
+     * @return The correlation ID at the start of a frame.
+     */
+    static long correlationId(byte[] frame) {
+        return new WireReader(frame).readVarLong();
+    }
+}
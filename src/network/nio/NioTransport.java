@@ -0,0 +1,95 @@
+package network.nio;
+
+import common.ConsensusUtils;
+import common.CustomLogger;
+import common.ThreadModel;
+import consensus.message.WireWriter;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import network.PeerTransport;
+import network.ServerInterface;
+
+/**
+ * Carries calls between servers as length-prefixed frames over non-blocking TCP connections.
+ *
+ * Every server listens on its RMI port plus {@link #PORT_OFFSET} and keeps one multiplexed connection to
+ * each peer. A single event loop thread does all socket I/O using pooled direct buffers; incoming calls
+ * run on worker threads so a slow call never holds up the others.
+ */
+public class NioTransport implements PeerTransport, FrameChannel.Listener {
+
+    private static final CustomLogger logger = new CustomLogger(CustomLogger.LogLevel.INFO);
+    private static final String HOST = "localhost";
+    public static final int PORT_OFFSET = 1000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 256;
+    private static final long CALL_TIMEOUT_MS = 2L * ConsensusUtils.DEFAULT_TIMEOUT_MS;
+
+    private final int selfPort;
+    private final NioEventLoop loop;
+    private final ExecutorService workers;
+    private final Map<Integer, NioPeerStub> stubs = new ConcurrentHashMap<>();
+    private volatile ServerInterface localServer;
+
+    /**
+     * @param selfPort The RMI port of the server owning this transport.
+     * @throws RemoteException If the event loop cannot be opened.
+     */
+    public NioTransport(int selfPort) throws RemoteException {
+        this.selfPort = selfPort;
+        try {
+            this.loop = new NioEventLoop(new BufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS));
+        } catch (IOException e) {
+            throw new RemoteException("Cannot open the NIO event loop", e);
+        }
+        this.workers = ThreadModel.current().newTaskExecutor("nio-" + selfPort + "-worker");
+        loop.start("nio-" + selfPort);
+    }
+
+    @Override
+    public void start(ServerInterface localServer) throws RemoteException {
+        this.localServer = localServer;
+        int port = selfPort + PORT_OFFSET;
+        try {
+            ServerSocketChannel server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(HOST, port));
+            loop.listen(server, this);
+            logger.info("NIO transport listening on port {}", port);
+        } catch (IOException e) {
+            throw new RemoteException("Cannot listen on port " + port, e);
+        }
+    }
+
+    @Override
+    public ServerInterface connect(int port) {
+        return stubs.computeIfAbsent(port, p -> new NioPeerStub(loop, new InetSocketAddress(HOST, p + PORT_OFFSET), CALL_TIMEOUT_MS));
+    }
+
+    @Override
+    public void close() {
+        loop.shutdown();
+        workers.shutdownNow();
+    }
+
+    @Override
+    public void onFrame(FrameChannel channel, byte[] frame) {
+        workers.execute(() -> {
+            WireWriter reply = NioProtocol.dispatch(localServer, frame);
+            try {
+                channel.send(reply);
+            } catch (IOException e) {
+                logger.warn("Dropping a reply on a closed connection: {}", e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public void onClose(FrameChannel channel, IOException cause) {
+        logger.info("Peer connection to port {} closed: {}", selfPort + PORT_OFFSET, cause.getMessage());
+    }
+}
@@ -0,0 +1,232 @@
+package server;
+
+import common.ThreadModel;
+import consensus.log.WriteAheadLog;
+import consensus.participant.ConsensusProposer;
+import consensus.participant.PaxosMode;
+import consensus.process.ProposerProcess;
+import consensus.process.SnapshotProcess;
+import consensus.state.StorageEngine;
+import network.TransportType;
+
+/**
+ * Tunable settings shared by the server nodes. Every setting has a default that can be overridden
+ * with a system property, for example {@code -Dpaxos.batch.size=128}.
+ */
+public class ServerConfig {
+
+    private PaxosMode mode = PaxosMode.CLASSIC;
+    private int maxBatchSize = ProposerProcess.DEFAULT_MAX_BATCH_SIZE;
+    private long maxBatchDelayMs = ProposerProcess.DEFAULT_MAX_BATCH_DELAY_MS;
+    private int pipelineWindow = ProposerProcess.DEFAULT_MAX_IN_FLIGHT;
+    private TransportType transport = TransportType.RMI;
+    private String walDirectory;
+    private WriteAheadLog.SyncMode walSyncMode = WriteAheadLog.SyncMode.GROUP;
+    private long snapshotEverySlots = SnapshotProcess.DEFAULT_SNAPSHOT_EVERY_SLOTS;
+    private long leaseMs = ConsensusProposer.DEFAULT_LEASE_MS;
+    private int shardCount = 1;
+    private StorageEngine storageEngine = StorageEngine.HEAP;
+    private long backoffBaseMs = ConsensusProposer.DEFAULT_BACKOFF_BASE_MS;
+    private long backoffMaxMs = ConsensusProposer.DEFAULT_BACKOFF_MAX_MS;
+    private ThreadModel threadModel = ThreadModel.PLATFORM;
+
+    /**
+     * Builds a configuration from the defaults and any {@code paxos.*} system properties.
+     * <ul>
+     *     <li>{@code paxos.mode}: classic or multi</li>
+     *     <li>{@code paxos.batch.size}: maximum client operations decided in one slot; 1 disables batching</li>
+     *     <li>{@code paxos.batch.delayMs}: how long a batch may wait to fill up</li>
+     *     <li>{@code paxos.pipeline.window}: how many batches may be in flight at once</li>
+     *     <li>{@code paxos.transport}: rmi or nio, how servers reach each other</li>
+     *     <li>{@code paxos.wal.dir}: directory of the acceptors' write-ahead logs; unset keeps acceptor state in memory</li>
+     *     <li>{@code paxos.wal.sync}: group, record or none, when write-ahead log records are forced to disk</li>
+     *     <li>{@code paxos.snapshot.everySlots}: applied slots between snapshots of the store; 0 disables snapshots</li>
+     *     <li>{@code paxos.lease.ms}: how long the Multi-Paxos leader's read lease lasts; 0 makes every read ask a quorum</li>
+     *     <li>{@code paxos.shards}: independent Paxos groups the keys are spread over, see {@link network.ShardMap}</li>
+     *     <li>{@code paxos.store.engine}: heap, or offheap to keep the newest value of every key in direct memory</li>
+     *     <li>{@code paxos.backoff.baseMs}: how long a preempted proposer waits before its second attempt; 0 retries at once</li>
+     *     <li>{@code paxos.backoff.maxMs}: the longest wait between attempts, as the backoff doubles</li>
+     *     <li>{@code paxos.threads}: platform, or virtual for a virtual thread per blocking task where Java 21 is available</li>
+     * </ul>
+     * @return The configuration.
+     */
+    public static ServerConfig fromSystemProperties() {
+        ServerConfig config = new ServerConfig();
+        String mode = System.getProperty("paxos.mode");
+        if (mode != null) {
+            config.setMode(PaxosMode.fromString(mode));
+        }
+        config.setMaxBatchSize(Integer.getInteger("paxos.batch.size", config.getMaxBatchSize()));
+        config.setMaxBatchDelayMs(Long.getLong("paxos.batch.delayMs", config.getMaxBatchDelayMs()));
+        config.setPipelineWindow(Integer.getInteger("paxos.pipeline.window", config.getPipelineWindow()));
+        String transport = System.getProperty("paxos.transport");
+        if (transport != null) {
+            config.setTransport(TransportType.fromString(transport));
+        }
+        config.setWalDirectory(System.getProperty("paxos.wal.dir", config.getWalDirectory()));
+        String walSync = System.getProperty("paxos.wal.sync");
+        if (walSync != null) {
+            config.setWalSyncMode(WriteAheadLog.SyncMode.fromString(walSync));
+        }
+        config.setSnapshotEverySlots(Long.getLong("paxos.snapshot.everySlots", config.getSnapshotEverySlots()));
+        config.setLeaseMs(Long.getLong("paxos.lease.ms", config.getLeaseMs()));
+        config.setShardCount(Integer.getInteger("paxos.shards", config.getShardCount()));
+        String storageEngine = System.getProperty("paxos.store.engine");
+        if (storageEngine != null) {
+            config.setStorageEngine(StorageEngine.fromString(storageEngine));
+        }
+        config.setBackoffBaseMs(Long.getLong("paxos.backoff.baseMs", config.getBackoffBaseMs()));
+        config.setBackoffMaxMs(Long.getLong("paxos.backoff.maxMs", config.getBackoffMaxMs()));
+        String threads = System.getProperty("paxos.threads");
+        if (threads != null) {
+            config.setThreadModel(ThreadModel.fromString(threads));
+        }
+        return config;
+    }
+
+    public PaxosMode getMode() {
+        return mode;
+    }
+
+    public void setMode(PaxosMode mode) {
+        this.mode = mode;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public long getMaxBatchDelayMs() {
+        return maxBatchDelayMs;
+    }
+
+    public void setMaxBatchDelayMs(long maxBatchDelayMs) {
+        this.maxBatchDelayMs = maxBatchDelayMs;
+    }
+
+    public int getPipelineWindow() {
+        return pipelineWindow;
+    }
+
+    public void setPipelineWindow(int pipelineWindow) {
+        this.pipelineWindow = pipelineWindow;
+    }
+
+    public TransportType getTransport() {
+        return transport;
+    }
+
+    public void setTransport(TransportType transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * @return The directory under which every server keeps its write-ahead log, or null if acceptor state is not persisted.
+     */
+    public String getWalDirectory() {
+        return walDirectory;
+    }
+
+    public void setWalDirectory(String walDirectory) {
+        this.walDirectory = walDirectory;
+    }
+
+    public WriteAheadLog.SyncMode getWalSyncMode() {
+        return walSyncMode;
+    }
+
+    public void setWalSyncMode(WriteAheadLog.SyncMode walSyncMode) {
+        this.walSyncMode = walSyncMode;
+    }
+
+    /**
+     * @return How many slots are applied between two snapshots, or 0 if no snapshots are taken. Snapshots
+     *         are kept next to the write-ahead log, so they also need a write-ahead log directory.
+     */
+    public long getSnapshotEverySlots() {
+        return snapshotEverySlots;
+    }
+
+    public void setSnapshotEverySlots(long snapshotEverySlots) {
+        this.snapshotEverySlots = snapshotEverySlots;
+    }
+
+    /**
+     * @return How long a quorum's read lease on the Multi-Paxos leader lasts, or 0 if leases are disabled.
+     *         Classic mode has no stable leader and ignores it.
+     */
+    public long getLeaseMs() {
+        return leaseMs;
+    }
+
+    public void setLeaseMs(long leaseMs) {
+        this.leaseMs = leaseMs;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public void setShardCount(int shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    public StorageEngine getStorageEngine() {
+        return storageEngine;
+    }
+
+    public void setStorageEngine(StorageEngine storageEngine) {
+        this.storageEngine = storageEngine;
+    }
+
+    public long getBackoffBaseMs() {
+        return backoffBaseMs;
+    }
+
+    public void setBackoffBaseMs(long backoffBaseMs) {
+        this.backoffBaseMs = backoffBaseMs;
+    }
+
+    public long getBackoffMaxMs() {
+        return backoffMaxMs;
+    }
+
+    public void setBackoffMaxMs(long backoffMaxMs) {
+        this.backoffMaxMs = backoffMaxMs;
+    }
+
+    /**
+     * @return The kind of thread the server's blocking tasks run on, see {@link ThreadModel}.
+     */
+    public ThreadModel getThreadModel() {
+        return threadModel;
+    }
+
+    public void setThreadModel(ThreadModel threadModel) {
+        this.threadModel = threadModel;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerConfig{" +
+                "mode=" + mode +
+                ", maxBatchSize=" + maxBatchSize +
+                ", maxBatchDelayMs=" + maxBatchDelayMs +
+                ", pipelineWindow=" + pipelineWindow +
+                ", transport=" + transport +
+                ", walDirectory=" + walDirectory +
+                ", walSyncMode=" + walSyncMode +
+                ", snapshotEverySlots=" + snapshotEverySlots +
+                ", leaseMs=" + leaseMs +
+                ", shardCount=" + shardCount +
+                ", storageEngine=" + storageEngine +
+                ", backoffBaseMs=" + backoffBaseMs +
+                ", backoffMaxMs=" + backoffMaxMs +
+                ", threadModel=" + threadModel +
+                '}';
+    }
+}
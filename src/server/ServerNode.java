@@ -1,11 +1,29 @@
 package server;
 
+import common.ConsensusMetrics;
+import common.ThreadModel;
+import consensus.participant.AcceptorEndpoint;
 import consensus.participant.ConsensusAcceptor;
 import consensus.participant.ConsensusLearner;
 import consensus.participant.ConsensusProposer;
+import consensus.participant.PaxosMode;
+import consensus.participant.ReadFreshness;
+import consensus.process.CatchUpProcess;
+import consensus.process.ProposerProcess;
+import consensus.process.SnapshotProcess;
 import consensus.state.StateStore;
+import network.CommitPropagator;
+import network.PeerConnectionManager;
+import network.PeerTransport;
+import network.RemoteAcceptor;
+import network.RmiTransport;
 import network.ServerCommunicator;
+import network.ShardMap;
+import network.TransportType;
+import network.nio.NioTransport;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
@@ -13,38 +31,119 @@ import java.rmi.server.UnicastRemoteObject;
 import java.rmi.server.ExportException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
 
 public class ServerNode {
     private ServerCommunicator serverCommunicator;
+    private PeerTransport transport;
     private final int serverPort;
+    private final ServerConfig config;
     private Thread acceptorThread;
+    private Thread proposerThread;
+    private Thread gapRepairThread;
+    private Thread applyThread;
+    private Thread snapshotThread;
+    private Thread catchUpThread;
+    private CatchUpProcess catchUpProcess;
 
     public ServerNode(int serverPort) {
+        this(serverPort, ServerConfig.fromSystemProperties());
+    }
+
+    public ServerNode(int serverPort, PaxosMode mode) {
+        this(serverPort, ServerConfig.fromSystemProperties());
+        this.config.setMode(mode);
+    }
+
+    public ServerNode(int serverPort, ServerConfig config) {
         this.serverPort = serverPort;
+        this.config = config;
     }
 
     public void startServer() {
-        StateStore stateStore = new StateStore();
+        // Components take their threads from the current model as they are built
+        ThreadModel.setCurrent(config.getThreadModel());
+        ThreadModel threads = config.getThreadModel();
+        StateStore stateStore = new StateStore(config.getStorageEngine());
         ConsensusLearner learner = new ConsensusLearner(stateStore, serverPort);
         ConsensusAcceptor acceptor = new ConsensusAcceptor(stateStore, serverPort, learner);
         List<Integer> allLearnerAddresses = new ArrayList<>();
 
         try {
             if (serverCommunicator == null) {
-                // Initialize components only once
-                List<ConsensusAcceptor> acceptors = new ArrayList<>();
-                for (int i = 1; i <= 5; i++) {
+                // Initialize components only once. The proposer talks to this server's own acceptor directly
+                // and to the acceptors of the other replicas of its shard through stubs cached by the connection manager.
+                ShardMap shardMap = new ShardMap(ServerStarter.ports, config.getShardCount());
+                allLearnerAddresses.addAll(shardMap.portsOf(shardMap.shardOfPort(serverPort)));
+                transport = config.getTransport() == TransportType.NIO ? new NioTransport(serverPort) : new RmiTransport();
+                PeerConnectionManager peers = new PeerConnectionManager(serverPort, allLearnerAddresses, transport);
+                List<AcceptorEndpoint> acceptors = new ArrayList<>();
+                for (int port : allLearnerAddresses) {
+                    acceptors.add(port == serverPort ? acceptor : new RemoteAcceptor(peers, port));
+                }
+                CommitPropagator commitPropagator = new CommitPropagator(peers);
+                learner.setCommitPropagator(commitPropagator);
+                commitPropagator.start();
+                ConsensusProposer proposer = new ConsensusProposer(stateStore, serverPort, acceptors, learner, config.getMode());
+                // Only a stable Multi-Paxos leader can hold a read lease
+                long leaseMs = config.getMode() == PaxosMode.MULTI_PAXOS ? config.getLeaseMs() : 0;
+                proposer.setLeaseMs(leaseMs);
+                acceptor.setLeaseMs(leaseMs);
+                proposer.setBackoffMs(config.getBackoffBaseMs(), config.getBackoffMaxMs());
+                // The whole pipeline records into one set of metrics, also published through JMX
+                ConsensusMetrics metrics = new ConsensusMetrics();
+                proposer.setMetrics(metrics);
+                acceptor.setMetrics(metrics);
+                learner.setMetrics(metrics);
+                metrics.register(serverPort);
 
-                    acceptors.add(new ConsensusAcceptor(stateStore, 5000 + i, new ConsensusLearner(stateStore, 5000 + i)));
-                    allLearnerAddresses.add(5000 + i);
+                serverCommunicator = new ServerCommunicator(proposer, acceptor, null, allLearnerAddresses);
+                serverCommunicator.setPeers(peers);
+                if (shardMap.getShardCount() > 1) {
+                    // Requests for keys of other shards are passed on to their groups
+                    serverCommunicator.setShards(shardMap, new PeerConnectionManager(serverPort, shardMap.allPorts(), transport));
                 }
-                ConsensusProposer proposer = new ConsensusProposer(stateStore, serverPort, acceptors, learner);
+                serverCommunicator.setMetrics(metrics);
+                serverCommunicator.setReadFreshness(new ReadFreshness(proposer, learner));
 
+                // Client operations queue up and are decided in batches, a window of batches at a time
+                ProposerProcess proposerProcess = new ProposerProcess(proposer, new LinkedBlockingQueue<>(),
+                        config.getMaxBatchSize(), config.getMaxBatchDelayMs(), config.getPipelineWindow());
+                serverCommunicator.setProposerProcess(proposerProcess);
+                // The batching loop and the apply stage stay on platform threads of their own, as they hardly
+                // ever block and run all the time
+                proposerThread = new Thread(proposerProcess, "proposer-" + serverPort);
+                proposerThread.setDaemon(true);
+                proposerThread.start();
 
-                serverCommunicator = new ServerCommunicator(proposer, acceptor, null, allLearnerAddresses);
+                // The proposer's own loop fills slots that hold back the learner's apply order
+                gapRepairThread = threads.newThread(proposer, "gap-repair-" + serverPort);
+                gapRepairThread.setDaemon(true);
+                gapRepairThread.start();
 
                 learner.setServerCommunicator(serverCommunicator);
+                learner.setAcceptor(acceptor);
                 serverCommunicator.setLearner(learner);
+
+                // A single thread applies decided slots to the store, in slot order
+                applyThread = new Thread(learner, "apply-" + serverPort);
+                applyThread.setDaemon(true);
+                applyThread.start();
+
+                SnapshotProcess snapshotProcess = null;
+                if (config.getWalDirectory() != null) {
+                    // Restore the store and the acceptor's promises from disk before serving any request
+                    snapshotProcess = new SnapshotProcess(acceptor, learner,
+                            Paths.get(config.getWalDirectory(), "acceptor-" + serverPort), config.getSnapshotEverySlots());
+                    snapshotProcess.recover(config.getWalSyncMode());
+                    if (config.getSnapshotEverySlots() > 0) {
+                        snapshotThread = threads.newThread(snapshotProcess, "snapshot-" + serverPort);
+                        snapshotThread.setDaemon(true);
+                        snapshotThread.start();
+                    }
+                    serverCommunicator.setSnapshotProcess(snapshotProcess);
+                }
+                catchUpProcess = new CatchUpProcess(learner, peers, snapshotProcess);
             }
 
             try {
@@ -58,12 +157,22 @@ public class ServerNode {
                 registry.rebind("PaxosServer", serverCommunicator);
             }
 
+            // Peers reach this server through the configured transport; clients always use RMI
+            transport.start(serverCommunicator);
+
+            // Fetch whatever the cluster decided while this server was down, then watch for falling behind
+            if (catchUpThread == null) {
+                catchUpThread = threads.newThread(catchUpProcess, "catch-up-" + serverPort);
+                catchUpThread.setDaemon(true);
+                catchUpThread.start();
+            }
+
             // Start acceptor in its own thread
-            acceptorThread = new Thread(acceptor);
+            acceptorThread = threads.newThread(acceptor, "acceptor-" + serverPort);
             acceptorThread.start();
 
-            System.out.println("Server started on port " + serverPort + ". Ready to accept requests.");
-        } catch (RemoteException e) {
+            System.out.println("Server started on port " + serverPort + " with " + config + ". Ready to accept requests.");
+        } catch (IOException e) {
             System.err.println("Server exception: " + e.toString());
             e.printStackTrace();
         }
@@ -71,12 +180,16 @@ public class ServerNode {
 
     public static void main(String[] args) {
         if (args.length < 1) {
-            System.err.println("Usage: java ServerNode <port number>");
+            System.err.println("Usage: java ServerNode <port number> [classic|multi]");
             System.exit(1);
         }
 
         int port = Integer.parseInt(args[0]);
-        ServerNode server = new ServerNode(port);
+        ServerConfig config = ServerConfig.fromSystemProperties();
+        if (args.length > 1) {
+            config.setMode(PaxosMode.fromString(args[1]));
+        }
+        ServerNode server = new ServerNode(port, config);
         server.startServer();
     }
 }
@@ -1,22 +1,36 @@
 package server;
 
+import consensus.participant.PaxosMode;
+import network.ShardMap;
+
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * ServerStarter initializes and starts multiple ServerNode instances on predefined ports.
+ * ServerStarter initializes and starts multiple ServerNode instances on predefined ports, one per server
+ * and shard when the keys are spread over several Paxos groups.
  */
 public class ServerStarter {
 
     private List<ServerNode> servers = new ArrayList<>();
-    private static final int[] ports = {5001, 5002, 5003, 5004, 5005}; // Predefined ports
+    static final List<Integer> ports = List.of(5001, 5002, 5003, 5004, 5005); // Predefined ports of shard 0
+    private final ServerConfig config;
 
     /**
      * Constructor for ServerStarter.
      */
     public ServerStarter() {
+        this(ServerConfig.fromSystemProperties());
+    }
+
+    /**
+     * Constructor for ServerStarter.
+     * @param config The configuration every server node is started with.
+     */
+    public ServerStarter(ServerConfig config) {
+        this.config = config;
     }
 
     /**
@@ -24,7 +38,7 @@ public class ServerStarter {
      * @throws RemoteException If a remote communication error occurs.
      */
     public void startServers() throws RemoteException {
-        for (int port : ports) {
+        for (int port : new ShardMap(ports, config.getShardCount()).allPorts()) {
             try {
                 LocateRegistry.createRegistry(port);
                 System.out.println("RMI registry created at port " + port);
@@ -34,7 +48,7 @@ public class ServerStarter {
                 // LocateRegistry.getRegistry(port);
             }
 
-            ServerNode server = new ServerNode(port);
+            ServerNode server = new ServerNode(port, config);
             servers.add(server);
             server.startServer();
             System.out.println("Server started on port " + port);
@@ -43,10 +57,14 @@ public class ServerStarter {
 
     /**
      * Main method to start the servers.
-     * @param args Command line arguments are not used in this configuration.
+     * @param args Optional Paxos mode, "classic" (default) or "multi". Other settings come from system properties, see {@link ServerConfig}.
      */
     public static void main(String[] args) {
-        ServerStarter starter = new ServerStarter();
+        ServerConfig config = ServerConfig.fromSystemProperties();
+        if (args.length > 0) {
+            config.setMode(PaxosMode.fromString(args[0]));
+        }
+        ServerStarter starter = new ServerStarter(config);
         try {
             starter.startServers();
         } catch (RemoteException e) {
@@ -0,0 +1,113 @@
+package consensus.participant;
+
+import consensus.message.AcceptResponse;
+import consensus.message.MessageCodec;
+import consensus.message.PrepareResponse;
+import consensus.message.ReadIndexResponse;
+import consensus.state.Operation;
+import consensus.state.StateStore;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Proposals whose accepted value comes back from the acceptors as a copy, as it does from a remote acceptor
+ * or the write-ahead log. Run with {@code make test}; exits with status 1 on the first failed check.
+ */
+public class ConsensusProposerTest {
+
+    private static final int FIRST_PORT = 9301;
+    private static final int SIZE = 3;
+
+    public static void main(String[] args) throws Exception {
+        copiesOfAnOperationAreEqual();
+        retryAfterLostAcceptRepliesKeepsTheSlot();
+        System.out.println("ConsensusProposerTest passed");
+        System.exit(0);
+    }
+
+    private static void copiesOfAnOperationAreEqual() {
+        Operation operation = new Operation(0, "PUT", "key", "value");
+        Operation copy = copyOf(operation);
+        check(copy != operation && copy.equals(operation) && copy.hashCode() == operation.hashCode(),
+                "a decoded copy equals the operation it was encoded from");
+        check(!new Operation(0, "PUT", "key", "value").equals(operation),
+                "an operation with the same contents but created separately is a different operation");
+
+        Operation batch = Operation.batchOf(0, List.of(operation));
+        Operation batchCopy = copyOf(batch);
+        check(batchCopy.equals(batch) && batchCopy.getBatchedOperations().get(0).equals(operation),
+                "a decoded batch and its entries equal the originals");
+    }
+
+    // The acceptors accept the first round but its replies are lost, so the proposer retries the slot and
+    // finds its own operation, as a copy, already accepted there
+    private static void retryAfterLostAcceptRepliesKeepsTheSlot() {
+        ConsensusLearner learner = new ConsensusLearner(new StateStore(), FIRST_PORT);
+        List<AcceptorEndpoint> acceptors = new ArrayList<>();
+        for (int i = 0; i < SIZE; i++) {
+            int port = FIRST_PORT + i;
+            StateStore store = new StateStore();
+            acceptors.add(new CopyingAcceptor(new ConsensusAcceptor(store, port, new ConsensusLearner(store, port))));
+        }
+        ConsensusProposer proposer = new ConsensusProposer(learner.getStateStore(), FIRST_PORT, acceptors, learner);
+        proposer.setBackoffMs(0, 0);
+
+        Operation operation = new Operation(0, "PUT", "key", "value");
+        check(proposer.propose(operation), "the proposal succeeds on the retry");
+        check(learner.getHighestDecidedSlot() == 0, "the operation is decided in slot 0 only, not again in slot 1"
+                + " (highest decided slot " + learner.getHighestDecidedSlot() + ")");
+    }
+
+    private static Operation copyOf(Operation operation) {
+        return (Operation) MessageCodec.decode(MessageCodec.encode(operation));
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            System.err.println("FAILED: " + description);
+            System.exit(1);
+        }
+    }
+
+    // Passes every value through the wire codec as a remote acceptor does, and loses the reply to the first
+    // accept request after the acceptor has accepted it
+    private static final class CopyingAcceptor implements AcceptorEndpoint {
+        private final ConsensusAcceptor acceptor;
+        private final AtomicBoolean acceptReplyLost = new AtomicBoolean();
+
+        CopyingAcceptor(ConsensusAcceptor acceptor) {
+            this.acceptor = acceptor;
+        }
+
+        @Override
+        public PrepareResponse prepare(long slot, long proposalId, String proposerIdentifier) {
+            return (PrepareResponse) MessageCodec.decode(MessageCodec.encode(acceptor.prepare(slot, proposalId, proposerIdentifier)));
+        }
+
+        @Override
+        public PrepareResponse prepareFrom(long fromSlot, long proposalId, String proposerIdentifier) {
+            return (PrepareResponse) MessageCodec.decode(MessageCodec.encode(acceptor.prepareFrom(fromSlot, proposalId, proposerIdentifier)));
+        }
+
+        @Override
+        public AcceptResponse accept(long slot, long proposalId, Operation operation) throws RemoteException {
+            AcceptResponse response = acceptor.accept(slot, proposalId, copyOf(operation));
+            if (acceptReplyLost.compareAndSet(false, true)) {
+                throw new RemoteException("Reply lost");
+            }
+            return response;
+        }
+
+        @Override
+        public ReadIndexResponse readIndex(long ballot, String proposerIdentifier) {
+            return acceptor.readIndex(ballot, proposerIdentifier);
+        }
+
+        @Override
+        public int getServerPort() {
+            return acceptor.getServerPort();
+        }
+    }
+}